@@ -1082,6 +1082,26 @@ class Network:
         return node
 
 
+    def begin_update(self):
+        """Start building a large part of the model in one batch.
+
+        Normally, adding each ensemble, node or connection re-examines the whole network,
+        so building a model with many thousands of parts is slow.  Between this call and
+        :func:`nef.Network.end_update()` that work is put off, and it is done once at the
+        end::
+
+            net.begin_update()
+            for i in range(10000):
+                net.make('A%d'%i,50,1)
+            net.end_update()
+        """
+        self.network.beginUpdate()
+
+    def end_update(self):
+        """Finish a batch started with :func:`nef.Network.begin_update()`."""
+        self.network.endUpdate()
+
+
     def get(self,name,default=Exception,require_origin=False):
         """Return the node with the given *name* from the network
         """
@@ -1179,6 +1199,40 @@ class Network:
         self.network.reset(True)
         self.run_time=0.0
         
+    def profile(self,enable=True):
+        """Turn on (or off) recording of the time taken to run each part of the model.
+
+        While profiling is on, :func:`nef.Network.run()` records how long each ensemble,
+        node, projection and probe takes in each time step, and how long threads wait for
+        each other.  Use :func:`nef.Network.profile_report()` to see the results::
+
+            net.profile()
+            net.run(1)
+            print net.profile_report()
+
+        :param bool enable: True to start recording, False to stop and discard the times
+        """
+        self.network.simulator.setProfiling(enable)
+
+    def profile_report(self,top=20,filename=None):
+        """Return a summary of the times recorded since :func:`nef.Network.profile()` was called.
+
+        :param int top: the number of slowest parts of the model to list
+        :param string filename: if given, the times of all parts of the model are also written
+                                to this file as comma-separated values
+        :returns: the summary, as a string
+        """
+        profiler=self.network.simulator.getProfiler()
+        if profiler is None:
+            raise Exception('Profiling is off; call profile() before running the model')
+        if filename is not None:
+            f=java.io.FileWriter(filename)
+            try:
+                profiler.writeCSV(f)
+            finally:
+                f.close()
+        return profiler.getReport(top)
+
     def log(self,name=None,dir=None,filename='%(name)s-%(time)s.csv',interval=0.001,tau=0.01):
         """Creates a :py:class:`nef.Log` object which dumps data to a .csv file as the model runs.
         
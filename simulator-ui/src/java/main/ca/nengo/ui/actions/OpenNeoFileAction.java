@@ -27,7 +27,6 @@ a recipient may use your version of this file under either the MPL or the GPL Li
 package ca.nengo.ui.actions;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 
 import javax.swing.JFileChooser;
@@ -35,8 +34,8 @@ import javax.swing.SwingUtilities;
 
 import org.python.core.PyClass;
 import org.python.util.PythonInterpreter;
-import org.python.util.PythonObjectInputStream;
 
+import ca.nengo.io.FileManager;
 import ca.nengo.model.Node;
 import ca.nengo.ui.NengoGraphics;
 import ca.nengo.ui.lib.actions.ActionException;
@@ -47,6 +46,7 @@ import ca.nengo.ui.models.NodeContainer;
 import ca.nengo.ui.models.NodeContainer.ContainerException;
 import ca.nengo.ui.models.UINeoNode;
 import ca.nengo.ui.models.nodes.UINodeViewable;
+import ca.nengo.ui.util.PythonModelReader;
 
 /**
  * Action used to open a Neo model from file
@@ -101,18 +101,19 @@ public class OpenNeoFileAction extends StandardAction {
                     }
 
                     try {
-                        // loading Python-based objects requires using a
-                        // PythonObjectInputStream from within a
+                        // loading Python-based objects requires resolving
+                        // their classes (see PythonModelReader) from within a
                         // PythonInterpreter.
                         // loading sometimes fails if a new interpreter is
                         // created, so
                         // we use the one from the NengoGraphics.
                         PythonInterpreter pi = NengoGraphics.getInstance().getPythonInterpreter();
-                        pi.set("___inStream",
-                                new PythonObjectInputStream(new FileInputStream(file)));
-                        org.python.core.PyObject obj = pi.eval("___inStream.readObject()");
+                        pi.set("___fileManager", new FileManager());
+                        pi.set("___file", file);
+                        pi.set("___reader", new PythonModelReader());
+                        org.python.core.PyObject obj = pi.eval("___fileManager.load(___file, ___reader)");
                         objLoaded = obj.__tojava__(Class.forName("ca.nengo.model.Node"));
-                        pi.exec("del ___inStream");
+                        pi.exec("del ___fileManager, ___file, ___reader");
 
                         SwingUtilities.invokeLater(new Runnable() {
                             public void run() {
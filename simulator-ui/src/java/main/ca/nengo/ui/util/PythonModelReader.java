@@ -0,0 +1,73 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1 
+(the "License"); you may not use this file except in compliance with the License. 
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific 
+language governing rights and limitations under the License.
+
+The Original Code is "PythonModelReader.java". Description: 
+"Loads saved models that contain objects of classes defined in Python"
+
+Alternatively, the contents of this file may be used under the terms of the GNU 
+Public License license (the GPL License), in which case the provisions of GPL 
+License are applicable  instead of those above. If you wish to allow use of your 
+version of this file only under the terms of the GPL License and not to allow 
+others to use your version of this file under the MPL, indicate your decision 
+by deleting the provisions above and replace  them with the notice and other 
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.ui.util;
+
+import org.python.core.Py;
+import org.python.core.PyObject;
+import org.python.core.PyTuple;
+import org.python.core.PyType;
+import org.python.core.__builtin__;
+
+import ca.nengo.io.BinaryModelReader;
+
+/**
+ * Loads saved models that contain objects of classes defined in Python. Classes are 
+ * resolved as by Jython's PythonObjectInputStream, by importing the modules that define 
+ * them, so the reader should be used from within a PythonInterpreter (e.g. the one from 
+ * NengoGraphics). Python errors (e.g. an ImportError if a module can't be found) are passed 
+ * on as PyExceptions. 
+ */
+public class PythonModelReader extends BinaryModelReader {
+
+	private static final String PROXY_PREFIX = "org.python.proxies.";
+
+	@Override
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		if (name.startsWith(PROXY_PREFIX)) {
+			// proxies of Python subclasses of Java classes are named like module$Class$0
+			String proxyName = name.substring(PROXY_PREFIX.length());
+			int moduleEnd = proxyName.indexOf('$');
+			int classEnd = proxyName.lastIndexOf('$');
+			if (moduleEnd > 0 && classEnd > moduleEnd) {
+				PyObject module = importModule(proxyName.substring(0, moduleEnd));
+				PyObject pyClass = module.__getattr__(proxyName.substring(moduleEnd + 1, classEnd).intern());
+				if (pyClass instanceof PyType && ((PyType) pyClass).getProxyType() != null) {
+					return ((PyType) pyClass).getProxyType();
+				}
+			}
+		} else {
+			Object result = importModule(name).__tojava__(Class.class);
+			if (result instanceof Class<?>) {
+				return (Class<?>) result;
+			}
+		}
+		
+		throw new ClassNotFoundException(name);
+	}
+
+	private static PyObject importModule(String name) {
+		PyObject fromList = new PyTuple(Py.newString("__doc__"));
+		return __builtin__.__import__(name, null, null, fromList);
+	}
+
+}
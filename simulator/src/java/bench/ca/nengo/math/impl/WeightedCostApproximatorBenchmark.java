@@ -0,0 +1,70 @@
+package ca.nengo.math.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.nengo.math.LinearApproximator;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.model.neuron.impl.LIFSpikeGenerator;
+import ca.nengo.model.neuron.impl.SpikingNeuron;
+
+/**
+ * Benchmarks building a WeightedCostApproximator from the firing rates of an ensemble of LIF
+ * neurons and finding decoders for one function, without the decoder cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WeightedCostApproximatorBenchmark {
+
+	@Param({"100", "500"})
+	public int size;
+
+	@Param({"1", "4"})
+	public int dimension;
+
+	private float[][] myEvalPoints;
+	private float[][] myRates;
+
+	@Setup
+	public void setUp() throws StructuralException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) ef.make("ensemble", size, dimension);
+		myEvalPoints = ensemble.getEvalPoints();
+
+		myRates = new float[size][myEvalPoints.length];
+		for (int i = 0; i < size; i++) {
+			SpikingNeuron neuron = (SpikingNeuron) ensemble.getNodes()[i];
+			LIFSpikeGenerator generator = (LIFSpikeGenerator) neuron.getGenerator();
+			for (int p = 0; p < myEvalPoints.length; p++) {
+				float current = neuron.getBias() + neuron.getScale() * ensemble.getRadialInput(myEvalPoints[p], i);
+				myRates[i][p] = generator.constantRateRun(current);
+			}
+		}
+
+		WeightedCostApproximator.setDecoderCache(null);
+	}
+
+	@Benchmark
+	public float[] build() {
+		LinearApproximator approximator = new WeightedCostApproximator.Factory(.1f, true).getApproximator(myEvalPoints, myRates);
+		return approximator.findCoefficients(new IdentityFunction(dimension, 0));
+	}
+
+}
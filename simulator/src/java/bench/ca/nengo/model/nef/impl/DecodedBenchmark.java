@@ -0,0 +1,83 @@
+package ca.nengo.model.nef.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.util.MU;
+
+/**
+ * Benchmarks one step of a DecodedOrigin (decoding the spikes of an ensemble) and of a
+ * DecodedTermination (filtering a vector input), apart from the rest of the ensemble.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodedBenchmark {
+
+	@Param({"100", "1000"})
+	public int size;
+
+	@Param({"1", "16"})
+	public int dimension;
+
+	private DecodedOrigin myOrigin;
+	private DecodedTermination myTermination;
+	private RealOutputImpl myInput;
+	private float myTime;
+
+	@Setup
+	public void setUp() throws StructuralException, SimulationException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) ef.make("ensemble", size, dimension);
+		myTermination = (DecodedTermination) ensemble.addDecodedTermination("input", MU.I(dimension), .005f, false);
+		myOrigin = (DecodedOrigin) ensemble.getOrigin(NEFEnsemble.X);
+
+		//run long enough for some neurons to be spiking in the last step
+		float[] values = new float[dimension];
+		values[0] = .5f;
+		myInput = new RealOutputImpl(values, Units.UNK, 0);
+		for (int i = 0; i < 20; i++) {
+			myTermination.setValues(myInput);
+			ensemble.run(i * .001f, (i+1) * .001f);
+		}
+		myTime = .02f;
+	}
+
+	@Benchmark
+	public InstantaneousOutput originStep() throws SimulationException {
+		float startTime = myTime;
+		myTime += .001f;
+		myOrigin.run(null, startTime, myTime);
+		return myOrigin.getValues();
+	}
+
+	@Benchmark
+	public float[] terminationStep() throws SimulationException {
+		float startTime = myTime;
+		myTime += .001f;
+		myTermination.setValues(myInput);
+		myTermination.run(startTime, myTime);
+		return myTermination.getOutput();
+	}
+
+}
@@ -0,0 +1,66 @@
+package ca.nengo.model.nef.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.util.MU;
+
+/**
+ * Benchmarks one step of an ensemble of LIF neurons with a decoded input and output, run
+ * either neuron by neuron or as a LIFPopulation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NEFEnsembleBenchmark {
+
+	@Param({"100", "1000", "5000"})
+	public int size;
+
+	@Param({"false", "true"})
+	public boolean usePopulation;
+
+	private NEFEnsembleImpl myEnsemble;
+	private Termination myInput;
+	private float myTime;
+
+	@Setup
+	public void setUp() throws StructuralException, SimulationException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		myEnsemble = (NEFEnsembleImpl) ef.make("ensemble", size, 1);
+		myInput = myEnsemble.addDecodedTermination("input", MU.I(1), .005f, false);
+		myEnsemble.setUsePopulation(usePopulation);
+		myTime = 0;
+	}
+
+	@Benchmark
+	public float[] step() throws SimulationException, StructuralException {
+		float startTime = myTime;
+		myTime += .001f;
+		myInput.setValues(new RealOutputImpl(new float[]{(float) Math.sin(startTime * 10)}, Units.UNK, startTime));
+		myEnsemble.run(startTime, myTime);
+		return ((RealOutput) myEnsemble.getOrigin(NEFEnsemble.X).getValues()).getValues();
+	}
+
+}
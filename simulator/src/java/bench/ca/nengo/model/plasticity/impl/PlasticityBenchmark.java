@@ -0,0 +1,122 @@
+package ca.nengo.model.plasticity.impl;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.LinearExponentialTermination;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.model.impl.SpikeOutputImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.impl.SpikingNeuron;
+
+/**
+ * Benchmarks one weight update of a PESTermination and of an STDPTermination, over all
+ * post-synaptic neurons, with 100 pre-synaptic inputs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlasticityBenchmark {
+
+	private static final int PRE = 100;
+	private static final int PATTERNS = 16;
+
+	@Param({"100", "1000"})
+	public int size;
+
+	private PESTermination myPES;
+	private STDPTermination mySTDP;
+	private SpikeOutputImpl[] myPreSpikes;
+	private boolean[][] myPostSpikes;
+	private float myTime;
+	private int myStep;
+
+	@Setup
+	public void setUp() throws StructuralException, SimulationException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) ef.make("post", size, 1);
+
+		myPES = new PESTermination(ensemble, "pes", makeNodeTerminations(size));
+		myPES.setModTermName("error");
+		myPES.setModTerminationState("error", new RealOutputImpl(new float[]{.5f}, Units.UNK, 0), 0);
+		float[] rates = new float[PRE];
+		for (int i = 0; i < rates.length; i++) {
+			rates[i] = 20 + i;
+		}
+		myPES.setValues(new RealOutputImpl(rates, Units.SPIKES_PER_S, 0));
+
+		mySTDP = new STDPTermination(ensemble, "stdp", makeNodeTerminations(size));
+		Random random = new Random(0);
+		myPreSpikes = new SpikeOutputImpl[PATTERNS];
+		myPostSpikes = new boolean[PATTERNS][];
+		for (int p = 0; p < PATTERNS; p++) {
+			myPreSpikes[p] = new SpikeOutputImpl(randomSpikes(random, PRE), Units.SPIKES, 0);
+			myPostSpikes[p] = randomSpikes(random, size);
+		}
+
+		myTime = 0;
+		myStep = 0;
+	}
+
+	@Benchmark
+	public float pesUpdate() throws StructuralException {
+		myTime += .001f;
+		myPES.setOriginState(NEFEnsemble.X, new RealOutputImpl(new float[]{.1f}, Units.UNK, myTime), myTime);
+		myPES.updateTransform(myTime, 0, size);
+		return myPES.getTransform()[0][0];
+	}
+
+	@Benchmark
+	public float stdpUpdate() throws StructuralException, SimulationException {
+		myTime += .001f;
+		int p = myStep++ % PATTERNS;
+		mySTDP.setValues(myPreSpikes[p]);
+		mySTDP.setOriginState(Neuron.AXON, new SpikeOutputImpl(myPostSpikes[p], Units.SPIKES, myTime), myTime);
+		mySTDP.updateTransform(myTime, 0, size);
+		return mySTDP.getTransform()[0][0];
+	}
+
+	private static LinearExponentialTermination[] makeNodeTerminations(int n) {
+		float[] weights = new float[PRE];
+		for (int j = 0; j < weights.length; j++) {
+			weights[j] = .001f;
+		}
+
+		LinearExponentialTermination[] result = new LinearExponentialTermination[n];
+		for (int i = 0; i < n; i++) {
+			result[i] = new LinearExponentialTermination(new SpikingNeuron(null, null, 1, 0, "neuron" + i), "input", weights.clone(), .005f);
+		}
+		return result;
+	}
+
+	//about 5% of neurons spike in each pattern
+	private static boolean[] randomSpikes(Random random, int n) {
+		boolean[] result = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			result[i] = random.nextFloat() < .05f;
+		}
+		return result;
+	}
+
+}
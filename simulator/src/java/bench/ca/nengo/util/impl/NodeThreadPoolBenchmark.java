@@ -0,0 +1,82 @@
+package ca.nengo.util.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.sim.impl.LocalSimulator;
+
+/**
+ * Benchmarks one step of a Network of many small ensembles with different numbers of
+ * NodeThreadPool threads. The ensembles are small so that the time is mostly the overhead of
+ * scheduling and synchronizing the threads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodeThreadPoolBenchmark {
+
+	private static final int ENSEMBLES = 32;
+
+	@Param({"1", "2", "4", "8", "16", "32", "64"})
+	public int threads;
+
+	private NetworkImpl myNetwork;
+	private int myNumThreads;
+	private float myTime;
+
+	@Setup
+	public void setUp() throws StructuralException, SimulationException {
+		myNumThreads = NodeThreadPool.getNumJavaThreads();
+		NodeThreadPool.setNumJavaThreads(threads);
+
+		myNetwork = new NetworkImpl();
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, .5f)}, Units.UNK);
+		myNetwork.addNode(input);
+		for (int i = 0; i < ENSEMBLES; i++) {
+			NEFEnsemble ensemble = ef.make("ensemble" + i, 10, 1);
+			ensemble.addDecodedTermination("input", new float[][]{new float[]{1}}, .005f, false);
+			myNetwork.addNode(ensemble);
+			myNetwork.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), ensemble.getTermination("input"));
+		}
+		myTime = 0;
+	}
+
+	@TearDown
+	public void tearDown() {
+		((LocalSimulator) myNetwork.getSimulator()).releaseThreadPool();
+		NodeThreadPool.setNumJavaThreads(myNumThreads);
+	}
+
+	@Benchmark
+	public void step() throws SimulationException {
+		float startTime = myTime;
+		myTime += .001f;
+		myNetwork.getSimulator().run(startTime, myTime, .001f);
+	}
+
+}
@@ -0,0 +1,90 @@
+package ca.nengo.util.impl;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.nengo.model.Probeable;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.Units;
+import ca.nengo.util.TimeSeries;
+
+/**
+ * Benchmarks recording one sample of a state with a Probe. Samples are kept for one second
+ * of simulation time, so memory use doesn't grow over the run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProbeBenchmark {
+
+	@Param({"1", "100"})
+	public int dimension;
+
+	private ProbeImpl myProbe;
+	private Target myTarget;
+
+	@Setup
+	public void setUp() throws SimulationException {
+		myProbe = new ProbeImpl();
+		myTarget = new Target(dimension);
+		myProbe.connect(myTarget, "x", true);
+		myProbe.setRecordWindow(1);
+	}
+
+	@Setup(Level.Iteration)
+	public void reset() {
+		myProbe.reset();
+		myTarget.myTime = 0;
+	}
+
+	@Benchmark
+	public void collect() {
+		myTarget.myTime += .001f;
+		myProbe.collect(myTarget.myTime);
+	}
+
+	/**
+	 * A Probeable with a single state that changes each time it is read.
+	 */
+	private static class Target implements Probeable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final float[] myValues;
+		private float myTime;
+
+		public Target(int dimension) {
+			myValues = new float[dimension];
+		}
+
+		public TimeSeries getHistory(String stateName) throws SimulationException {
+			for (int i = 0; i < myValues.length; i++) {
+				myValues[i] += 1;
+			}
+			return new TimeSeriesImpl(new float[]{myTime}, new float[][]{myValues}, Units.uniform(Units.UNK, myValues.length));
+		}
+
+		public Properties listStates() {
+			Properties result = new Properties();
+			result.setProperty("x", "Test state");
+			return result;
+		}
+	}
+
+}
@@ -27,6 +27,7 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.dynamics.impl;
 
+import Jama.Matrix;
 import ca.nengo.dynamics.DynamicalSystem;
 import ca.nengo.dynamics.LinearSystem;
 import ca.nengo.model.Units;
@@ -36,6 +37,10 @@ import ca.nengo.util.MU;
  * A linear time-invariant dynamical system model in state-space form. Such a system
  * can be defined in terms of the four matrices that must be provided in the constructor.
  *
+ * In addition to the continuous-time form used by Integrators, the system can be advanced
+ * exactly by fixed steps with step(...), assuming the input is held constant over each
+ * step (zero-order hold).
+ *
  * TODO: test
  *
  * @author Bryan Tripp
@@ -51,6 +56,9 @@ public class LTISystem implements LinearSystem {
 	private float[] x;
 	private Units[] myOutputUnits;
 
+	private transient Discretization myDiscretization; //for the most recent step size
+	private transient float[] myNextState;
+
 	/**
 	 * Each argument is an array of arrays that represents a matrix. The first
 	 * dimension represents the matrix row and the second the matrix column, so
@@ -150,6 +158,64 @@ public class LTISystem implements LinearSystem {
 		return result;
 	}
 
+	/**
+	 * Advances the state by one step, exactly for an input that is constant over the step
+	 * (zero-order hold). Discrete-time matrices are computed when the step size changes, and
+	 * reused otherwise (also by clones), so a step is just a couple of matrix-vector products.
+	 * The state is updated in place.
+	 *
+	 * @param dt Step size
+	 * @param u Input over the step
+	 * @param output Array in which to store the output at the end of the step (Cx + Du), or
+	 * 		null to allocate a new one
+	 * @return The output at the end of the step
+	 */
+	public float[] step(float dt, float[] u, float[] output) {
+		assert u.length == getInputDimension();
+
+		Discretization d = myDiscretization;
+		if (d == null || d.myStepSize != dt) {
+			d = new Discretization(A, B, dt);
+			myDiscretization = d;
+		}
+
+		float[] next = myNextState;
+		if (next == null || next.length != x.length) {
+			next = new float[x.length];
+			myNextState = next;
+		}
+
+		for (int i = 0; i < next.length; i++) {
+			float[] Ad = d.myA[i];
+			float[] Bd = d.myB[i];
+			float sum = 0;
+			for (int j = 0; j < x.length; j++) {
+				sum += Ad[j] * x[j];
+			}
+			for (int j = 0; j < u.length; j++) {
+				sum += Bd[j] * u[j];
+			}
+			next[i] = sum;
+		}
+		System.arraycopy(next, 0, x, 0, x.length);
+
+		if (output == null) {
+			output = new float[C.length];
+		}
+		for (int i = 0; i < output.length; i++) {
+			float sum = 0;
+			for (int j = 0; j < x.length; j++) {
+				sum += C[i][j] * x[j];
+			}
+			for (int j = 0; j < u.length; j++) {
+				sum += D[i][j] * u[j];
+			}
+			output[i] = sum;
+		}
+
+		return output;
+	}
+
 	/**
 	 * @see ca.nengo.dynamics.DynamicalSystem#getState()
 	 */
@@ -177,6 +243,7 @@ public class LTISystem implements LinearSystem {
 	 * @param dim Input dimensionality. Affects B and D.
 	 */
 	public void setInputDimension(int dim) {
+		myDiscretization = null;
 		B = copyColumns(B, dim);
 		D = copyColumns(D, dim);
 	}
@@ -215,6 +282,7 @@ public class LTISystem implements LinearSystem {
 		System.arraycopy(x, 0, newX, 0, Math.min(dim, x.length));
 		x = newX;
 
+		myDiscretization = null;
 		A = copyRows(A, dim);
 		A = copyColumns(A, dim);
 		B = copyRows(B, dim);
@@ -258,6 +326,7 @@ public class LTISystem implements LinearSystem {
 		checkSameDimension(newA.length, newA[0].length, "A matrix must be square");
 		checkSameDimension(newA.length, A.length, "A matrix must match state dimension " + A.length);
 		A = newA;
+		myDiscretization = null;
 	}
 
 	/**
@@ -282,6 +351,7 @@ public class LTISystem implements LinearSystem {
 		checkSameDimension(newB.length, B.length, "B matrix must match state dimension " + B.length);
 		checkSameDimension(newB[0].length, B[0].length, "B matrix must match input dimension " + B[0].length);
 		B = newB;
+		myDiscretization = null;
 	}
 
 	/**
@@ -350,6 +420,7 @@ public class LTISystem implements LinearSystem {
 	 */
 	public DynamicalSystem clone() throws CloneNotSupportedException {
 		LTISystem result = (LTISystem) super.clone();
+		result.myNextState = null; //the discretization is immutable and can be shared
 
 		float[] state = new float[result.getState().length];
 		System.arraycopy(result.getState(), 0, state, 0, state.length);
@@ -358,4 +429,98 @@ public class LTISystem implements LinearSystem {
 		return result;
 	}
 
+	/**
+	 * Discrete-time dynamics and input matrices for a given step size, from the exponential
+	 * of [A B; 0 0]*dt, which is [Ad Bd; 0 I].
+	 */
+	private static class Discretization {
+
+		private final float myStepSize;
+		private final float[][] myA;
+		private final float[][] myB;
+
+		public Discretization(float[][] A, float[][] B, float dt) {
+			int n = A.length;
+			int p = B[0].length;
+			myStepSize = dt;
+			myA = new float[n][n];
+			myB = new float[n][p];
+
+			if (isDiagonal(A)) {
+				for (int i = 0; i < n; i++) {
+					double decay = Math.exp(A[i][i] * dt);
+					myA[i][i] = (float) decay;
+					for (int j = 0; j < p; j++) {
+						myB[i][j] = (A[i][i] == 0) ? dt * B[i][j] : (float) ((decay - 1) / A[i][i] * B[i][j]);
+					}
+				}
+			} else {
+				Matrix M = new Matrix(n + p, n + p);
+				for (int i = 0; i < n; i++) {
+					for (int j = 0; j < n; j++) {
+						M.set(i, j, A[i][j] * (double) dt);
+					}
+					for (int j = 0; j < p; j++) {
+						M.set(i, n + j, B[i][j] * (double) dt);
+					}
+				}
+
+				Matrix E = exp(M);
+				for (int i = 0; i < n; i++) {
+					for (int j = 0; j < n; j++) {
+						myA[i][j] = (float) E.get(i, j);
+					}
+					for (int j = 0; j < p; j++) {
+						myB[i][j] = (float) E.get(i, n + j);
+					}
+				}
+			}
+		}
+
+		private static boolean isDiagonal(float[][] A) {
+			for (int i = 0; i < A.length; i++) {
+				for (int j = 0; j < A.length; j++) {
+					if (i != j && A[i][j] != 0) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		//matrix exponential by scaling and squaring with a [6/6] Pade approximant (Moler & Van Loan, 2003)
+		private static Matrix exp(Matrix M) {
+			int n = M.getRowDimension();
+			double norm = M.normInf();
+			int s = (norm > .5) ? (int) Math.ceil(Math.log(norm / .5) / Math.log(2)) : 0;
+			Matrix X = M.times(Math.pow(2, -s));
+
+			Matrix I = Matrix.identity(n, n);
+			double c = .5;
+			Matrix N = I.plus(X.times(c));
+			Matrix D = I.minus(X.times(c));
+			Matrix P = X;
+			int q = 6;
+			boolean positive = true;
+			for (int k = 2; k <= q; k++) {
+				c = c * (q - k + 1) / (k * (2 * q - k + 1));
+				P = X.times(P);
+				Matrix cP = P.times(c);
+				N.plusEquals(cP);
+				if (positive) {
+					D.plusEquals(cP);
+				} else {
+					D.minusEquals(cP);
+				}
+				positive = !positive;
+			}
+
+			Matrix E = D.solve(N);
+			for (int k = 0; k < s; k++) {
+				E = E.times(E);
+			}
+			return E;
+		}
+	}
+
 }
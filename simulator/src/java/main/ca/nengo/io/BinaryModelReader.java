@@ -0,0 +1,238 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "BinaryModelReader.java". Description:
+"Loads models saved by a BinaryModelWriter"
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.io;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>Loads objects saved by a BinaryModelWriter. The stored arrays are read when the object
+ * graph refers to them, by reading their part of the file into a buffer and copying the floats
+ * in bulk. The file isn't mapped, so it isn't held open (or locked, on some platforms) after
+ * the object has been read.</p>
+ *
+ * <p>Classes that aren't visible to the reader's class loader (e.g. classes defined in Python scripts)
+ * can be resolved by overriding findClass(...).</p>
+ */
+public class BinaryModelReader {
+
+	/**
+	 * @param file A file
+	 * @return True if the file starts like a file written by a BinaryModelWriter
+	 * @throws IOException If the file can't be read
+	 */
+	public static boolean isBinaryModel(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			return raf.length() >= BinaryModelWriter.HEADER_LENGTH && raf.readInt() == BinaryModelWriter.MAGIC;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @param source File written by a BinaryModelWriter
+	 * @return The object saved in the file
+	 * @throws IOException If the file can't be read or is not in the expected format
+	 * @throws ClassNotFoundException If the file contains classes not known in this context
+	 */
+	public Object read(File source) throws IOException, ClassNotFoundException {
+		RandomAccessFile raf = new RandomAccessFile(source, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+
+			ByteBuffer header = ByteBuffer.allocate(BinaryModelWriter.HEADER_LENGTH);
+			readFully(channel, header, 0);
+			header.flip();
+			if (header.getInt() != BinaryModelWriter.MAGIC) {
+				throw new IOException(source + " is not a binary model file");
+			}
+			int version = header.getInt();
+			if (version != BinaryModelWriter.VERSION) {
+				throw new IOException(source + " has unsupported version " + version);
+			}
+			long tableOffset = header.getLong();
+			int count = header.getInt();
+			header.getInt();
+			long graphOffset = header.getLong();
+
+			ByteBuffer table = ByteBuffer.allocate(count * BinaryModelWriter.TABLE_ENTRY_LENGTH);
+			readFully(channel, table, tableOffset);
+			table.flip();
+			long[] offsets = new long[count];
+			int[] rows = new int[count];
+			int[] columns = new int[count];
+			for (int i = 0; i < count; i++) {
+				offsets[i] = table.getLong();
+				rows[i] = table.getInt();
+				columns[i] = table.getInt();
+			}
+
+			channel.position(graphOffset);
+			InputStream graph = new BufferedInputStream(Channels.newInputStream(channel), BinaryModelWriter.BUFFER_LENGTH);
+			GraphInputStream ois = new GraphInputStream(graph, channel, offsets, rows, columns);
+			return ois.readObject();
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @param in Stream of an object saved with plain Java serialization (e.g. by earlier versions)
+	 * @return The object saved in the stream
+	 * @throws IOException If the stream can't be read
+	 * @throws ClassNotFoundException If the stream contains classes not known in this context
+	 */
+	public Object readSerialized(InputStream in) throws IOException, ClassNotFoundException {
+		return new ResolvingInputStream(in).readObject();
+	}
+
+	/**
+	 * Called for classes of the saved objects that can't be found by the default mechanism of
+	 * ObjectInputStream.
+	 *
+	 * @param name Name of a class
+	 * @return The class
+	 * @throws ClassNotFoundException If the class isn't known in this context
+	 */
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		throw new ClassNotFoundException(name);
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of file");
+			}
+		}
+	}
+
+	/**
+	 * Falls back on findClass(...) for classes that ObjectInputStream can't find.
+	 */
+	private class ResolvingInputStream extends ObjectInputStream {
+
+		public ResolvingInputStream(InputStream in) throws IOException {
+			super(in);
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			try {
+				return super.resolveClass(desc);
+			} catch (ClassNotFoundException e) {
+				return findClass(desc.getName());
+			}
+		}
+	}
+
+	/**
+	 * Resolves references written by BinaryModelWriter into the arrays they stand for.
+	 */
+	private class GraphInputStream extends ResolvingInputStream {
+
+		private final FileChannel myChannel;
+		private final long[] myOffsets;
+		private final int[] myRows;
+		private final int[] myColumns;
+		private final Object[] myArrays;
+		private final ByteBuffer myBuffer;
+
+		public GraphInputStream(InputStream in, FileChannel channel, long[] offsets, int[] rows, int[] columns) throws IOException {
+			super(in);
+			myChannel = channel;
+			myOffsets = offsets;
+			myRows = rows;
+			myColumns = columns;
+			myArrays = new Object[offsets.length];
+			myBuffer = ByteBuffer.allocate(BinaryModelWriter.BUFFER_LENGTH);
+			enableResolveObject(true);
+		}
+
+		@Override
+		protected Object resolveObject(Object obj) throws IOException {
+			if (obj instanceof BinaryModelWriter.ArrayRef) {
+				return getArray(((BinaryModelWriter.ArrayRef) obj).myIndex);
+			} else if (obj instanceof BinaryModelWriter.RowRef) {
+				BinaryModelWriter.RowRef ref = (BinaryModelWriter.RowRef) obj;
+				return ((float[][]) getArray(ref.myIndex))[ref.myRow];
+			}
+			return obj;
+		}
+
+		private Object getArray(int index) throws IOException {
+			if (index < 0 || index >= myArrays.length) {
+				throw new IOException("Array " + index + " is not in the table");
+			}
+
+			if (myArrays[index] == null) {
+				float[][] rows;
+				if (myRows[index] < 0) {
+					rows = new float[][]{new float[myColumns[index]]};
+					myArrays[index] = rows[0];
+				} else {
+					rows = new float[myRows[index]][myColumns[index]];
+					myArrays[index] = rows;
+				}
+				readRows(myOffsets[index], rows);
+			}
+			return myArrays[index];
+		}
+
+		//reads the rows' part of the file a buffer at a time and copies it in bulk
+		private void readRows(long offset, float[][] rows) throws IOException {
+			int row = 0;
+			int column = 0;
+			long remaining = (long) rows.length * rows[0].length * 4;
+			while (remaining > 0) {
+				int window = (int) Math.min(remaining, myBuffer.capacity());
+				myBuffer.clear();
+				myBuffer.limit(window);
+				BinaryModelReader.readFully(myChannel, myBuffer, offset);
+				myBuffer.flip();
+				FloatBuffer floats = myBuffer.asFloatBuffer();
+				while (floats.hasRemaining()) {
+					int n = Math.min(floats.remaining(), rows[row].length - column);
+					floats.get(rows[row], column, n);
+					column += n;
+					if (column == rows[row].length) {
+						row++;
+						column = 0;
+					}
+				}
+				offset += window;
+				remaining -= window;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,266 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "BinaryModelWriter.java". Description:
+"Saves models in a binary format in which large arrays are stored as raw floats"
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Saves models (or any Serializable object) in a binary format that can be loaded quickly
+ * with a BinaryModelReader. The object graph is serialized as usual, except that large float
+ * arrays and rectangular float matrices (encoders, decoders, evaluation points, transforms,
+ * etc.) are replaced with references, and their contents are streamed afterwards as raw
+ * floats, so that they can be read back in bulk.</p>
+ *
+ * <p>Sharing is preserved: an array that is referenced more than once is stored once, and a
+ * row of a stored matrix that is also referenced elsewhere is loaded as the same row. A
+ * matrix with a row that has already been written on its own is serialized as usual.</p>
+ *
+ * <p>The file layout is: magic number (int), version (int), offset of the array table (long),
+ * number of arrays (int), unused (int), offset of the object graph (long), then the object
+ * graph, the contents of each array (row-major), and the array table. The table holds the
+ * offset (long), number of rows (int; -1 for a one-dimensional array) and number of columns
+ * (int) of each array. All values are big-endian.</p>
+ */
+public class BinaryModelWriter {
+
+	/**
+	 * Default minimum number of floats in an array that is stored as raw floats
+	 */
+	public static final int DEFAULT_MIN_ARRAY_LENGTH = 256;
+
+	static final int MAGIC = 0x4E45464D;
+	static final int VERSION = 1;
+	static final int HEADER_LENGTH = 32;
+	static final int TABLE_ENTRY_LENGTH = 16;
+	static final int BUFFER_LENGTH = 1 << 16;
+
+	private final int myMinArrayLength;
+
+	/**
+	 * @param minArrayLength Minimum number of floats in an array (or matrix) that is stored as
+	 * 		raw floats; smaller arrays are serialized as usual
+	 */
+	public BinaryModelWriter(int minArrayLength) {
+		if (minArrayLength < 1) {
+			throw new IllegalArgumentException("Minimum array length must be positive");
+		}
+		myMinArrayLength = minArrayLength;
+	}
+
+	/**
+	 * Uses DEFAULT_MIN_ARRAY_LENGTH.
+	 */
+	public BinaryModelWriter() {
+		this(DEFAULT_MIN_ARRAY_LENGTH);
+	}
+
+	/**
+	 * @param object Object to save
+	 * @param destination File to save the object in (overwritten if it exists)
+	 * @throws IOException If there's a problem writing to disk
+	 */
+	public void write(Object object, File destination) throws IOException {
+		FileOutputStream fos = new FileOutputStream(destination);
+		try {
+			FileChannel channel = fos.getChannel();
+			writeFully(channel, ByteBuffer.allocate(HEADER_LENGTH));
+
+			OutputStream graph = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_LENGTH);
+			GraphOutputStream oos = new GraphOutputStream(graph, myMinArrayLength);
+			oos.writeObject(object);
+			oos.flush();
+
+			List<Object> arrays = oos.getArrays();
+			ByteBuffer table = ByteBuffer.allocate(arrays.size() * TABLE_ENTRY_LENGTH);
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_LENGTH);
+			long offset = channel.position();
+			for (int i = 0; i < arrays.size(); i++) {
+				Object array = arrays.get(i);
+				table.putLong(offset);
+				if (array instanceof float[]) {
+					float[] vector = (float[]) array;
+					table.putInt(-1).putInt(vector.length);
+					writeFloats(channel, buffer, vector);
+					offset += vector.length * 4L;
+				} else {
+					float[][] matrix = (float[][]) array;
+					table.putInt(matrix.length).putInt(matrix[0].length);
+					for (int j = 0; j < matrix.length; j++) {
+						writeFloats(channel, buffer, matrix[j]);
+					}
+					offset += (long) matrix.length * matrix[0].length * 4;
+				}
+			}
+			flush(channel, buffer);
+
+			long tableOffset = channel.position();
+			table.flip();
+			writeFully(channel, table);
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+			header.putInt(MAGIC).putInt(VERSION).putLong(tableOffset).putInt(arrays.size()).putInt(0).putLong(HEADER_LENGTH);
+			header.flip();
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+		} finally {
+			fos.close();
+		}
+	}
+
+	private static void writeFloats(FileChannel channel, ByteBuffer buffer, float[] values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			if (buffer.remaining() < 4) {
+				flush(channel, buffer);
+			}
+			buffer.putFloat(values[i]);
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		writeFully(channel, buffer);
+		buffer.clear();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Stands in for an array whose contents are stored as raw floats.
+	 */
+	static class ArrayRef implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final int myIndex;
+
+		public ArrayRef(int index) {
+			myIndex = index;
+		}
+	}
+
+	/**
+	 * Stands in for a row of a matrix whose contents are stored as raw floats.
+	 */
+	static class RowRef implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final int myIndex;
+		final int myRow;
+
+		public RowRef(int index, int row) {
+			myIndex = index;
+			myRow = row;
+		}
+	}
+
+	/**
+	 * Replaces large arrays with references, and collects them to be written afterwards.
+	 */
+	private static class GraphOutputStream extends ObjectOutputStream {
+
+		private final int myMinArrayLength;
+		private final List<Object> myArrays;
+		private final Map<float[], Boolean> myWrittenVectors;
+		private final Map<float[], RowRef> myMatrixRows;
+
+		public GraphOutputStream(OutputStream out, int minArrayLength) throws IOException {
+			super(out);
+			myMinArrayLength = minArrayLength;
+			myArrays = new ArrayList<Object>();
+			myWrittenVectors = new IdentityHashMap<float[], Boolean>();
+			myMatrixRows = new IdentityHashMap<float[], RowRef>();
+			enableReplaceObject(true);
+		}
+
+		public List<Object> getArrays() {
+			return myArrays;
+		}
+
+		@Override
+		protected Object replaceObject(Object obj) throws IOException {
+			//called once per object, the first time it is written
+			if (obj instanceof float[]) {
+				float[] vector = (float[]) obj;
+				RowRef row = myMatrixRows.get(vector);
+				if (row != null) {
+					return row;
+				}
+				myWrittenVectors.put(vector, Boolean.TRUE);
+				if (vector.length >= myMinArrayLength) {
+					myArrays.add(vector);
+					return new ArrayRef(myArrays.size() - 1);
+				}
+			} else if (obj instanceof float[][]) {
+				float[][] matrix = (float[][]) obj;
+				if (isStorable(matrix)) {
+					int index = myArrays.size();
+					myArrays.add(matrix);
+					for (int i = 0; i < matrix.length; i++) {
+						myMatrixRows.put(matrix[i], new RowRef(index, i));
+					}
+					return new ArrayRef(index);
+				}
+			}
+			return obj;
+		}
+
+		//rectangular, large enough, and rows aren't shared with anything written so far
+		private boolean isStorable(float[][] matrix) {
+			if (matrix.length == 0 || matrix[0] == null || matrix[0].length == 0
+					|| (long) matrix.length * matrix[0].length < myMinArrayLength) {
+				return false;
+			}
+
+			int columns = matrix[0].length;
+			Map<float[], Boolean> rows = new IdentityHashMap<float[], Boolean>(matrix.length * 2);
+			for (int i = 0; i < matrix.length; i++) {
+				float[] row = matrix[i];
+				if (row == null || row.length != columns || myWrittenVectors.containsKey(row)
+						|| myMatrixRows.containsKey(row) || rows.put(row, Boolean.TRUE) != null) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+}
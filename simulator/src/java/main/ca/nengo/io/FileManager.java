@@ -33,12 +33,10 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.io;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 
 import ca.nengo.model.Node;
 import ca.nengo.model.impl.NetworkImpl;
@@ -47,9 +45,11 @@ import ca.nengo.util.TimeSeries;
 /**
  * Handles saving and loading of Node
  *
- * TODO: a better job (this is a quick one)
+ * Objects are saved with a BinaryModelWriter, which stores large arrays (e.g. encoders and
+ * decoders) as raw floats. Files saved with plain Java serialization by earlier versions can
+ * still be loaded.
+ *
  * TODO: is there any metadata to store?
- * TODO: test
  *
  * @author Bryan Tripp
  */
@@ -103,12 +103,7 @@ public class FileManager {
 	}
 
 	private static void saveObject(Object object, File destination) throws IOException {
-		FileOutputStream fos = new FileOutputStream(destination);
-		ObjectOutputStream oos = new ObjectOutputStream(fos);
-		oos.writeObject(object);
-		oos.flush();
-		oos.close();
-		fos.close();
+		new BinaryModelWriter().write(object, destination);
 	}
 
 	/**
@@ -119,12 +114,27 @@ public class FileManager {
 	 *   not known in this context
 	 */
 	public Object load(File source) throws IOException, ClassNotFoundException {
+		return load(source, new BinaryModelReader());
+	}
+
+	/**
+	 * @param source Serialized file to load
+	 * @param reader Reader that loads the file, which can resolve classes that aren't
+	 *   visible to the simulator (e.g. classes defined in Python, see BinaryModelReader.findClass(...))
+	 * @return Object represented by the serialized file
+	 * @throws IOException if there's a problem writing to disk
+	 * @throws ClassNotFoundException if the serialized file contains classes
+	 *   not known in this context
+	 */
+	public Object load(File source, BinaryModelReader reader) throws IOException, ClassNotFoundException {
+		if (BinaryModelReader.isBinaryModel(source)) {
+			return reader.read(source);
+		}
+
 		FileInputStream fis = new FileInputStream(source);
 
-		ObjectInputStream ois = new ObjectInputStream(fis);
-		Object return_obj = ois.readObject();
+		Object return_obj = reader.readSerialized(new BufferedInputStream(fis));
 
-		ois.close();
 		fis.close();
 
 		return return_obj;
@@ -0,0 +1,315 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "MappedProbeReader.java". Description:
+"Random access to a file written by a MappedProbeWriter"
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.nengo.model.Units;
+import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.TimeSeriesImpl;
+
+/**
+ * <p>Random access to a file written by a MappedProbeWriter. Blocks of the file are mapped
+ * into memory as they are needed, and getData(...) returns TimeSeries views that read only
+ * the rows they cover, so large files can be examined without loading them.</p>
+ *
+ * <p>The file can be read while it is being written. The number of rows is read from the
+ * header on each call to getCount(), so it includes rows up to the writer's last flush.</p>
+ */
+public class MappedProbeReader {
+
+	private final File myFile;
+	private RandomAccessFile myRandomAccessFile;
+	private FileChannel myChannel;
+	private MappedByteBuffer myHeader;
+	private final int myHeaderLength;
+	private final int myDimension;
+	private final int myBlockRows;
+	private final String myName;
+	private final Units[] myUnits;
+	private final List<FloatBuffer> myBlocks;
+
+	/**
+	 * @param file A file written by a MappedProbeWriter
+	 * @throws IOException If the file can't be read or is not in the expected format
+	 */
+	public MappedProbeReader(File file) throws IOException {
+		myFile = file;
+		myRandomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			myChannel = myRandomAccessFile.getChannel();
+
+			ByteBuffer start = ByteBuffer.allocate(MappedProbeWriter.COUNT_OFFSET);
+			while (start.hasRemaining() && myChannel.read(start, start.position()) > 0);
+			if (start.hasRemaining()) {
+				throw new IOException(file + " has no header (nothing may have been written yet)");
+			}
+			start.flip();
+			if (start.getInt() != MappedProbeWriter.MAGIC) {
+				throw new IOException(file + " was not written by a MappedProbeWriter");
+			}
+			int version = start.getInt();
+			if (version != MappedProbeWriter.VERSION) {
+				throw new IOException("Unsupported version " + version + " in " + file);
+			}
+			myHeaderLength = start.getInt();
+			myDimension = start.getInt();
+			myBlockRows = start.getInt();
+
+			myHeader = myChannel.map(FileChannel.MapMode.READ_ONLY, 0, myHeaderLength);
+			myHeader.position(MappedProbeWriter.COUNT_OFFSET + 8);
+			myName = getString(myHeader);
+			myUnits = new Units[myDimension];
+			for (int i = 0; i < myDimension; i++) {
+				myUnits[i] = Units.valueOf(getString(myHeader));
+			}
+		} catch (IOException e) {
+			myRandomAccessFile.close();
+			throw e;
+		}
+
+		myBlocks = new ArrayList<FloatBuffer>();
+	}
+
+	/**
+	 * @return Name of the recorded data
+	 */
+	public String getName() {
+		return myName;
+	}
+
+	/**
+	 * @return Dimension of the recorded values
+	 */
+	public int getDimension() {
+		return myDimension;
+	}
+
+	/**
+	 * @return Units of each dimension of the recorded values
+	 */
+	public Units[] getUnits() {
+		return myUnits.clone();
+	}
+
+	/**
+	 * @return Number of rows in the file (as of the writer's last flush)
+	 */
+	public long getCount() {
+		checkOpen();
+		return myHeader.getLong(MappedProbeWriter.COUNT_OFFSET);
+	}
+
+	/**
+	 * @param row Index of a row
+	 * @return Time of the given row
+	 */
+	public float getTime(long row) {
+		return getBlock(row).get((int) (row % myBlockRows));
+	}
+
+	/**
+	 * @param row Index of a row
+	 * @param dimension Index of a dimension
+	 * @return Value of the given dimension in the given row
+	 */
+	public float getValue(long row, int dimension) {
+		if (dimension < 0 || dimension >= myDimension) {
+			throw new IndexOutOfBoundsException("Dimension " + dimension + " out of range [0, " + myDimension + ")");
+		}
+		return getBlock(row).get((dimension + 1) * myBlockRows + (int) (row % myBlockRows));
+	}
+
+	/**
+	 * @param start Index of first row
+	 * @param end Index after last row
+	 * @return A view of the given rows, which reads them from the file only when its times or
+	 * 		values are requested
+	 */
+	public TimeSeries getData(long start, long end) {
+		if (start < 0 || end < start || end - start > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Bad range [" + start + ", " + end + ")");
+		}
+		return new View(this, start, (int) (end - start));
+	}
+
+	/**
+	 * @return A view of all rows in the file (as of the writer's last flush)
+	 */
+	public TimeSeries getData() {
+		return getData(0, getCount());
+	}
+
+	/**
+	 * Closes the file. Views of the file can't be read after this.
+	 *
+	 * @throws IOException If the file can't be closed
+	 */
+	public void close() throws IOException {
+		if (myChannel != null) {
+			myBlocks.clear();
+			myHeader = null;
+			myChannel = null;
+			myRandomAccessFile.close();
+		}
+	}
+
+	/**
+	 * @param column 0 for times, or d+1 for dimension d
+	 * @param start Index of first row
+	 * @param result Array into which rows are copied, starting at index 0
+	 */
+	void readColumn(int column, long start, float[] result) {
+		int done = 0;
+		while (done < result.length) {
+			long row = start + done;
+			int inBlock = (int) (row % myBlockRows);
+			int n = Math.min(result.length - done, myBlockRows - inBlock);
+			FloatBuffer block = getBlock(row).duplicate();
+			block.position(column * myBlockRows + inBlock);
+			block.get(result, done, n);
+			done += n;
+		}
+	}
+
+	//maps blocks up to the one that contains the given row
+	private FloatBuffer getBlock(long row) {
+		checkOpen();
+		if (row < 0 || row >= getCount()) {
+			throw new IndexOutOfBoundsException("Row " + row + " out of range [0, " + getCount() + ")");
+		}
+
+		int index = (int) (row / myBlockRows);
+		if (index >= myBlocks.size() || myBlocks.get(index) == null) {
+			long blockBytes = (long) myBlockRows * (myDimension + 1) * 4;
+			try {
+				MappedByteBuffer block = myChannel.map(FileChannel.MapMode.READ_ONLY, myHeaderLength + index * blockBytes, blockBytes);
+				while (myBlocks.size() <= index) {
+					myBlocks.add(null);
+				}
+				myBlocks.set(index, block.asFloatBuffer());
+			} catch (IOException e) {
+				throw new RuntimeException("Can't read " + myFile, e);
+			}
+		}
+		return myBlocks.get(index);
+	}
+
+	private void checkOpen() {
+		if (myChannel == null) {
+			throw new IllegalStateException("This reader has been closed");
+		}
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = buffer.getChar();
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * A TimeSeries that reads a range of rows from a MappedProbeReader when its times or values
+	 * are requested. It is serialized and cloned as a TimeSeriesImpl.
+	 */
+	private static class View implements TimeSeries {
+
+		private static final long serialVersionUID = 1L;
+
+		private transient MappedProbeReader myReader;
+		private final long myStart;
+		private final int myLength;
+
+		public View(MappedProbeReader reader, long start, int length) {
+			myReader = reader;
+			myStart = start;
+			myLength = length;
+		}
+
+		public String getName() {
+			return myReader.getName();
+		}
+
+		public int getDimension() {
+			return myReader.getDimension();
+		}
+
+		public float[] getTimes() {
+			float[] result = new float[myLength];
+			myReader.readColumn(0, myStart, result);
+			return result;
+		}
+
+		public float[][] getValues() {
+			int dimension = myReader.getDimension();
+			float[][] result = new float[myLength][dimension];
+			float[] column = new float[myLength];
+			for (int j = 0; j < dimension; j++) {
+				myReader.readColumn(j + 1, myStart, column);
+				for (int i = 0; i < myLength; i++) {
+					result[i][j] = column[i];
+				}
+			}
+			return result;
+		}
+
+		public Units[] getUnits() {
+			return myReader.getUnits();
+		}
+
+		public String[] getLabels() {
+			String[] result = new String[myReader.getDimension()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = String.valueOf(i+1);
+			}
+			return result;
+		}
+
+		@Override
+		public TimeSeries clone() throws CloneNotSupportedException {
+			return load();
+		}
+
+		private Object writeReplace() throws ObjectStreamException {
+			return load();
+		}
+
+		private TimeSeriesImpl load() {
+			TimeSeriesImpl result = new TimeSeriesImpl(getTimes(), getValues(), getUnits(), getLabels());
+			result.setName(getName());
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,252 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "MappedProbeWriter.java". Description:
+"A ProbeSink that appends samples to a memory-mapped binary file of columns"
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import ca.nengo.model.Units;
+import ca.nengo.util.ProbeSink;
+
+/**
+ * <p>A ProbeSink that appends samples to a binary file, which can be read while it is being
+ * written with a MappedProbeReader. Use it to record long simulations, in which keeping the
+ * whole history in a Probe would use too much memory (e.g. probe.addSink(new
+ * MappedProbeWriter(file, "name")) with a Probe that doesn't record).</p>
+ *
+ * <p>The file has a header, followed by blocks of a fixed number of rows. Each block holds a
+ * column of times followed by a column for each dimension of the values. Blocks are allocated
+ * one at a time, by mapping them into memory, so that writing a sample is only a few memory
+ * stores. The number of rows in the header is updated, and the mapped data are forced to disk,
+ * every flushRows rows, when a new block is started, and on flush() and close().</p>
+ *
+ * <p>The header layout is: magic number (int), version (int), header length in bytes (int),
+ * dimension (int), rows per block (int), unused (int), number of rows (long), name, and the
+ * name of each dimension's Units. Strings are stored as a length (int) followed by chars.
+ * All values are big-endian.</p>
+ */
+public class MappedProbeWriter implements ProbeSink {
+
+	/**
+	 * Default number of rows in each block
+	 */
+	public static final int DEFAULT_BLOCK_ROWS = 4096;
+
+	/**
+	 * Default number of rows between flushes
+	 */
+	public static final int DEFAULT_FLUSH_ROWS = 1024;
+
+	static final int MAGIC = 0x4E505246;
+	static final int VERSION = 1;
+	static final int COUNT_OFFSET = 24;
+	static final int HEADER_ALIGNMENT = 64;
+
+	private final File myFile;
+	private final String myName;
+	private final int myBlockRows;
+	private final int myFlushRows;
+
+	private RandomAccessFile myRandomAccessFile;
+	private FileChannel myChannel;
+	private MappedByteBuffer myHeader;
+	private MappedByteBuffer myBlock;
+	private int myHeaderLength;
+	private int myDimension;
+	private int myBlockIndex;
+	private int myRow; //within current block
+	private long myCount;
+	private long myFlushedCount;
+
+	/**
+	 * @param file File to write to (overwritten if it exists)
+	 * @param name Name of the recorded data (e.g. "node:state")
+	 * @param blockRows Number of rows in each block
+	 * @param flushRows Number of rows between flushes
+	 * @throws IOException If the file can't be opened
+	 */
+	public MappedProbeWriter(File file, String name, int blockRows, int flushRows) throws IOException {
+		if (blockRows < 1 || flushRows < 1) {
+			throw new IllegalArgumentException("Block and flush rows must be positive");
+		}
+
+		myFile = file;
+		myName = (name == null) ? "" : name;
+		myBlockRows = blockRows;
+		myFlushRows = flushRows;
+
+		myRandomAccessFile = new RandomAccessFile(file, "rw");
+		myRandomAccessFile.setLength(0);
+		myChannel = myRandomAccessFile.getChannel();
+		myDimension = -1; //layout is set on first write
+	}
+
+	/**
+	 * Uses DEFAULT_BLOCK_ROWS and DEFAULT_FLUSH_ROWS.
+	 *
+	 * @param file File to write to (overwritten if it exists)
+	 * @param name Name of the recorded data (e.g. "node:state")
+	 * @throws IOException If the file can't be opened
+	 */
+	public MappedProbeWriter(File file, String name) throws IOException {
+		this(file, name, DEFAULT_BLOCK_ROWS, DEFAULT_FLUSH_ROWS);
+	}
+
+	/**
+	 * @return File that is written to
+	 */
+	public File getFile() {
+		return myFile;
+	}
+
+	/**
+	 * @return Number of rows written so far
+	 */
+	public long getCount() {
+		return myCount;
+	}
+
+	/**
+	 * @see ca.nengo.util.ProbeSink#write(float[], float[][], ca.nengo.model.Units[])
+	 */
+	public void write(float[] times, float[][] values, Units[] units) {
+		if (myChannel == null) {
+			throw new IllegalStateException("This writer has been closed");
+		}
+		if (times.length == 0) {
+			return;
+		}
+
+		try {
+			if (myDimension < 0) {
+				start(values[0].length, units);
+			}
+
+			for (int i = 0; i < times.length; i++) {
+				if (myBlock == null || myRow == myBlockRows) {
+					nextBlock();
+				}
+
+				float[] row = values[i];
+				if (row.length != myDimension) {
+					throw new IllegalArgumentException("Expected dimension " + myDimension + " but got " + row.length);
+				}
+
+				int offset = myRow * 4;
+				myBlock.putFloat(offset, times[i]);
+				for (int j = 0; j < myDimension; j++) {
+					offset += myBlockRows * 4;
+					myBlock.putFloat(offset, row[j]);
+				}
+				myRow++;
+				myCount++;
+			}
+
+			if (myCount - myFlushedCount >= myFlushRows) {
+				flush();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Can't write to " + myFile, e);
+		}
+	}
+
+	/**
+	 * Forces data written so far to disk, and updates the number of rows in the header.
+	 */
+	public void flush() {
+		if (myBlock != null) {
+			myBlock.force();
+		}
+		if (myHeader != null) {
+			myHeader.putLong(COUNT_OFFSET, myCount);
+			myHeader.force();
+		}
+		myFlushedCount = myCount;
+	}
+
+	/**
+	 * Flushes and closes the file. Further writes throw IllegalStateException.
+	 *
+	 * @throws IOException If the file can't be closed
+	 */
+	public void close() throws IOException {
+		if (myChannel != null) {
+			flush();
+			myBlock = null;
+			myHeader = null;
+			myChannel = null;
+			myRandomAccessFile.close();
+		}
+	}
+
+	//writes the header, once the dimension is known
+	private void start(int dimension, Units[] units) throws IOException {
+		myDimension = dimension;
+
+		int length = COUNT_OFFSET + 8 + 4 + 2 * myName.length();
+		String[] unitNames = new String[dimension];
+		for (int i = 0; i < dimension; i++) {
+			Units u = (units != null && i < units.length && units[i] != null) ? units[i] : Units.UNK;
+			unitNames[i] = u.name();
+			length += 4 + 2 * unitNames[i].length();
+		}
+		myHeaderLength = ((length + HEADER_ALIGNMENT - 1) / HEADER_ALIGNMENT) * HEADER_ALIGNMENT;
+
+		myHeader = myChannel.map(FileChannel.MapMode.READ_WRITE, 0, myHeaderLength);
+		myHeader.putInt(MAGIC);
+		myHeader.putInt(VERSION);
+		myHeader.putInt(myHeaderLength);
+		myHeader.putInt(dimension);
+		myHeader.putInt(myBlockRows);
+		myHeader.putInt(0);
+		myHeader.putLong(0);
+		putString(myHeader, myName);
+		for (int i = 0; i < dimension; i++) {
+			putString(myHeader, unitNames[i]);
+		}
+
+		myBlockIndex = -1;
+	}
+
+	//maps (and so allocates) the next block
+	private void nextBlock() throws IOException {
+		if (myBlock != null) {
+			flush();
+		}
+		myBlockIndex++;
+		long blockBytes = (long) myBlockRows * (myDimension + 1) * 4;
+		myBlock = myChannel.map(FileChannel.MapMode.READ_WRITE, myHeaderLength + myBlockIndex * blockBytes, blockBytes);
+		myRow = 0;
+	}
+
+	private static void putString(MappedByteBuffer buffer, String s) {
+		buffer.putInt(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			buffer.putChar(s.charAt(i));
+		}
+	}
+
+}
@@ -30,13 +30,20 @@ package ca.nengo.math;
 import java.util.Random;
 
 /**
- * Convenience methods for using PDFs. 
+ * <p>Convenience methods for using PDFs.</p>
+ * 
+ * <p>Random samples are drawn from the calling thread's current RandomStream, if one has 
+ * been set (see setStream(...)), otherwise from a shared generator. The simulator sets a 
+ * stream for each Node while it runs, so that Nodes can be run concurrently without 
+ * contending for the shared generator, and with the same results in any order.</p>  
  * 
  * @author Bryan Tripp
  */
 public class PDFTools {
 	
 	private static final Random ourRandom = new Random();
+	private static long ourSeed = new Random().nextLong();
+	private static final ThreadLocal<RandomStream> ourStream = new ThreadLocal<RandomStream>();
 
 	/**
 	 * Note: PDF treated as univariate (only first dimension considered). 
@@ -76,14 +83,45 @@ public class PDFTools {
 	 * @return A random sample between 0 and 1
 	 */
 	public static double random() {
-		return ourRandom.nextDouble();
+		RandomStream stream = ourStream.get();
+		return (stream == null) ? ourRandom.nextDouble() : stream.nextDouble();
 	}
 	
 	/**
-	 * @param seed New random seed for random()
+	 * @param seed New random seed for random(), and for the streams that simulators derive
+	 * 		for each Node (see getSeed())
 	 */
 	public static void setSeed(long seed) {
 		ourRandom.setSeed(seed);
+		ourSeed = seed;
+	}
+
+	/**
+	 * @return Seed from which simulators derive random streams, if a seed isn't given to the
+	 * 		simulator. This is the last value passed to setSeed(...), or a random value if 
+	 * 		setSeed(...) hasn't been called. 
+	 */
+	public static long getSeed() {
+		return ourSeed;
+	}
+
+	/**
+	 * @param stream Stream from which random() should draw samples in the calling thread (if 
+	 * 		null, the shared generator is used)
+	 * @return The stream that was set before 
+	 */
+	public static RandomStream setStream(RandomStream stream) {
+		RandomStream previous = ourStream.get();
+		ourStream.set(stream);
+		return previous;
+	}
+
+	/**
+	 * @return Stream from which random() draws samples in the calling thread, or null if 
+	 * 		the shared generator is used 
+	 */
+	public static RandomStream getStream() {
+		return ourStream.get();
 	}
 	
 }
@@ -0,0 +1,136 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "RandomStream.java". Description:
+"A fast, splittable stream of pseudo-random numbers"
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.math;
+
+import java.io.Serializable;
+
+/**
+ * <p>A stream of pseudo-random numbers (SplitMix64; Steele, Lea & Flood, 2014) that can be
+ * split into independent child streams. A child depends only on the parent's seed and the
+ * child's name or index, not on how many numbers have been drawn, so a tree of streams
+ * (e.g. one per Node in a Network, keyed by name) is the same however it is built.</p>
+ *
+ * <p>A stream is not thread-safe; each thread should draw from its own stream (see
+ * PDFTools.setStream(...)).</p>
+ */
+public class RandomStream implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+	private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+	private static final long FNV_PRIME = 0x100000001B3L;
+
+	private final long mySeed;
+	private long myState;
+	private double myNextGaussian;
+	private boolean myHaveNextGaussian;
+
+	/**
+	 * @param seed Seed of the stream
+	 */
+	public RandomStream(long seed) {
+		mySeed = seed;
+		reset();
+	}
+
+	/**
+	 * @return Seed of the stream
+	 */
+	public long getSeed() {
+		return mySeed;
+	}
+
+	/**
+	 * Restarts the stream from its seed.
+	 */
+	public void reset() {
+		myState = mySeed;
+		myHaveNextGaussian = false;
+	}
+
+	/**
+	 * @param name Name of a child stream
+	 * @return A new stream that depends only on this stream's seed and the name
+	 */
+	public RandomStream split(String name) {
+		long hash = FNV_OFFSET;
+		for (int i = 0; i < name.length(); i++) {
+			hash = (hash ^ name.charAt(i)) * FNV_PRIME;
+		}
+		return new RandomStream(mix(mySeed ^ mix(hash)));
+	}
+
+	/**
+	 * @param index Index of a child stream
+	 * @return A new stream that depends only on this stream's seed and the index
+	 */
+	public RandomStream split(long index) {
+		return new RandomStream(mix(mySeed + mix(index + 1) * GOLDEN_GAMMA));
+	}
+
+	/**
+	 * @return Next pseudo-random long
+	 */
+	public long nextLong() {
+		myState += GOLDEN_GAMMA;
+		return mix(myState);
+	}
+
+	/**
+	 * @return Next pseudo-random number, uniform on [0, 1)
+	 */
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * @return Next pseudo-random number from a normal distribution with mean 0 and variance 1
+	 */
+	public double nextGaussian() {
+		if (myHaveNextGaussian) {
+			myHaveNextGaussian = false;
+			return myNextGaussian;
+		}
+
+		//polar method, as in java.util.Random
+		double x1, x2, w;
+		do {
+			x1 = 2 * nextDouble() - 1;
+			x2 = 2 * nextDouble() - 1;
+			w = x1 * x1 + x2 * x2;
+		} while (w >= 1 || w == 0);
+		w = Math.sqrt(-2 * Math.log(w) / w);
+
+		myNextGaussian = x2 * w;
+		myHaveNextGaussian = true;
+		return x1 * w;
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+}
@@ -0,0 +1,246 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "CholeskyApproximator.java". Description:
+"A WeightedCostApproximator that inverts a Tikhonov-regularized gamma by Cholesky decomposition"
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.math.impl;
+
+import org.apache.log4j.Logger;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+
+/**
+ * <p>A WeightedCostApproximator that replaces the pseudoinverse of gamma with the inverse of
+ * gamma + lambda*I (Tikhonov regularization), found by Cholesky decomposition. Lambda is the
+ * variance of the noise added to the values, which is the same threshold that
+ * WeightedCostApproximator uses for singular values. This is several times faster than a
+ * singular value decomposition and is spread over the available processors.</p>
+ *
+ * <p>Regularization shrinks the contribution of small singular values smoothly instead of
+ * discarding them, so coefficients differ slightly from those of WeightedCostApproximator. The
+ * number of singular values (nSV) is not used. If gamma + lambda*I is not numerically positive
+ * definite (e.g. with zero noise and redundant values), a small multiple of the mean diagonal
+ * is added to lambda.</p>
+ */
+public class CholeskyApproximator extends WeightedCostApproximator {
+
+	private static final long serialVersionUID = 1L;
+
+	private static Logger ourLogger = Logger.getLogger(CholeskyApproximator.class);
+
+	private static final int ourBlockSize = 64;
+	private static final double ourMinRelativeLambda = 1e-10;
+
+	/**
+	 * @see WeightedCostApproximator#WeightedCostApproximator(float[][], float[][], Function, float, int, boolean)
+	 */
+	public CholeskyApproximator(float[][] evaluationPoints, float[][] values, Function costFunction, float noise, int nSV, boolean quiet) {
+		super(evaluationPoints, values, costFunction, noise, nSV, quiet);
+	}
+
+	/**
+	 * @see WeightedCostApproximator#WeightedCostApproximator(float[][][], float[][][], Function, float, int, boolean)
+	 */
+	public CholeskyApproximator(float[][][] evaluationSignals, float[][][] values, Function costFunction, float noise, int nSV, boolean quiet) {
+		super(evaluationSignals, values, costFunction, noise, nSV, quiet);
+	}
+
+	/**
+	 * @param matrix A symmetric positive semi-definite matrix (gamma)
+	 * @param minSV Regularization (added to the diagonal)
+	 * @param nSV Not used
+	 * @return Inverse of matrix + minSV*I
+	 *
+	 * @see ca.nengo.math.impl.WeightedCostApproximator#pseudoInverse(double[][], float, int)
+	 */
+	@Override
+	public double[][] pseudoInverse(double[][] matrix, float minSV, int nSV) {
+		int n = matrix.length;
+		double meanDiagonal = 0;
+		for (int i = 0; i < n; i++) {
+			meanDiagonal += matrix[i][i] / n;
+		}
+
+		double lambda = minSV;
+		for (int attempt = 0; attempt < 3; attempt++) {
+			double[][] L = factor(matrix, lambda);
+			if (L != null) {
+				return invert(L);
+			}
+			lambda = Math.max(lambda * 10, meanDiagonal * ourMinRelativeLambda);
+			if (!isQuiet()) {
+				ourLogger.info("Gamma is not positive definite; increasing regularization to " + lambda);
+			}
+		}
+
+		ourLogger.warn("Cholesky decomposition failed; using singular value decomposition");
+		return svdPseudoInverse(matrix, minSV, nSV);
+	}
+
+	/**
+	 * Blocked right-looking Cholesky decomposition. Each block column is factored, then the
+	 * rows below it are updated in parallel.
+	 *
+	 * @param matrix Symmetric matrix
+	 * @param lambda Value to add to the diagonal
+	 * @return Lower-triangular L such that L*L' = matrix + lambda*I, or null if the matrix
+	 * 		isn't positive definite
+	 */
+	static double[][] factor(double[][] matrix, double lambda) {
+		final int n = matrix.length;
+		final double[][] L = new double[n][];
+		for (int i = 0; i < n; i++) {
+			L[i] = new double[i+1];
+			System.arraycopy(matrix[i], 0, L[i], 0, i+1);
+			L[i][i] += lambda;
+		}
+
+		for (int start = 0; start < n; start += ourBlockSize) {
+			final int blockStart = start;
+			final int blockEnd = Math.min(start + ourBlockSize, n);
+
+			//diagonal block
+			for (int j = blockStart; j < blockEnd; j++) {
+				double d = L[j][j];
+				for (int k = blockStart; k < j; k++) {
+					d -= L[j][k] * L[j][k];
+				}
+				if (!(d > 0)) {
+					return null;
+				}
+				L[j][j] = Math.sqrt(d);
+				for (int i = j+1; i < blockEnd; i++) {
+					L[i][j] = (L[i][j] - dot(L[i], L[j], blockStart, j)) / L[j][j];
+				}
+			}
+
+			//rows below the diagonal block are solved against it ...
+			int rows = n - blockEnd;
+			int width = blockEnd - blockStart;
+			parallelFor(rows, (long) rows * width * width, new LoopBody() {
+				public void run(int r) {
+					double[] row = L[blockEnd + r];
+					for (int j = blockStart; j < blockEnd; j++) {
+						row[j] = (row[j] - dot(row, L[j], blockStart, j)) / L[j][j];
+					}
+				}
+			});
+
+			//... and then used to update the trailing lower triangle
+			parallelFor(rows, (long) rows * rows * width, new LoopBody() {
+				public void run(int r) {
+					double[] row = L[blockEnd + r];
+					for (int k = blockEnd; k < row.length; k++) {
+						row[k] -= dot(row, L[k], blockStart, blockEnd);
+					}
+				}
+			});
+		}
+
+		return L;
+	}
+
+	/**
+	 * @param L Lower-triangular factor of a matrix A (see factor(...))
+	 * @return Inverse of A = L*L', i.e. inverse(L)' * inverse(L)
+	 */
+	static double[][] invert(final double[][] L) {
+		final int n = L.length;
+
+		//column c of inverse(L), stored as a row of M (only elements c and above are non-zero)
+		final double[][] M = new double[n][n];
+		parallelFor(n, (long) n * n * n / 6, new LoopBody() {
+			public void run(int c) {
+				double[] x = M[c];
+				x[c] = 1 / L[c][c];
+				for (int i = c+1; i < n; i++) {
+					x[i] = -dot(L[i], x, c, i) / L[i][i];
+				}
+			}
+		});
+
+		final double[][] result = new double[n][n];
+		parallelFor(n, (long) n * n * n / 3, new LoopBody() {
+			public void run(int r) {
+				for (int s = r; s < n; s++) {
+					result[r][s] = dot(M[r], M[s], s, n);
+				}
+			}
+		});
+		for (int r = 0; r < n; r++) {
+			for (int s = r+1; s < n; s++) {
+				result[s][r] = result[r][s];
+			}
+		}
+
+		return result;
+	}
+
+	private static double dot(double[] a, double[] b, int start, int end) {
+		double sum = 0;
+		for (int k = start; k < end; k++) {
+			sum += a[k] * b[k];
+		}
+		return sum;
+	}
+
+	/**
+	 * An ApproximatorFactory that produces CholeskyApproximators.
+	 */
+	public static class Factory extends WeightedCostApproximator.Factory {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * @param noise Random noise to add to component functions (proportion of largest value
+		 * 		over all functions); its variance is the regularization
+		 */
+		public Factory(float noise) {
+			super(noise);
+		}
+
+		/**
+		 * @param noise Random noise to add to component functions (proportion of largest value
+		 * 		over all functions); its variance is the regularization
+		 * @param quiet Turn off logging?
+		 */
+		public Factory(float noise, boolean quiet) {
+			super(noise, quiet);
+		}
+
+		/**
+		 * @see ca.nengo.math.impl.WeightedCostApproximator.Factory#getApproximator(float[][], float[][])
+		 */
+		@Override
+		public LinearApproximator getApproximator(float[][] evalPoints, float[][] values) {
+			return new CholeskyApproximator(evalPoints, values, getCostFunction(evalPoints[0].length), getNoise(), getNSV(), getQuiet());
+		}
+
+		/**
+		 * @see ca.nengo.math.impl.WeightedCostApproximator.Factory#getApproximator(float[][][], float[][][])
+		 */
+		@Override
+		public LinearApproximator getApproximator(float[][][] evaluationSignals, float[][][] values) {
+			return new CholeskyApproximator(evaluationSignals, values, getCostFunction(evaluationSignals[0].length), getNoise(), getNSV(), getQuiet());
+		}
+	}
+
+}
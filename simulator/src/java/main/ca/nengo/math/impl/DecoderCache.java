@@ -0,0 +1,358 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "DecoderCache.java". Description:
+"An on-disk store of decoding coefficients, keyed by a hash of everything that determines them"
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.math.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>An on-disk store of decoding coefficients. Entries are content-addressed, i.e. keyed by a
+ * hash of everything that determines the coefficients (see Key), so that identical solves in
+ * different origins, ensembles and runs can share the result.</p>
+ *
+ * <p>Each entry is a small file in the cache directory. When the total size of the entries
+ * exceeds a limit, the least recently used entries are deleted. Recency is kept in the files'
+ * modification times, so it carries over between runs. Several caches (e.g. in different
+ * processes) can share a directory; entries are written to a temporary file and then renamed,
+ * so that a partly-written entry is never read.</p>
+ */
+public class DecoderCache {
+
+	/**
+	 * Default limit on the total size of entries (bytes)
+	 */
+	public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+	private static final String SUFFIX = ".dec";
+	private static final int MAGIC = 0x4E444543;
+
+	private static Logger ourLogger = Logger.getLogger(DecoderCache.class);
+
+	private final File myDirectory;
+	private final long myMaxBytes;
+	private final LinkedHashMap<String, Long> myEntrySizes; //in order of access, least recent first
+	private long mySize;
+
+	/**
+	 * @param directory Directory in which entries are stored (created if it doesn't exist)
+	 * @param maxBytes Limit on the total size of entries (bytes)
+	 */
+	public DecoderCache(File directory, long maxBytes) {
+		myDirectory = directory;
+		myMaxBytes = maxBytes;
+		myEntrySizes = new LinkedHashMap<String, Long>(16, .75f, true);
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			ourLogger.warn("Can't create decoder cache directory " + directory);
+		}
+
+		File[] files = directory.listFiles();
+		if (files != null) {
+			Arrays.sort(files, new Comparator<File>() {
+				public int compare(File a, File b) {
+					long diff = a.lastModified() - b.lastModified();
+					return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+				}
+			});
+			for (File file : files) {
+				String name = file.getName();
+				if (file.isFile() && name.endsWith(SUFFIX)) {
+					addEntry(name.substring(0, name.length() - SUFFIX.length()), file.length());
+				}
+			}
+		}
+		evict();
+	}
+
+	/**
+	 * Uses DEFAULT_MAX_BYTES.
+	 *
+	 * @param directory Directory in which entries are stored (created if it doesn't exist)
+	 */
+	public DecoderCache(File directory) {
+		this(directory, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * @return Directory in which entries are stored
+	 */
+	public File getDirectory() {
+		return myDirectory;
+	}
+
+	/**
+	 * @return Limit on the total size of entries (bytes)
+	 */
+	public long getMaxBytes() {
+		return myMaxBytes;
+	}
+
+	/**
+	 * @return Total size of the entries known to this cache (bytes)
+	 */
+	public synchronized long getSize() {
+		return mySize;
+	}
+
+	/**
+	 * @param key An entry key (see Key)
+	 * @return The coefficients stored under the given key, or null if there are none
+	 */
+	public synchronized float[] get(String key) {
+		File file = getFile(key);
+		if (!file.isFile()) {
+			removeEntry(key);
+			return null;
+		}
+
+		float[] result = null;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (in.readInt() == MAGIC) {
+					result = new float[in.readInt()];
+					for (int i = 0; i < result.length; i++) {
+						result[i] = in.readFloat();
+					}
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			result = null;
+		}
+
+		if (result == null) {
+			ourLogger.warn("Discarding unreadable decoder cache entry " + file);
+			removeEntry(key);
+			file.delete();
+		} else {
+			if (!myEntrySizes.containsKey(key)) {
+				addEntry(key, file.length()); //written by another cache
+			}
+			myEntrySizes.get(key); //marks as recently used
+			file.setLastModified(System.currentTimeMillis());
+		}
+		return result;
+	}
+
+	/**
+	 * Stores coefficients, and deletes least recently used entries if the cache is too large.
+	 *
+	 * @param key An entry key (see Key)
+	 * @param coefficients Coefficients to store under the given key
+	 */
+	public synchronized void put(String key, float[] coefficients) {
+		File file = getFile(key);
+		File temp = null;
+		try {
+			temp = File.createTempFile("decoder", ".tmp", myDirectory);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(coefficients.length);
+				for (float c : coefficients) {
+					out.writeFloat(c);
+				}
+			} finally {
+				out.close();
+			}
+
+			file.delete();
+			if (!temp.renameTo(file)) {
+				throw new IOException("Can't rename " + temp + " to " + file);
+			}
+			removeEntry(key);
+			addEntry(key, file.length());
+			evict();
+		} catch (IOException e) {
+			ourLogger.warn("Can't write decoder cache entry " + file, e);
+			if (temp != null) {
+				temp.delete();
+			}
+		}
+	}
+
+	/**
+	 * Deletes all entries.
+	 */
+	public synchronized void clear() {
+		Iterator<String> it = myEntrySizes.keySet().iterator();
+		while (it.hasNext()) {
+			getFile(it.next()).delete();
+		}
+		myEntrySizes.clear();
+		mySize = 0;
+	}
+
+	private File getFile(String key) {
+		return new File(myDirectory, key + SUFFIX);
+	}
+
+	private void addEntry(String key, long size) {
+		myEntrySizes.put(key, Long.valueOf(size));
+		mySize += size;
+	}
+
+	private void removeEntry(String key) {
+		Long size = myEntrySizes.remove(key);
+		if (size != null) {
+			mySize -= size.longValue();
+		}
+	}
+
+	//deletes least recently used entries until the size limit is met
+	private void evict() {
+		Iterator<Map.Entry<String, Long>> it = myEntrySizes.entrySet().iterator();
+		while (mySize > myMaxBytes && it.hasNext()) {
+			Map.Entry<String, Long> entry = it.next();
+			getFile(entry.getKey()).delete();
+			mySize -= entry.getValue().longValue();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Builds a cache key from a SHA-1 hash of the given data. Floats are hashed by their bit
+	 * patterns, so keys are equal only if the data are exactly equal.
+	 */
+	public static class Key {
+
+		private final MessageDigest myDigest;
+		private final byte[] myBuffer;
+		private int myPosition;
+		private String myValue;
+
+		/**
+		 * Starts a new key.
+		 */
+		public Key() {
+			try {
+				myDigest = MessageDigest.getInstance("SHA-1");
+			} catch (NoSuchAlgorithmException e) {
+				throw new Error("SHA-1 is not available", e);
+			}
+			myBuffer = new byte[4096];
+			myPosition = 0;
+		}
+
+		/**
+		 * @param value A value to add to the key
+		 * @return This Key
+		 */
+		public Key add(String value) {
+			add(value.length());
+			for (int i = 0; i < value.length(); i++) {
+				add((int) value.charAt(i));
+			}
+			return this;
+		}
+
+		/**
+		 * @param value A value to add to the key
+		 * @return This Key
+		 */
+		public Key add(int value) {
+			if (myPosition + 4 > myBuffer.length) {
+				flush();
+			}
+			myBuffer[myPosition++] = (byte) (value >>> 24);
+			myBuffer[myPosition++] = (byte) (value >>> 16);
+			myBuffer[myPosition++] = (byte) (value >>> 8);
+			myBuffer[myPosition++] = (byte) value;
+			return this;
+		}
+
+		/**
+		 * @param value A value to add to the key
+		 * @return This Key
+		 */
+		public Key add(float value) {
+			return add(Float.floatToIntBits(value));
+		}
+
+		/**
+		 * @param values Values to add to the key (the length is also added)
+		 * @return This Key
+		 */
+		public Key add(float[] values) {
+			add(values.length);
+			for (float value : values) {
+				add(Float.floatToIntBits(value));
+			}
+			return this;
+		}
+
+		/**
+		 * @param values Values to add to the key (the dimensions are also added)
+		 * @return This Key
+		 */
+		public Key add(float[][] values) {
+			add(values.length);
+			for (float[] row : values) {
+				add(row);
+			}
+			return this;
+		}
+
+		/**
+		 * @return The key, as a hexadecimal string (values added after this is first called
+		 * 		are ignored)
+		 */
+		@Override
+		public String toString() {
+			if (myValue == null) {
+				flush();
+				byte[] hash = myDigest.digest();
+				StringBuffer result = new StringBuffer(hash.length * 2);
+				for (byte b : hash) {
+					result.append(Character.forDigit((b >> 4) & 0xF, 16));
+					result.append(Character.forDigit(b & 0xF, 16));
+				}
+				myValue = result.toString();
+			}
+			return myValue;
+		}
+
+		private void flush() {
+			myDigest.update(myBuffer, 0, myPosition);
+			myPosition = 0;
+		}
+	}
+
+}
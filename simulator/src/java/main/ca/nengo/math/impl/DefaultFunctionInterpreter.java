@@ -43,7 +43,8 @@ import ca.nengo.math.FunctionInterpreter;
  * <p>Default implementation of FunctionInterpreter. This implementation produces
  * PostfixFunctions.</p>
  *
- * TODO: faster Functions could be produced by compiling expressions into Java classes.
+ * <p>By default the PostfixFunctions are compiled, i.e. they evaluate their expressions without
+ * boxing or an operand stack (see PostfixFunction.setCompiled(...)).</p>
  *
  * @author Bryan Tripp
  */
@@ -54,6 +55,7 @@ public class DefaultFunctionInterpreter implements FunctionInterpreter {
 	private Map<String, Function> myFunctions;
 	private Map<String, AbstractOperator> myOperators;
 	private String myTokens;
+	private boolean myCompiling = true;
 
 	/**
 	 * @return A singleton instance of DefaultFunctionInterpreter
@@ -133,7 +135,24 @@ public class DefaultFunctionInterpreter implements FunctionInterpreter {
 	 */
 	public Function parse(String expression, int dimension) {
 		List<Serializable> postfix = getPostfixList(expression);
-		return new PostfixFunction(postfix, expression, dimension);
+		PostfixFunction result = new PostfixFunction(postfix, expression, dimension);
+		result.setCompiled(myCompiling);
+		return result;
+	}
+
+	/**
+	 * @return True if parse(...) produces compiled PostfixFunctions
+	 */
+	public boolean isCompiling() {
+		return myCompiling;
+	}
+
+	/**
+	 * @param compiling True (the default) if parse(...) should produce compiled PostfixFunctions;
+	 * 		false if they should interpret their expression lists on each evaluation
+	 */
+	public void setCompiling(boolean compiling) {
+		myCompiling = compiling;
 	}
 
 	/**
@@ -232,23 +251,26 @@ public class DefaultFunctionInterpreter implements FunctionInterpreter {
 
 	/************ PRIVATE OPERATOR CLASSES *********************************/
 
-	private abstract static class AbstractOperator implements Function {
+	abstract static class AbstractOperator implements Function {
 
 		private static final long serialVersionUID = 1L;
 
 		private int myDimension;
 		private boolean myRightAssociative;
 		private int myPrecendence;
+		private int myOpcode;
 
 		/**
 		 * @param dimension Dimension of the space that the Function maps from
 		 * @param rightAssociative Evaluated from the right (eg exponent operator)
 		 * @param precedence A code indicating operator precedence relative to other operators
+		 * @param opcode Code with which PostfixFunction evaluates this operator inline
 		 */
-		public AbstractOperator(int dimension, boolean rightAssociative, int precedence) {
+		public AbstractOperator(int dimension, boolean rightAssociative, int precedence, int opcode) {
 			myDimension = dimension;
 			myRightAssociative = rightAssociative;
 			myPrecendence = precedence;
+			myOpcode = opcode;
 		}
 
 		/**
@@ -272,6 +294,13 @@ public class DefaultFunctionInterpreter implements FunctionInterpreter {
 			return myPrecendence;
 		}
 
+		/**
+		 * @return Code with which PostfixFunction evaluates this operator inline
+		 */
+		int getOpcode() {
+			return myOpcode;
+		}
+
 		/**
 		 * @see ca.nengo.math.Function#multiMap(float[][])
 		 */
@@ -297,7 +326,7 @@ public class DefaultFunctionInterpreter implements FunctionInterpreter {
 		private static final long serialVersionUID = 1L;
 
 		public ExponentOperator() {
-			super(2, true, 4);
+			super(2, true, 4, PostfixFunction.OP_POW);
 		}
 
 		public float map(float[] from) {
@@ -315,7 +344,7 @@ public class DefaultFunctionInterpreter implements FunctionInterpreter {
 		private static final long serialVersionUID = 1L;
 
 		public MultiplicationOperator() {
-			super(2, false, 3);
+			super(2, false, 3, PostfixFunction.OP_MUL);
 		}
 
 		public float map(float[] from) {
@@ -333,7 +362,7 @@ public class DefaultFunctionInterpreter implements FunctionInterpreter {
 		private static final long serialVersionUID = 1L;
 
 		public DivisionOperator() {
-			super(2, false, 3);
+			super(2, false, 3, PostfixFunction.OP_DIV);
 		}
 
 		public float map(float[] from) {
@@ -351,7 +380,7 @@ public class DefaultFunctionInterpreter implements FunctionInterpreter {
 		private static final long serialVersionUID = 1L;
 
 		public ModuloOperator() {
-			super(2, false, 3);
+			super(2, false, 3, PostfixFunction.OP_MOD);
 		}
 
 		public float map(float[] from) {
@@ -369,7 +398,7 @@ public class DefaultFunctionInterpreter implements FunctionInterpreter {
 		private static final long serialVersionUID = 1L;
 
 		public AdditionOperator() {
-			super(2, false, 2);
+			super(2, false, 2, PostfixFunction.OP_ADD);
 		}
 
 		public float map(float[] from) {
@@ -387,7 +416,7 @@ public class DefaultFunctionInterpreter implements FunctionInterpreter {
 		private static final long serialVersionUID = 1L;
 
 		public SubtractionOperator() {
-			super(2, false, 2);
+			super(2, false, 2, PostfixFunction.OP_SUB);
 		}
 
 		public float map(float[] from) {
@@ -405,7 +434,7 @@ public class DefaultFunctionInterpreter implements FunctionInterpreter {
 		private static final long serialVersionUID = 1L;
 
 		public NegativeOperator() {
-			super(1, false, 5);
+			super(1, false, 5, PostfixFunction.OP_NEG);
 		}
 
 		public float map(float[] from) {
@@ -423,7 +452,7 @@ public class DefaultFunctionInterpreter implements FunctionInterpreter {
 		private static final long serialVersionUID = 1L;
 
 		public NotOperator() {
-			super(1, false, 5);
+			super(1, false, 5, PostfixFunction.OP_NOT);
 		}
 
 		public float map(float[] from) {
@@ -441,7 +470,7 @@ public class DefaultFunctionInterpreter implements FunctionInterpreter {
 		private static final long serialVersionUID = 1L;
 
 		public LessThanOperator() {
-			super(2, false, 1);
+			super(2, false, 1, PostfixFunction.OP_LT);
 		}
 
 		public float map(float[] from) {
@@ -459,7 +488,7 @@ public class DefaultFunctionInterpreter implements FunctionInterpreter {
 		private static final long serialVersionUID = 1L;
 
 		public GreaterThanOperator() {
-			super(2, false, 1);
+			super(2, false, 1, PostfixFunction.OP_GT);
 		}
 
 		public float map(float[] from) {
@@ -477,7 +506,7 @@ public class DefaultFunctionInterpreter implements FunctionInterpreter {
 		private static final long serialVersionUID = 1L;
 
 		public AndOperator() {
-			super(2, false, 0);
+			super(2, false, 0, PostfixFunction.OP_AND);
 		}
 
 		public float map(float[] from) {
@@ -495,7 +524,7 @@ public class DefaultFunctionInterpreter implements FunctionInterpreter {
 		private static final long serialVersionUID = 1L;
 
 		public OrOperator() {
-			super(2, false, 0);
+			super(2, false, 0, PostfixFunction.OP_OR);
 		}
 
 		public float map(float[] from) {
@@ -29,6 +29,7 @@ package ca.nengo.math.impl;
 
 import ca.nengo.math.PDF;
 import ca.nengo.math.PDFTools;
+import ca.nengo.math.RandomStream;
 
 /**
  * Univariate Gaussian probability density function. 
@@ -150,8 +151,12 @@ public class GaussianPDF implements PDF {
 	public float[] sample() {
 		float normal = 0;
 		
-		// 2 are generated at a time
-		if (nextAvailable) {
+		// a stream keeps its own second sample, so that a PDF shared by Nodes with different streams 
+		// doesn't mix them
+		RandomStream stream = PDFTools.getStream();
+		if (stream != null) {
+			normal = (float) stream.nextGaussian();
+		} else if (nextAvailable) { // 2 are generated at a time
 			normal = nextNormal;
 			nextAvailable = false;
 		} else {
@@ -169,10 +169,7 @@ public class GradientDescentApproximator implements LinearApproximator {
 
 	//finds values of target function at eval points
 	private float[] getTargetValues(Function target) {
-		float[] result = new float[myEvalPoints.length];
-		for (int i = 0; i < result.length; i++) {
-			result[i] = target.map(myEvalPoints[i]);
-		}
+		float[] result = target.multiMap(myEvalPoints);
 		if (myIgnoreBias) {
             result = unbias(result);
         }
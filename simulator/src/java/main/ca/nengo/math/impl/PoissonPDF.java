@@ -68,8 +68,19 @@ public class PoissonPDF extends AbstractFunction implements PDF {
 	 * @see ca.nengo.math.PDF#sample()
 	 */
 	public float[] sample() {
-		double L = Math.exp(-myRate);
-		float k = 0;
+		return new float[]{sample(myRate)};
+	}
+
+	/**
+	 * Samples a Poisson distribution without making a PoissonPDF (e.g. for a new rate on
+	 * every step of a simulation).
+	 *
+	 * @param rate The mean & variance of the distribution
+	 * @return A sample from the distribution
+	 */
+	public static int sample(float rate) {
+		double L = Math.exp(-rate);
+		int k = 0;
 		double p = 1;
 
 	    do {
@@ -78,7 +89,7 @@ public class PoissonPDF extends AbstractFunction implements PDF {
 	    	p = p * u;
 	    } while (p >= L);
 		
-		return new float[]{k-1};
+		return k-1;
 	}
 
 	//this doesn't work ... overflows with large rate or observation; huge roundoff error with small rate & large observation 
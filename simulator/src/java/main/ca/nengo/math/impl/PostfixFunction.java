@@ -32,10 +32,12 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.log4j.Logger;
 
 import ca.nengo.math.Function;
+import ca.nengo.util.impl.ParallelLoop;
 
 /**
  * <p>A Function based on a mathematical expression and on other functions. The expression
@@ -50,6 +52,12 @@ import ca.nengo.math.Function;
  *
  * <p>The expression list must be given in postfix order.</p>
  *
+ * <p>By default the expression list is compiled, when the function is first evaluated, into
+ * a tree of small objects that each evaluate one operation on primitive floats. Operators of
+ * DefaultFunctionInterpreter and common SimpleFunctions are evaluated inline, without boxing
+ * or an operand stack, so evaluation doesn't allocate memory. Other Functions are called
+ * through map(...) with an argument array that is reused between evaluations.</p>
+ *
  * TODO: need a way to manage user-defined functions that ensures they can be accessed from saved networks
  *
  * @author Bryan Tripp
@@ -59,7 +67,31 @@ public class PostfixFunction implements Function {
 	private static final long serialVersionUID = 1L;
 	private static Logger ourLogger = Logger.getLogger(PostfixFunction.class);
 
+	//codes of operations that compiled expressions evaluate inline (see DefaultFunctionInterpreter.AbstractOperator)
+	static final int OP_FUNCTION = 0;
+	static final int OP_ADD = 1;
+	static final int OP_SUB = 2;
+	static final int OP_MUL = 3;
+	static final int OP_DIV = 4;
+	static final int OP_MOD = 5;
+	static final int OP_POW = 6;
+	static final int OP_NEG = 7;
+	static final int OP_NOT = 8;
+	static final int OP_LT = 9;
+	static final int OP_GT = 10;
+	static final int OP_AND = 11;
+	static final int OP_OR = 12;
+	static final int OP_SIN = 13;
+	static final int OP_COS = 14;
+	static final int OP_EXP = 15;
+	static final int OP_LN = 16;
+	static final int OP_SQRT = 17;
+	static final int OP_MAX = 18;
+	static final int OP_MIN = 19;
+
 	private List<Serializable> myExpressionList;
+	private boolean myInterpreted;
+	private transient Node myProgram;
 
 	/**
 	 * A human-readable string representation of the function
@@ -102,6 +134,23 @@ public class PostfixFunction implements Function {
 		myDimension = dimension;
 		myExpressionList = expressionList;
 		myExpression = expression;
+		myProgram = null;
+	}
+
+	/**
+	 * @return True if the expression is compiled (see class docs); false if the expression list
+	 * 		is interpreted on each evaluation
+	 */
+	public boolean isCompiled() {
+		return !myInterpreted;
+	}
+
+	/**
+	 * @param compiled True (the default) if the expression should be compiled (see class docs);
+	 * 		false if the expression list should be interpreted on each evaluation
+	 */
+	public void setCompiled(boolean compiled) {
+		myInterpreted = !compiled;
 	}
 
 	/**
@@ -148,7 +197,12 @@ public class PostfixFunction implements Function {
 	 * @see ca.nengo.math.Function#map(float[])
 	 */
 	public float map(float[] from) {
-		return doMap(myExpressionList, myDimension, from);
+		if (myInterpreted) {
+			return doMap(myExpressionList, myDimension, from);
+		}
+
+		checkDimension(from);
+		return getProgram().eval(from);
 	}
 
 	/**
@@ -157,13 +211,52 @@ public class PostfixFunction implements Function {
 	public float[] multiMap(float[][] from) {
 		float[] result = new float[from.length];
 
-		for (int i = 0; i < from.length; i++) {
-			result[i] = doMap(myExpressionList, myDimension, from[i]);
+		if (myInterpreted) {
+			for (int i = 0; i < from.length; i++) {
+				result[i] = doMap(myExpressionList, myDimension, from[i]);
+			}
+		} else if (isPure()) {
+			result = ParallelLoop.multiMap(this, from, 10 * myExpressionList.size());
+		} else {
+			Node program = getProgram();
+			for (int i = 0; i < from.length; i++) {
+				checkDimension(from[i]);
+				result[i] = program.eval(from[i]);
+			}
+		}
+
+		return result;
+	}
+
+	/*
+	 * True if the expression only uses operators and functions without state, so that it can
+	 * be evaluated at many points concurrently.
+	 */
+	private boolean isPure() {
+		for (Serializable o : myExpressionList) {
+			if (o instanceof Function && !(o instanceof DefaultFunctionInterpreter.AbstractOperator)
+					&& !(o instanceof SimpleFunctions.PureFunction)) {
+				return false;
+			}
 		}
+		return true;
+	}
 
+	private Node getProgram() {
+		Node result = myProgram;
+		if (result == null) {
+			result = compile(myExpressionList);
+			myProgram = result;
+		}
 		return result;
 	}
 
+	private void checkDimension(float[] from) {
+		if (myDimension != from.length) {
+			throw new IllegalArgumentException("Input dimension " + from.length + ", expected " + myDimension);
+		}
+	}
+
 	private static float doMap(List<Serializable> expression, int dimension, float[] from) {
 		if (dimension != from.length) {
 			throw new IllegalArgumentException("Input dimension " + from.length + ", expected " + dimension);
@@ -243,8 +336,286 @@ public class PostfixFunction implements Function {
 			}
 		}
 		result.myExpressionList = list;
+		result.myProgram = null;
 
 		return result;
 	}
 
+	/*
+	 * Builds a tree of Nodes from a postfix expression list.
+	 */
+	private static Node compile(List<Serializable> expression) {
+		Node[] stack = new Node[expression.size()];
+		int top = -1;
+
+		for (int i = 0; i < expression.size(); i++) {
+			Object o = expression.get(i);
+
+			if (o instanceof Float) {
+				stack[++top] = new Constant(((Float) o).floatValue());
+			} else if (o instanceof Integer) {
+				stack[++top] = new Input(((Integer) o).intValue());
+			} else {
+				Function f = (Function) o;
+				int n = f.getDimension();
+				if (n > top + 1) {
+					throw new RuntimeException("Unable to evaluate expression list at index " + i + " (too few operands)");
+				}
+
+				Node[] args = new Node[n];
+				System.arraycopy(stack, top + 1 - n, args, 0, n);
+				top -= n;
+				stack[++top] = makeNode(f, args);
+			}
+		}
+
+		if (top < 0) {
+			throw new RuntimeException("Unable to evaluate expression list at index " + expression.size() + " (no result)");
+		}
+		return stack[top];
+	}
+
+	private static Node makeNode(Function f, Node[] args) {
+		int code = OP_FUNCTION;
+		if (f instanceof DefaultFunctionInterpreter.AbstractOperator) {
+			code = ((DefaultFunctionInterpreter.AbstractOperator) f).getOpcode();
+		} else {
+			//exact classes only, since subclasses might change map(...)
+			Class<?> c = f.getClass();
+			if (c == SimpleFunctions.Sin.class) {
+				code = OP_SIN;
+			} else if (c == SimpleFunctions.Cos.class) {
+				code = OP_COS;
+			} else if (c == SimpleFunctions.Exp.class) {
+				code = OP_EXP;
+			} else if (c == SimpleFunctions.Ln.class) {
+				code = OP_LN;
+			} else if (c == SimpleFunctions.Sqrt.class) {
+				code = OP_SQRT;
+			} else if (c == SimpleFunctions.Pow.class) {
+				code = OP_POW;
+			} else if (c == SimpleFunctions.Max.class) {
+				code = OP_MAX;
+			} else if (c == SimpleFunctions.Min.class) {
+				code = OP_MIN;
+			}
+		}
+
+		switch (code) {
+		case OP_ADD:
+			return new Add(args[0], args[1]);
+		case OP_SUB:
+			return new Subtract(args[0], args[1]);
+		case OP_MUL:
+			return new Multiply(args[0], args[1]);
+		case OP_DIV:
+			return new Divide(args[0], args[1]);
+		case OP_NEG:
+			return new Negate(args[0]);
+		case OP_NOT: case OP_SIN: case OP_COS: case OP_EXP: case OP_LN: case OP_SQRT:
+			return new Unary(code, args[0]);
+		case OP_MOD: case OP_POW: case OP_LT: case OP_GT: case OP_AND: case OP_OR: case OP_MAX: case OP_MIN:
+			return new Binary(code, args[0], args[1]);
+		default:
+			return new Call(f, args);
+		}
+	}
+
+	/**
+	 * A compiled subexpression.
+	 */
+	private abstract static class Node {
+
+		/**
+		 * @param from Input to the PostfixFunction
+		 * @return Value of the subexpression
+		 */
+		public abstract float eval(float[] from);
+	}
+
+	private static class Constant extends Node {
+		private final float myValue;
+
+		public Constant(float value) {
+			myValue = value;
+		}
+
+		public float eval(float[] from) {
+			return myValue;
+		}
+	}
+
+	private static class Input extends Node {
+		private final int myIndex;
+
+		public Input(int index) {
+			myIndex = index;
+		}
+
+		public float eval(float[] from) {
+			return from[myIndex];
+		}
+	}
+
+	private static class Add extends Node {
+		private final Node myA;
+		private final Node myB;
+
+		public Add(Node a, Node b) {
+			myA = a;
+			myB = b;
+		}
+
+		public float eval(float[] from) {
+			return myA.eval(from) + myB.eval(from);
+		}
+	}
+
+	private static class Subtract extends Node {
+		private final Node myA;
+		private final Node myB;
+
+		public Subtract(Node a, Node b) {
+			myA = a;
+			myB = b;
+		}
+
+		public float eval(float[] from) {
+			return myA.eval(from) - myB.eval(from);
+		}
+	}
+
+	private static class Multiply extends Node {
+		private final Node myA;
+		private final Node myB;
+
+		public Multiply(Node a, Node b) {
+			myA = a;
+			myB = b;
+		}
+
+		public float eval(float[] from) {
+			return myA.eval(from) * myB.eval(from);
+		}
+	}
+
+	private static class Divide extends Node {
+		private final Node myA;
+		private final Node myB;
+
+		public Divide(Node a, Node b) {
+			myA = a;
+			myB = b;
+		}
+
+		public float eval(float[] from) {
+			return myA.eval(from) / myB.eval(from);
+		}
+	}
+
+	private static class Negate extends Node {
+		private final Node myA;
+
+		public Negate(Node a) {
+			myA = a;
+		}
+
+		public float eval(float[] from) {
+			return -myA.eval(from);
+		}
+	}
+
+	//less common single-argument operators and functions (same results as their Functions)
+	private static class Unary extends Node {
+		private final int myCode;
+		private final Node myA;
+
+		public Unary(int code, Node a) {
+			myCode = code;
+			myA = a;
+		}
+
+		public float eval(float[] from) {
+			float a = myA.eval(from);
+			switch (myCode) {
+			case OP_NOT:
+				return (a > .5) ? 0f : 1f;
+			case OP_SIN:
+				return (float) Math.sin(a);
+			case OP_COS:
+				return (float) Math.cos(a);
+			case OP_EXP:
+				return (float) Math.exp(a);
+			case OP_LN:
+				return (float) Math.log(a);
+			default:
+				return (float) Math.sqrt(a);
+			}
+		}
+	}
+
+	//less common two-argument operators and functions (same results as their Functions)
+	private static class Binary extends Node {
+		private final int myCode;
+		private final Node myA;
+		private final Node myB;
+
+		public Binary(int code, Node a, Node b) {
+			myCode = code;
+			myA = a;
+			myB = b;
+		}
+
+		public float eval(float[] from) {
+			float a = myA.eval(from);
+			float b = myB.eval(from);
+			switch (myCode) {
+			case OP_MOD:
+				return a % b;
+			case OP_POW:
+				return (float) Math.pow(a, b);
+			case OP_LT:
+				return a < b ? 1f : 0f;
+			case OP_GT:
+				return a > b ? 1f : 0f;
+			case OP_AND:
+				return (a > .5 && b > .5) ? 1f : 0f;
+			case OP_OR:
+				return (a > .5 || b > .5) ? 1f : 0f;
+			case OP_MAX:
+				return Math.max(a, b);
+			default:
+				return Math.min(a, b);
+			}
+		}
+	}
+
+	/*
+	 * Calls any other Function. The argument array is reused unless another thread is using it.
+	 */
+	private static class Call extends Node {
+		private final Function myFunction;
+		private final Node[] myArgs;
+		private final AtomicReference<float[]> myValues;
+
+		public Call(Function function, Node[] args) {
+			myFunction = function;
+			myArgs = args;
+			myValues = new AtomicReference<float[]>(new float[args.length]);
+		}
+
+		public float eval(float[] from) {
+			float[] values = myValues.getAndSet(null);
+			if (values == null) {
+				values = new float[myArgs.length];
+			}
+			for (int i = 0; i < myArgs.length; i++) {
+				values[i] = myArgs[i].eval(from);
+			}
+			float result = myFunction.map(values);
+			myValues.lazySet(values);
+			return result;
+		}
+	}
+
 }
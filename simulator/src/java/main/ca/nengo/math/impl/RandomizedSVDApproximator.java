@@ -0,0 +1,274 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "RandomizedSVDApproximator.java". Description:
+"A WeightedCostApproximator that finds a truncated pseudoinverse of gamma by randomized SVD"
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.math.impl;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+
+/**
+ * <p>A WeightedCostApproximator that keeps only the largest nSV singular values of gamma, and
+ * finds them by randomized SVD (Halko, Martinsson & Tropp, 2011) instead of a full
+ * decomposition. Gamma is multiplied by nSV+OVERSAMPLING random vectors, the result is
+ * refined by a few power iterations and orthonormalized, and the small projection of gamma
+ * onto this basis is decomposed exactly. The cost grows with N^2 * nSV rather than N^3, and
+ * the products with gamma are spread over the available processors.</p>
+ *
+ * <p>Singular values below the noise threshold are discarded as in WeightedCostApproximator.
+ * The random vectors come from a fixed seed, so the result is repeatable. If nSV is not set
+ * (zero or less), or is too large for the randomized method to help, the full decomposition
+ * is used.</p>
+ */
+public class RandomizedSVDApproximator extends WeightedCostApproximator {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Number of random vectors used in addition to nSV
+	 */
+	public static final int OVERSAMPLING = 10;
+
+	/**
+	 * Number of power iterations used to refine the basis
+	 */
+	public static final int POWER_ITERATIONS = 2;
+
+	private static Logger ourLogger = Logger.getLogger(RandomizedSVDApproximator.class);
+
+	/**
+	 * @see WeightedCostApproximator#WeightedCostApproximator(float[][], float[][], Function, float, int, boolean)
+	 */
+	public RandomizedSVDApproximator(float[][] evaluationPoints, float[][] values, Function costFunction, float noise, int nSV, boolean quiet) {
+		super(evaluationPoints, values, costFunction, noise, nSV, quiet);
+	}
+
+	/**
+	 * @see WeightedCostApproximator#WeightedCostApproximator(float[][][], float[][][], Function, float, int, boolean)
+	 */
+	public RandomizedSVDApproximator(float[][][] evaluationSignals, float[][][] values, Function costFunction, float noise, int nSV, boolean quiet) {
+		super(evaluationSignals, values, costFunction, noise, nSV, quiet);
+	}
+
+	/**
+	 * @param matrix A symmetric positive semi-definite matrix (gamma)
+	 * @param minSV Smallest singular value to use
+	 * @param nSV Max number of singular values to use
+	 * @return Pseudoinverse of the matrix, truncated to the given singular values
+	 *
+	 * @see ca.nengo.math.impl.WeightedCostApproximator#pseudoInverse(double[][], float, int)
+	 */
+	@Override
+	public double[][] pseudoInverse(double[][] matrix, float minSV, int nSV) {
+		int n = matrix.length;
+		int l = nSV + OVERSAMPLING;
+		if (nSV <= 0 || l >= n) {
+			return svdPseudoInverse(matrix, minSV, nSV);
+		}
+
+		//basis Q for the range of the matrix
+		Random random = new Random(0);
+		double[][] Q = new double[l][n];
+		for (int c = 0; c < l; c++) {
+			for (int i = 0; i < n; i++) {
+				Q[c][i] = random.nextGaussian();
+			}
+		}
+		Q = orthonormalize(multiply(matrix, Q));
+		for (int i = 0; i < POWER_ITERATIONS; i++) {
+			Q = orthonormalize(multiply(matrix, Q));
+		}
+
+		//B = Q' * matrix * Q, and its eigendecomposition
+		double[][] Z = multiply(matrix, Q);
+		double[][] B = new double[l][l];
+		for (int a = 0; a < l; a++) {
+			for (int b = 0; b <= a; b++) {
+				B[a][b] = (dot(Q[a], Z[b]) + dot(Q[b], Z[a])) / 2;
+				B[b][a] = B[a][b];
+			}
+		}
+		EigenvalueDecomposition eig = new Matrix(B).eig();
+		double[] d = eig.getRealEigenvalues();
+		double[][] W = eig.getV().getArray();
+
+		//in decreasing order, keep up to nSV values over minSV
+		Integer[] order = new Integer[l];
+		for (int i = 0; i < l; i++) {
+			order[i] = Integer.valueOf(i);
+		}
+		final double[] values = d;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(values[b.intValue()], values[a.intValue()]);
+			}
+		});
+		int kept = 0;
+		while (kept < nSV && d[order[kept].intValue()] > minSV) {
+			kept++;
+		}
+
+		if (!isQuiet()) {
+			ourLogger.info("Using " + kept + " singular values for pseudo-inverse");
+		}
+
+		//singular vectors U = Q * W, pre-scaled by 1/d
+		final double[][] U = new double[kept][n];
+		final double[][] scaledU = new double[kept][n];
+		for (int m = 0; m < kept; m++) {
+			int e = order[m].intValue();
+			for (int a = 0; a < l; a++) {
+				double w = W[a][e];
+				for (int i = 0; i < n; i++) {
+					U[m][i] += w * Q[a][i];
+				}
+			}
+			for (int i = 0; i < n; i++) {
+				scaledU[m][i] = U[m][i] / d[e];
+			}
+		}
+
+		final int size = n;
+		final int numKept = kept;
+		final double[][] result = new double[n][n];
+		parallelFor(n, (long) n * n * kept / 2, new LoopBody() {
+			public void run(int r) {
+				for (int s = r; s < size; s++) {
+					double sum = 0;
+					for (int m = 0; m < numKept; m++) {
+						sum += scaledU[m][r] * U[m][s];
+					}
+					result[r][s] = sum;
+				}
+			}
+		});
+		for (int r = 0; r < n; r++) {
+			for (int s = r+1; s < n; s++) {
+				result[s][r] = result[r][s];
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param matrix A square matrix
+	 * @param columns Columns of another matrix (first index is column)
+	 * @return Columns of the product matrix * columns
+	 */
+	static double[][] multiply(final double[][] matrix, final double[][] columns) {
+		final double[][] result = new double[columns.length][matrix.length];
+		parallelFor(matrix.length, (long) matrix.length * matrix.length * columns.length, new LoopBody() {
+			public void run(int r) {
+				for (int c = 0; c < columns.length; c++) {
+					result[c][r] = dot(matrix[r], columns[c]);
+				}
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Modified Gram-Schmidt orthonormalization, repeated once for numerical stability. Columns
+	 * that are (numerically) dependent on earlier ones are set to zero.
+	 *
+	 * @param columns Columns to orthonormalize (first index is column; modified in place)
+	 * @return The orthonormalized columns
+	 */
+	static double[][] orthonormalize(double[][] columns) {
+		for (int pass = 0; pass < 2; pass++) {
+			for (int c = 0; c < columns.length; c++) {
+				double[] v = columns[c];
+				double originalNorm = Math.sqrt(dot(v, v));
+				for (int p = 0; p < c; p++) {
+					double projection = dot(columns[p], v);
+					for (int i = 0; i < v.length; i++) {
+						v[i] -= projection * columns[p][i];
+					}
+				}
+				double norm = Math.sqrt(dot(v, v));
+				double scale = (norm > 1e-10 * originalNorm && norm > 0) ? 1 / norm : 0;
+				for (int i = 0; i < v.length; i++) {
+					v[i] *= scale;
+				}
+			}
+		}
+		return columns;
+	}
+
+	private static double dot(double[] a, double[] b) {
+		double sum = 0;
+		for (int i = 0; i < a.length; i++) {
+			sum += a[i] * b[i];
+		}
+		return sum;
+	}
+
+	/**
+	 * An ApproximatorFactory that produces RandomizedSVDApproximators.
+	 */
+	public static class Factory extends WeightedCostApproximator.Factory {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * @param noise Random noise to add to component functions (proportion of largest value over all functions)
+		 * @param NSV Number of singular values to keep
+		 */
+		public Factory(float noise, int NSV) {
+			super(noise, NSV);
+		}
+
+		/**
+		 * @param noise Random noise to add to component functions (proportion of largest value over all functions)
+		 * @param NSV Number of singular values to keep
+		 * @param quiet Turn off logging?
+		 */
+		public Factory(float noise, int NSV, boolean quiet) {
+			super(noise, NSV, quiet);
+		}
+
+		/**
+		 * @see ca.nengo.math.impl.WeightedCostApproximator.Factory#getApproximator(float[][], float[][])
+		 */
+		@Override
+		public LinearApproximator getApproximator(float[][] evalPoints, float[][] values) {
+			return new RandomizedSVDApproximator(evalPoints, values, getCostFunction(evalPoints[0].length), getNoise(), getNSV(), getQuiet());
+		}
+
+		/**
+		 * @see ca.nengo.math.impl.WeightedCostApproximator.Factory#getApproximator(float[][][], float[][][])
+		 */
+		@Override
+		public LinearApproximator getApproximator(float[][][] evaluationSignals, float[][][] values) {
+			return new RandomizedSVDApproximator(evaluationSignals, values, getCostFunction(evaluationSignals[0].length), getNoise(), getNSV(), getQuiet());
+		}
+	}
+
+}
@@ -27,6 +27,7 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.math.impl;
 
+import ca.nengo.util.impl.ParallelLoop;
 import umontreal.iro.lecuyer.probdist.NormalDist;
 
 /**
@@ -36,12 +37,32 @@ import umontreal.iro.lecuyer.probdist.NormalDist;
  */
 public class SimpleFunctions {
 
+	/**
+	 * A Function without state, so that multiMap(...) can evaluate it at many points
+	 * concurrently.
+	 */
+	abstract static class PureFunction extends AbstractFunction {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * @param dimension Input dimension of the function
+		 */
+		public PureFunction(int dimension) {
+			super(dimension);
+		}
+
+		@Override
+		public float[] multiMap(float[][] from) {
+			return ParallelLoop.multiMap(this, from, 50);
+		}
+	}
+
 	/**
 	 * In radians.
 	 *
 	 * @author Bryan Tripp
 	 */
-	public static class Sin extends AbstractFunction {
+	public static class Sin extends PureFunction {
 		private static final long serialVersionUID = 1L;
 
 		/**
@@ -62,7 +83,7 @@ public class SimpleFunctions {
 	 *
 	 * @author Bryan Tripp
 	 */
-	public static class Cos extends AbstractFunction {
+	public static class Cos extends PureFunction {
 		private static final long serialVersionUID = 1L;
 
 		/**
@@ -83,7 +104,7 @@ public class SimpleFunctions {
 	 *
 	 * @author Bryan Tripp
 	 */
-	public static class Tan extends AbstractFunction {
+	public static class Tan extends PureFunction {
 		private static final long serialVersionUID = 1L;
 
 		/**
@@ -104,7 +125,7 @@ public class SimpleFunctions {
 	 *
 	 * @author Bryan Tripp
 	 */
-	public static class Asin extends AbstractFunction {
+	public static class Asin extends PureFunction {
 		private static final long serialVersionUID = 1L;
 
 		/**
@@ -125,7 +146,7 @@ public class SimpleFunctions {
 	 *
 	 * @author Bryan Tripp
 	 */
-	public static class Acos extends AbstractFunction {
+	public static class Acos extends PureFunction {
 		private static final long serialVersionUID = 1L;
 
 		/**
@@ -146,7 +167,7 @@ public class SimpleFunctions {
 	 *
 	 * @author Bryan Tripp
 	 */
-	public static class Atan extends AbstractFunction {
+	public static class Atan extends PureFunction {
 		private static final long serialVersionUID = 1L;
 
 		/**
@@ -168,7 +189,7 @@ public class SimpleFunctions {
 	 *
 	 * @author Lloyd Elliott
 	 */
-	public static class Fold extends AbstractFunction {
+	public static class Fold extends PureFunction {
 		private static final long serialVersionUID = 1L;
 
 		/**
@@ -187,7 +208,7 @@ public class SimpleFunctions {
 	/**
 	 * Computes the inverse of the normal distribution
 	 */
-	public static class InverseNormal extends AbstractFunction {
+	public static class InverseNormal extends PureFunction {
 		private static final long serialVersionUID = 1L;
 
 		/**
@@ -206,7 +227,7 @@ public class SimpleFunctions {
 	/**
 	 * Computes the normal distribution's cumulative density function
 	 */
-	public static class Normal extends AbstractFunction {
+	public static class Normal extends PureFunction {
 		private static final long serialVersionUID = 1L;
 
 		/**
@@ -225,7 +246,7 @@ public class SimpleFunctions {
 	/**
 	 * e^x
 	 */
-	public static class Exp extends AbstractFunction {
+	public static class Exp extends PureFunction {
 		private static final long serialVersionUID = 1L;
 
 		/**
@@ -244,7 +265,7 @@ public class SimpleFunctions {
 	/**
 	 * log_2(x)
 	 */
-	public static class Log2 extends AbstractFunction {
+	public static class Log2 extends PureFunction {
 		private static final long serialVersionUID = 1L;
 
 		/**
@@ -263,7 +284,7 @@ public class SimpleFunctions {
 	/**
 	 * log_10(x)
 	 */
-	public static class Log10 extends AbstractFunction {
+	public static class Log10 extends PureFunction {
 		private static final long serialVersionUID = 1L;
 
 		/**
@@ -282,7 +303,7 @@ public class SimpleFunctions {
 	/**
 	 * ln(x)
 	 */
-	public static class Ln extends AbstractFunction {
+	public static class Ln extends PureFunction {
 		private static final long serialVersionUID = 1L;
 
 		/**
@@ -301,7 +322,7 @@ public class SimpleFunctions {
 	/**
 	 * x^y
 	 */
-	public static class Pow extends AbstractFunction {
+	public static class Pow extends PureFunction {
 		private static final long serialVersionUID = 1L;
 
 		/**
@@ -320,7 +341,7 @@ public class SimpleFunctions {
 	/**
 	 * max(x,y)
 	 */
-	public static class Max extends AbstractFunction {
+	public static class Max extends PureFunction {
 		private static final long serialVersionUID = 1L;
 
 		/**
@@ -339,7 +360,7 @@ public class SimpleFunctions {
 	/**
      * min(x,y)
      */
-	public static class Min extends AbstractFunction {
+	public static class Min extends PureFunction {
 		private static final long serialVersionUID = 1L;
 
 		/**
@@ -358,7 +379,7 @@ public class SimpleFunctions {
 	/**
 	 * Square root of x
 	 */
-	public static class Sqrt extends AbstractFunction {
+	public static class Sqrt extends PureFunction {
 		private static final long serialVersionUID = 1L;
 
 		/**
@@ -40,6 +40,7 @@ import ca.nengo.math.Function;
 import ca.nengo.math.LinearApproximator;
 import ca.nengo.util.MU;
 import ca.nengo.util.Memory;
+import ca.nengo.util.impl.ParallelLoop;
 
 /**
  * <p>A LinearApproximator in which error is evaluated at a fixed set of points, and
@@ -62,8 +63,21 @@ public class WeightedCostApproximator implements LinearApproximator {
 	private Function myCostFunction;
 	private int mySignalLength;
 	private final boolean myQuiet;
+	private float myNoise;
+	private int myNSV;
+	private float myAbsNoiseSD;
+	private transient String myCacheKey;
+	private transient float[] myCost;
+	private float mySolveTime = Float.NaN;
+	private float mySolveResidual = Float.NaN;
 
-	private double[][] myGammaInverse;
+	private double[][] myGammaInverse; //found when first needed (see getGammaInverse())
+
+	private static DecoderCache ourDecoderCache = null;
+
+	//gamma is found in blocks of this many rows and columns, over chunks of this many eval points
+	private static final int ourGammaBlockSize = 64;
+	private static final int ourGammaChunkSize = 1024;
 
 	private static boolean myUseGPU = false;
 	private static boolean canUseGPU;
@@ -115,6 +129,26 @@ public class WeightedCostApproximator implements LinearApproximator {
 		return myGPUErrorMessage;
 	}
 
+	/**
+	 * Sets a cache in which coefficients found by all WeightedCostApproximators are stored.
+	 * Before coefficients are found, the cache is checked for coefficients that were found
+	 * with the same evaluation points, values, cost function, noise, number of singular values
+	 * and target. If all the coefficients needed from an approximator are in the cache, the
+	 * approximator's pseudoinverse is never calculated.
+	 *
+	 * @param cache Cache of coefficients (null for no cache, the default)
+	 */
+	public static void setDecoderCache(DecoderCache cache) {
+		ourDecoderCache = cache;
+	}
+
+	/**
+	 * @return Cache of coefficients (null if there is none)
+	 */
+	public static DecoderCache getDecoderCache() {
+		return ourDecoderCache;
+	}
+
 	private static native boolean hasGPU();
 	
 	@SuppressWarnings("unused")
@@ -156,8 +190,9 @@ public class WeightedCostApproximator implements LinearApproximator {
 		float absNoiseSD = addNoise(myNoisyValues, noise);
 
 		myCostFunction = costFunction;
-
-		calcGamma(absNoiseSD, nSV);
+		myNoise = noise;
+		myNSV = nSV;
+		myAbsNoiseSD = absNoiseSD;
 	}
 	
 	/**
@@ -214,8 +249,9 @@ public class WeightedCostApproximator implements LinearApproximator {
 		float absNoiseSD = addNoise(myNoisyValues, noise);
 
 		myCostFunction = costFunction;
-
-		calcGamma(absNoiseSD, nSV);
+		myNoise = noise;
+		myNSV = nSV;
+		myAbsNoiseSD = absNoiseSD;
 
 	}
 
@@ -254,9 +290,8 @@ public class WeightedCostApproximator implements LinearApproximator {
 
 		if(getUseGPU())
 		{
-			float[][] float_result = new float[myNoisyValues.length][myNoisyValues.length];
+			float[][] float_result = nativeFindGammaPseudoInverse(myNoisyValues, absNoiseSD*absNoiseSD, nSV);
 			myGammaInverse = new double[myNoisyValues.length][myNoisyValues.length];
-			float_result = nativeFindGammaPseudoInverse(myNoisyValues, absNoiseSD*absNoiseSD, nSV);
 
 			for (int i = 0; i < myNoisyValues.length; i++) {
 				for (int j = 0; j < myNoisyValues.length; j++) {
@@ -268,14 +303,27 @@ public class WeightedCostApproximator implements LinearApproximator {
 			if(!myQuiet) {
                 Memory.report("before inverse");
             }
+			long start = System.nanoTime();
 			myGammaInverse = pseudoInverse(gamma, absNoiseSD*absNoiseSD, nSV);
+			mySolveTime = (System.nanoTime() - start) / 1e9f;
+			mySolveResidual = estimateResidual(gamma, myGammaInverse);
 			if(!myQuiet) {
                 Memory.report("after inverse");
+                ourLogger.info("Pseudo-inverse of " + gamma.length + "x" + gamma.length + " gamma took "
+                		+ mySolveTime + " s (relative residual " + mySolveResidual + ")");
             }
 
 		}
 	}
 
+	//the pseudoinverse is expensive, so it is only found if coefficients aren't in the decoder cache
+	private synchronized double[][] getGammaInverse() {
+		if (myGammaInverse == null) {
+			calcGamma(myAbsNoiseSD, myNSV);
+		}
+		return myGammaInverse;
+	}
+
 	private float addNoise(float[][] values, float noise) {
 		float maxValue = 0f;
 		for (float[] value : values) {
@@ -490,31 +538,127 @@ public class WeightedCostApproximator implements LinearApproximator {
         }
 
 		if (result==null) {
+			result = svdPseudoInverse(matrix, minSV, nSV);
+		}
 
-			Matrix m = new Matrix(matrix);
-			SingularValueDecomposition svd = m.svd();
-			Matrix sInv = svd.getS().inverse();
+		return result;
+	}
 
-			int i = 0;
-			while (i < svd.getS().getRowDimension() && svd.getS().get(i, i) > minSV && (nSV <= 0 || i < nSV)) {
-                i++;
-            }
+	/**
+	 * Finds the pseudoinverse from a full singular value decomposition (in process).
+	 *
+	 * @param matrix Any matrix
+	 * @param minSV Smallest singular value to use
+	 * @param nSV Max number of singular values to use
+	 * @return The pseudoinverse of the given matrix
+	 */
+	protected double[][] svdPseudoInverse(double[][] matrix, float minSV, int nSV) {
+		Matrix m = new Matrix(matrix);
+		SingularValueDecomposition svd = m.svd();
+		double[] s = svd.getSingularValues();
+
+		int i = 0;
+		while (i < s.length && s[i] > minSV && (nSV <= 0 || i < nSV)) {
+            i++;
+        }
 
-			if(!myQuiet) {
-                ourLogger.info("Using " + i + " singular values for pseudo-inverse");
-            }
+		if(!myQuiet) {
+            ourLogger.info("Using " + i + " singular values for pseudo-inverse");
+        }
 
-			for (int j = i; j < matrix.length; j++) {
-				sInv.set(j, j, 0d);
+		//V * inverse(S) * U', using only the first i singular values
+		double[][] U = svd.getU().getArray();
+		double[][] V = svd.getV().getArray();
+		double[][] scaledV = new double[V.length][i];
+		for (int r = 0; r < V.length; r++) {
+			for (int k = 0; k < i; k++) {
+				scaledV[r][k] = V[r][k] / s[k];
 			}
+		}
 
-			result = svd.getV().times(sInv).times(svd.getU().transpose()).getArray();
+		double[][] result = new double[V.length][U.length];
+		for (int r = 0; r < V.length; r++) {
+			for (int c = 0; c < U.length; c++) {
+				double sum = 0;
+				for (int k = 0; k < i; k++) {
+					sum += scaledV[r][k] * U[c][k];
+				}
+				result[r][c] = sum;
+			}
+		}
+		return result;
+	}
 
+	/**
+	 * @return Whether logging is turned off
+	 */
+	protected boolean isQuiet() {
+		return myQuiet;
+	}
+
+	/**
+	 * @return Time taken by the most recent pseudoinverse of gamma (seconds), or NaN if the
+	 * 		pseudoinverse hasn't been found (e.g. because all coefficients were in the decoder
+	 * 		cache) or was found on the GPU
+	 */
+	public float getSolveTime() {
+		return mySolveTime;
+	}
+
+	/**
+	 * @return An estimate of the relative error of the pseudoinverse X of gamma G, namely
+	 * 		|G X G v - G v| / |G v| for a random vector v, or NaN if the pseudoinverse hasn't
+	 * 		been found or was found on the GPU. This is zero for an exact pseudoinverse, and
+	 * 		grows as more of gamma is discarded (by regularization or truncation).
+	 */
+	public float getSolveResidual() {
+		return mySolveResidual;
+	}
+
+	//estimates |G X G v - G v| / |G v| for a random v
+	private static float estimateResidual(double[][] gamma, double[][] inverse) {
+		Random random = new Random(0);
+		double[] v = new double[gamma.length];
+		for (int i = 0; i < v.length; i++) {
+			v[i] = random.nextGaussian();
+		}
+		double[] gv = multiply(gamma, v);
+		double[] gxgv = multiply(gamma, multiply(inverse, gv));
+
+		double error = 0;
+		double norm = 0;
+		for (int i = 0; i < gv.length; i++) {
+			error += (gxgv[i] - gv[i]) * (gxgv[i] - gv[i]);
+			norm += gv[i] * gv[i];
 		}
+		return norm > 0 ? (float) Math.sqrt(error / norm) : 0f;
+	}
 
+	private static double[] multiply(double[][] matrix, double[] vector) {
+		double[] result = new double[matrix.length];
+		for (int i = 0; i < matrix.length; i++) {
+			double sum = 0;
+			for (int j = 0; j < vector.length; j++) {
+				sum += matrix[i][j] * vector[j];
+			}
+			result[i] = sum;
+		}
 		return result;
 	}
 
+	/**
+	 * The body of a loop run by parallelFor(...).
+	 */
+	protected interface LoopBody extends ParallelLoop.Body {
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.ParallelLoop#run(int, long, ca.nengo.util.impl.ParallelLoop.Body)
+	 */
+	protected static void parallelFor(int count, long work, LoopBody body) {
+		ParallelLoop.run(count, work, body);
+	}
+
 	/**
 	 * <p>This implementation is adapted from Eliasmith & Anderson, 2003, appendix A.</p>
 	 *
@@ -527,27 +671,7 @@ public class WeightedCostApproximator implements LinearApproximator {
     	if(mySignalLength != -1)
     		System.err.println("Warning, finding coefficients using a function on WeightedCostApproximator initialized with signals");
     	
-		float[] targetValues = new float[myEvalPoints.length];
-		for (int i = 0; i < targetValues.length; i++) {
-			targetValues[i] = target.map(myEvalPoints[i]);
-		}
-
-		float[] upsilon = new float[myNoisyValues.length];
-		for (int i = 0; i < myNoisyValues.length; i++) {
-			for (int j = 0; j < myEvalPoints.length; j++) {
-				upsilon[i] += myNoisyValues[i][j] * targetValues[j] * myCostFunction.map(myEvalPoints[j]);
-			}
-			upsilon[i] = upsilon[i] / myEvalPoints.length;
-		}
-
-		float[] result = new float[myNoisyValues.length];
-		for (int i = 0; i < myNoisyValues.length; i++) {
-			for (int j = 0; j < myNoisyValues.length; j++) {
-				result[i] += myGammaInverse[i][j] * upsilon[j];
-			}
-		}
-
-		return result;
+		return solve(target.multiMap(myEvalPoints));
 	}
     
     /**
@@ -581,42 +705,126 @@ public class WeightedCostApproximator implements LinearApproximator {
     			targetValues[i*mySignalLength+j] = targetSignal[j];
     	}
     	
-    	float[] upsilon = new float[myNoisyValues.length];
+		return solve(targetValues);
+    }
+
+	//finds coefficients for the given target values at the eval points, or gets them from the decoder cache
+	private float[] solve(float[] targetValues) {
+		DecoderCache cache = ourDecoderCache;
+		String key = null;
+		if (cache != null) {
+			key = new DecoderCache.Key().add(getCacheKey()).add(targetValues).toString();
+			float[] cached = cache.get(key);
+			if (cached != null && cached.length == myNoisyValues.length) {
+				return cached;
+			}
+		}
+
+		float[] cost = getCost();
+		float[] upsilon = new float[myNoisyValues.length];
 		for (int i = 0; i < myNoisyValues.length; i++) {
 			for (int j = 0; j < myEvalPoints.length; j++) {
-				upsilon[i] += myNoisyValues[i][j] * targetValues[j] * myCostFunction.map(myEvalPoints[j]);
+				upsilon[i] += myNoisyValues[i][j] * targetValues[j] * cost[j];
 			}
 			upsilon[i] = upsilon[i] / myEvalPoints.length;
 		}
 
+		double[][] gammaInverse = getGammaInverse();
 		float[] result = new float[myNoisyValues.length];
 		for (int i = 0; i < myNoisyValues.length; i++) {
 			for (int j = 0; j < myNoisyValues.length; j++) {
-				result[i] += myGammaInverse[i][j] * upsilon[j];
+				result[i] += gammaInverse[i][j] * upsilon[j];
 			}
 		}
 
+		if (cache != null) {
+			cache.put(key, result);
+		}
 		return result;
-    }
+	}
 
-	private double[][] findGamma() {
+	//cost function at each eval point
+	private float[] getCost() {
+		if (myCost == null) {
+			myCost = myCostFunction.multiMap(myEvalPoints);
+		}
+		return myCost;
+	}
 
-		double[][] result = new double[myNoisyValues.length][];
-//		double[][] nativeResult = new double[myNoisyValues.length][];
+	//hash of everything except the target that determines the coefficients
+	private String getCacheKey() {
+		if (myCacheKey == null) {
+			myCacheKey = new DecoderCache.Key().add(getClass().getName()).add(myEvalPoints).add(myValues)
+				.add(getCost()).add(myNoise).add(myNSV).add(mySignalLength).toString();
+		}
+		return myCacheKey;
+	}
 
-		for (int i = 0; i < result.length; i++) {
-			result[i] = new double[myNoisyValues.length];
-			for (int j = 0; j < result[i].length; j++) {
-				for (int k = 0; k < myEvalPoints.length; k++) {
-					result[i][j] += myNoisyValues[i][k] * myNoisyValues[j][k] * myCostFunction.map(myEvalPoints[k]);
+	/**
+	 * Finds GAMMA (see findCoefficients(...)). GAMMA is symmetric, so only blocks on and above
+	 * the diagonal are calculated, and these are spread over multiple threads. Within a block,
+	 * eval points are processed in chunks that fit in cache.
+	 *
+	 * @return GAMMA_ij = < cost(x) a_i(x) a_j(x) >, where a are the noisy values
+	 */
+	double[][] findGamma() {
+		final int n = myNoisyValues.length;
+		final int m = myEvalPoints.length;
+
+		final float[] cost = getCost();
+
+		final double[][] result = new double[n][n];
+		final int numBlocks = (n + ourGammaBlockSize - 1) / ourGammaBlockSize;
+		int numTasks = numBlocks * (numBlocks + 1) / 2;
+
+		parallelFor(numTasks, (long) n * n * m / 2, new LoopBody() {
+			public void run(int task) {
+				//map task index to a block (row, col) with col >= row
+				int row = 0;
+				int rowTasks = numBlocks;
+				while (task >= rowTasks) {
+					task -= rowTasks;
+					row++;
+					rowTasks--;
 				}
-				result[i][j] = result[i][j] / myEvalPoints.length;
+				addGammaBlock(result, cost, row * ourGammaBlockSize, (row + task) * ourGammaBlockSize);
+			}
+		});
+
+		for (int i = 0; i < n; i++) {
+			for (int j = i; j < n; j++) {
+				result[i][j] = result[i][j] / m;
+				result[j][i] = result[i][j];
 			}
 		}
 
 		return result;
 	}
 
+	//adds the block of gamma (without scaling) with top-left corner (startRow, startCol) to result
+	private void addGammaBlock(double[][] result, float[] cost, int startRow, int startCol) {
+		int n = myNoisyValues.length;
+		int m = cost.length;
+		int endRow = Math.min(startRow + ourGammaBlockSize, n);
+		int endCol = Math.min(startCol + ourGammaBlockSize, n);
+
+		for (int startK = 0; startK < m; startK += ourGammaChunkSize) {
+			int endK = Math.min(startK + ourGammaChunkSize, m);
+			for (int i = startRow; i < endRow; i++) {
+				float[] a = myNoisyValues[i];
+				double[] resultRow = result[i];
+				for (int j = Math.max(i, startCol); j < endCol; j++) {
+					float[] b = myNoisyValues[j];
+					double sum = 0;
+					for (int k = startK; k < endK; k++) {
+						sum += a[k] * b[k] * cost[k];
+					}
+					resultRow[j] += sum;
+				}
+			}
+		}
+	}
+
 	@Override
 	public LinearApproximator clone() throws CloneNotSupportedException {
 		WeightedCostApproximator result = (WeightedCostApproximator) super.clone();
@@ -625,9 +833,11 @@ public class WeightedCostApproximator implements LinearApproximator {
 		result.myEvalPoints = MU.clone(myEvalPoints);
 		result.myNoisyValues = MU.clone(myNoisyValues);
 
-		result.myGammaInverse = new double[myGammaInverse.length][];
-		for (int i = 0; i < myGammaInverse.length; i++) {
-			result.myGammaInverse[i] = myGammaInverse[i].clone();
+		if (myGammaInverse != null) {
+			result.myGammaInverse = new double[myGammaInverse.length][];
+			for (int i = 0; i < myGammaInverse.length; i++) {
+				result.myGammaInverse[i] = myGammaInverse[i].clone();
+			}
 		}
 
 		return result;
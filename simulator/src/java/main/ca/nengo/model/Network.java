@@ -103,6 +103,28 @@ public interface Network extends Node, Probeable {
 	 */
 	public void removeProjection(Termination termination) throws StructuralException;
 
+	/**
+	 * Starts a batch of structural changes, e.g. adding many Nodes and Projections. Until the
+	 * matching endUpdate(), the Network's Simulator isn't re-initialized and listeners aren't
+	 * notified after each change, so building a large Network takes time linear in its size.
+	 * (getSimulator() brings the Simulator up to date if it is needed during a batch.) Batches
+	 * can be nested, in which case only the outermost one has an effect.
+	 */
+	public void beginUpdate();
+
+	/**
+	 * Ends a batch of changes started with beginUpdate(). At the end of the outermost batch, if
+	 * anything has changed, the Simulator is initialized once and listeners are notified once.
+	 *
+	 * @throws IllegalStateException if no batch has been started
+	 */
+	public void endUpdate();
+
+	/**
+	 * @return True if a batch of changes has been started with beginUpdate() and not yet ended
+	 */
+	public boolean isUpdating();
+
 	/**
 	 * Declares the given Origin as available for connection outside the Network
 	 * via getOrigins(). This Origin should not be connected within	this Network.
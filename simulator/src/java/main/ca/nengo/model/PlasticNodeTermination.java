@@ -39,7 +39,8 @@ package ca.nengo.model;
 public interface PlasticNodeTermination extends Termination {
 
     /**
-     * @return List of synaptic weights for each input channel
+     * @return List of synaptic weights for each input channel. This is the Termination's own
+     *      array rather than a copy, so that learning rules can change weights in place.
      */
     public float[] getWeights();
 
@@ -38,6 +38,8 @@ import java.util.Properties;
 
 import org.apache.log4j.Logger;
 
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.RandomStream;
 import ca.nengo.model.Ensemble;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
@@ -73,11 +75,14 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 	private Map<String, List<Integer>> myStateNames; // for Probeable
 	private SimulationMode myMode;
 	private transient SpikePatternImpl mySpikePattern;
+	private transient RandomStream myNodeStreamParent;
+	private transient RandomStream[] myNodeStreams;
 	private boolean myCollectSpikesFlag;
 	private int myCollectSpikesRatio = 1;
 	private String myDocumentation;
 	private transient List<VisiblyMutable.Listener> myListeners;
-	private Node[] myNodes;
+	private volatile Node[] myNodes; //read without the lock by getNodes()
+	private int myNodeCount;
 	private Map<String, Origin> myOrigins;
 	private Map<String, EnsembleTermination> myTerminations;
 
@@ -90,6 +95,7 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 	public AbstractEnsemble(String name, Node[] nodes) {
 		myName = name;
 		myNodes = nodes;
+		myNodeCount = nodes.length;
 		mySpikePattern = new SpikePatternImpl(nodes.length);
 		myCollectSpikesFlag = false;
 
@@ -121,6 +127,7 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 	 */
     public void redefineNodes(Node[] nodes) {
 		myNodes=nodes;
+		myNodeCount = nodes.length;
 		mySpikePattern = new SpikePatternImpl(myNodes.length);
 		//setupNodeRunners(numNodeRunners);
 
@@ -146,9 +153,76 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 	 * @see ca.nengo.model.Ensemble#getNodes()
 	 */
     public Node[] getNodes() {
+		Node[] nodes = myNodes;
+		if (nodes == null) {
+			nodes = restoreNodes();
+		}
+		return nodes;
+	}
+
+	private synchronized Node[] restoreNodes() {
+		if (myNodes == null) {
+			Node[] nodes = makeNodes();
+			if (nodes.length != myNodeCount) {
+				throw new IllegalStateException("Expected " + myNodeCount + " Nodes but " + nodes.length + " were made");
+			}
+			myStateNames = findStateNames(nodes);
+			myNodes = nodes;
+		}
 		return myNodes;
 	}
 
+	/**
+	 * @return Number of Nodes in the Ensemble (this doesn't make released Nodes)
+	 */
+	public int getNodeCount() {
+		return myNodeCount;
+	}
+
+	/**
+	 * @return True if the Node objects have been released (see releaseNodes())
+	 */
+	public boolean areNodesReleased() {
+		return myNodes == null;
+	}
+
+	/**
+	 * <p>Drops this Ensemble's references to its Node objects, so that they can be garbage
+	 * collected. This is for subclasses that can run the Ensemble without the Node objects and
+	 * that keep the Nodes' parameters and state in a more compact form. The Nodes are made again
+	 * with makeNodes() the next time getNodes() is called (e.g. when a Node is probed or displayed).</p>
+	 *
+	 * <p>EnsembleOrigins find the new Node Origins when they are next used. Ensembles with
+	 * EnsembleTerminations can't release their Nodes, because the Terminations are bound to the
+	 * Nodes' Terminations.</p>
+	 *
+	 * @throws IllegalStateException If the Ensemble has EnsembleTerminations
+	 */
+	protected synchronized void releaseNodes() {
+		if (!myTerminations.isEmpty()) {
+			throw new IllegalStateException("Nodes of an Ensemble with Terminations can't be released");
+		}
+		if (myNodes != null) {
+			for (Origin origin : myOrigins.values()) {
+				if (origin instanceof EnsembleOrigin) {
+					((EnsembleOrigin) origin).releaseNodeOrigins();
+				}
+			}
+			myNodes = null;
+			myStateNames = null;
+		}
+	}
+
+	/**
+	 * Makes Nodes to replace those dropped by releaseNodes(), with the same parameters and state.
+	 * Subclasses that release their Nodes must override this.
+	 *
+	 * @return New Nodes, the same number as were released
+	 */
+	protected Node[] makeNodes() {
+		throw new IllegalStateException("The Nodes of this Ensemble can't be made again after they are released");
+	}
+
 	/**
 	 * When this method is called, setMode(...) is called on each Node in the Ensemble.
 	 * Each Node will then run in the mode that is closest to the requested mode (this
@@ -158,10 +232,13 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 	 * @see ca.nengo.model.Ensemble#setMode(ca.nengo.model.SimulationMode)
 	 */
     public void setMode(SimulationMode mode) {
+		boolean changed = mode != myMode;
 		myMode = mode;
 
-		for (Node myNode : myNodes) {
-			myNode.setMode(mode);
+		if (myNodes != null || changed) { //released Nodes are made again in the new mode
+			for (Node myNode : getNodes()) {
+				myNode.setMode(mode);
+			}
 		}
 		
 		// Added for issue #310: Setting mode can now be a visible change
@@ -186,16 +263,36 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 	 * @see ca.nengo.model.Ensemble#run(float, float)
 	 */
     public void run(float startTime, float endTime) throws SimulationException {
+		initSpikePattern();
+		runNodes(startTime, endTime);
+		recordSpikes(0, myNodeCount, endTime);
+	}
+
+	/**
+	 * Makes the spike pattern if it doesn't exist (e.g. after deserialization). Must be called
+	 * before recordSpikes(...).
+	 */
+	protected void initSpikePattern() {
 		if (mySpikePattern == null) {
-			mySpikePattern = new SpikePatternImpl(myNodes.length);
+			mySpikePattern = new SpikePatternImpl(myNodeCount);
 		}
+	}
 
-		for (int i = 0; i < myNodes.length; i++) {
-			myNodes[i].run(startTime, endTime);
-
-			if (myCollectSpikesFlag && (myCollectSpikesRatio == 1 || i % myCollectSpikesRatio == 0)) {
+	/**
+	 * Adds spikes of a range of Nodes to the spike pattern, if spikes are being collected.
+	 * Disjoint ranges can be collected concurrently.
+	 *
+	 * @param start Index of the first Node in the range
+	 * @param end Index after the last Node in the range
+	 * @param endTime simulation time at which the step ended
+	 * @throws SimulationException if a Node's output can't be read
+	 */
+	protected void recordSpikes(int start, int end, float endTime) throws SimulationException {
+		Node[] nodes = myCollectSpikesFlag ? getNodes() : null;
+		for (int i = start; myCollectSpikesFlag && i < end; i++) {
+			if (myCollectSpikesRatio == 1 || i % myCollectSpikesRatio == 0) {
 				try {
-					InstantaneousOutput output = myNodes[i].getOrigin(Neuron.AXON).getValues();
+					InstantaneousOutput output = nodes[i].getOrigin(Neuron.AXON).getValues();
 					if (output instanceof PreciseSpikeOutput) {
 						PreciseSpikeOutput precise=((PreciseSpikeOutput) output);
 						if (precise.getValues()[0]) {
@@ -211,21 +308,90 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 		}
 	}
 
+	/**
+	 * Adds a spike to the spike pattern, if spikes are being collected from the given Node.
+	 * For subclasses that override recordSpikes(...).
+	 *
+	 * @param index Index of the Node that spiked
+	 * @param time Time of the spike
+	 */
+	protected void recordSpike(int index, float time) {
+		if (myCollectSpikesFlag && (myCollectSpikesRatio == 1 || index % myCollectSpikesRatio == 0)) {
+			mySpikePattern.addSpike(index, time);
+		}
+	}
+
+	/**
+	 * Runs the Nodes of this Ensemble (but does not collect spikes from them). Subclasses
+	 * can override this to run the Nodes in a different way, provided that Node outputs
+	 * are updated as they would be by running each Node.
+	 *
+	 * @param startTime simulation time at which running starts
+	 * @param endTime simulation time at which running ends
+	 * @throws SimulationException if a Node can not be run
+	 */
+	protected void runNodes(float startTime, float endTime) throws SimulationException {
+		Node[] nodes = getNodes();
+		RandomStream[] streams = getNodeStreams();
+		if (streams == null) {
+			for (Node node : nodes) {
+				node.run(startTime, endTime);
+			}
+		} else {
+			RandomStream parent = PDFTools.getStream();
+			try {
+				for (int i = 0; i < nodes.length; i++) {
+					PDFTools.setStream(streams[i]);
+					nodes[i].run(startTime, endTime);
+				}
+			} finally {
+				PDFTools.setStream(parent);
+			}
+		}
+	}
+
+	/**
+	 * Each Node has its own random stream, split by index from the Ensemble's stream, so that
+	 * the Nodes' random samples don't depend on the order in which they are run (e.g. when
+	 * they are run in ranges by different threads).
+	 *
+	 * @return A random stream for each Node, split from the calling thread's current stream
+	 * 		(see PDFTools.setStream(...)), or null if there is no current stream
+	 */
+	protected RandomStream[] getNodeStreams() {
+		RandomStream parent = PDFTools.getStream();
+		if (parent == null) {
+			return null;
+		}
+		if (parent != myNodeStreamParent || myNodeStreams.length != myNodeCount) {
+			RandomStream[] streams = new RandomStream[myNodeCount];
+			for (int i = 0; i < streams.length; i++) {
+				streams[i] = parent.split(i);
+			}
+			myNodeStreams = streams;
+			myNodeStreamParent = parent;
+		}
+		return myNodeStreams;
+	}
+
 	/**
 	 * Resets each Node in this Ensemble.
 	 *
 	 * @see ca.nengo.model.Resettable#reset(boolean)
 	 */
     public void reset(boolean randomize) {
-		for (Node myNode : myNodes) {
-			myNode.reset(randomize);
+		Node[] nodes = myNodes;
+		if (nodes != null) { //released Nodes are reset by the subclass
+			for (Node myNode : nodes) {
+				myNode.reset(randomize);
+			}
 		}
 		for (Termination t : myTerminations.values()) {
 			t.reset(randomize);
 		}
 
 
-		mySpikePattern = new SpikePatternImpl(myNodes.length);
+		mySpikePattern = new SpikePatternImpl(myNodeCount);
 	}
 
 	/**
@@ -342,10 +508,10 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 	public void setSpikePattern(float[] spikes, float endTime) {
 		if(myCollectSpikesFlag) {
 			if (mySpikePattern == null) {
-				mySpikePattern = new SpikePatternImpl(myNodes.length);
+				mySpikePattern = new SpikePatternImpl(myNodeCount);
 			}
 
-			for(int i = 0; i < myNodes.length; i++) {
+			for(int i = 0; i < myNodeCount; i++) {
 
 				if(myCollectSpikesRatio == 1 || i % myCollectSpikesRatio == 0) {
 					if(spikes[i] != 0.0f) {
@@ -363,24 +529,25 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 	 * @see ca.nengo.model.Probeable#getHistory(java.lang.String)
 	 */
     public TimeSeries getHistory(String stateName) throws SimulationException {
+		Node[] nodes = getNodes();
 		if (!myStateNames.containsKey(stateName)) {
 			throw new SimulationException("The state " + stateName + " is unknown");
 		}
 
 		List<Integer> nodeNumbers = myStateNames.get(stateName);
-		float[] firstNodeTimes = ((Probeable) myNodes[nodeNumbers.get(0).intValue()]).getHistory(stateName).getTimes();
+		float[] firstNodeTimes = ((Probeable) nodes[nodeNumbers.get(0).intValue()]).getHistory(stateName).getTimes();
 
 		float[] times = new float[0];
 		float[][] values = new float[0][];
-		Units[] units = Units.uniform(Units.UNK, myNodes.length);
+		Units[] units = Units.uniform(Units.UNK, nodes.length);
 
 		if (firstNodeTimes.length >= 1) {
 			times = new float[]{firstNodeTimes[firstNodeTimes.length - 1]};
 
-			values = new float[][]{new float[myNodes.length]};
-			for (int i = 0; i < myNodes.length; i++) {
+			values = new float[][]{new float[nodes.length]};
+			for (int i = 0; i < nodes.length; i++) {
 				if (nodeNumbers.contains(Integer.valueOf(i))) {
-					TimeSeries history = ((Probeable) myNodes[i]).getHistory(stateName);
+					TimeSeries history = ((Probeable) nodes[i]).getHistory(stateName);
 					int index = history.getTimes().length - 1;
 					values[0][i] = history.getValues()[index][0];
 					if (i == 0) {
@@ -397,6 +564,7 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 	 * @see ca.nengo.model.Probeable#listStates()
 	 */
     public Properties listStates() {
+		getNodes();
 		Properties result = new Properties();
 		Iterator<String> keys = myStateNames.keySet().iterator();
 		while (keys.hasNext()) {
@@ -585,6 +753,8 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 		/////////////////////////////////////////////////////////////
 		// undo unintentional object.clone() side effects
 		result.myListeners = new ArrayList<Listener>(3);
+		result.myNodeStreamParent = null;
+		result.myNodeStreams = null;
 
 		/////////////////////////////////////////////////////////////
 		// manually clone all the necessary sub-components
@@ -109,6 +109,29 @@ public class EnsembleImpl extends AbstractEnsemble implements ExpandableNode {
 		return result.toArray(new ExpandableNode[0]);
 	}
 
+	/**
+	 * @return The Nodes of this Ensemble that are ExpandableNodes
+	 */
+	protected ExpandableNode[] getExpandableNodes() {
+		if (myExpandableNodes == null) {
+			myExpandableNodes = findExpandable(getNodes());
+		}
+		return myExpandableNodes;
+	}
+
+	/**
+	 * @throws IllegalStateException If Terminations have been added to the Nodes
+	 * @see ca.nengo.model.impl.AbstractEnsemble#releaseNodes()
+	 */
+	@Override
+	protected synchronized void releaseNodes() {
+		if (!myExpandedTerminations.isEmpty()) {
+			throw new IllegalStateException("Nodes with expanded Terminations can't be released");
+		}
+		super.releaseNodes();
+		myExpandableNodes = null;
+	}
+
     /**
      * @see ca.nengo.model.Node#getTermination(java.lang.String)
      */
@@ -150,20 +173,21 @@ public class EnsembleImpl extends AbstractEnsemble implements ExpandableNode {
 	 */
     public synchronized Termination addTermination(String name, float[][] weights, float tauPSC, boolean modulatory) throws StructuralException {
 		//TODO: check name for duplicate
-		if (myExpandableNodes.length != weights.length) {
+		ExpandableNode[] expandableNodes = getExpandableNodes();
+		if (expandableNodes.length != weights.length) {
 			throw new StructuralException(weights.length + " sets of weights given for "
-					+ myExpandableNodes.length + " expandable nodes");
+					+ expandableNodes.length + " expandable nodes");
 		}
 
 		int dimension = weights[0].length;
 
-		Termination[] components = new Termination[myExpandableNodes.length];
-		for (int i = 0; i < myExpandableNodes.length; i++) {
+		Termination[] components = new Termination[expandableNodes.length];
+		for (int i = 0; i < expandableNodes.length; i++) {
 			if (weights[i].length != dimension) {
 				throw new StructuralException("Equal numbers of weights are needed for termination onto each node");
 			}
 
-			components[i] = myExpandableNodes[i].addTermination(name, new float[][]{weights[i]}, tauPSC, modulatory);
+			components[i] = expandableNodes[i].addTermination(name, new float[][]{weights[i]}, tauPSC, modulatory);
 		}
 
 		EnsembleTermination result = new EnsembleTermination(this, name, components);
@@ -182,7 +206,7 @@ public class EnsembleImpl extends AbstractEnsemble implements ExpandableNode {
     public synchronized Termination removeTermination(String name) throws StructuralException {
 		if (myExpandedTerminations.containsKey(name)) {
 		    Termination result = myExpandedTerminations.remove(name);
-			for (ExpandableNode myExpandableNode : myExpandableNodes) {
+			for (ExpandableNode myExpandableNode : getExpandableNodes()) {
 				myExpandableNode.removeTermination(name);
 			}
 
@@ -198,16 +222,17 @@ public class EnsembleImpl extends AbstractEnsemble implements ExpandableNode {
 	 * @see ca.nengo.model.ExpandableNode#getDimension()
 	 */
     public int getDimension() {
-		return myExpandableNodes.length;
+		return getExpandableNodes().length;
 	}
 
 	@Override
 	public EnsembleImpl clone() throws CloneNotSupportedException {
 		EnsembleImpl result = (EnsembleImpl) super.clone();
 
-		result.myExpandableNodes = new ExpandableNode[myExpandableNodes.length];
-		for (int i = 0; i < myExpandableNodes.length; i++) {
-			result.myExpandableNodes[i] = myExpandableNodes[i].clone();
+		ExpandableNode[] expandableNodes = getExpandableNodes();
+		result.myExpandableNodes = new ExpandableNode[expandableNodes.length];
+		for (int i = 0; i < expandableNodes.length; i++) {
+			result.myExpandableNodes[i] = expandableNodes[i].clone();
 		}
 		
 		result.myExpandedTerminations = new LinkedHashMap<String, Termination>(10);
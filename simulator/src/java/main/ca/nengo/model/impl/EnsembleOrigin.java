@@ -53,6 +53,7 @@ public class EnsembleOrigin implements Origin {
 	
 	private Node myNode;
 	private Origin[] myNodeOrigins;
+	private int myDimension;
 	private String myName;
 	private boolean myRequiredOnCPU;
 	
@@ -66,6 +67,7 @@ public class EnsembleOrigin implements Origin {
 	public EnsembleOrigin(Node node, String name, Origin[] nodeOrigins) {
 		myNode = node;
 		myNodeOrigins = nodeOrigins;
+		myDimension = nodeOrigins.length;
 		myName = name;
 	}
 
@@ -80,7 +82,31 @@ public class EnsembleOrigin implements Origin {
 	 * @see ca.nengo.model.Origin#getDimensions()
 	 */
 	public int getDimensions() {
-		return myNodeOrigins.length;
+		return myDimension;
+	}
+
+	/**
+	 * Drops the references to the Node Origins, when the parent Ensemble releases its Nodes. They
+	 * are found again on the parent's Nodes when they are next needed.
+	 */
+	void releaseNodeOrigins() {
+		myNodeOrigins = null;
+	}
+
+	private Origin[] getNodeOrigins() {
+		if (myNodeOrigins == null) {
+			Node[] nodes = ((Ensemble) myNode).getNodes();
+			Origin[] origins = new Origin[nodes.length];
+			try {
+				for (int i = 0; i < nodes.length; i++) {
+					origins[i] = nodes[i].getOrigin(myName);
+				}
+			} catch (StructuralException e) {
+				throw new IllegalStateException("Remade Nodes don't have Origin " + myName, e);
+			}
+			myNodeOrigins = origins;
+		}
+		return myNodeOrigins;
 	}
 
 	/**
@@ -93,6 +119,7 @@ public class EnsembleOrigin implements Origin {
 	 */
 	public InstantaneousOutput getValues() throws SimulationException {
 		InstantaneousOutput result = null;
+		Origin[] myNodeOrigins = getNodeOrigins();
 		
 		Units units = myNodeOrigins[0].getValues().getUnits(); //must be same for all
 		
@@ -108,7 +135,7 @@ public class EnsembleOrigin implements Origin {
 	}
 	
 	public void setValues(InstantaneousOutput values) {
-		for(Origin origin : myNodeOrigins){
+		for(Origin origin : getNodeOrigins()){
 			origin.setValues(values);
 		}
 	}
@@ -192,10 +219,11 @@ public class EnsembleOrigin implements Origin {
 	 */
 	@Override
 	public EnsembleOrigin clone() throws CloneNotSupportedException {
-		return new EnsembleOrigin(myNode, myName, myNodeOrigins);
+		return new EnsembleOrigin(myNode, myName, getNodeOrigins());
 	}
 	
 	public EnsembleOrigin clone(Ensemble ensemble) throws CloneNotSupportedException {
+		Origin[] myNodeOrigins = getNodeOrigins();
 		EnsembleOrigin result = new EnsembleOrigin(myNode, myName, new Origin[myNodeOrigins.length]);
 		
 		// get origins for nodes in new ensemble
@@ -121,7 +121,7 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
     }
 
     /**
-     * @return List of synaptic weights for each input channel
+     * @see ca.nengo.model.PlasticNodeTermination#getWeights()
      */
     public float[] getWeights() {
         return myWeights;
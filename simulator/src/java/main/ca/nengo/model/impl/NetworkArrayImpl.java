@@ -111,9 +111,14 @@ public class NetworkArrayImpl extends NetworkImpl {
 		
 		myOrigins = new HashMap<String, Origin>(10);
 		
-		for (int i = 0; i < nodes.length; i++) {
-			this.addNode(nodes[i]);
-			myNeurons += nodes[i].getNodeCount();
+		beginUpdate();
+		try {
+			for (int i = 0; i < nodes.length; i++) {
+				this.addNode(nodes[i]);
+				myNeurons += nodes[i].getNodeCount();
+			}
+		} finally {
+			endUpdate();
 		}
 		createEnsembleOrigin("X");
 		this.setUseGPU(true);
@@ -582,6 +587,16 @@ public class NetworkArrayImpl extends NetworkImpl {
 			}
 			
 		}
+		
+		// Origin.setValues(...) is called with InstantaneousOutputs (e.g. by NEFGPUInterface), so real
+		// values must be passed on to the ensembles' origins here too
+		@Override
+		public void setValues(InstantaneousOutput values) {
+			if(values instanceof RealOutput)
+				setValues((RealOutput) values);
+			else
+				super.setValues(values);
+		}
 
 		public InstantaneousOutput getValues() throws SimulationException {
 			InstantaneousOutput v0 = myOrigins[0].getValues();
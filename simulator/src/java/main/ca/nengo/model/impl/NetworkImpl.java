@@ -29,6 +29,8 @@ package ca.nengo.model.impl;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -113,6 +115,11 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 
     private transient Collection<StepListener> myStepListeners;
 
+	//batches of changes (see beginUpdate())
+	private transient int myUpdateDepth;
+	private transient boolean myInitializePending;
+	private transient boolean myChangePending;
+
 
 	/**
 	 * Sets up a network's data structures
@@ -143,17 +150,31 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 	 * @param simulator Simulator with which to run this Network
 	 */
 	public void setSimulator(Simulator simulator) {
+		if (mySimulator != null) {
+			mySimulator.removeChangeListener(this);
+		}
 		mySimulator = simulator;
 		mySimulator.initialize(this);
+		mySimulator.addChangeListener(this);
+		myInitializePending = false;
 	}
 
 	/**
+	 * Changes to the simulator (e.g. added or removed Probes) are passed on as changes to this
+	 * Network, so that the simulator of an enclosing Network, which runs this one as part of its
+	 * plan, sees them.
+	 *
 	 * @return Simulator used to run this Network (a LocalSimulator by default)
 	 */
 	public Simulator getSimulator() {
 		if (mySimulator == null) {
 			mySimulator = new LocalSimulator();
 			mySimulator.initialize(this);
+			mySimulator.addChangeListener(this);
+			myInitializePending = false;
+		} else if (myInitializePending) {
+			myInitializePending = false;
+			mySimulator.initialize(this);
 		}
 		return mySimulator;
 	}
@@ -203,8 +224,7 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 		myNodeMap.put(node.getName(), node);
 		node.addChangeListener(this);
 
-		getSimulator().initialize(this);
-		fireVisibleChangeEvent();
+		structureChanged();
 	}
 
 	/**
@@ -428,8 +448,7 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 			node.removeChangeListener(this);
 //			VisiblyMutableUtils.nodeRemoved(this, node, myListeners);
 			
-			getSimulator().initialize(this);
-			fireVisibleChangeEvent();
+			structureChanged();
 		} else {
 			throw new StructuralException("No Node named " + name + " in this Network");
 		}
@@ -447,8 +466,7 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 		} else {
 			Projection result = new ProjectionImpl(origin, termination, this);
 			myProjectionMap.put(termination, result);
-			getSimulator().initialize(this);
-			fireVisibleChangeEvent();
+			structureChanged();
 	
 			return result;
 		}
@@ -478,8 +496,7 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 			throw new StructuralException("The Network contains no Projection ending on the specified Termination");
 		}
 
-		getSimulator().initialize(this);
-		fireVisibleChangeEvent();
+		structureChanged();
 	}
 
 	/**
@@ -572,6 +589,10 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 			Node n = myNodeMap.get(it.next());
 			n.reset(randomize);
 		}
+
+		if (mySimulator instanceof LocalSimulator) {
+			((LocalSimulator) mySimulator).resetRandomStreams();
+		}
 	}
 
 	/**
@@ -1109,7 +1130,56 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 	}
 
 	private void fireVisibleChangeEvent() {
-		VisiblyMutableUtils.changed(this, myListeners);
+		if (myUpdateDepth > 0) {
+			myChangePending = true;
+		} else {
+			VisiblyMutableUtils.changed(this, myListeners);
+		}
+	}
+
+	//re-initializes the simulator after Nodes or Projections change, unless in a batch of changes
+	private void structureChanged() {
+		if (myUpdateDepth > 0) {
+			myInitializePending = true;
+			myChangePending = true;
+		} else {
+			getSimulator().initialize(this);
+			fireVisibleChangeEvent();
+		}
+	}
+
+	/**
+	 * @see ca.nengo.model.Network#beginUpdate()
+	 */
+	public void beginUpdate() {
+		myUpdateDepth++;
+	}
+
+	/**
+	 * @see ca.nengo.model.Network#endUpdate()
+	 */
+	public void endUpdate() {
+		if (myUpdateDepth == 0) {
+			throw new IllegalStateException("No update has been started on Network " + myName);
+		}
+
+		myUpdateDepth--;
+		if (myUpdateDepth == 0) {
+			if (myInitializePending) {
+				getSimulator(); //initializes it
+			}
+			if (myChangePending) {
+				myChangePending = false;
+				fireVisibleChangeEvent();
+			}
+		}
+	}
+
+	/**
+	 * @see ca.nengo.model.Network#isUpdating()
+	 */
+	public boolean isUpdating() {
+		return myUpdateDepth > 0;
 	}
 
     public String toScript(HashMap<String, Object> scriptData) throws ScriptGenException {
@@ -1141,6 +1211,9 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 	@Override
 	public Network clone() throws CloneNotSupportedException {
 		NetworkImpl result = (NetworkImpl) super.clone();
+		result.myUpdateDepth = 0;
+		result.myInitializePending = false;
+		result.myChangePending = false;
 
 		result.myNodeMap = new HashMap<String, Node>(10);
 		for (Node oldNode : myNodeMap.values()) {
@@ -1213,6 +1286,7 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 		//TODO: take another look at Probe design (maybe Probeables reference Probes?)
 		result.mySimulator = mySimulator.clone();
 		result.mySimulator.initialize(result);
+		result.mySimulator.addChangeListener(result);
 		Probe[] oldProbes = mySimulator.getProbes();
 		for (Probe oldProbe : oldProbes) {
 			Probeable target = oldProbe.getTarget();
@@ -1249,6 +1323,17 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 		return result;
 	}
 
+	//listeners aren't serialized, so this Network starts listening to its Nodes and simulator again
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		for (Node node : myNodeMap.values()) {
+			node.addChangeListener(this);
+		}
+		if (mySimulator != null) {
+			mySimulator.addChangeListener(this);
+		}
+	}
+
 	private static Object tryToClone(Cloneable o) {
 		Object result = null;
 
@@ -458,12 +458,22 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
 	@Override
     public void run(float startTime, float endTime) throws SimulationException {
 		super.run(startTime, endTime);
+		runDecodedOrigins(startTime, endTime);
+		setTime(endTime);
+	}
 
+	/**
+	 * Runs the DecodedOrigins, after the Nodes have been run. Subclasses can override this to
+	 * decode Node outputs in a different way.
+	 *
+	 * @param startTime simulation time at which running starts
+	 * @param endTime simulation time at which running ends
+	 * @throws SimulationException if a DecodedOrigin can not be run
+	 */
+	protected void runDecodedOrigins(float startTime, float endTime) throws SimulationException {
 		for (DecodedOrigin o : myDecodedOrigins.values()) {
             o.run(null, startTime, endTime);
         }
-
-		setTime(endTime);
 	}
 
 	/**
@@ -27,6 +27,8 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.nef.impl;
 
+import java.util.Arrays;
+
 import org.apache.log4j.Logger;
 
 import ca.nengo.config.ConfigUtil;
@@ -36,6 +38,7 @@ import ca.nengo.config.impl.ConfigurationImpl;
 import ca.nengo.dynamics.DynamicalSystem;
 import ca.nengo.dynamics.Integrator;
 import ca.nengo.dynamics.impl.EulerIntegrator;
+import ca.nengo.dynamics.impl.LTISystem;
 import ca.nengo.math.Function;
 import ca.nengo.math.LinearApproximator;
 import ca.nengo.math.impl.FixedSignalFunction;
@@ -79,7 +82,8 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 
 	private Node myNode; //parent node
 	private String myName;
-	private Node[] myNodes;
+	private Node[] myNodes; //null if the parent ensemble has released its nodes
+	private int myNodeCount; //number of nodes while they are released
 	private String myNodeOrigin;
 	private Function[] myFunctions;
 	private float[][] myDecoders;
@@ -91,6 +95,7 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	private DynamicalSystem[] mySTPDynamics;
 	private Integrator myIntegrator;
 	private float[] mySTPHistory;
+	private transient float[][] myRangeValues; //partial sums of ranges of Nodes (see startRanges(...))
 	private float myTime;
 	private boolean myRequiredOnCPU;
 	private ExpressModel myExpressModel;
@@ -297,7 +302,7 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 			}
 		}
 
-		mySTPHistory = new float[myNodes.length];
+		mySTPHistory = new float[getNodeCount()];
 	}
 
 	private static float[][] findDecoders(Node[] nodes, Function[] functions, LinearApproximator approximator)  {
@@ -389,13 +394,13 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	 */
 	public void setSTPDynamics(DynamicalSystem dynamics) {
 		if (dynamics == null) {
-			mySTPDynamics = new DynamicalSystem[myNodes.length];
+			mySTPDynamics = new DynamicalSystem[getNodeCount()];
 		} else {
 			if (dynamics.getInputDimension() != 1 || dynamics.getOutputDimension() != 1) {
 				throw new IllegalArgumentException("Short-term-plasticity dynamics must be single-input-single-output");
 			}
 
-			mySTPDynamics = new DynamicalSystem[myNodes.length];
+			mySTPDynamics = new DynamicalSystem[getNodeCount()];
 			try {
 				mySTPDynamicsTemplate = dynamics.clone();
 				for (int i = 0; i < mySTPDynamics.length; i++) {
@@ -449,9 +454,8 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 		}
 
 		float[] values = new float[myFunctions.length];
-		float stepSize = endTime - startTime;
 
-		mySTPHistory = new float[myNodes.length];
+		mySTPHistory = new float[getNodeCount()];
 		if (myMode == SimulationMode.DIRECT) {
 			for (int i = 0; i < values.length; i++) {
 				values[i] = myFunctions[i].map(state);
@@ -468,30 +472,153 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 			
 			values = myExpressModel.getOutput(startTime, state, values);
 		} else {
-			for (int i = 0; i < myNodes.length; i++) {
-				try {
-					InstantaneousOutput o = myNodes[i].getOrigin(myNodeOrigin).getValues();
-
-					float val = 0;
-					if (o instanceof SpikeOutput) {
-						val = ((SpikeOutput) o).getValues()[0] ? 1f / stepSize : 0f;
-					} else if (o instanceof RealOutput) {
-						val = ((RealOutput) o).getValues()[0];
-					} else {
-						throw new Error("Node output is of type " + o.getClass().getName()
-							+ ". DecodedOrigin can only deal with RealOutput and SpikeOutput, so it apparently has to be updated");
-					}
-
-					float[] decoder = getDynamicDecoder(i, val, startTime, endTime);
-					for (int j = 0; j < values.length; j++) {
-						values[j] += val * decoder[j];
-					}
-				} catch (StructuralException e) {
-					throw new SimulationException(e);
+			decode(values, 0, getNodeCount(), startTime, endTime);
+		}
+		
+		setOutput(values, startTime, endTime);
+	}
+
+	/**
+	 * <p>An alternative to run(...) for Nodes that all have SpikeOutputs, in which the parent
+	 * provides a list of the Nodes that spiked in the current step. Only the decoders of these
+	 * Nodes are added, so the cost of decoding depends on the number of spikes rather than the
+	 * number of Nodes. The output is the same as that of run(...).</p>
+	 *
+	 * <p>If short-term plasticity dynamics are set, they must be run for every Node, so in this
+	 * case all Node outputs are decoded as in run(...).</p>
+	 *
+	 * @param spiking Indices of Nodes that spiked in the current step
+	 * @param numSpiking Number of indices (from the start of spiking) to use
+	 * @param startTime simulation time of timestep onset
+	 * @param endTime simulation time of timestep end
+	 * @throws SimulationException if a Node output can't be decoded
+	 */
+	public void runSpikes(int[] spiking, int numSpiking, float startTime, float endTime) throws SimulationException {
+		float[] values = new float[myFunctions.length];
+		if (mySTPDynamicsTemplate == null) {
+			decodeSpikes(values, spiking, 0, numSpiking, startTime, endTime);
+		} else {
+			mySTPHistory = new float[getNodeCount()];
+			decode(values, 0, getNodeCount(), startTime, endTime);
+		}
+		setOutput(values, startTime, endTime);
+	}
+
+	/**
+	 * Prepares to decode the outputs of Nodes in separate ranges (possibly concurrently),
+	 * instead of calling run(...). The output is the sum of the ranges, and is set when
+	 * finishRanges(...) is called.
+	 *
+	 * @param numRanges Number of ranges that will be decoded in the current step
+	 */
+	public void startRanges(int numRanges) {
+		if (myRangeValues == null || myRangeValues.length != numRanges) {
+			myRangeValues = new float[numRanges][];
+		}
+		for (int i = 0; i < numRanges; i++) {
+			if (myRangeValues[i] == null || myRangeValues[i].length != myFunctions.length) {
+				myRangeValues[i] = new float[myFunctions.length];
+			} else {
+				Arrays.fill(myRangeValues[i], 0);
+			}
+		}
+		mySTPHistory = new float[getNodeCount()];
+	}
+
+	/**
+	 * Decodes the outputs of a range of Nodes. Different ranges can be decoded concurrently.
+	 *
+	 * @param range Index of the range (less than the number given to startRanges(...))
+	 * @param start Index of the first Node in the range
+	 * @param end Index after the last Node in the range
+	 * @param startTime simulation time of timestep onset
+	 * @param endTime simulation time of timestep end
+	 * @throws SimulationException if a Node output can't be decoded
+	 */
+	public void runRange(int range, int start, int end, float startTime, float endTime) throws SimulationException {
+		decode(myRangeValues[range], start, end, startTime, endTime);
+	}
+
+	/**
+	 * Like runRange(...), but only the decoders of Nodes that spiked are added (see runSpikes(...)).
+	 *
+	 * @param range Index of the range (less than the number given to startRanges(...))
+	 * @param start Index of the first Node in the range
+	 * @param end Index after the last Node in the range
+	 * @param spiking Indices of Nodes that spiked in the current step
+	 * @param numSpiking Number of indices (from position start of spiking) that belong to this range
+	 * @param startTime simulation time of timestep onset
+	 * @param endTime simulation time of timestep end
+	 * @throws SimulationException if a Node output can't be decoded
+	 */
+	public void runRangeSpikes(int range, int start, int end, int[] spiking, int numSpiking, float startTime, float endTime)
+			throws SimulationException {
+		if (mySTPDynamicsTemplate == null) {
+			decodeSpikes(myRangeValues[range], spiking, start, start + numSpiking, startTime, endTime);
+		} else {
+			decode(myRangeValues[range], start, end, startTime, endTime);
+		}
+	}
+
+	/**
+	 * Sums the decoded ranges (in order of range index, so the result doesn't depend on the order
+	 * in which they were decoded) and sets the output. Must be called after all ranges have been
+	 * decoded.
+	 *
+	 * @param startTime simulation time of timestep onset
+	 * @param endTime simulation time of timestep end
+	 */
+	public void finishRanges(float startTime, float endTime) {
+		float[] values = new float[myFunctions.length];
+		for (int i = 0; i < myRangeValues.length; i++) {
+			for (int j = 0; j < values.length; j++) {
+				values[j] += myRangeValues[i][j];
+			}
+		}
+		setOutput(values, startTime, endTime);
+	}
+
+	//adds decoded outputs of Nodes start to end-1 to values
+	private void decode(float[] values, int start, int end, float startTime, float endTime) throws SimulationException {
+		float stepSize = endTime - startTime;
+		Node[] nodes = getNodes();
+		for (int i = start; i < end; i++) {
+			try {
+				InstantaneousOutput o = nodes[i].getOrigin(myNodeOrigin).getValues();
+
+				float val = 0;
+				if (o instanceof SpikeOutput) {
+					val = ((SpikeOutput) o).getValues()[0] ? 1f / stepSize : 0f;
+				} else if (o instanceof RealOutput) {
+					val = ((RealOutput) o).getValues()[0];
+				} else {
+					throw new Error("Node output is of type " + o.getClass().getName()
+						+ ". DecodedOrigin can only deal with RealOutput and SpikeOutput, so it apparently has to be updated");
 				}
+
+				float[] decoder = getDynamicDecoder(i, val, startTime, endTime);
+				for (int j = 0; j < values.length; j++) {
+					values[j] += val * decoder[j];
+				}
+			} catch (StructuralException e) {
+				throw new SimulationException(e);
 			}
 		}
-		
+	}
+
+	//adds decoders of the Nodes listed in spiking[from] to spiking[to-1], each of which spiked
+	private void decodeSpikes(float[] values, int[] spiking, int from, int to, float startTime, float endTime) {
+		float val = 1f / (endTime - startTime);
+		for (int k = from; k < to; k++) {
+			float[] decoder = myDecoders[spiking[k]];
+			for (int j = 0; j < values.length; j++) {
+				values[j] += val * decoder[j];
+			}
+		}
+	}
+
+	//applies noise and sets the output
+	private void setOutput(float[] values, float startTime, float endTime) {
 		if (myNoise != null) {
 			for (int i = 0; i < values.length; i++) {
 				values[i] = myNoises[i].getValue(startTime, endTime, values[i]);
@@ -505,10 +632,14 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	private float[] getDynamicDecoder(int i, float input, float startTime, float endTime) {
 		float[] result = myDecoders[i];
 		if (mySTPDynamicsTemplate != null) { //TODO: could use a NullDynamics here instead of null (to allow nulling in config tree)
-			//TODO: could recycle a mutable time series here to avoid object creation
-			TimeSeries inputSeries = new TimeSeries1DImpl(new float[]{startTime, endTime}, new float[]{input, input}, Units.UNK);
-			TimeSeries outputSeries = myIntegrator.integrate(mySTPDynamics[i], inputSeries);
-			float scaleFactor = outputSeries.getValues()[outputSeries.getValues().length-1][0];
+			float scaleFactor;
+			if (mySTPDynamics[i] instanceof LTISystem) {
+				scaleFactor = ((LTISystem) mySTPDynamics[i]).step(endTime - startTime, new float[]{input}, null)[0];
+			} else {
+				TimeSeries inputSeries = new TimeSeries1DImpl(new float[]{startTime, endTime}, new float[]{input, input}, Units.UNK);
+				TimeSeries outputSeries = myIntegrator.integrate(mySTPDynamics[i], inputSeries);
+				scaleFactor = outputSeries.getValues()[outputSeries.getValues().length-1][0];
+			}
 			mySTPHistory[i] = scaleFactor;
 			result = MU.prod(result, scaleFactor);
 		}
@@ -517,7 +648,7 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 
 	protected TimeSeries getSTPHistory() {
 		if (mySTPHistory == null) {
-            mySTPHistory = new float[myNodes.length];
+            mySTPHistory = new float[getNodeCount()];
         }
 		return new TimeSeriesImpl(new float[]{myTime}, new float[][]{mySTPHistory}, Units.uniform(Units.UNK, mySTPHistory.length));
 	}
@@ -573,7 +704,7 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 			functions[i] = myFunctions[i].clone();
 		}
 		try {
-			DecodedOrigin result = new DecodedOrigin(myNode, myName, myNodes, myNodeOrigin, functions, MU.clone(myDecoders));
+			DecodedOrigin result = new DecodedOrigin(myNode, myName, getNodes(), myNodeOrigin, functions, MU.clone(myDecoders));
 			result.myOutput = (RealOutput) myOutput.clone();
             if (myNoise != null) {
 			    result.setNoise(myNoise.clone());
@@ -607,7 +738,7 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	 * @param approximator approximator?
 	 */
 	public void rebuildDecoder(LinearApproximator approximator) {
-		myDecoders = findDecoders(myNodes, myFunctions, approximator);
+		myDecoders = findDecoders(getNodes(), myFunctions, approximator);
 	}
 
 	/**
@@ -627,4 +758,34 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
     public boolean getRequiredOnCPU(){
         return myRequiredOnCPU;
     }
+
+	private Node[] getNodes() {
+		if (myNodes == null) {
+			myNodes = ((Ensemble) myNode).getNodes();
+		}
+		return myNodes;
+	}
+
+	private int getNodeCount() {
+		return myNodes == null ? myNodeCount : myNodes.length;
+	}
+
+	/**
+	 * @param ensemble An Ensemble
+	 * @return True if this Origin belongs to the given Ensemble and decodes the Ensemble's current Nodes
+	 */
+	boolean usesNodesOf(Ensemble ensemble) {
+		return myNode == ensemble && (myNodes == null || myNodes == ensemble.getNodes());
+	}
+
+	/**
+	 * Drops the references to the parent Ensemble's nodes, when the Ensemble releases them.
+	 * They are taken from the Ensemble again when they are next needed.
+	 */
+	void releaseNodes() {
+		if (myNodes != null) {
+			myNodeCount = myNodes.length;
+			myNodes = null;
+		}
+	}
 }
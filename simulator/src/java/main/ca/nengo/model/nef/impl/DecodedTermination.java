@@ -93,7 +93,12 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	private float myTau;
 	private boolean myModulatory;
 	private float[][] myInitialState;
-	private boolean myValuesSet;
+	private boolean myValuesSet;
+
+	//exact zero-order-hold update (used instead of myIntegrator if dynamics are an LTISystem)
+	private boolean myDiscrete;
+	private float[] myDiscreteInput;
+	private float[] myDiscreteOutput;
 
 	/**
 	 * @param node The parent Node
@@ -103,7 +108,8 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	 * @param dynamics Post-synaptic current dynamics (single-input single-output). Time-varying
 	 * 		dynamics are OK, but non-linear dynamics don't make sense here, because other
 	 * 		Terminations may input onto the same neurons.
-	 * @param integrator Numerical integrator with which to solve dynamics
+	 * @param integrator Numerical integrator with which to solve dynamics (not used if dynamics
+	 * 		are an LTISystem, which is stepped exactly)
 	 * @throws StructuralException If dynamics are not SISO or given transform is not a matrix
 	 */
 	public DecodedTermination(Node node, String name, float[][] transform, LinearSystem dynamics, Integrator integrator)
@@ -139,13 +145,16 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 
 				//maintain state if there is state
 				if (myDynamics != null && myDynamics[i] != null) {
-					newDynamics[i].setState(myDynamics[i].getState());
+					newDynamics[i].setState(myDynamics[i].getState().clone());
 				}
 			} catch (CloneNotSupportedException e) {
 				throw new Error("The clone() operation is not supported by the given dynamics object");
 			}
 		}
 		myDynamics = newDynamics;
+		myDiscrete = (myDynamicsTemplate instanceof LTISystem);
+		myDiscreteInput = new float[1];
+		myDiscreteOutput = new float[1];
 
 		//zero corresponding initial state if necessary
 		if (myInitialState == null || myInitialState[0].length != newDynamics[0].getState().length) {
@@ -209,23 +218,53 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 			setValues(new RealOutputImpl(new float[getDimensions()], Units.UNK, 0.0f));
 		}
 
-		float[][] transform = getTransform();
-		if (myScalingTermination != null) {
-			float scale = myScalingTermination.getOutput()[0];
-			transform = MU.prod(transform, scale);
+		float[] result;
+		if (myDiscrete) {
+			result = runDiscrete(startTime, endTime);
+		} else {
+			float[][] transform = getTransform();
+			if (myScalingTermination != null) {
+				float scale = myScalingTermination.getOutput()[0];
+				transform = MU.prod(transform, scale);
+			}
+			float[] dynamicsInputs = MU.prod(transform, myInputValues.getValues());
+			result = new float[dynamicsInputs.length];
+
+			for (int i = 0; i < myDynamics.length; i++) {
+				float[] inVal  = new float[]{dynamicsInputs[i]};
+				TimeSeries inSeries = new TimeSeriesImpl(new float[]{startTime, endTime}, new float[][]{inVal, inVal}, myNullUnits);
+				TimeSeries outSeries = myIntegrator.integrate(myDynamics[i], inSeries);
+				result[i] = outSeries.getValues()[outSeries.getValues().length-1][0];
+			}
 		}
-		float[] dynamicsInputs = MU.prod(transform, myInputValues.getValues());
-		float[] result = new float[dynamicsInputs.length];
+
+		myTime = endTime;
+		myOutputValues = result;
+	}
+
+	/*
+	 * Exact solution for LTI dynamics with input held constant over the step. State is
+	 * updated in place, and the Integrator is not used. Only the returned output vector is
+	 * allocated, because it is exposed through getOutput() and getHistory(...).
+	 */
+	private float[] runDiscrete(float startTime, float endTime) {
+		float dt = endTime - startTime;
+		float scale = (myScalingTermination == null) ? 1 : myScalingTermination.getOutput()[0];
+		float[] input = myInputValues.getValues();
+		float[] result = new float[myDynamics.length];
 
 		for (int i = 0; i < myDynamics.length; i++) {
-			float[] inVal  = new float[]{dynamicsInputs[i]};
-			TimeSeries inSeries = new TimeSeriesImpl(new float[]{startTime, endTime}, new float[][]{inVal, inVal}, myNullUnits);
-			TimeSeries outSeries = myIntegrator.integrate(myDynamics[i], inSeries);
-			result[i] = outSeries.getValues()[outSeries.getValues().length-1][0];
+			float u = 0;
+			for (int j = 0; j < input.length; j++) {
+				u += myTransform[i][j] * input[j];
+			}
+			myDiscreteInput[0] = u * scale;
+
+			((LTISystem) myDynamics[i]).step(dt, myDiscreteInput, myDiscreteOutput);
+			result[i] = myDiscreteOutput[0];
 		}
 
-		myTime = endTime;
-		myOutputValues = result;
+		return result;
 	}
 
 	/**
@@ -269,7 +308,7 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 
 	private void resetInitialState() {
 		for (int i = 0; myDynamics != null && i < myDynamics.length; i++) {
-			float[] state = myInitialState != null ? myInitialState[i] : new float[myDynamics[i].getState().length];
+			float[] state = myInitialState != null ? myInitialState[i].clone() : new float[myDynamics[i].getState().length];
 			myDynamics[i].setState(state);
 		}
 	}
@@ -35,6 +35,8 @@ import org.apache.log4j.Logger;
 import ca.nengo.io.FileManager;
 import ca.nengo.math.ApproximatorFactory;
 import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.RandomStream;
 import ca.nengo.math.impl.IdentityFunction;
 import ca.nengo.math.impl.IndicatorPDF;
 import ca.nengo.math.impl.WeightedCostApproximator;
@@ -67,6 +69,8 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
 	private VectorGenerator myEvalPointFactory;
 	private NodeFactory myNodeFactory;
 	private transient File myDatabase;
+	private RandomStream myRandomStream;
+	private boolean myReleaseNeurons;
 
 	/**
 	 * Default constructor. Sets up factories.
@@ -122,14 +126,14 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
 	 */
 	public NEFEnsemble make(String name, int n, int dim) throws StructuralException {
 		float[] radii = MU.uniform(1, dim, 1)[0];
-		return doMake(name, n, radii, 0);
+		return makeWithStream(name, n, radii);
 	}
 
 	/**
 	 * @see ca.nengo.model.nef.NEFEnsembleFactory#make(java.lang.String, int, float[])
 	 */
 	public NEFEnsemble make(String name, int n, float[] radii) throws StructuralException {
-		return doMake(name, n, radii, 0);
+		return makeWithStream(name, n, radii);
 	}
 
 	/**
@@ -168,7 +172,7 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
                 }
             }
             if (result == null) {
-                result = doMake(name, n, radii, 0);
+                result = makeWithStream(name, n, radii);
 
                 try {
                     // Set the ensemble's factory to null to allow saving with customized ensemble factories
@@ -180,7 +184,7 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
             }
 		}
         else{
-            result = doMake(name, n, radii, 0);
+            result = makeWithStream(name, n, radii);
         }
 
         // Set the resulting ensemble's factory to this. It must be noted that this can be a good thing or
@@ -219,6 +223,55 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
 		myNodeFactory = factory;
 	}
 
+	/**
+	 * @return Stream from which ensembles' random parameters are drawn, or null if the calling
+	 * 		thread's current stream is used
+	 */
+	public RandomStream getRandomStream() {
+		return myRandomStream;
+	}
+
+	/**
+	 * @param stream If not null, each ensemble is made with random numbers (e.g. for encoders,
+	 * 		evaluation points and neuron parameters) from a stream split from this one by the
+	 * 		ensemble's name, so that an ensemble depends only on the stream's seed and its name,
+	 * 		and ensembles can be made concurrently. If null (the default), random numbers come
+	 * 		from the calling thread's current stream or the shared generator (see PDFTools).
+	 */
+	public void setRandomStream(RandomStream stream) {
+		myRandomStream = stream;
+	}
+
+	/**
+	 * @return True if ensembles are made with their neuron objects released (see setReleaseNeurons(...))
+	 */
+	public boolean getReleaseNeurons() {
+		return myReleaseNeurons;
+	}
+
+	/**
+	 * @param release If true, ensembles are made to run as populations (see NEFEnsembleImpl.setUsePopulation(...))
+	 * 		and their neuron objects are released (see NEFEnsembleImpl.releaseNeurons()), which greatly
+	 * 		reduces the memory used by large models. Neurons that are made again later (e.g. to add an
+	 * 		Origin) can be released again with NEFEnsembleImpl.releaseNeurons(). Defaults to false.
+	 */
+	public void setReleaseNeurons(boolean release) {
+		myReleaseNeurons = release;
+	}
+
+	private NEFEnsemble makeWithStream(String name, int n, float[] radii) throws StructuralException {
+		if (myRandomStream == null) {
+			return doMake(name, n, radii, 0);
+		}
+
+		RandomStream previous = PDFTools.setStream(myRandomStream.split(name));
+		try {
+			return doMake(name, n, radii, 0);
+		} finally {
+			PDFTools.setStream(previous);
+		}
+	}
+
 	//common make(...) implementation
 	private NEFEnsemble doMake(String name, int n, float[] radii, int attempts) throws StructuralException {
 		
@@ -254,6 +307,11 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
 
 			result.setEnsembleFactory(this);
 
+			if (myReleaseNeurons && result instanceof NEFEnsembleImpl) {
+				((NEFEnsembleImpl) result).setUsePopulation(true);
+				((NEFEnsembleImpl) result).releaseNeurons();
+			}
+
 			return result;
 		}
 		catch(RuntimeException re)
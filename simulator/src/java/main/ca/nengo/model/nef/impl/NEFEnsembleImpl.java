@@ -32,18 +32,23 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.lang.StringBuilder;
 
 import ca.nengo.dynamics.DynamicalSystem;
 import ca.nengo.dynamics.Integrator;
 import ca.nengo.dynamics.LinearSystem;
 import ca.nengo.dynamics.impl.EulerIntegrator;
+import ca.nengo.dynamics.impl.LTISystem;
 import ca.nengo.dynamics.impl.SimpleLTISystem;
 import ca.nengo.math.ApproximatorFactory;
 import ca.nengo.math.Function;
 import ca.nengo.math.LinearApproximator;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.RandomStream;
 import ca.nengo.math.impl.IndicatorPDF;
 import ca.nengo.math.impl.WeightedCostApproximator;
+import ca.nengo.model.ExpandableNode;
 import ca.nengo.model.Node;
 import ca.nengo.model.Origin;
 import ca.nengo.model.PlasticNodeTermination;
@@ -59,16 +64,23 @@ import ca.nengo.model.nef.NEFEnsembleFactory;
 import ca.nengo.model.nef.NEFNode;
 import ca.nengo.model.neuron.Neuron;
 import ca.nengo.model.neuron.impl.LIFNeuronFactory;
+import ca.nengo.model.neuron.impl.LIFPopulation;
 import ca.nengo.model.neuron.impl.LIFSpikeGenerator;
+import ca.nengo.model.neuron.impl.PoissonPopulation;
 import ca.nengo.model.neuron.impl.SpikeGeneratorOrigin;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
+import ca.nengo.model.neuron.impl.SpikingPopulation;
 import ca.nengo.model.plasticity.impl.PESTermination;
 import ca.nengo.model.plasticity.impl.PlasticEnsembleTermination;
 import ca.nengo.model.plasticity.impl.PreLearnTermination;
 import ca.nengo.util.MU;
+import ca.nengo.util.PartitionableNode;
 import ca.nengo.util.ScriptGenException;
+import ca.nengo.util.ThreadTask;
 import ca.nengo.util.TimeSeries;
 import ca.nengo.util.impl.LearningTask;
+import ca.nengo.util.impl.NodeRangeTask;
+import ca.nengo.util.impl.ParallelLoop;
 import ca.nengo.util.impl.TimeSeriesImpl;
 /**
  * Default implementation of NEFEnsemble.
@@ -78,7 +90,7 @@ import ca.nengo.util.impl.TimeSeriesImpl;
  *
  * @author Bryan Tripp
  */
-public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsemble {
+public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsemble, PartitionableNode {
 
 	//private static Logger ourLogger = Logger.getLogger(NEFEnsembleImpl.class);
 
@@ -113,6 +125,23 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 
 	private boolean myUseGPU;
 
+	private boolean myUsePopulation;
+	private transient SpikingPopulation myPopulation;
+	private LIFPopulation myReleasedPopulation; //holds the neurons' parameters and state while they are released
+	private transient boolean myPopulationIncompatible;
+	private transient int myPopulationSpikes = -1; //number of spikes in the population's last step, or -1 if it didn't run
+	private transient float[] myRadialInputs;
+
+	//while partitioned, state shared by the range tasks in the current step (see partition(...))
+	private transient NodeRangeTask[] myRangeTasks;
+	private transient AtomicInteger myRangesLeft;
+	private transient float[] myRangeState;
+	private transient Map<String, Float> myRangeBias;
+	private transient DecodedOrigin[] myRangeOrigins;
+	private transient boolean myRangePopulation;
+	private transient RandomStream myRangeStream;
+	private transient RandomStream[] myRangeNodeStreams;
+
 	/**
 	 * @param name Unique name of Ensemble
 	 * @param nodes Nodes that make up the Ensemble
@@ -173,6 +202,261 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		return myUseGPU && (getMode() == SimulationMode.DEFAULT || getMode() == SimulationMode.RATE);
 	}
 
+	/**
+	 * <p>Population-level execution runs all neurons in one loop over primitive arrays (see
+	 * LIFPopulation and PoissonPopulation), rather than running each neuron object. This is much
+	 * faster for large ensembles. It takes effect only while the ensemble runs in
+	 * SimulationMode.DEFAULT, all neurons are either LIF SpikingNeurons or Poisson or rate-function
+	 * SpikingNeurons with no Node-level Terminations or Noise, and all DecodedOrigins decode the
+	 * neurons' AXON Origins; otherwise neurons run individually.</p>
+	 *
+	 * <p>Spike trains are the same in either case. However, while neurons run as a population,
+	 * their individual state histories (e.g. "V" and "I") are not updated, and changes made
+	 * directly to individual neurons (rather than through this ensemble) take effect only after
+	 * the next reset.</p>
+	 *
+	 * @param use Run neurons as a population where possible?
+	 */
+	public void setUsePopulation(boolean use) {
+		invalidatePopulation(true);
+		myUsePopulation = use;
+	}
+
+	/**
+	 * @return True if neurons are to be run as a population where possible (see setUsePopulation(...))
+	 */
+	public boolean getUsePopulation() {
+		return myUsePopulation;
+	}
+
+	/**
+	 * @return True if neurons are currently running as a population (see setUsePopulation(...))
+	 */
+	public boolean isRunningAsPopulation() {
+		return getPopulation() != null;
+	}
+
+	/**
+	 * <p>Releases the neuron objects of an ensemble that is running as a population (see
+	 * setUsePopulation(...)), keeping only their parameters and state in the population's
+	 * arrays. This reduces the memory used by large ensembles several-fold. The neurons are
+	 * made again, with the same parameters and state, when they are next needed (e.g. when
+	 * getNodes() is called to probe or display them, when an Origin is added, or when the
+	 * ensemble can no longer run as a population), and can then be released again.</p>
+	 *
+	 * <p>Neurons can be released only if they differ in nothing but their scale, bias, time
+	 * constants, names and state (see LIFPopulation.release()), and if all DecodedOrigins
+	 * decode this ensemble's current neurons. Probes on individual neurons are no longer
+	 * updated after the neurons are released.</p>
+	 *
+	 * @return True if the neurons were released (or had been already)
+	 */
+	public synchronized boolean releaseNeurons() {
+		if (myReleasedPopulation != null) {
+			return true;
+		}
+
+		SpikingPopulation population = getPopulation();
+		if ( !(population instanceof LIFPopulation) ) {
+			return false;
+		}
+		DecodedOrigin[] origins = getDecodedOrigins();
+		for (DecodedOrigin origin : origins) {
+			if (!origin.usesNodesOf(this)) {
+				return false;
+			}
+		}
+		if (!((LIFPopulation) population).release()) {
+			return false;
+		}
+
+		for (DecodedOrigin origin : origins) {
+			origin.releaseNodes();
+		}
+		releaseNodes();
+		myReleasedPopulation = (LIFPopulation) population;
+		return true;
+	}
+
+	/**
+	 * Makes the neurons again from the released population.
+	 *
+	 * @see ca.nengo.model.impl.AbstractEnsemble#makeNodes()
+	 */
+	@Override
+	protected Node[] makeNodes() {
+		SpikingNeuron[] neurons = myReleasedPopulation.restore();
+		NEFNode[] nodes = new NEFNode[neurons.length];
+		System.arraycopy(neurons, 0, nodes, 0, neurons.length);
+
+		//the population can keep running the new neurons
+		myPopulation = myReleasedPopulation;
+		myReleasedPopulation = null;
+		return nodes;
+	}
+
+	//creates the population if it is requested and possible
+	private SpikingPopulation getPopulation() {
+		if (myReleasedPopulation != null) {
+			myPopulation = myReleasedPopulation;
+		} else if (myUsePopulation && myPopulation == null && !myPopulationIncompatible) {
+			Node[] nodes = getNodes();
+			boolean compatible = getMode().equals(SimulationMode.DEFAULT)
+					&& (LIFPopulation.isCompatible(nodes) || PoissonPopulation.isCompatible(nodes));
+			for (DecodedOrigin origin : getDecodedOrigins()) {
+				if (!Neuron.AXON.equals(origin.getNodeOrigin())) {
+					compatible = false;
+				}
+			}
+
+			if (compatible) {
+				try {
+					myPopulation = LIFPopulation.isCompatible(nodes) ? new LIFPopulation(nodes) : new PoissonPopulation(nodes);
+				} catch (StructuralException e) {
+					compatible = false;
+				}
+			}
+			myPopulationIncompatible = !compatible;
+		}
+		return myPopulation;
+	}
+
+	//discards the population (after it is rebuilt, compatibility is checked again)
+	private void invalidatePopulation(boolean storeState) {
+		if (myReleasedPopulation != null) {
+			getNodes(); //so that the neurons can run individually
+		}
+		if (myPopulation != null && storeState) {
+			myPopulation.storeState();
+		}
+		myPopulation = null;
+		myPopulationIncompatible = false;
+		myPopulationSpikes = -1;
+	}
+
+	/**
+	 * @see ca.nengo.util.PartitionableNode#getPartitionSize()
+	 */
+	public int getPartitionSize() {
+		return getNodeCount();
+	}
+
+	/**
+	 * <p>Splits the neurons into contiguous ranges, so that large ensembles can be run by several
+	 * threads. While partitioned, run(...) only runs terminations; each range task then sets the
+	 * radial input of its neurons, runs them, collects their spikes, and decodes their part of
+	 * each DecodedOrigin. The last range to finish sums the decoded parts (in range order) and
+	 * completes the step, so the ensemble's outputs are ready once all of the tasks have run.</p>
+	 *
+	 * <p>In DIRECT and EXPRESS modes, run(...) runs the whole step and the tasks do nothing.</p>
+	 *
+	 * @see ca.nengo.util.PartitionableNode#partition(int)
+	 */
+	public ThreadTask[] partition(int numRanges) {
+		int n = getNodeCount();
+		numRanges = Math.max(1, Math.min(numRanges, n));
+
+		myRangeTasks = new NodeRangeTask[numRanges];
+		for (int i = 0; i < numRanges; i++) {
+			myRangeTasks[i] = new NodeRangeTask(this, i, i * n / numRanges, (i+1) * n / numRanges);
+		}
+		myRangesLeft = new AtomicInteger(0);
+
+		return myRangeTasks.clone();
+	}
+
+	/**
+	 * @see ca.nengo.util.PartitionableNode#unpartition()
+	 */
+	public void unpartition() {
+		myRangeTasks = null;
+		myRangesLeft = null;
+		myRangeState = null;
+		myRangeBias = null;
+		myRangeOrigins = null;
+	}
+
+	/**
+	 * @return True if the ensemble is partitioned into range tasks (see partition(...))
+	 */
+	public boolean isPartitioned() {
+		return myRangeTasks != null;
+	}
+
+	//called from run(...) while partitioned: saves the input for the range tasks and schedules them
+	private void startRanges(float[] state, Map<String, Float> bias) {
+		myRangePopulation = getPopulation() != null;
+		if (myRangePopulation && (myRadialInputs == null || myRadialInputs.length != getNodeCount())) {
+			myRadialInputs = new float[getNodeCount()];
+		}
+		myRangeState = myRadiiAreOne ? state : MU.prodElementwise(state, myInverseRadii);
+		myRangeBias = bias;
+		myRangeStream = PDFTools.getStream();
+		myRangeNodeStreams = (myRangePopulation && !myPopulation.isRandom()) ? null : getNodeStreams();
+
+		myRangeOrigins = getDecodedOrigins();
+		for (DecodedOrigin origin : myRangeOrigins) {
+			origin.startRanges(myRangeTasks.length);
+		}
+		initSpikePattern();
+
+		myRangesLeft.set(myRangeTasks.length);
+		for (NodeRangeTask task : myRangeTasks) {
+			task.reset(false);
+		}
+	}
+
+	/**
+	 * @see ca.nengo.util.PartitionableNode#runRange(int, int, int, float, float)
+	 */
+	public void runRange(int range, int start, int end, float startTime, float endTime) throws SimulationException {
+		RandomStream previousStream = PDFTools.getStream();
+		try {
+			int numSpikes = -1;
+			if (myRangePopulation) {
+				for (int i = start; i < end; i++) {
+					myRadialInputs[i] = MU.prod(myRangeState, myEncoders[i]) +
+							getBiasInput(myRangeBias, myDecodedTerminations, i);
+				}
+				numSpikes = myPopulation.run(myRadialInputs, start, end, startTime, endTime, myRangeNodeStreams);
+			} else {
+				Node[] nodes = getNodes();
+				for (int i = start; i < end; i++) {
+					((NEFNode) nodes[i]).setRadialInput(MU.prod(myRangeState, myEncoders[i]) +
+							getBiasInput(myRangeBias, myDecodedTerminations, i));
+					if (myRangeNodeStreams != null) {
+						PDFTools.setStream(myRangeNodeStreams[i]);
+					}
+					nodes[i].run(startTime, endTime);
+				}
+			}
+			PDFTools.setStream(myRangeStream); //e.g. for origin noise, as if run by the whole ensemble
+			recordSpikes(start, end, endTime);
+
+			for (DecodedOrigin origin : myRangeOrigins) {
+				if (numSpikes >= 0) {
+					origin.runRangeSpikes(range, start, end, myPopulation.getSpikeIndices(), numSpikes, startTime, endTime);
+				} else {
+					origin.runRange(range, start, end, startTime, endTime);
+				}
+			}
+
+			//the last range to finish completes the step
+			if (myRangesLeft.decrementAndGet() == 0) {
+				for (DecodedOrigin origin : myRangeOrigins) {
+					origin.finishRanges(startTime, endTime);
+				}
+				setTime(endTime);
+				updatePlasticity(endTime);
+			}
+		} catch (SimulationException e) {
+			e.setEnsemble(getName());
+			throw e;
+		} finally {
+			PDFTools.setStream(previousStream);
+		}
+	}
+
 	/**
 	 * @param radii A list of radii of encoded area along each dimension; uniform
 	 * 		radius along each dimension can be specified with a list of length 1
@@ -311,7 +595,8 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	}
 
 	/**
-	 * @param integrator Integrator to use in direct mode
+	 * @param integrator Integrator to use in direct mode (not used if the direct mode dynamics
+	 * 		are an LTISystem, which is stepped exactly)
 	 */
 	public void setDirectModeIntegrator(Integrator integrator) {
 		myDirectModeIntegrator = integrator;
@@ -326,6 +611,10 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	 */
 	protected float[][] getConstantOutputs(float[][] evalPoints, String origin) throws StructuralException {
 		NEFNode[] nodes = (NEFNode[]) getNodes();
+		if (Neuron.AXON.equals(origin) && LIFPopulation.isRateCompatible(nodes)) {
+			return getLIFRates(nodes, evalPoints);
+		}
+
 		float[][] result = new float[nodes.length][];
 
 		for (int i = 0; i < nodes.length; i++) {
@@ -339,6 +628,37 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		return result;
 	}
 
+	/*
+	 * Finds the same rates as getConstantOutput(...) for LIF neurons that are compatible with
+	 * LIFPopulation, directly from their bias and scale, with neurons spread over threads.
+	 */
+	private float[][] getLIFRates(final NEFNode[] nodes, float[][] evalPoints) {
+		final float[][] points;
+		if (myRadiiAreOne) {
+			points = evalPoints;
+		} else {
+			points = new float[evalPoints.length][];
+			for (int p = 0; p < evalPoints.length; p++) {
+				points[p] = MU.prodElementwise(evalPoints[p], myInverseRadii);
+			}
+		}
+
+		final float[][] result = new float[nodes.length][];
+		long work = (long) nodes.length * points.length * (getDimension() + 20);
+		ParallelLoop.run(nodes.length, work, new ParallelLoop.Body() {
+			public void run(int i) {
+				SpikingNeuron neuron = (SpikingNeuron) nodes[i];
+				float[] currents = new float[points.length];
+				for (int p = 0; p < points.length; p++) {
+					currents[p] = neuron.getBias() + neuron.getScale() * MU.prod(points[p], myEncoders[i]);
+				}
+				result[i] = ((LIFSpikeGenerator) neuron.getGenerator()).constantRateRun(currents);
+			}
+		});
+
+		return result;
+	}
+
 	/**
 	 * @param nodeIndex Index of Node for which to find output at various inputs
 	 * @param evalPoints Vector points at which to find output (each one must have same dimension as
@@ -447,7 +767,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 					//two possibilities: evaluation signal represents a separate signal for each node (first case),
 					//		or evaluation signal presents a single value and a separate input is calculated for each
 					//		node using that node's encoder.
-					if(vals[t].length == getNodes().length) 
+					if(vals[t].length == getNodeCount()) 
 						node.setRadialInput(vals[t][nodeIndex]);
 					else
 						node.setRadialInput(getRadialInput(vals[t], nodeIndex));
@@ -486,7 +806,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	 */
 	public void setEncoders(float[][] encoders) {
 		assert MU.isMatrix(encoders);
-		assert encoders.length == getNodes().length;
+		assert encoders.length == getNodeCount();
 		assert encoders[0].length == getDimension();
 
 		myEncoders = encoders;
@@ -610,20 +930,22 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
      */
     public synchronized Termination addPESTermination(String name, float[][] weights, float tauPSC, boolean modulatory) throws StructuralException {
         //TODO: check name for duplicate
-        if (myExpandableNodes.length != weights.length) {
+        invalidatePopulation(true);
+        ExpandableNode[] expandableNodes = getExpandableNodes();
+        if (expandableNodes.length != weights.length) {
             throw new StructuralException(weights.length + " sets of weights given for "
-                    + myExpandableNodes.length + " expandable nodes");
+                    + expandableNodes.length + " expandable nodes");
         }
 
         int dimension = weights[0].length;
 
-        Termination[] components = new Termination[myExpandableNodes.length];
-        for (int i = 0; i < myExpandableNodes.length; i++) {
+        Termination[] components = new Termination[expandableNodes.length];
+        for (int i = 0; i < expandableNodes.length; i++) {
             if (weights[i].length != dimension) {
                 throw new StructuralException("Equal numbers of weights are needed for termination onto each node");
             }
 
-            components[i] = myExpandableNodes[i].addTermination(name, new float[][]{weights[i]}, tauPSC, modulatory);
+            components[i] = expandableNodes[i].addTermination(name, new float[][]{weights[i]}, tauPSC, modulatory);
         }
 
         PlasticEnsembleTermination result;
@@ -667,20 +989,22 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 
     public synchronized Termination addPreLearnTermination(String name, float[][] weights, float tauPSC, boolean modulatory) throws StructuralException {
         //TODO: check name for duplicate
-        if (myExpandableNodes.length != weights.length) {
+        invalidatePopulation(true);
+        ExpandableNode[] expandableNodes = getExpandableNodes();
+        if (expandableNodes.length != weights.length) {
             throw new StructuralException(weights.length + " sets of weights given for "
-                    + myExpandableNodes.length + " expandable nodes");
+                    + expandableNodes.length + " expandable nodes");
         }
 
         int dimension = weights[0].length;
 
-        Termination[] components = new Termination[myExpandableNodes.length];
-        for (int i = 0; i < myExpandableNodes.length; i++) {
+        Termination[] components = new Termination[expandableNodes.length];
+        for (int i = 0; i < expandableNodes.length; i++) {
             if (weights[i].length != dimension) {
                 throw new StructuralException("Equal numbers of weights are needed for termination onto each node");
             }
 
-            components[i] = myExpandableNodes[i].addTermination(name, new float[][]{weights[i]}, tauPSC, modulatory);
+            components[i] = expandableNodes[i].addTermination(name, new float[][]{weights[i]}, tauPSC, modulatory);
         }
 
         PlasticEnsembleTermination result;
@@ -723,6 +1047,34 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
     }
 
 
+	/**
+	 * @see ca.nengo.model.impl.EnsembleImpl#addTermination(java.lang.String, float[][], float, boolean)
+	 */
+	@Override
+	public synchronized Termination addTermination(String name, float[][] weights, float tauPSC, boolean modulatory) throws StructuralException {
+		invalidatePopulation(true);
+		return super.addTermination(name, weights, tauPSC, modulatory);
+	}
+
+	/**
+	 * @see ca.nengo.model.impl.EnsembleImpl#removeTermination(java.lang.String)
+	 */
+	@Override
+	public synchronized Termination removeTermination(String name) throws StructuralException {
+		invalidatePopulation(true);
+		return super.removeTermination(name);
+	}
+
+	/**
+	 * @see ca.nengo.model.impl.AbstractEnsemble#redefineNodes(ca.nengo.model.Node[])
+	 */
+	@Override
+	public void redefineNodes(Node[] nodes) {
+		myReleasedPopulation = null;
+		invalidatePopulation(false);
+		super.redefineNodes(nodes);
+	}
+
 	/**
 	 * @see ca.nengo.model.nef.NEFEnsemble#addBiasTerminations(ca.nengo.model.nef.impl.DecodedTermination, float, float[][], float[][])
 	 */
@@ -811,7 +1163,9 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 
 				if ( getMode().equals(SimulationMode.DIRECT) || getMode().equals(SimulationMode.EXPRESS)) {
 					//run ensemble dynamics if they exist (e.g. to model adaptation)
-					if (myDirectModeDynamics != null) {
+					if (myDirectModeDynamics instanceof LTISystem) {
+						state = ((LTISystem) myDirectModeDynamics).step(endTime - startTime, state, null);
+					} else if (myDirectModeDynamics != null) {
 						TimeSeries dynamicsInput = new TimeSeriesImpl(new float[]{startTime, endTime},
 								new float[][]{state, state}, Units.uniform(Units.UNK, state.length));
 						TimeSeries dynamicsOutput = myDirectModeIntegrator.integrate(myDirectModeDynamics, dynamicsInput);
@@ -826,12 +1180,27 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 					}
 					setTime(endTime);
 					// TODO Have plasticity work in DIRECT mode
+				} else if (myRangeTasks != null) {
+					//neurons are run by the range tasks
+					startRanges(state, bias);
 				} else {
 					//multiply state by encoders (cosine tuning), set radial input of each Neuron and run ...
-					Node[] nodes = getNodes();
-					for (int i = 0; i < nodes.length; i++) {
-						((NEFNode) nodes[i]).setRadialInput(getRadialInput(state, i) +
-						        getBiasInput(bias, myDecodedTerminations, i));
+					if (getPopulation() != null) {
+						int n = getNodeCount();
+						if (myRadialInputs == null || myRadialInputs.length != n) {
+							myRadialInputs = new float[n];
+						}
+						float[] scaledState = myRadiiAreOne ? state : MU.prodElementwise(state, myInverseRadii);
+						for (int i = 0; i < n; i++) {
+							myRadialInputs[i] = MU.prod(scaledState, myEncoders[i]) +
+									getBiasInput(bias, myDecodedTerminations, i);
+						}
+					} else {
+						Node[] nodes = getNodes();
+						for (int i = 0; i < nodes.length; i++) {
+							((NEFNode) nodes[i]).setRadialInput(getRadialInput(state, i) +
+							        getBiasInput(bias, myDecodedTerminations, i));
+						}
 					}
 					super.run(startTime, endTime);
 				}
@@ -842,6 +1211,60 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		}
 	}
 
+	/**
+	 * Runs neurons as a population if possible (see setUsePopulation(...)).
+	 *
+	 * @see ca.nengo.model.impl.AbstractEnsemble#runNodes(float, float)
+	 */
+	@Override
+	protected void runNodes(float startTime, float endTime) throws SimulationException {
+		if (myPopulation != null) {
+			RandomStream[] streams = myPopulation.isRandom() ? getNodeStreams() : null;
+			myPopulationSpikes = myPopulation.run(myRadialInputs, 0, getNodeCount(), startTime, endTime, streams);
+		} else {
+			myPopulationSpikes = -1;
+			super.runNodes(startTime, endTime);
+		}
+	}
+
+	/**
+	 * Takes spikes from the population while the neurons are released.
+	 *
+	 * @see ca.nengo.model.impl.AbstractEnsemble#recordSpikes(int, int, float)
+	 */
+	@Override
+	protected void recordSpikes(int start, int end, float endTime) throws SimulationException {
+		if (myReleasedPopulation != null) {
+			if (isCollectingSpikes()) {
+				boolean[] spikes = myReleasedPopulation.getSpikes();
+				for (int i = start; i < end; i++) {
+					if (spikes[i]) {
+						recordSpike(i, endTime);
+					}
+				}
+			}
+		} else {
+			super.recordSpikes(start, end, endTime);
+		}
+	}
+
+	/**
+	 * Decodes only the neurons that spiked, if neurons were run as a population (see
+	 * DecodedOrigin.runSpikes(...)).
+	 *
+	 * @see ca.nengo.model.nef.impl.DecodableEnsembleImpl#runDecodedOrigins(float, float)
+	 */
+	@Override
+	protected void runDecodedOrigins(float startTime, float endTime) throws SimulationException {
+		if (myPopulationSpikes >= 0) {
+			for (DecodedOrigin origin : getDecodedOrigins()) {
+				origin.runSpikes(myPopulation.getSpikeIndices(), myPopulationSpikes, startTime, endTime);
+			}
+		} else {
+			super.runDecodedOrigins(startTime, endTime);
+		}
+	}
+
 	// @param bias Bias input (related to avoidance of negative weights with interneurons)
 	private static float getBiasInput(Map<String, Float> bias, Map<String, DecodedTermination> dt, int node) {
 		float sumBias = 0;
@@ -873,6 +1296,11 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	 */
 	@Override
     public void setMode(SimulationMode mode) {
+		if (myReleasedPopulation != null && mode.equals(getMode())) {
+			return;
+		}
+
+		invalidatePopulation(true);
 		super.setMode(mode);
 
 		Origin[] origins = getOrigins();
@@ -906,8 +1334,11 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	@Override
     public void reset(boolean randomize) {
 		super.reset(randomize);
-
-		
+		if (myReleasedPopulation != null) {
+			myReleasedPopulation.reset();
+		} else {
+			invalidatePopulation(false);
+		}
 
 		if (myDirectModeDynamics != null) {
 			myDirectModeDynamics.setState(new float[myDirectModeDynamics.getState().length]);
@@ -922,15 +1353,11 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		return myEnsembleFactory;
 	}
 
-    public int getNodeCount() {
-		return getNodes().length;
-	}
-
 	/**
 	 * @return number of neurons (same as getNodeCount)
 	 */
 	public int getNeuronCount() {
-		return getNodes().length;
+		return getNodeCount();
 	}
 
     public void setNodeCount(int n) throws StructuralException {
@@ -1012,7 +1439,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
         StringBuilder py = new StringBuilder(String.format("%s.make('%s', %d, %d", 
                     scriptData.get("netName"), 
                     getName(), 
-                    getNodes().length, 
+                    getNodeCount(), 
                     myDimension));
 
         NodeFactory nodeFactory = myEnsembleFactory.getNodeFactory();
@@ -1041,6 +1468,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 
 	@Override
     public NEFEnsembleImpl clone() throws CloneNotSupportedException {
+		getNodes(); //the clone is made from the neuron objects
 		NEFEnsembleImpl result = (NEFEnsembleImpl) super.clone();
 
 		result.myEncoders = MU.clone(myEncoders);
@@ -1055,6 +1483,9 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		result.myInverseRadii = myInverseRadii.clone();
 		result.myRadii = myRadii.clone();
 		result.myUnscaledEvalPoints = MU.clone(myUnscaledEvalPoints);
+		result.invalidatePopulation(false);
+		result.myRadialInputs = null;
+		result.unpartition();
 		return result;
 	}
 
@@ -1147,6 +1578,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	 */
 	public void killNeurons(float killrate, boolean saveRelays)
 	{
+		invalidatePopulation(true);
 		Random rand = new Random();
 
 		Node[] neurons = getNodes();
@@ -0,0 +1,498 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "LIFPopulation.java". Description:
+"Population-level (struct-of-arrays) execution of a group of LIF SpikingNeurons"
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.model.neuron.impl;
+
+import ca.nengo.math.RandomStream;
+import ca.nengo.model.Node;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.SpikeOutput;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.SpikeOutputImpl;
+import ca.nengo.model.neuron.Neuron;
+
+/**
+ * <p>Population-level execution of a group of leaky-integrate-and-fire SpikingNeurons.</p>
+ *
+ * <p>Voltage, refractory state, gain (scale) and bias of every neuron are kept in flat
+ * primitive arrays, and the whole population is advanced in one loop, without the
+ * per-neuron SynapticIntegrator, SpikeGenerator and TimeSeries objects that are used
+ * by SpikingNeuron.run(...). This applies only to neurons whose input is entirely
+ * radial (i.e. neurons without Node-level Terminations or Noise) and that run in
+ * SimulationMode.DEFAULT; see isCompatible(...).</p>
+ *
+ * <p>The update repeats the arithmetic of LIFSpikeGenerator in DEFAULT mode (including
+ * the number and length of sub-steps that would result from the neuron's
+ * LinearSynapticIntegrator and LIFSpikeGenerator time steps), so spike trains are
+ * identical to those of the per-object path given the same input, to within float
+ * rounding (in practice they are bit-identical, because Java float arithmetic is
+ * deterministic). Differences: voltage histories and "I" states of the underlying
+ * neurons are not updated while the population runs, and each neuron's spike output
+ * is shared with other neurons that spiked (or didn't) in the same step.</p>
+ *
+ * <p>State is copied from the neurons at construction, and can be copied back with
+ * storeState(), so that execution can switch back to the per-object path without
+ * discontinuity. Parameters (gain, bias, time constants) are also copied at construction,
+ * so a new LIFPopulation should be made if they are changed.</p>
+ *
+ * <p>Since the population doesn't need the neuron objects to run, it can also release them
+ * (see release()), keeping only the arrays and one prototype neuron, and make equivalent
+ * neurons again when they are needed (see restore()). This takes a small fraction of the
+ * memory of the neuron objects.</p>
+ */
+public class LIFPopulation implements SpikingPopulation {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final float Vth = 1;
+
+	private SpikingNeuron[] myNeurons;
+	private LIFSpikeGenerator[] myGenerators;
+	private SpikeGeneratorOrigin[] myOrigins;
+
+	private float[] myGain;
+	private float[] myBias;
+	private float[] myInverseTauRC;
+	private float[] myTauRef;
+	private float[] myVoltage;
+	private float[] myTimeSinceLastSpike;
+	private boolean[] mySpikes;
+	private int[] mySpikeIndices;
+
+	//neurons with the same integrator and generator time steps share a timing class,
+	//so that sub-step counts and lengths are found once per class per step
+	private int[] myTimingClass;
+	private float[] myClassIntegratorStep;
+	private float[] myClassGeneratorStep;
+
+	//while the neurons are released, they are remade from a prototype and these parameters
+	private SpikingNeuron myPrototype;
+	private String myNamePrefix; //neuron names are prefix + index, or if null they are in myNames
+	private String[] myNames;
+	private float[] myTauRC;
+	private float myInitialVoltage;
+	private float myTime; //end time of the latest step
+
+	/**
+	 * @param nodes Neurons to run as a population (see isCompatible(...))
+	 * @throws StructuralException if the neurons are not all compatible
+	 */
+	public LIFPopulation(Node[] nodes) throws StructuralException {
+		if (!isCompatible(nodes)) {
+			throw new StructuralException("LIFPopulation requires DEFAULT-mode LIF SpikingNeurons "
+					+ "without Node-level Terminations or Noise");
+		}
+
+		int n = nodes.length;
+		myNeurons = new SpikingNeuron[n];
+		myGenerators = new LIFSpikeGenerator[n];
+		myOrigins = new SpikeGeneratorOrigin[n];
+		myGain = new float[n];
+		myBias = new float[n];
+		myInverseTauRC = new float[n];
+		myTauRef = new float[n];
+		myVoltage = new float[n];
+		myTimeSinceLastSpike = new float[n];
+		mySpikes = new boolean[n];
+		mySpikeIndices = new int[n];
+		myTimingClass = new int[n];
+
+		float[] integratorSteps = new float[n];
+		float[] generatorSteps = new float[n];
+		int numClasses = 0;
+
+		for (int i = 0; i < n; i++) {
+			SpikingNeuron neuron = (SpikingNeuron) nodes[i];
+			LIFSpikeGenerator generator = (LIFSpikeGenerator) neuron.getGenerator();
+			LinearSynapticIntegrator integrator = (LinearSynapticIntegrator) neuron.getIntegrator();
+
+			myNeurons[i] = neuron;
+			myGenerators[i] = generator;
+			myOrigins[i] = (SpikeGeneratorOrigin) neuron.getOrigin(Neuron.AXON);
+			myGain[i] = neuron.getScale();
+			myBias[i] = neuron.getBias();
+			myInverseTauRC[i] = 1 / generator.getTauRC();
+			myTauRef[i] = generator.getTauRef();
+			myVoltage[i] = generator.getVoltage();
+			myTimeSinceLastSpike[i] = generator.getTimeSinceLastSpike();
+
+			float integratorStep = integrator.getCorrectedMaxTimeStep();
+			float generatorStep = generator.getCorrectedMaxTimeStep();
+			int c = 0;
+			while (c < numClasses && (integratorSteps[c] != integratorStep || generatorSteps[c] != generatorStep)) {
+				c++;
+			}
+			if (c == numClasses) {
+				integratorSteps[c] = integratorStep;
+				generatorSteps[c] = generatorStep;
+				numClasses++;
+			}
+			myTimingClass[i] = c;
+		}
+
+		myClassIntegratorStep = new float[numClasses];
+		myClassGeneratorStep = new float[numClasses];
+		System.arraycopy(integratorSteps, 0, myClassIntegratorStep, 0, numClasses);
+		System.arraycopy(generatorSteps, 0, myClassGeneratorStep, 0, numClasses);
+	}
+
+	/**
+	 * @param nodes A list of Nodes
+	 * @return True if the given Nodes can be run as a LIFPopulation, i.e. they are all
+	 * 		SpikingNeurons with LIFSpikeGenerators running in SimulationMode.DEFAULT, with
+	 * 		LinearSynapticIntegrators that have no Terminations, and without Noise
+	 */
+	public static boolean isCompatible(Node[] nodes) {
+		if (!isRateCompatible(nodes)) {
+			return false;
+		}
+
+		for (Node node : nodes) {
+			if (!SimulationMode.DEFAULT.equals(((SpikingNeuron) node).getMode())) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @param nodes A list of Nodes
+	 * @return True if the constant firing rates of the given Nodes can be found directly from
+	 * 		their bias and scale with LIFSpikeGenerator.constantRateRun(...), i.e. they are
+	 * 		compatible with LIFPopulation apart from their SimulationMode
+	 */
+	public static boolean isRateCompatible(Node[] nodes) {
+		if (nodes.length == 0) {
+			return false;
+		}
+
+		for (Node node : nodes) {
+			if ( !(node instanceof SpikingNeuron) ) {
+				return false;
+			}
+
+			SpikingNeuron neuron = (SpikingNeuron) node;
+			if (neuron.getGenerator() == null || neuron.getGenerator().getClass() != LIFSpikeGenerator.class
+					|| neuron.getIntegrator() == null || neuron.getIntegrator().getClass() != LinearSynapticIntegrator.class
+					|| neuron.getIntegrator().getTerminations().length > 0
+					|| neuron.getNoise() != null) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return Number of neurons in the population
+	 */
+	public int getSize() {
+		return myGain.length;
+	}
+
+	/**
+	 * Runs all neurons in the population.
+	 *
+	 * @param radialInput Radial input to each neuron (see NEFNode.setRadialInput(float))
+	 * @param startTime Simulation time at which running starts
+	 * @param endTime Simulation time at which running ends
+	 * @return Number of neurons that spiked (their indices are at the start of getSpikeIndices())
+	 */
+	public int run(float[] radialInput, float startTime, float endTime) {
+		return run(radialInput, 0, myGain.length, startTime, endTime);
+	}
+
+	/**
+	 * LIF neurons are deterministic, so this returns false.
+	 *
+	 * @see ca.nengo.model.neuron.impl.SpikingPopulation#isRandom()
+	 */
+	public boolean isRandom() {
+		return false;
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.impl.SpikingPopulation#run(float[], int, int, float, float, ca.nengo.math.RandomStream[])
+	 */
+	public int run(float[] radialInput, int start, int end, float startTime, float endTime, RandomStream[] streams) {
+		return run(radialInput, start, end, startTime, endTime);
+	}
+
+	/**
+	 * Runs a range of neurons in the population. Disjoint ranges can be run concurrently.
+	 *
+	 * @param radialInput Radial input to each neuron in the population (only elements start
+	 * 		to end-1 are used)
+	 * @param start Index of the first neuron in the range
+	 * @param end Index after the last neuron in the range
+	 * @param startTime Simulation time at which running starts
+	 * @param endTime Simulation time at which running ends
+	 * @return Number of neurons in the range that spiked (their indices are in getSpikeIndices(),
+	 * 		starting at position start)
+	 */
+	public int run(float[] radialInput, int start, int end, float startTime, float endTime) {
+		float len = endTime - startTime;
+		int[] classSteps = new int[myClassIntegratorStep.length];
+		float[] classDt = new float[myClassIntegratorStep.length];
+		for (int c = 0; c < classSteps.length; c++) {
+			//as in LinearSynapticIntegrator.run(...), which defines the time span seen by the generator
+			int integratorSteps = (int) Math.ceil(len / myClassIntegratorStep[c]);
+			float integratorDt = len / integratorSteps;
+			float generatorLen = (startTime + integratorSteps * integratorDt) - startTime;
+
+			//as in LIFSpikeGenerator.doPreciseSpikingRun(...)
+			classSteps[c] = (int) Math.ceil(generatorLen / myClassGeneratorStep[c]);
+			classDt[c] = generatorLen / classSteps[c];
+		}
+
+		int numSpikes = 0;
+		for (int i = start; i < end; i++) {
+			int steps = classSteps[myTimingClass[i]];
+			float dt = classDt[myTimingClass[i]];
+
+			float I = myBias[i] + myGain[i] * radialInput[i];
+			float invTauRC = myInverseTauRC[i];
+			float tauRef = myTauRef[i];
+			float V = myVoltage[i];
+			float tsls = myTimeSinceLastSpike[i];
+			boolean spike = false;
+
+			for (int j = 0; j < steps; j++) {
+				float dV = invTauRC * (I - V);
+				tsls = tsls + dt;
+				if (tsls < tauRef) {
+					dV = 0;
+				} else if (tsls < tauRef + dt) {
+					dV *= (tsls - tauRef) / dt;
+				}
+				float previousV = V;
+				V = Math.max(0, V + dt * dV);
+
+				if (V >= Vth) {
+					float dSpike = (Vth - previousV) * dt / (V - previousV);
+					tsls = dt - dSpike;
+					spike = true;
+					V = 0;
+				}
+			}
+
+			myVoltage[i] = V;
+			myTimeSinceLastSpike[i] = tsls;
+			mySpikes[i] = spike;
+			if (spike) {
+				mySpikeIndices[start + numSpikes++] = i;
+			}
+		}
+
+		myTime = endTime;
+		publish(start, end, endTime);
+		return numSpikes;
+	}
+
+	//sets spike outputs on each neuron's axon origin (outputs are immutable so they can be shared)
+	private void publish(int start, int end, float endTime) {
+		if (myOrigins == null) {
+			return; //released
+		}
+
+		SpikeOutput spiking = new SpikeOutputImpl(new boolean[]{true}, Units.SPIKES, endTime);
+		SpikeOutput silent = new SpikeOutputImpl(new boolean[]{false}, Units.SPIKES, endTime);
+		for (int i = start; i < end; i++) {
+			myOrigins[i].setValues(mySpikes[i] ? spiking : silent);
+		}
+	}
+
+	/**
+	 * @return Whether each neuron spiked in the most recent step (this array is reused
+	 * 		between steps and should not be modified)
+	 */
+	public boolean[] getSpikes() {
+		return mySpikes;
+	}
+
+	/**
+	 * @return Indices of neurons that spiked in the most recent step, listed from the start of
+	 * 		each range that was run (see run(...) for the number of indices in a range). This array
+	 * 		is reused between steps and should not be modified.
+	 */
+	public int[] getSpikeIndices() {
+		return mySpikeIndices;
+	}
+
+	/**
+	 * @return Membrane voltage of each neuron (this array is reused between steps and should
+	 * 		not be modified)
+	 */
+	public float[] getVoltages() {
+		return myVoltage;
+	}
+
+	/**
+	 * Copies voltage and refractory state back into the LIFSpikeGenerators of the underlying
+	 * neurons, so that they can continue to run individually.
+	 */
+	public void storeState() {
+		if (myGenerators == null) {
+			return; //released; the state is only here
+		}
+
+		for (int i = 0; i < myGenerators.length; i++) {
+			myGenerators[i].setState(myVoltage[i], myTimeSinceLastSpike[i]);
+		}
+	}
+
+	/**
+	 * @return True if the neuron objects have been released (see release())
+	 */
+	public boolean isReleased() {
+		return myNeurons == null;
+	}
+
+	/**
+	 * Drops the references to the neuron objects, keeping only what is needed to make
+	 * equivalent neurons with restore(). This is only possible if the neurons differ in nothing
+	 * but their scale, bias, time constants, names and state, i.e. they are of the same class,
+	 * have the same time steps, current units and initial voltage, and have no documentation.
+	 * The neurons themselves are no longer updated after they are released.
+	 *
+	 * @return True if the neurons were released (or had been already)
+	 */
+	public boolean release() {
+		if (isReleased()) {
+			return true;
+		}
+		if (myClassIntegratorStep.length != 1) {
+			return false;
+		}
+
+		SpikingNeuron first = myNeurons[0];
+		Units units = ((LinearSynapticIntegrator) first.getIntegrator()).getCurrentUnits();
+		float initialVoltage = myGenerators[0].getInitialVoltage();
+		for (int i = 0; i < myNeurons.length; i++) {
+			if (myNeurons[i].getClass() != first.getClass()
+					|| myNeurons[i].getDocumentation() != null
+					|| !units.equals(((LinearSynapticIntegrator) myNeurons[i].getIntegrator()).getCurrentUnits())
+					|| myGenerators[i].getInitialVoltage() != initialVoltage) {
+				return false;
+			}
+		}
+
+		try {
+			myPrototype = first.clone();
+		} catch (CloneNotSupportedException e) {
+			return false;
+		}
+		myPrototype.reset(false);
+		myInitialVoltage = initialVoltage;
+
+		myTauRC = new float[myNeurons.length];
+		for (int i = 0; i < myNeurons.length; i++) {
+			myTauRC[i] = myGenerators[i].getTauRC();
+		}
+
+		String name = first.getName();
+		myNamePrefix = (name != null && name.endsWith("0")) ? name.substring(0, name.length() - 1) : null;
+		for (int i = 0; myNamePrefix != null && i < myNeurons.length; i++) {
+			if (!(myNamePrefix + i).equals(myNeurons[i].getName())) {
+				myNamePrefix = null;
+			}
+		}
+		if (myNamePrefix == null) {
+			myNames = new String[myNeurons.length];
+			for (int i = 0; i < myNeurons.length; i++) {
+				myNames[i] = myNeurons[i].getName();
+			}
+		}
+
+		myNeurons = null;
+		myGenerators = null;
+		myOrigins = null;
+		return true;
+	}
+
+	/**
+	 * Makes neurons to replace those dropped by release(), with the same parameters and state,
+	 * and runs them as before the release.
+	 *
+	 * @return The new neurons
+	 */
+	public SpikingNeuron[] restore() {
+		if (!isReleased()) {
+			return myNeurons;
+		}
+
+		int n = myGain.length;
+		SpikingNeuron[] neurons = new SpikingNeuron[n];
+		LIFSpikeGenerator[] generators = new LIFSpikeGenerator[n];
+		SpikeGeneratorOrigin[] origins = new SpikeGeneratorOrigin[n];
+		SpikeOutput spiking = new SpikeOutputImpl(new boolean[]{true}, Units.SPIKES, myTime);
+		SpikeOutput silent = new SpikeOutputImpl(new boolean[]{false}, Units.SPIKES, myTime);
+		try {
+			for (int i = 0; i < n; i++) {
+				SpikingNeuron neuron = myPrototype.clone();
+				neuron.setName(myNamePrefix == null ? myNames[i] : myNamePrefix + i);
+				neuron.setScale(myGain[i]);
+				neuron.setBias(myBias[i]);
+
+				LIFSpikeGenerator generator = (LIFSpikeGenerator) neuron.getGenerator();
+				generator.setTauRC(myTauRC[i]);
+				generator.setTauRef(myTauRef[i]);
+				generator.setState(myVoltage[i], myTimeSinceLastSpike[i]);
+
+				neurons[i] = neuron;
+				generators[i] = generator;
+				origins[i] = (SpikeGeneratorOrigin) neuron.getOrigin(Neuron.AXON);
+				origins[i].setValues(mySpikes[i] ? spiking : silent);
+			}
+		} catch (CloneNotSupportedException e) {
+			throw new Error("Released neurons could not be made again", e);
+		} catch (StructuralException e) {
+			throw new Error("Released neurons could not be made again", e);
+		}
+
+		myNeurons = neurons;
+		myGenerators = generators;
+		myOrigins = origins;
+		myPrototype = null;
+		myNamePrefix = null;
+		myNames = null;
+		myTauRC = null;
+		return neurons;
+	}
+
+	/**
+	 * Resets the state of the population as LIFSpikeGenerator.reset(...) would reset each
+	 * neuron. This is for released neurons; otherwise the neurons should be reset and a new
+	 * LIFPopulation made.
+	 */
+	public void reset() {
+		for (int i = 0; i < myVoltage.length; i++) {
+			myVoltage[i] = myInitialVoltage;
+			myTimeSinceLastSpike[i] = myTauRef[i];
+			mySpikes[i] = false;
+		}
+		myTime = 0;
+	}
+
+}
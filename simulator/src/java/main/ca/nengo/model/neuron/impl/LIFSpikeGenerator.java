@@ -293,6 +293,39 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		return myVoltage;
 	}
 
+	/**
+	 * @return Time since the last spike (s); used by LIFPopulation to take over state
+	 */
+	float getTimeSinceLastSpike() {
+		return myTimeSinceLastSpike;
+	}
+
+	/**
+	 * @return Voltage after reset
+	 */
+	float getInitialVoltage() {
+		return myInitialVoltage;
+	}
+
+	/**
+	 * @return Maximum time step including the correction applied in setMaxTimeStep(...)
+	 */
+	float getCorrectedMaxTimeStep() {
+		return myMaxTimeStep;
+	}
+
+	/**
+	 * Restores dynamic state that was advanced outside of this object (by LIFPopulation).
+	 *
+	 * @param voltage Membrane voltage
+	 * @param timeSinceLastSpike Time since the last spike (s)
+	 */
+	void setState(float voltage, float timeSinceLastSpike) {
+		myVoltage = voltage;
+		myPreviousVoltage = voltage;
+		myTimeSinceLastSpike = timeSinceLastSpike;
+	}
+
 	//Note that no voltage history is available after a constant-rate run.
 	private float doConstantRateRun(float time, float current) {
 		myTime = ourNullTime;
@@ -310,6 +343,19 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		return current > 1 ? 1f / ( myTauRef - myTauRC * ((float) Math.log(1 - 1/current)) ) : 0;
 	}
 
+	/**
+	 * @param currents Given currents
+	 * @return Result of solving for activity given each current
+	 */
+	public float[] constantRateRun(float[] currents) {
+		float[] result = new float[currents.length];
+		for (int i = 0; i < currents.length; i++) {
+			float current = currents[i];
+			result[i] = current > 1 ? 1f / ( myTauRef - myTauRC * ((float) Math.log(1 - 1/current)) ) : 0;
+		}
+		return result;
+	}
+
 	/**
 	 * @see Probeable#getHistory(String)
 	 */
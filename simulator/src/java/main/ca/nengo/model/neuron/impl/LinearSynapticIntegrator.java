@@ -162,6 +162,13 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 		myMaxTimeStep = maxTimeStep * ourTimeStepCorrection; //increased slightly because float/float != integer
 	}
 
+	/**
+	 * @return Maximum time step including the correction applied in setMaxTimeStep(...)
+	 */
+	float getCorrectedMaxTimeStep() {
+		return myMaxTimeStep;
+	}
+
 	/**
 	 * @return Units that current is expressed in
 	 */
@@ -0,0 +1,359 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "PoissonPopulation.java". Description:
+"Population-level execution of a group of Poisson and rate-function SpikingNeurons"
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+
+package ca.nengo.model.neuron.impl;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.RandomStream;
+import ca.nengo.math.impl.LinearFunction;
+import ca.nengo.math.impl.SigmoidFunction;
+import ca.nengo.model.Node;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.SpikeOutput;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.SpikeOutputImpl;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.SpikeGenerator;
+
+/**
+ * <p>Population-level execution of a group of SpikingNeurons with PoissonSpikeGenerators or
+ * RateFunctionSpikeGenerators, i.e. neurons with a firing rate that is a function of current.</p>
+ *
+ * <p>Each step, the rates of all neurons in a range are found in one pass over primitive arrays,
+ * and then spikes are sampled, without the per-neuron SynapticIntegrator, SpikeGenerator,
+ * TimeSeries and argument objects that are used by SpikingNeuron.run(...). Linear and sigmoid
+ * rate functions (as made by PoissonSpikeGenerator's factories) are evaluated inline from their
+ * parameters; other rate functions are called through Function.map(...) with a reused argument.
+ * As with LIFPopulation, this applies only to neurons whose input is entirely radial and that
+ * run in SimulationMode.DEFAULT; see isCompatible(...).</p>
+ *
+ * <p>The sub-steps, rates and random samples are the same as in the DEFAULT modes of
+ * PoissonSpikeGenerator and RateFunctionSpikeGenerator, and each neuron draws from its own
+ * random stream if one is given (as when an Ensemble runs its neurons individually; see
+ * AbstractEnsemble.getNodeStreams()), so spike trains are identical to those of the per-object
+ * path given the same input. As in LIFPopulation, the "I" states of the underlying neurons
+ * are not updated while the population runs.</p>
+ *
+ * <p>Parameters are copied at construction, so a new PoissonPopulation should be made if they
+ * are changed.</p>
+ */
+public class PoissonPopulation implements SpikingPopulation {
+
+	private static final long serialVersionUID = 1L;
+
+	//how each neuron's rate function is evaluated
+	private static final byte LINEAR = 0;
+	private static final byte SIGMOID = 1;
+	private static final byte OTHER = 2;
+
+	private RateFunctionSpikeGenerator[] mySmoothGenerators; //null for random neurons
+	private SpikeGeneratorOrigin[] myOrigins;
+
+	private float[] myGain;
+	private float[] myBias;
+	private byte[] myRateKind;
+	private float[] myRateParam1; //linear: slope; sigmoid: low
+	private float[] myRateParam2; //linear: bias; sigmoid: high - low
+	private float[] myRateParam3; //linear: 1 if rectified, otherwise 0; sigmoid: multiplier
+	private float[] myRateParam4; //sigmoid: inflection
+	private Function[] myRateFunctions; //for other rate functions
+	private float[] myRates;
+	private boolean[] mySmooth;
+	private float[] myVoltage; //integrated rate of smooth neurons
+	private boolean[] mySpikes;
+	private int[] mySpikeIndices;
+
+	//neurons with the same integrator time step share a timing class, so that sub-steps are found
+	//once per class per step
+	private int[] myTimingClass;
+	private float[] myClassIntegratorStep;
+
+	/**
+	 * @param nodes Neurons to run as a population (see isCompatible(...))
+	 * @throws StructuralException if the neurons are not all compatible
+	 */
+	public PoissonPopulation(Node[] nodes) throws StructuralException {
+		if (!isCompatible(nodes)) {
+			throw new StructuralException("PoissonPopulation requires DEFAULT-mode Poisson or rate-function "
+					+ "SpikingNeurons without Node-level Terminations or Noise");
+		}
+
+		int n = nodes.length;
+		mySmoothGenerators = new RateFunctionSpikeGenerator[n];
+		myOrigins = new SpikeGeneratorOrigin[n];
+		myGain = new float[n];
+		myBias = new float[n];
+		myRateKind = new byte[n];
+		myRateParam1 = new float[n];
+		myRateParam2 = new float[n];
+		myRateParam3 = new float[n];
+		myRateParam4 = new float[n];
+		myRateFunctions = new Function[n];
+		myRates = new float[n];
+		mySmooth = new boolean[n];
+		myVoltage = new float[n];
+		mySpikes = new boolean[n];
+		mySpikeIndices = new int[n];
+		myTimingClass = new int[n];
+
+		float[] integratorSteps = new float[n];
+		int numClasses = 0;
+
+		for (int i = 0; i < n; i++) {
+			SpikingNeuron neuron = (SpikingNeuron) nodes[i];
+			SpikeGenerator generator = neuron.getGenerator();
+			LinearSynapticIntegrator integrator = (LinearSynapticIntegrator) neuron.getIntegrator();
+
+			Function rateFunction;
+			if (generator instanceof RateFunctionSpikeGenerator) {
+				RateFunctionSpikeGenerator rfsg = (RateFunctionSpikeGenerator) generator;
+				rateFunction = rfsg.getRateFunction();
+				if (rfsg.isSmooth()) {
+					mySmoothGenerators[i] = rfsg;
+					mySmooth[i] = true;
+					myVoltage[i] = rfsg.getVoltage();
+				}
+			} else {
+				rateFunction = ((PoissonSpikeGenerator) generator).getRateFunction();
+			}
+			setRateFunction(i, rateFunction);
+
+			myOrigins[i] = (SpikeGeneratorOrigin) neuron.getOrigin(Neuron.AXON);
+			myGain[i] = neuron.getScale();
+			myBias[i] = neuron.getBias();
+
+			float integratorStep = integrator.getCorrectedMaxTimeStep();
+			int c = 0;
+			while (c < numClasses && integratorSteps[c] != integratorStep) {
+				c++;
+			}
+			if (c == numClasses) {
+				integratorSteps[c] = integratorStep;
+				numClasses++;
+			}
+			myTimingClass[i] = c;
+		}
+
+		myClassIntegratorStep = new float[numClasses];
+		System.arraycopy(integratorSteps, 0, myClassIntegratorStep, 0, numClasses);
+	}
+
+	//copies the parameters of a rate function that can be evaluated inline
+	private void setRateFunction(int i, Function function) {
+		if (function.getClass() == LinearFunction.class && ((LinearFunction) function).getMap().length == 1) {
+			LinearFunction linear = (LinearFunction) function;
+			myRateKind[i] = LINEAR;
+			myRateParam1[i] = linear.getMap()[0];
+			myRateParam2[i] = linear.getBias();
+			myRateParam3[i] = linear.getRectified() ? 1 : 0;
+		} else if (function.getClass() == SigmoidFunction.class) {
+			SigmoidFunction sigmoid = (SigmoidFunction) function;
+			myRateKind[i] = SIGMOID;
+			myRateParam1[i] = sigmoid.getLow();
+			myRateParam2[i] = sigmoid.getHigh() - sigmoid.getLow();
+			myRateParam3[i] = 4f * sigmoid.getSlope();
+			myRateParam4[i] = sigmoid.getInflection();
+		} else {
+			myRateKind[i] = OTHER;
+			myRateFunctions[i] = function;
+		}
+	}
+
+	/**
+	 * @param nodes A list of Nodes
+	 * @return True if the given Nodes can be run as a PoissonPopulation, i.e. they are all
+	 * 		SpikingNeurons with PoissonSpikeGenerators or RateFunctionSpikeGenerators running in
+	 * 		SimulationMode.DEFAULT, with LinearSynapticIntegrators that have no Terminations, and
+	 * 		without Noise
+	 */
+	public static boolean isCompatible(Node[] nodes) {
+		if (nodes.length == 0) {
+			return false;
+		}
+
+		for (Node node : nodes) {
+			if ( !(node instanceof SpikingNeuron) ) {
+				return false;
+			}
+
+			SpikingNeuron neuron = (SpikingNeuron) node;
+			SpikeGenerator generator = neuron.getGenerator();
+			if (generator == null
+					|| (generator.getClass() != PoissonSpikeGenerator.class && generator.getClass() != RateFunctionSpikeGenerator.class)
+					|| !SimulationMode.DEFAULT.equals(neuron.getMode())
+					|| neuron.getIntegrator() == null || neuron.getIntegrator().getClass() != LinearSynapticIntegrator.class
+					|| neuron.getIntegrator().getTerminations().length > 0
+					|| neuron.getNoise() != null) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.impl.SpikingPopulation#getSize()
+	 */
+	public int getSize() {
+		return myGain.length;
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.impl.SpikingPopulation#isRandom()
+	 */
+	public boolean isRandom() {
+		return true;
+	}
+
+	/**
+	 * Runs all neurons in the population, with random samples from PDFTools.random().
+	 *
+	 * @param radialInput Radial input to each neuron (see NEFNode.setRadialInput(float))
+	 * @param startTime Simulation time at which running starts
+	 * @param endTime Simulation time at which running ends
+	 * @return Number of neurons that spiked (their indices are at the start of getSpikeIndices())
+	 */
+	public int run(float[] radialInput, float startTime, float endTime) {
+		return run(radialInput, 0, myGain.length, startTime, endTime, null);
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.impl.SpikingPopulation#run(float[], int, int, float, float, ca.nengo.math.RandomStream[])
+	 */
+	public int run(float[] radialInput, int start, int end, float startTime, float endTime, RandomStream[] streams) {
+		//as in LinearSynapticIntegrator.run(...), which defines the sub-steps seen by the generator
+		float len = endTime - startTime;
+		float[][] classSpans = new float[myClassIntegratorStep.length][];
+		for (int c = 0; c < classSpans.length; c++) {
+			int steps = (int) Math.ceil(len / myClassIntegratorStep[c]);
+			float dt = len / steps;
+			float[] spans = new float[steps];
+			float previous = startTime;
+			for (int k = 1; k <= steps; k++) {
+				float time = startTime + k * dt;
+				spans[k-1] = time - previous;
+				previous = time;
+			}
+			classSpans[c] = spans;
+		}
+
+		findRates(radialInput, start, end);
+
+		int numSpikes = 0;
+		for (int i = start; i < end; i++) {
+			float[] spans = classSpans[myTimingClass[i]];
+			float rate = myRates[i];
+			boolean spike = false;
+
+			if (mySmooth[i]) {
+				//as in RateFunctionSpikeGenerator
+				float V = myVoltage[i];
+				for (int j = 0; j < spans.length; j++) {
+					V += spans[j] * rate;
+					if (V > 1) {
+						V -= 1;
+						spike = true;
+					}
+				}
+				myVoltage[i] = V;
+			} else {
+				//as in PoissonSpikeGenerator
+				RandomStream stream = (streams == null) ? null : streams[i];
+				for (int j = 0; j < spans.length && !spike; j++) {
+					double probNoSpikes = Math.exp(-rate*spans[j]);
+					double sample = (stream == null) ? PDFTools.random() : stream.nextDouble();
+					spike = (sample > probNoSpikes);
+				}
+			}
+
+			mySpikes[i] = spike;
+			if (spike) {
+				mySpikeIndices[start + numSpikes++] = i;
+			}
+		}
+
+		publish(start, end, endTime);
+		return numSpikes;
+	}
+
+	//finds the firing rate of each neuron in a range (input current is constant over a step)
+	private void findRates(float[] radialInput, int start, int end) {
+		float[] argument = new float[1];
+		for (int i = start; i < end; i++) {
+			float current = myBias[i] + myGain[i] * radialInput[i];
+
+			float rate;
+			if (myRateKind[i] == LINEAR) {
+				rate = current * myRateParam1[i] + myRateParam2[i];
+				if (myRateParam3[i] > 0 && rate < 0) {
+					rate = 0;
+				}
+			} else if (myRateKind[i] == SIGMOID) {
+				rate = myRateParam1[i] + myRateParam2[i]
+						* ( 1f / (1f + (float) Math.exp(-myRateParam3[i]*(current-myRateParam4[i]))) );
+			} else {
+				argument[0] = current;
+				rate = myRateFunctions[i].map(argument);
+			}
+			myRates[i] = rate;
+		}
+	}
+
+	//sets spike outputs on each neuron's axon origin (outputs are immutable so they can be shared)
+	private void publish(int start, int end, float endTime) {
+		SpikeOutput spiking = new SpikeOutputImpl(new boolean[]{true}, Units.SPIKES, endTime);
+		SpikeOutput silent = new SpikeOutputImpl(new boolean[]{false}, Units.SPIKES, endTime);
+		for (int i = start; i < end; i++) {
+			myOrigins[i].setValues(mySpikes[i] ? spiking : silent);
+		}
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.impl.SpikingPopulation#getSpikes()
+	 */
+	public boolean[] getSpikes() {
+		return mySpikes;
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.impl.SpikingPopulation#getSpikeIndices()
+	 */
+	public int[] getSpikeIndices() {
+		return mySpikeIndices;
+	}
+
+	/**
+	 * Copies the integrated rates of smooth RateFunctionSpikeGenerators back into the generators,
+	 * so that they can continue to run individually (Poisson neurons have no state).
+	 */
+	public void storeState() {
+		for (int i = 0; i < mySmoothGenerators.length; i++) {
+			if (mySmoothGenerators[i] != null) {
+				mySmoothGenerators[i].setVoltage(myVoltage[i]);
+			}
+		}
+	}
+
+}
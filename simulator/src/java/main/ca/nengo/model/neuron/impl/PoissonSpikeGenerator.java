@@ -107,7 +107,7 @@ public class PoissonSpikeGenerator implements SpikeGenerator {
 			float totalTimeSpan = time[time.length-1] - time[0];
 			float ratePerSecond = myRateFunction.map(new float[]{MU.mean(current)});
 			float ratePerStep = totalTimeSpan * ratePerSecond;
-			float numSpikes = new PoissonPDF(ratePerStep).sample()[0];
+			float numSpikes = PoissonPDF.sample(ratePerStep);
 
 			result = new RealOutputImpl(new float[]{numSpikes / totalTimeSpan}, Units.SPIKES_PER_S, time[time.length-1]);
 		} else {
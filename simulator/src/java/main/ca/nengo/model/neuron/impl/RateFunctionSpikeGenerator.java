@@ -98,6 +98,28 @@ public class RateFunctionSpikeGenerator implements SpikeGenerator {
         myRateFunction = function;
     }
 
+    /**
+     * @return True if spikes are generated by integrating the rate, rather than randomly
+     */
+    boolean isSmooth() {
+        return smooth;
+    }
+
+    /**
+     * @return Integrated rate since the last spike, if smooth
+     */
+    float getVoltage() {
+        return myVoltage;
+    }
+
+    /**
+     * @param voltage Integrated rate since the last spike (used by PoissonPopulation to
+     *     store its state)
+     */
+    void setVoltage(float voltage) {
+        myVoltage = voltage;
+    }
+
     /**
      * @see ca.nengo.model.neuron.SpikeGenerator#run(float[], float[])
      */
@@ -0,0 +1,84 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "SpikingPopulation.java". Description:
+"Population-level execution of a group of SpikingNeurons"
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.model.neuron.impl;
+
+import java.io.Serializable;
+
+import ca.nengo.math.RandomStream;
+
+/**
+ * <p>Population-level execution of a group of SpikingNeurons, in which parameters and state of
+ * all the neurons are kept in primitive arrays, and the population is advanced in one loop
+ * rather than by running each neuron object (see LIFPopulation and PoissonPopulation).
+ * Implementations update the neurons' AXON Origins, so that spike outputs are the same as if
+ * the neurons had run individually.</p>
+ */
+public interface SpikingPopulation extends Serializable {
+
+	/**
+	 * @return Number of neurons in the population
+	 */
+	public int getSize();
+
+	/**
+	 * @return True if the neurons spike randomly, in which case run(...) should be given a
+	 * 		random stream for each neuron
+	 */
+	public boolean isRandom();
+
+	/**
+	 * Runs a range of neurons in the population. Disjoint ranges can be run concurrently.
+	 *
+	 * @param radialInput Radial input to each neuron in the population (only elements start
+	 * 		to end-1 are used)
+	 * @param start Index of the first neuron in the range
+	 * @param end Index after the last neuron in the range
+	 * @param startTime Simulation time at which running starts
+	 * @param endTime Simulation time at which running ends
+	 * @param streams Random stream of each neuron (see AbstractEnsemble.getNodeStreams()), or
+	 * 		null if random samples are to be taken from PDFTools.random(). Ignored if the
+	 * 		population isn't random.
+	 * @return Number of neurons in the range that spiked (their indices are in getSpikeIndices(),
+	 * 		starting at position start)
+	 */
+	public int run(float[] radialInput, int start, int end, float startTime, float endTime, RandomStream[] streams);
+
+	/**
+	 * @return Whether each neuron spiked in the most recent step (this array is reused
+	 * 		between steps and should not be modified)
+	 */
+	public boolean[] getSpikes();
+
+	/**
+	 * @return Indices of neurons that spiked in the most recent step, listed from the start of
+	 * 		each range that was run (see run(...) for the number of indices in a range). This array
+	 * 		is reused between steps and should not be modified.
+	 */
+	public int[] getSpikeIndices();
+
+	/**
+	 * Copies state back into the underlying neurons, so that they can continue to run individually.
+	 */
+	public void storeState();
+
+}
@@ -35,6 +35,7 @@ import ca.nengo.model.PlasticNodeTermination;
 import ca.nengo.model.RealOutput;
 import ca.nengo.model.SpikeOutput;
 import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
 import ca.nengo.model.nef.NEFEnsemble;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
 import ca.nengo.util.MU;
@@ -49,6 +50,10 @@ import ca.nengo.util.MU;
  * modulatory variable, though it can be multi-dimensional. This is also user-defined, as some other Termination
  * onto the same NEFEnsemble.
  *
+ * Weights are updated in place in the node Terminations (see PlasticNodeTermination.getWeights()),
+ * one range of neurons per LearningTask. If the ensemble's plasticity interval is longer than a
+ * time step, each update is scaled by the number of steps since the last one.
+ *
  * TODO: test
  *
  * @author Bryan Tripp
@@ -60,7 +65,13 @@ public class PESTermination extends ModulatedPlasticEnsembleTermination  {
     private static final long serialVersionUID = 1L;
 //    private static final Logger ourLogger = Logger.getLogger(PESTermination.class);
 
+    private static final float INTEGRATION_TIME = 0.001f;
+
     private float myLastTime = 0.0f;
+    private float myLastUpdateTime = 0.0f;
+    private int myStepsSinceUpdate; //steps for which input was filtered since the last update
+    private float myUpdateRate; //learning rate times number of steps since last update
+    private float myOjaDecay;
     private float[] myFilteredInput;
     private float[] myGain;
     private float[][] myEncoders;
@@ -91,6 +102,8 @@ public class PESTermination extends ModulatedPlasticEnsembleTermination  {
     public void reset(boolean randomize) {
         super.reset(randomize);
         myLastTime = 0.0f;
+        myLastUpdateTime = 0.0f;
+        myStepsSinceUpdate = 0;
 
         if (myFilteredInput != null)
         	Arrays.fill(myFilteredInput, 0);
@@ -110,9 +123,26 @@ public class PESTermination extends ModulatedPlasticEnsembleTermination  {
         myOja = oja;
     }
 
+    /**
+     * Also filters the input, once per time step (this is called once per step by the ensemble,
+     * before any LearningTasks run).
+     *
+     * @see ca.nengo.model.plasticity.impl.PlasticEnsembleTermination#setOriginState(java.lang.String, ca.nengo.model.InstantaneousOutput, float)
+     */
+    @Override
+    public void setOriginState(String name, InstantaneousOutput state, float time) throws StructuralException {
+        super.setOriginState(name, state, time);
+
+        if (myLastTime < time) {
+            this.updateInput();
+            myLastTime = time;
+            myStepsSinceUpdate++;
+        }
+    }
+
     private void updateInput() {
         InstantaneousOutput input = this.getInput();
-        float integrationTime = 0.001f;
+        float integrationTime = INTEGRATION_TIME;
         float tauPSC = getNodeTerminations()[0].getTau(); //0.005
 
         if (input instanceof RealOutput) {
@@ -156,40 +186,58 @@ public class PESTermination extends ModulatedPlasticEnsembleTermination  {
             throw new StructuralException("Origin name not set in PESTermination");
         }
 
-        if (myLastTime < time) {
-            this.updateInput();
-            myLastTime = time;
-        }
-        
-        if (myFilteredInput == null)
+        if (myFilteredInput == null || myModInput == null)
         	return;
 
-        float[][] transform = this.getTransform();
+        startUpdate(time);
+        float rate = myUpdateRate;
+        float decay = 1.0f - myOjaDecay;
+        float[] input = myFilteredInput;
 
+        Termination[] terms = this.getNodeTerminations();
         for (int i = start; i < end; i++) {
-            for (int j = 0; j < transform[i].length; j++) {
-                float e = 0.0f;
-                for (int k = 0; k < myModInput.length; k++) {
-                    e += myModInput[k] * myEncoders[i][k];
+            float e = 0.0f;
+            for (int k = 0; k < myModInput.length; k++) {
+                e += myModInput[k] * myEncoders[i][k];
+            }
+            float scale = rate * e * myGain[i];
+
+            float[] weights = ((PlasticNodeTermination) terms[i]).getWeights();
+            int n = Math.min(weights.length, input.length);
+            if (myOja) {
+                for (int j = 0; j < n; j++) {
+                    weights[j] = weights[j] * decay + scale * input[j];
+                }
+            } else {
+                for (int j = 0; j < n; j++) {
+                    weights[j] += scale * input[j];
                 }
-                float delta = deltaOmega(myFilteredInput[j],time,transform[i][j],myGain[i],e);
-                transform[i][j] += delta;
             }
         }
-
-        this.setTransform(transform, false);
     }
 
-    private float deltaOmega(float input, float time, float currentWeight, float gain, float e) {
-        float oja = 0.0f;
+    /*
+     * Sets quantities shared by all neurons in a step, the first time a range is updated at the
+     * given time. LearningTasks for different ranges may call this concurrently.
+     */
+    private synchronized void startUpdate(float time) {
+        if (time == myLastUpdateTime) {
+            return;
+        }
 
-        if (myOja) {
+        //counted in steps rather than time, so that updates don't depend on the step size
+        int steps = Math.max(1, myStepsSinceUpdate);
+        myStepsSinceUpdate = 0;
+        myUpdateRate = myLearningRate * steps;
+
+        float oja = 0.0f;
+        if (myOja && myOutput != null) {
             for (float element : myOutput) {
-                oja += myLearningRate*element*element*currentWeight;
+                oja += element*element;
             }
         }
-
-        return myLearningRate * input * e * gain - oja;
+        myOjaDecay = myUpdateRate * oja;
+        myLastUpdateTime = time;
     }
     
     @Override
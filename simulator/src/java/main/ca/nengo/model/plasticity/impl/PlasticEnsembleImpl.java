@@ -62,6 +62,7 @@ public class PlasticEnsembleImpl extends EnsembleImpl implements TaskSpawner {
 
     private float myPlasticityInterval;
     private float myLastPlasticityTime;
+    private float myLastLearningTime;
     private boolean myLearning = true;
 
     protected Map<String, PlasticEnsembleTermination> myPlasticEnsembleTerminations;
@@ -131,14 +132,27 @@ public class PlasticEnsembleImpl extends EnsembleImpl implements TaskSpawner {
     @Override
     public void run(float startTime, float endTime) throws SimulationException {
         super.run(startTime, endTime);
+        updatePlasticity(endTime);
+    }
 
+    /**
+     * Passes the state at the end of a step to plastic terminations, and schedules learning
+     * tasks if it is time to learn. Called at the end of run(...); subclasses that run the
+     * ensemble in some other way must call it once the ensemble's outputs are up to date.
+     *
+     * @param endTime simulation time at which the step ended
+     * @throws SimulationException if the state can't be set
+     */
+    protected void updatePlasticity(float endTime) throws SimulationException {
         setStates(endTime); // updates myLastPlasticityTime
 
-        if ((myPlasticityInterval <= 0 && myLearning) ||
-                (myLearning && endTime >= myLastPlasticityTime + myPlasticityInterval)) {
+        //small tolerance so that an interval that is a multiple of the time step isn't missed by rounding
+        if (myLearning && (myPlasticityInterval <= 0 || endTime < myLastLearningTime
+                || endTime >= myLastLearningTime + myPlasticityInterval * 0.999f)) {
             for (LearningTask task : myTasks) {
                 task.reset(false);
             }
+            myLastLearningTime = endTime;
         }
     }
 
@@ -173,6 +187,7 @@ public class PlasticEnsembleImpl extends EnsembleImpl implements TaskSpawner {
     public void reset(boolean randomize) {
         super.reset(randomize);
         myLastPlasticityTime = 0.0f;
+        myLastLearningTime = 0.0f;
     }
 
     /**
@@ -87,6 +87,11 @@ public class STDPTermination extends PlasticEnsembleTermination {
         int preLength = nodeTerminations[0].getDimensions();
         int postLength = nodeTerminations.length;
 
+        myPreSpikeHistory = new float[HISTORY_LENGTH][preLength];
+        myPostSpikeHistory = new float[HISTORY_LENGTH][postLength];
+        myPreSpiking = new boolean[preLength];
+        myPostSpiking = new boolean[postLength];
+
         myPostTrace1 = new float[postLength];
         myPostTrace2 = new float[postLength];
         myPreTrace1 = new float[preLength];
@@ -33,17 +33,23 @@ import java.lang.System;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.RandomStream;
 import ca.nengo.model.Ensemble;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
 import ca.nengo.model.Probeable;
-import ca.nengo.model.Projection;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
 import ca.nengo.model.Termination;
 import ca.nengo.model.impl.NetworkImpl;
 import ca.nengo.model.plasticity.impl.PlasticEnsembleTermination;
@@ -54,8 +60,10 @@ import ca.nengo.util.Probe;
 import ca.nengo.util.ThreadTask;
 import ca.nengo.util.VisiblyMutable;
 import ca.nengo.util.VisiblyMutableUtils;
+import ca.nengo.util.impl.ExecutionPlan;
 import ca.nengo.util.impl.NodeThreadPool;
 import ca.nengo.util.impl.ProbeImpl;
+import ca.nengo.util.impl.StepProfiler;
 
 /**
  * A Simulator that runs locally (ie in the Java Virtual Machine in which it is
@@ -66,9 +74,12 @@ import ca.nengo.util.impl.ProbeImpl;
 public class LocalSimulator implements Simulator, java.io.Serializable {
     private static final long serialVersionUID = 1L;
 
-    private Projection[] myProjections;
+    private static long ourThreadPoolIdleTime = 1000;
+    private static Timer ourIdleTimer;
+
     private Node[] myNodes;
-    private ThreadTask[] myTasks;
+    private transient ExecutionPlan myPlan;
+    private transient volatile boolean myPlanStale;
     private List<ThreadTask> myProbeTasks;
     private Map<String, Node> myNodeMap;
     private List<Probe> myProbes;
@@ -76,6 +87,18 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
     private boolean myDisplayProgress;
     private transient List<VisiblyMutable.Listener> myChangeListeners;
     private transient NodeThreadPool myNodeThreadPool;
+    private transient volatile boolean myPoolStale;
+    private transient TimerTask myPoolRelease;
+    private transient VisiblyMutable.Listener myNetworkListener;
+    private Long mySeed;
+    private transient Map<Node, RandomStream> myRandomStreams;
+    private transient RandomStream myRootStream;
+    private transient volatile boolean myStreamsStale;
+    private transient StepProfiler myProfiler;
+    private transient StepProfiler.Histogram[] myNodeHistograms;
+    private transient StepProfiler.Histogram[] myProjectionHistograms;
+    private transient StepProfiler.Histogram[] myTaskHistograms;
+    private transient StepProfiler.Histogram[] myProbeHistograms;
 
     /**
      * Collection of Simulator
@@ -93,10 +116,15 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
      */
     public synchronized void initialize(Network network) {
     	
+        if (myNetwork != network) {
+            stopListening();
+        }
     	myNetwork = network;
+        myPoolStale = true;
+        myStreamsStale = true;
+        myPlanStale = true;
         
         myNodes = network.getNodes();
-        myProjections = network.getProjections();
 
         myNodeMap = new HashMap<String, Node>(myNodes.length * 2);
         for (Node myNode : myNodes) {
@@ -111,7 +139,241 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
         	myProbeTasks = new ArrayList<ThreadTask>(20);
         }
 
-        myTasks = NodeThreadPool.collectTasks(myNodes).toArray(new ThreadTask[0]);
+    }
+
+    /**
+     * Stops the threads that are kept between runs, if any. They are started again
+     * as needed by the next run. 
+     */
+    public synchronized void releaseThreadPool() {
+        cancelPoolRelease();
+        if (myNodeThreadPool != null) {
+            myNodeThreadPool.kill();
+            myNodeThreadPool = null;
+        }
+    }
+
+    /**
+     * @param idleTime Time (ms) for which the thread pool is kept after a run, so that it can be used 
+     * 		again by the next run. If no run starts in this time, the threads are stopped, so that a 
+     * 		Network that is no longer used isn't kept in memory by them. Defaults to 1000. 
+     */
+    public static void setThreadPoolIdleTime(long idleTime) {
+        ourThreadPoolIdleTime = idleTime;
+    }
+
+    /**
+     * @return Time (ms) for which the thread pool is kept after a run (see setThreadPoolIdleTime(...))
+     */
+    public static long getThreadPoolIdleTime() {
+        return ourThreadPoolIdleTime;
+    }
+
+    // stops the pool unless another run starts within the idle time
+    private void schedulePoolRelease() {
+        if (ourThreadPoolIdleTime <= 0) {
+            releaseThreadPool();
+            return;
+        }
+
+        myPoolRelease = new TimerTask() {
+            public void run() {
+                synchronized (LocalSimulator.this) {
+                    if (myPoolRelease == this) {
+                        releaseThreadPool();
+                    }
+                }
+            }
+        };
+        getIdleTimer().schedule(myPoolRelease, ourThreadPoolIdleTime);
+    }
+
+    private void cancelPoolRelease() {
+        if (myPoolRelease != null) {
+            myPoolRelease.cancel();
+            myPoolRelease = null;
+            getIdleTimer().purge(); //so the cancelled task doesn't hold on to this simulator
+        }
+    }
+
+    private static synchronized Timer getIdleTimer() {
+        if (ourIdleTimer == null) {
+            ourIdleTimer = new Timer("LocalSimulator idle pool release", true);
+        }
+        return ourIdleTimer;
+    }
+
+    /*
+     * The whole hierarchy, including nested networks, is run from one flattened plan (see 
+     * ExecutionPlan) by this simulator, rather than by a simulator for each nested network 
+     * (except nested networks with their own step sizes or run methods). The plan is kept 
+     * between runs, and rebuilt when the step size or the network (including any nested 
+     * network or its simulator, which forward their changes) changes. 
+     */
+    private void preparePlan(float stepSize) {
+        if (myNetworkListener == null) {
+            myNetworkListener = new VisiblyMutable.Listener() {
+                public void changed(VisiblyMutable.Event e) throws StructuralException {
+                    myPoolStale = true;
+                    myStreamsStale = true;
+                    myPlanStale = true;
+                }
+            };
+            myNetwork.addChangeListener(myNetworkListener);
+        }
+
+        if (myPlan == null || myPlanStale || myPlan.getStepSize() != stepSize) {
+            myPlanStale = false;
+            myPlan = new ExecutionPlan(myNetwork, stepSize);
+            myPoolStale = true;
+        }
+        bindProfiler();
+    }
+
+    /*
+     * The thread pool is kept between runs, so that short back-to-back runs (e.g. in 
+     * closed-loop control) don't start threads each time. The pool is replaced when the 
+     * plan or the probes (including those of nested networks, which pass on changes to 
+     * their simulators) change, or the pool's static settings change. It is released if 
+     * it stays idle (see setThreadPoolIdleTime(...)). 
+     */
+    private void preparePool() {
+        if (myNodeThreadPool != null && (myPoolStale || !myNodeThreadPool.isCurrent())) {
+            releaseThreadPool();
+        }
+
+        if (myNodeThreadPool == null) {
+            myPoolStale = false;
+            myNodeThreadPool = new NodeThreadPool(myPlan, myProbeTasks, myRandomStreams);
+        } else {
+            myNodeThreadPool.startRun();
+        }
+    }
+
+    /**
+     * @return The thread pool kept from the last run, if any
+     */
+    NodeThreadPool getNodeThreadPool() {
+        return myNodeThreadPool;
+    }
+
+    /**
+     * @param seed Seed from which the random stream of each Node is derived (see 
+     * 		updateRandomStreams(...)). By default, PDFTools.getSeed() is used. 
+     */
+    public synchronized void setSeed(long seed) {
+        mySeed = Long.valueOf(seed);
+    }
+
+    /**
+     * @return Seed from which the random stream of each Node is derived
+     */
+    public long getSeed() {
+        return (mySeed == null) ? PDFTools.getSeed() : mySeed.longValue();
+    }
+
+    /*
+     * Each Node (including those in nested Networks) draws random numbers from its own 
+     * stream (see PDFTools.setStream(...)). The streams are split from the seed by the 
+     * names of the Networks that contain the Node and the Node's own name, so they don't 
+     * depend on the order or thread in which Nodes run, or whether nested Networks are run 
+     * by their own simulators or flattened into a thread pool. A nested Network's 
+     * simulator splits its streams from the Network's stream. Streams keep their state 
+     * between runs, and are only replaced if their seed changes or the Network is reset. 
+     */
+    private void updateRandomStreams(boolean topLevel) {
+        RandomStream root = PDFTools.getStream();
+        if (topLevel || root == null) {
+            long seed = getSeed();
+            root = (myRootStream != null && myRootStream.getSeed() == seed) ? myRootStream : new RandomStream(seed);
+        }
+
+        if (root != myRootStream || myStreamsStale || myRandomStreams == null) {
+            Map<Node, RandomStream> streams = new IdentityHashMap<Node, RandomStream>();
+            myStreamsStale = false;
+            addRandomStreams(myNodes, root, streams);
+            myRandomStreams = streams;
+            myRootStream = root;
+            myPoolStale = true; //pool has the old streams
+        }
+    }
+
+    private void addRandomStreams(Node[] nodes, RandomStream parent, Map<Node, RandomStream> result) {
+        for (Node node : nodes) {
+            RandomStream stream = parent.split(node.getName());
+            RandomStream old = (myRandomStreams == null) ? null : myRandomStreams.get(node);
+            if (old != null && old.getSeed() == stream.getSeed()) {
+                stream = old;
+            }
+            result.put(node, stream);
+
+            if (node instanceof Network && !node.getClass().getCanonicalName().contains("CCMModelNetwork")) {
+                addRandomStreams(((Network) node).getNodes(), stream, result);
+            }
+        }
+    }
+
+    /**
+     * Restarts each Node's random stream from its seed on the next run, so that a reset 
+     * Network repeats the same random numbers. This is done by resetNetwork(...) and 
+     * NetworkImpl.reset(...). 
+     */
+    public synchronized void resetRandomStreams() {
+        myRandomStreams = null;
+        myRootStream = null;
+    }
+
+    /**
+     * Turns profiling on or off. While it is on, the time taken to run each Node, Projection 
+     * and task (or Probe) in each step is recorded, along with the time that threads wait 
+     * for each other after each phase of a step (see getProfiler()). Times accumulate over 
+     * runs until profiling is turned off or the profiler is reset. 
+     * 
+     * @param profiling True to record run times
+     */
+    public synchronized void setProfiling(boolean profiling) {
+        if (profiling && myProfiler == null) {
+            myProfiler = new StepProfiler();
+        } else if (!profiling) {
+            myProfiler = null;
+        }
+    }
+
+    /**
+     * @return True if run times are being recorded (see setProfiling(...))
+     */
+    public boolean isProfiling() {
+        return myProfiler != null;
+    }
+
+    /**
+     * @return Run times recorded since profiling was turned on, or null if profiling is off
+     */
+    public StepProfiler getProfiler() {
+        return myProfiler;
+    }
+
+    // Gets the profiler's histograms for the nodes, projections, tasks and probes that are run 
+    // outside of a thread pool, or clears them if not profiling. 
+    private void bindProfiler() {
+        if (myProfiler == null || myPlan == null) {
+            myNodeHistograms = null;
+            myProjectionHistograms = null;
+            myTaskHistograms = null;
+            myProbeHistograms = null;
+        } else {
+            myNodeHistograms = myProfiler.getHistograms(myPlan.getNodes());
+            myProjectionHistograms = myProfiler.getHistograms(myPlan.getProjections());
+            myTaskHistograms = myProfiler.getHistograms(myPlan.getTasks());
+            myProbeHistograms = myProfiler.getHistograms(myProbes.toArray());
+        }
+    }
+
+    private void stopListening() {
+        if (myNetworkListener != null) {
+            myNetwork.removeChangeListener(myNetworkListener);
+            myNetworkListener = null;
+        }
     }
 
     /**
@@ -146,8 +408,34 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
     public synchronized void run(float startTime, float endTime, float stepSize, boolean topLevel)
             throws SimulationException {
     	
-    	 myNodeThreadPool = null;
-         myNodeThreadPool = new NodeThreadPool(myNetwork, myProbeTasks);
+        cancelPoolRelease();
+        updateRandomStreams(topLevel);
+        preparePlan(stepSize);
+
+        //a nested network that isn't flattened runs in the thread of the enclosing network's step
+        if (topLevel && NodeThreadPool.isMultithreading()) {
+            preparePool();
+            myNodeThreadPool.setProfiler(myProfiler);
+        } else {
+            releaseThreadPool();
+        }
+
+        try {
+            runSteps(startTime, endTime, stepSize, topLevel);
+        } finally {
+            if (myNodeThreadPool != null) {
+                if (myNodeThreadPool.isReusable()) {
+                    myNodeThreadPool.finishRun();
+                    schedulePoolRelease();
+                } else {
+                    releaseThreadPool();
+                }
+            }
+        }
+    }
+
+    private void runSteps(float startTime, float endTime, float stepSize, boolean topLevel)
+            throws SimulationException {
 
         //		float pre_time = System.nanoTime();
 
@@ -207,45 +495,80 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
         }
 
         fireSimulatorEvent(new SimulatorEvent(1f, SimulatorEvent.Type.FINISHED));
-
-
-        if(myNodeThreadPool != null){
-            myNodeThreadPool.kill();
-            myNodeThreadPool = null;
-        }
-
     }
 
     public void step(float startTime, float endTime)
             throws SimulationException {
 
+        if (myPlan == null || myPlanStale) {
+            preparePlan(myPlan != null ? myPlan.getStepSize() 
+                    : (myNetwork instanceof NetworkImpl) ? ((NetworkImpl) myNetwork).getStepSize() : .001f);
+        }
+
     	myNetwork.fireStepListeners(startTime);
+    	myPlan.fireNestedStepListeners(startTime);
     	
         if(NodeThreadPool.isMultithreading() && myNodeThreadPool != null){
             myNodeThreadPool.step(startTime, endTime);
+        }else if (myProfiler != null && myNodeHistograms != null) {
+            long stepStart = System.nanoTime();
+            runStepInThisThread(startTime, endTime);
+            myProfiler.recordStep(System.nanoTime() - stepStart);
         }else{
-            for (Projection myProjection : myProjections) {
-                InstantaneousOutput values = myProjection.getOrigin().getValues();
-                myProjection.getTermination().setValues(values);
-            }
+            runStepInThisThread(startTime, endTime);
+        }
+    }
 
-            for (Node myNode : myNodes) {
-                if(myNode instanceof NetworkImpl) {
-                    ((NetworkImpl)myNode).run(startTime, endTime, false);
-                } else {
-                    myNode.run(startTime, endTime);
+    private void runStepInThisThread(float startTime, float endTime) throws SimulationException {
+        StepProfiler.Histogram[] projectionTimes = myProjectionHistograms;
+        StepProfiler.Histogram[] nodeTimes = myNodeHistograms;
+        StepProfiler.Histogram[] taskTimes = myTaskHistograms;
+        StepProfiler.Histogram[] probeTimes = myProbeHistograms;
+        boolean profiling = myProfiler != null && nodeTimes != null;
+        long time = 0;
+
+        Origin[] origins = myPlan.getOrigins();
+        Termination[] terminations = myPlan.getTerminations();
+        for (int i = 0; i < origins.length; i++) {
+            if (profiling) time = System.nanoTime();
+            InstantaneousOutput values = origins[i].getValues();
+            terminations[i].setValues(values);
+            if (profiling) projectionTimes[i].add(System.nanoTime() - time);
+        }
+
+        Node[] nodes = myPlan.getNodes();
+        ThreadTask[] tasks = myPlan.getTasks();
+
+        RandomStream entryStream = PDFTools.getStream();
+        try {
+            for (int i = 0; i < nodes.length; i++) {
+                Node myNode = nodes[i];
+                if (profiling) time = System.nanoTime();
+                if (myRandomStreams != null) {
+                    PDFTools.setStream(myRandomStreams.get(myNode));
                 }
+
+                ExecutionPlan.run(myNode, startTime, endTime);
+                if (profiling) nodeTimes[i].add(System.nanoTime() - time);
             }
 
-            
-            for (ThreadTask myTask : myTasks) {
-                myTask.run(startTime, endTime);
+            if (myRandomStreams != null) {
+                PDFTools.setStream(null); //as in the thread pool
             }
-            
-            Iterator<Probe> it = myProbes.iterator();
-            while (it.hasNext()) {
-                it.next().collect(endTime);
+
+            for (int i = 0; i < tasks.length; i++) {
+                if (profiling) time = System.nanoTime();
+                tasks[i].run(startTime, endTime);
+                if (profiling) taskTimes[i].add(System.nanoTime() - time);
             }
+
+            for (int i = 0; i < myProbes.size(); i++) {
+                if (profiling && i < probeTimes.length) time = System.nanoTime();
+                myProbes.get(i).collect(endTime);
+                if (profiling && i < probeTimes.length) probeTimes[i].add(System.nanoTime() - time);
+            }
+        } finally {
+            PDFTools.setStream(entryStream);
         }
     }
 
@@ -268,6 +591,8 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
         for (Node myNode : myNodes) {
             myNode.reset(randomize);
         }
+
+        resetRandomStreams();
         
         // Force garbage collection
         System.gc();
@@ -316,6 +641,7 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
         
         myProbeTasks.add(result.getProbeTask());
         myProbes.add(result);
+        myPoolStale = true;
 
         fireVisibleChangeEvent();
         return result;
@@ -332,6 +658,7 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
         if (!myProbeTasks.remove(probe.getProbeTask())) {
             throw new SimulationException("Probe could not be removed");
         }
+        myPoolStale = true;
         
         fireVisibleChangeEvent();
     }
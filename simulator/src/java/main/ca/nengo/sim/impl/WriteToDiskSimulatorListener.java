@@ -34,7 +34,9 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Calendar;
 
+import ca.nengo.model.Units;
 import ca.nengo.util.Probe;
+import ca.nengo.util.ProbeSink;
 import ca.nengo.sim.SimulatorEvent;
 import ca.nengo.sim.SimulatorListener;
 
@@ -47,6 +49,11 @@ import ca.nengo.sim.SimulatorListener;
  * WriteToDiskSimulatorListener to a simulator instance, progress is saved to disk
  * after each recordInterval.
  * 
+ * The listener is added as a sink of the probe while the simulator runs, so it receives
+ * only the newest sample on each step, rather than copying the probe's whole history.
+ * For long runs, consider a probe that doesn't record, or see also
+ * ca.nengo.io.MappedProbeWriter.
+ * 
  * Example usage (Python syntax):
  *   probe_error = network.getSimulator().addProbe("error",error.X,True)
  *   file_error = File("output/error.csv")
@@ -55,13 +62,16 @@ import ca.nengo.sim.SimulatorListener;
  * 
  * @author Trevor Bekolay
  */
-public class WriteToDiskSimulatorListener implements SimulatorListener {
+public class WriteToDiskSimulatorListener implements SimulatorListener, ProbeSink {
 	private File myFile;
 	private Probe myTargetProbe;
 	private float myRecordInterval;
 	private float myLastInterval;
 	private long myStartTime;
 	private BufferedWriter myWriter;
+	private float myLastTime;
+	private float[] myLastValues;
+	private boolean myAttached;
 	
 	/**
 	 * @param file The file that progress will be saved to. If it already exists, it will be overwritten.
@@ -88,23 +98,25 @@ public class WriteToDiskSimulatorListener implements SimulatorListener {
 		try {
 	        if (event.getType() == SimulatorEvent.Type.STARTED) {
 	        	myLastInterval = myRecordInterval;
+	        	myLastValues = null;
 	        	myStartTime = Calendar.getInstance().getTimeInMillis();
 	        	myWriter = new BufferedWriter(new FileWriter(myFile));
+	        	if (!myAttached) {
+	        		myTargetProbe.addSink(this);
+	        		myAttached = true;
+	        	}
 	        } else if (event.getType() == SimulatorEvent.Type.STEP_TAKEN) {
-	            float[] times = myTargetProbe.getData().getTimes();
-	            
-	            if (times[times.length - 1] >= myLastInterval) {
-	                float[][] data = myTargetProbe.getData().getValues();
-	
-	                myWriter.write(Float.toString(times[times.length-1]));
-	                for (int i=0; i < data[0].length; i++) {
-	                	myWriter.write("," + Float.toString(data[times.length-1][i]));
+	            if (myLastValues != null && myLastTime >= myLastInterval) {
+	                myWriter.write(Float.toString(myLastTime));
+	                for (int i=0; i < myLastValues.length; i++) {
+	                	myWriter.write("," + Float.toString(myLastValues[i]));
 	                }
 	                myWriter.newLine();
 	                myWriter.flush();
 	                myLastInterval += myRecordInterval;
 	            }
 	        } else if (event.getType() == SimulatorEvent.Type.FINISHED) {
+	            detach();
 	            myWriter.close();
 	
 	            long finishTime = Calendar.getInstance().getTimeInMillis();
@@ -115,4 +127,30 @@ public class WriteToDiskSimulatorListener implements SimulatorListener {
 			System.err.println("IO Exception in WriteToDiskSimulatorListener:  " + e);
 		}
 	}
+
+	/**
+	 * Stops receiving samples from the target Probe, so that the Probe doesn't keep this listener
+	 * (and its last values) after a run. This is done when a run finishes; the listener is
+	 * attached again when the next run starts.
+	 */
+	public void detach() {
+		myTargetProbe.removeSink(this);
+		myAttached = false;
+	}
+
+	/**
+	 * Keeps the newest sample from the target Probe.
+	 * 
+	 * @see ca.nengo.util.ProbeSink#write(float[], float[][], ca.nengo.model.Units[])
+	 */
+	public void write(float[] times, float[][] values, Units[] units) {
+		int last = times.length - 1;
+		if (last >= 0) {
+			if (myLastValues == null || myLastValues.length != values[last].length) {
+				myLastValues = new float[values[last].length];
+			}
+			System.arraycopy(values[last], 0, myLastValues, 0, myLastValues.length);
+			myLastTime = times[last];
+		}
+	}
 }
@@ -0,0 +1,46 @@
+package ca.nengo.util;
+
+import ca.nengo.model.Node;
+import ca.nengo.model.SimulationException;
+
+/**
+ * A Node made of many independent units (eg the neurons of a large ensemble), which can be
+ * split into ranges of units that are run as separate ThreadTasks. While the Node is
+ * partitioned, its run(...) method only does the work that is shared by all units (eg running
+ * terminations), and the rest of the step is done by the tasks, which must be run after
+ * run(...) and before the Node's outputs are used.
+ */
+public interface PartitionableNode extends Node {
+
+    /**
+     * @return Number of units that could be run in separate ranges
+     */
+    public int getPartitionSize();
+
+    /**
+     * Splits the units into ranges. Until unpartition() is called, the returned tasks must
+     * be run (in any order, and concurrently if desired) after each call to run(...).
+     *
+     * @param numRanges Number of ranges to split the units into
+     * @return A task for each range
+     */
+    public ThreadTask[] partition(int numRanges);
+
+    /**
+     * Returns to running all units in run(...).
+     */
+    public void unpartition();
+
+    /**
+     * Runs a range of units, as part of the current step. Called by the tasks returned
+     * by partition(...).
+     *
+     * @param range Index of the range (ranges are numbered from 0)
+     * @param start Index of the first unit in the range
+     * @param end Index after the last unit in the range
+     * @param startTime simulation time at which running starts (s)
+     * @param endTime simulation time at which running ends (s)
+     * @throws SimulationException if a problem is encountered while trying to run
+     */
+    public void runRange(int range, int start, int end, float startTime, float endTime) throws SimulationException;
+}
@@ -86,6 +86,13 @@ public interface Probe {
 	 */
 	public void setSamplingRate(float rate);
 
+	/**
+	 * @param window Length of time over which recorded data are kept, e.g. to display the last
+	 * 		few seconds of a long interactive run in bounded memory. If zero or less (the default),
+	 * 		all data are kept until reset().
+	 */
+	public void setRecordWindow(float window);
+
 	/**
 	 * @return All collected data since last reset()
 	 */
@@ -116,4 +123,15 @@ public interface Probe {
 	 * @return The probe task that is runs this probe. 
 	 */
 	public ProbeTask getProbeTask();
+
+	/**
+	 * @param sink A ProbeSink that will receive each sample as it is collected (whether or not
+	 * 		this Probe records them)
+	 */
+	public void addSink(ProbeSink sink);
+
+	/**
+	 * @param sink A ProbeSink to remove (has no effect if it wasn't added)
+	 */
+	public void removeSink(ProbeSink sink);
 }
@@ -0,0 +1,44 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "ProbeSink.java". Description:
+"Receives the samples collected by a Probe as they are collected"
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.util;
+
+import ca.nengo.model.Units;
+
+/**
+ * Receives the samples collected by a Probe as they are collected, e.g. to stream them to disk
+ * without copying the Probe's whole history (see Probe.addSink(...)). Implementations should
+ * be fast, because they are called from the simulation loop.
+ */
+public interface ProbeSink {
+
+	/**
+	 * Called each time the Probe collects data. The arrays belong to the Probe's target and may
+	 * be reused after this call returns, so they should be copied if they are kept.
+	 *
+	 * @param times Times of new samples
+	 * @param values Values of new samples (first index corresponds to time)
+	 * @param units Units of each dimension of the values
+	 */
+	public void write(float[] times, float[][] values, Units[] units);
+
+}
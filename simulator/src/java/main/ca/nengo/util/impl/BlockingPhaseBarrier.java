@@ -0,0 +1,51 @@
+package ca.nengo.util.impl;
+
+/**
+ * A PhaseBarrier in which waiting threads block on a monitor. Every thread is woken
+ * with notifyAll() when the last party arrives. This uses no CPU while waiting, but each
+ * phase costs a wake-up of every thread, which can dominate short steps.
+ */
+public class BlockingPhaseBarrier implements PhaseBarrier {
+
+	private final int myParties;
+	private final Object myLock;
+	private int myArrived;
+	private int myGeneration;
+
+	/**
+	 * @param parties Number of threads that must arrive before the barrier opens
+	 */
+	public BlockingPhaseBarrier(int parties) {
+		myParties = parties;
+		myLock = new Object();
+		myArrived = 0;
+		myGeneration = 0;
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.PhaseBarrier#getParties()
+	 */
+	public int getParties() {
+		return myParties;
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.PhaseBarrier#await()
+	 */
+	public void await() throws InterruptedException {
+		synchronized(myLock){
+			int generation = myGeneration;
+			myArrived++;
+
+			if(myArrived == myParties){
+				myArrived = 0;
+				myGeneration++;
+				myLock.notifyAll();
+			}else{
+				while(generation == myGeneration)
+					myLock.wait();
+			}
+		}
+	}
+
+}
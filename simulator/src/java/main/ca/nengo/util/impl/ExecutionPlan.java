@@ -0,0 +1,298 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "ExecutionPlan.java". Description:
+"The Nodes, Projections and tasks of a Network hierarchy, flattened for a single step loop"
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+
+package ca.nengo.util.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.Projection;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.impl.NetworkArrayImpl;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.util.TaskSpawner;
+import ca.nengo.util.ThreadTask;
+
+/**
+ * <p>The Nodes, Projections and tasks of a Network and all the Networks nested in it, flattened so
+ * that a single step loop (in one thread or in a NodeThreadPool) can run the whole hierarchy. Nested
+ * Networks are not run as Nodes, so they don't run their own simulators, and Nodes at every level
+ * can run in parallel.</p>
+ *
+ * <p>Origins and Terminations that Networks expose are resolved to the Origins and Terminations that
+ * they wrap, so that Projections across levels don't go through a wrapper for each level. Order
+ * within each phase doesn't matter, because Projections carry the outputs of the previous step.</p>
+ *
+ * <p>A nested Network is only flattened if it is a NetworkImpl that runs at the same step size as the
+ * plan and doesn't override run(...). Other nested Networks are run as Nodes (see run(Node, ...)), by
+ * their own simulators.</p>
+ *
+ * <p>A plan is a snapshot of the Network's structure; it should be rebuilt when the Network (or a
+ * nested Network, or its simulator) changes.</p>
+ */
+public class ExecutionPlan {
+
+	private final Node[] myNodes;
+	private final Node[] myUnbrokenNodes;
+	private final Projection[] myProjections;
+	private final Origin[] myOrigins;
+	private final Termination[] myTerminations;
+	private final ThreadTask[] myTasks;
+	private final Network[] myNetworks;
+	private final float myStepSize;
+
+	private static Map<Class<?>, Boolean> ourRunsAsNode = Collections.synchronizedMap(new WeakHashMap<Class<?>, Boolean>());
+
+	/**
+	 * @param network The top-level Network, which is run at its own step size (or 1 ms if it isn't a
+	 * 		NetworkImpl)
+	 */
+	public ExecutionPlan(Network network) {
+		this(network, (network instanceof NetworkImpl) ? ((NetworkImpl) network).getStepSize() : .001f);
+	}
+
+	/**
+	 * @param network The top-level Network
+	 * @param stepSize Step size at which the top-level Network is run. Nested Networks with other step
+	 * 		sizes are not flattened.
+	 */
+	public ExecutionPlan(Network network, float stepSize) {
+		myStepSize = stepSize;
+
+		List<Node> nodes = new ArrayList<Node>();
+		List<Node> unbrokenNodes = new ArrayList<Node>();
+		List<Projection> projections = new ArrayList<Projection>(Arrays.asList(network.getProjections()));
+		List<ThreadTask> tasks = new ArrayList<ThreadTask>();
+		List<Network> networks = new ArrayList<Network>();
+		collect(network.getNodes(), false, nodes, unbrokenNodes, projections, tasks, networks);
+
+		myNodes = nodes.toArray(new Node[0]);
+		myUnbrokenNodes = unbrokenNodes.toArray(new Node[0]);
+		myProjections = projections.toArray(new Projection[0]);
+		myTasks = tasks.toArray(new ThreadTask[0]);
+		myNetworks = networks.toArray(new Network[0]);
+
+		myOrigins = new Origin[myProjections.length];
+		myTerminations = new Termination[myProjections.length];
+		for (int i = 0; i < myProjections.length; i++) {
+			myOrigins[i] = resolve(myProjections[i].getOrigin());
+			myTerminations[i] = resolve(myProjections[i].getTermination());
+		}
+	}
+
+	/**
+	 * @return Step size at which the plan is run
+	 */
+	public float getStepSize() {
+		return myStepSize;
+	}
+
+	/**
+	 * @return Nodes to run, i.e. all the Nodes in the hierarchy other than flattened Networks
+	 */
+	public Node[] getNodes() {
+		return myNodes;
+	}
+
+	/**
+	 * @return Like getNodes(), but NetworkArrayImpls are left whole rather than broken into their
+	 * 		ensembles (e.g. so that a GPU can take them as units)
+	 */
+	public Node[] getNodesWithNetworkArrays() {
+		return myUnbrokenNodes;
+	}
+
+	/**
+	 * @return Projections at all levels of the hierarchy
+	 */
+	public Projection[] getProjections() {
+		return myProjections;
+	}
+
+	/**
+	 * @return The Origin of each Projection, unwrapped from any Networks that expose it
+	 */
+	public Origin[] getOrigins() {
+		return myOrigins;
+	}
+
+	/**
+	 * @return The Termination of each Projection, unwrapped from any Networks that expose it
+	 */
+	public Termination[] getTerminations() {
+		return myTerminations;
+	}
+
+	/**
+	 * @return Tasks of all TaskSpawners in the flattened hierarchy, including the ProbeTasks of
+	 * 		flattened Networks' simulators
+	 */
+	public ThreadTask[] getTasks() {
+		return myTasks;
+	}
+
+	/**
+	 * @return Networks nested (at any depth) in the top-level Network that are flattened
+	 */
+	public Network[] getNestedNetworks() {
+		return myNetworks;
+	}
+
+	/**
+	 * Signals the step listeners of nested Networks, which would otherwise be signalled by their
+	 * own simulators.
+	 *
+	 * @param time Start time of the step
+	 */
+	public void fireNestedStepListeners(float time) {
+		for (int i = 0; i < myNetworks.length; i++) {
+			myNetworks[i].fireStepListeners(time);
+		}
+	}
+
+	/**
+	 * @param node A Node in the hierarchy
+	 * @return True if the Node is a Network that is broken into its Nodes by this plan, rather than
+	 * 		run by its own simulator
+	 */
+	public boolean isFlattened(Node node) {
+		if (!(node instanceof Network) || node.getClass().getCanonicalName().contains("CCMModelNetwork")) {
+			return false;
+		} else if (node instanceof NetworkImpl) {
+			return ((NetworkImpl) node).getStepSize() == myStepSize
+				&& !overrides(node.getClass(), float.class, float.class)
+				&& !overrides(node.getClass(), float.class, float.class, boolean.class);
+		} else {
+			return true;
+		}
+	}
+
+	/**
+	 * @param nodes Nodes in the hierarchy (e.g. those that are left after some are taken by a GPU)
+	 * @return The given Nodes, with flattened Networks (including NetworkArrays) broken into their Nodes
+	 */
+	public Node[] flatten(Node[] nodes) {
+		List<Node> result = new ArrayList<Node>();
+		for (Node node : nodes) {
+			if (isFlattened(node)) {
+				result.addAll(Arrays.asList(flatten(((Network) node).getNodes())));
+			} else {
+				result.add(node);
+			}
+		}
+		return result.toArray(new Node[0]);
+	}
+
+	/**
+	 * Runs a Node of a plan. Nested NetworkImpls are run as subnetworks (see NetworkImpl.run(float,
+	 * float, boolean)), unless they override only run(float, float).
+	 *
+	 * @param node Node to run
+	 * @param startTime Simulation time at which running starts
+	 * @param endTime Simulation time at which running ends
+	 * @throws SimulationException if the Node can't be run
+	 */
+	public static void run(Node node, float startTime, float endTime) throws SimulationException {
+		if (node instanceof NetworkImpl && !runsAsNode(node.getClass())) {
+			((NetworkImpl) node).run(startTime, endTime, false);
+		} else {
+			node.run(startTime, endTime);
+		}
+	}
+
+	/**
+	 * @param origin An Origin, possibly exposed by one or more Networks
+	 * @return The Origin that does the work
+	 */
+	public static Origin resolve(Origin origin) {
+		return (origin instanceof NetworkImpl.OriginWrapper) ? ((NetworkImpl.OriginWrapper) origin).getBaseOrigin() : origin;
+	}
+
+	/**
+	 * @param termination A Termination, possibly exposed by one or more Networks
+	 * @return The Termination that does the work
+	 */
+	public static Termination resolve(Termination termination) {
+		return (termination instanceof NetworkImpl.TerminationWrapper)
+			? ((NetworkImpl.TerminationWrapper) termination).getBaseTermination() : termination;
+	}
+
+	/*
+	 * Breaks flattened Networks into their Nodes, Projections and tasks. Networks that aren't flattened
+	 * are run as Nodes, and their own simulators run their Projections and tasks (e.g. Probes).
+	 * NetworkArrays are left whole in unbrokenNodes.
+	 */
+	private void collect(Node[] startingNodes, boolean inNetworkArray, List<Node> nodes, List<Node> unbrokenNodes,
+			List<Projection> projections, List<ThreadTask> tasks, List<Network> networks) {
+		for (Node node : startingNodes) {
+			boolean flattened = isFlattened(node);
+			boolean isArray = flattened && node instanceof NetworkArrayImpl;
+
+			if (!inNetworkArray && (isArray || !flattened)) {
+				unbrokenNodes.add(node);
+			}
+
+			if (flattened) {
+				Network network = (Network) node;
+				networks.add(network);
+				projections.addAll(Arrays.asList(network.getProjections()));
+				collect(network.getNodes(), inNetworkArray || isArray, nodes, unbrokenNodes, projections, tasks, networks);
+			} else {
+				nodes.add(node);
+			}
+
+			if (node instanceof TaskSpawner && (flattened || !(node instanceof Network))) {
+				tasks.addAll(Arrays.asList(((TaskSpawner) node).getTasks()));
+			}
+		}
+	}
+
+	//True if a NetworkImpl subclass must be run through run(float, float), because it overrides only that
+	private static boolean runsAsNode(Class<?> c) {
+		Boolean result = ourRunsAsNode.get(c);
+		if (result == null) {
+			result = Boolean.valueOf(overrides(c, float.class, float.class)
+				&& !overrides(c, float.class, float.class, boolean.class));
+			ourRunsAsNode.put(c, result);
+		}
+		return result.booleanValue();
+	}
+
+	//True if a NetworkImpl subclass overrides the run method with the given parameters
+	private static boolean overrides(Class<?> c, Class<?>... parameterTypes) {
+		try {
+			return c.getMethod("run", parameterTypes).getDeclaringClass() != NetworkImpl.class;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+}
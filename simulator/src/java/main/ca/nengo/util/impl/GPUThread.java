@@ -16,12 +16,24 @@ public class GPUThread extends NodeThread {
 	NEFGPUInterface myNEFGPUInterface;
 	
 	public GPUThread(NodeThreadPool nodePool) {
-		super(nodePool, new Node[0], 0, -1, new Projection[0], 0, -1, new ThreadTask[0], 0, -1);
-		
 		// create NEFGPUInterface from nodes and projections.
 		// have to have some way to communicate which nodes and projections it decides are going to run on the GPU
 		// so that the rest of the threads can run the remaining nodes and projections
-		myNEFGPUInterface = new NEFGPUInterface();
+		this(nodePool, new NEFGPUInterface());
+	}
+	
+	/**
+	 * @param nodePool The pool that this thread belongs to
+	 * @param nefGPUInterface Runs the GPU nodes (e.g. a NEFJavaInterface, to run them without a GPU)
+	 */
+	public GPUThread(NodeThreadPool nodePool, NEFGPUInterface nefGPUInterface) {
+		super(nodePool, new Node[0], 0, -1, new Projection[0], 0, -1, new ThreadTask[0], 0, -1);
+		
+		myNEFGPUInterface = nefGPUInterface;
+	}
+	
+	// Projections, node ranges and tasks are left to the java threads (which may claim them dynamically).
+	protected void runProjections(float startTime, float endTime) throws SimulationException{
 	}
 	
 	protected void runNodes(float startTime, float endTime) throws SimulationException{
@@ -29,6 +41,12 @@ public class GPUThread extends NodeThread {
 		myNEFGPUInterface.step(startTime, endTime);
 	}
 	
+	protected void runRangeTasks(float startTime, float endTime) throws SimulationException{
+	}
+	
+	protected void runTasks(float startTime, float endTime) throws SimulationException{
+	}
+	
 	public NEFGPUInterface getNEFGPUInterface(){
 		return myNEFGPUInterface;
 	}
@@ -10,6 +10,7 @@ import ca.nengo.model.Origin;
 import ca.nengo.model.PlasticNodeTermination;
 import ca.nengo.model.Projection;
 import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
 import ca.nengo.model.SimulationMode;
 import ca.nengo.model.Termination;
 import ca.nengo.model.Units;
@@ -445,7 +446,7 @@ public class NEFGPUInterface {
 			ensembleDataArray[i] = ensembleData.getAsArray();
 		}
 		
-		nativeSetupRun(terminationTransforms, isDecodedTermination,
+		setupRun(terminationTransforms, isDecodedTermination,
 				terminationTau, encoders, decoders, neuronData,
 				adjustedProjections, networkArrayDataArray, ensembleDataArray,
 				isSpikingEnsemble, collectSpikes, outputRequiredOnCPU, maxTimeStep, nodeAssignments, myNumDevices);
@@ -490,9 +491,50 @@ public class NEFGPUInterface {
 		}
 	}
 	
+	/**
+	 * Passes the packed ensemble data to the implementation (the native library, unless overridden). 
+	 * Arguments are as assembled in initialize().
+	 */
+	protected void setupRun(float[][][][] terminationTransforms,
+			int[][] isDecodedTermination, float[][] terminationTau,
+			float[][][] encoders, float[][][][] decoders, float[][] neuronData,
+			int[][] projections, int[][] networkArrayData, int[][] ensembleData, 
+			int[] isSpikingEnsemble, int[] collectSpikes, int[][] outputRequiredOnCPU, float maxTimeStep, 
+			int[] deviceForNetworkArrays, int numDevicesRequested){
+		nativeSetupRun(terminationTransforms, isDecodedTermination,
+				terminationTau, encoders, decoders, neuronData,
+				projections, networkArrayData, ensembleData,
+				isSpikingEnsemble, collectSpikes, outputRequiredOnCPU, maxTimeStep, 
+				deviceForNetworkArrays, numDevicesRequested);
+	}
+
+	/**
+	 * Runs one step of the implementation (the native library, unless overridden). 
+	 * 
+	 * @param representedInput Input to each termination of each network array (entries of terminations that 
+	 * 		are fed by other GPU nodes are not set)
+	 * @param representedOutput Filled with the output of each origin of each network array that is required 
+	 * 		on the CPU (other entries are null)
+	 * @param spikes Filled with spikes (1 if spiking, else 0) of ensembles that collect spikes (other entries 
+	 * 		are null)
+	 * @throws SimulationException if the step can't be completed (the outputs are then not published)
+	 */
+	protected void runStep(float[][][] representedInput,
+			float[][][] representedOutput, float[][] spikes, float startTime,
+			float endTime) throws SimulationException{
+		nativeStep(representedInput, representedOutput, spikes, startTime, endTime);
+	}
+
+	/**
+	 * Releases the resources of the implementation (the native library, unless overridden).
+	 */
+	protected void killRun(){
+		nativeKill();
+	}
+
 	/**
 	 * 1. Load data from terminations into "representedInputValues". 
-	 * 2. Call nativeStep which will run the GPU's for one step and return the results in "representedOutputValues".
+	 * 2. Call runStep which will run the GPU's (or the implementation that overrides it) for one step and return the results in "representedOutputValues".
 	 * 3. Put the data from "representedOutputValues" into the appropriate origins.
 	 * 
 	 * @author Eric Crawford
@@ -517,8 +559,8 @@ public class NEFGPUInterface {
 					count = terminations.length;
 					
 					for (j = 0; j < count; j++) {
-						// we only get input for non-GPU terminations
-						if (!inputOnGPU[i][j]) {
+						// we only get input for non-GPU terminations (that have received input)
+						if (!inputOnGPU[i][j] && terminations[j].getInput() != null) {
 							inputRow = ((RealOutput) terminations[j].getInput()).getValues();
 								
 							representedInputValues[i][j] = inputRow;
@@ -527,7 +569,7 @@ public class NEFGPUInterface {
 				}
 				
 	
-				nativeStep(representedInputValues, representedOutputValues, spikeOutput, startTime, endTime);
+				runStep(representedInputValues, representedOutputValues, spikeOutput, startTime, endTime);
 	
 				
 				// Put data computed by GPU in the origins
@@ -577,10 +619,10 @@ public class NEFGPUInterface {
 
 	public void kill()
 	{
-		if (myGPUEnsembles.length == 0)
+		if (myGPUEnsembles == null || myGPUEnsembles.length == 0)
 			return;
 		
-		nativeKill();
+		killRun();
 	}
 
 	/**
@@ -0,0 +1,554 @@
+package ca.nengo.util.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.impl.EnsembleTermination;
+import ca.nengo.model.impl.NetworkArrayImpl;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.NetworkImpl.OriginWrapper;
+import ca.nengo.model.impl.NetworkImpl.TerminationWrapper;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.model.neuron.impl.LIFSpikeGenerator;
+import ca.nengo.model.neuron.impl.SpikingNeuron;
+
+/**
+ * A pure-Java implementation of the NengoGPU library contract. Ensembles that would run on the GPU
+ * (see NEFGPUInterface.takeGPUNodes(...)) are packed into dense arrays in the same way, and each step
+ * runs as a batch of dense kernels, one ensemble at a time, on a pool of worker threads:
+ *
+ * 1. Termination inputs are multiplied by their transforms and filtered (first-order, exact exponential
+ *    update with each termination's tau). Decoded terminations sum into the represented state;
+ *    non-decoded terminations (whose weights are the same for every neuron, as with the GPU) add current.
+ * 2. Encoders (scaled by the radii) map the state onto the LIF neurons, which are updated with the
+ *    same sub-steps as LIFSpikeGenerator (or with the LIF rate curve, for RATE mode ensembles).
+ * 3. Decoded outputs are accumulated over the neurons that are active in the step.
+ *
+ * As on the GPU, projections between these ensembles don't go through the CPU, plastic terminations
+ * don't learn, and neuron states start from rest at the beginning of each run. Enable with
+ * setUseJava(true); it is used when no GPU devices are requested.
+ */
+public class NEFJavaInterface extends NEFGPUInterface {
+
+	private static boolean myUseJava = false;
+	private static int myNumThreads = Runtime.getRuntime().availableProcessors();
+
+	private EnsembleKernel[] myKernels;
+	private int[] myFirstEnsemble; // index of each network array's first ensemble in myKernels
+	private int[][][] myTerminationMap; // [array][array termination][ensemble in array] -> ensemble termination
+	private int[][][] myOriginMap; // [array][array origin][ensemble in array] -> ensemble origin
+	private float[][][] myArrayOutputs;
+	private int[][] myProjections;
+
+	private ExecutorService myExecutor;
+	private List<Callable<Object>> myWorkers;
+	private AtomicInteger myNextKernel;
+	private float myStepStart;
+	private float myStepEnd;
+
+	public NEFJavaInterface(){
+		super();
+	}
+
+	/**
+	 * @param useJava Run GPU-eligible ensembles with a NEFJavaInterface, when no GPU devices are requested?
+	 * 		Takes effect when the next NodeThreadPool is created.
+	 */
+	public static void setUseJava(boolean useJava){
+		myUseJava = useJava;
+	}
+
+	public static boolean getUseJava(){
+		return myUseJava;
+	}
+
+	/**
+	 * @param numThreads Number of worker threads that run ensemble kernels (1 runs them in the calling thread)
+	 */
+	public static void setNumThreads(int numThreads){
+		myNumThreads = Math.max(1, numThreads);
+	}
+
+	public static int getNumThreads(){
+		return myNumThreads;
+	}
+
+	/**
+	 * Takes only NEFEnsembleImpls (and network arrays of them) whose neurons are all LIF SpikingNeurons,
+	 * since those are the only ones that the kernels can run.
+	 *
+	 * @see ca.nengo.util.impl.NEFGPUInterface#takeGPUNodes(ca.nengo.model.Node[])
+	 */
+	@Override
+	public Node[] takeGPUNodes(Node[] nodes){
+		ArrayList<Node> candidates = new ArrayList<Node>();
+		ArrayList<Node> rest = new ArrayList<Node>();
+
+		for(int i = 0; i < nodes.length; i++){
+			if(isSupported(nodes[i])){
+				candidates.add(nodes[i]);
+			}else{
+				rest.add(nodes[i]);
+			}
+		}
+
+		rest.addAll(Arrays.asList(super.takeGPUNodes(candidates.toArray(new Node[0]))));
+		return rest.toArray(new Node[0]);
+	}
+
+	private static boolean isSupported(Node node){
+		if(node instanceof NetworkArrayImpl){
+			Node[] subNodes = ((NetworkImpl) node).getNodes();
+			for(int i = 0; i < subNodes.length; i++){
+				if(!isSupported(subNodes[i]))
+					return false;
+			}
+			return subNodes.length > 0;
+		}else if(node instanceof NEFEnsembleImpl){
+			Node[] neurons = ((NEFEnsembleImpl) node).getNodes();
+			for(int i = 0; i < neurons.length; i++){
+				if(!(neurons[i] instanceof SpikingNeuron)
+						|| !(((SpikingNeuron) neurons[i]).getGenerator() instanceof LIFSpikeGenerator))
+					return false;
+			}
+			return neurons.length > 0;
+		}
+		return false;
+	}
+
+	/**
+	 * Builds a kernel for each ensemble from the packed data, and maps the terminations and origins of
+	 * network arrays onto the terminations and origins of their ensembles.
+	 */
+	@Override
+	protected void setupRun(float[][][][] terminationTransforms,
+			int[][] isDecodedTermination, float[][] terminationTau,
+			float[][][] encoders, float[][][][] decoders, float[][] neuronData,
+			int[][] projections, int[][] networkArrayData, int[][] ensembleData,
+			int[] isSpikingEnsemble, int[] collectSpikes, int[][] outputRequiredOnCPU, float maxTimeStep,
+			int[] deviceForNetworkArrays, int numDevicesRequested){
+
+		myKernels = new EnsembleKernel[myGPUEnsembles.length];
+		for(int i = 0; i < myKernels.length; i++){
+			Termination[] terminations = myGPUEnsembles[i].getTerminations();
+			boolean[] modulatory = new boolean[terminations.length];
+			for(int j = 0; j < terminations.length; j++){
+				modulatory[j] = terminations[j].getModulatory();
+			}
+
+			myKernels[i] = new EnsembleKernel(terminationTransforms[i], isDecodedTermination[i], terminationTau[i],
+					modulatory, encoders[i], decoders[i], neuronData[i], isSpikingEnsemble[i] != 0, maxTimeStep);
+		}
+
+		myFirstEnsemble = new int[myGPUNetworkArrays.length];
+		myTerminationMap = new int[myGPUNetworkArrays.length][][];
+		myOriginMap = new int[myGPUNetworkArrays.length][][];
+		myArrayOutputs = new float[myGPUNetworkArrays.length][][];
+
+		for(int i = 0; i < myGPUNetworkArrays.length; i++){
+			myFirstEnsemble[i] = networkArrayData[i][0];
+			NEFEnsembleImpl[] ensembles = new NEFEnsembleImpl[networkArrayData[i][1] - networkArrayData[i][0]];
+			System.arraycopy(myGPUEnsembles, networkArrayData[i][0], ensembles, 0, ensembles.length);
+
+			// a lone ensemble's terminations and origins are its own
+			boolean isEnsemble = myGPUNetworkArrays[i] instanceof NEFEnsembleImpl;
+
+			Termination[] terminations = myGPUNetworkArrays[i].getTerminations();
+			myTerminationMap[i] = new int[terminations.length][];
+			for(int j = 0; j < terminations.length; j++){
+				myTerminationMap[i][j] = isEnsemble ? new int[]{j} : mapTermination(terminations[j], ensembles);
+			}
+
+			Origin[] origins = isEnsemble ?
+					((NEFEnsembleImpl) myGPUNetworkArrays[i]).getDecodedOrigins() : myGPUNetworkArrays[i].getOrigins();
+			myOriginMap[i] = new int[origins.length][];
+			myArrayOutputs[i] = new float[origins.length][];
+			for(int j = 0; j < origins.length; j++){
+				myOriginMap[i][j] = isEnsemble ? new int[]{j} : mapOrigin(origins[j], ensembles);
+				myArrayOutputs[i][j] = new float[origins[j].getDimensions()];
+			}
+		}
+
+		myProjections = projections;
+
+		myNextKernel = new AtomicInteger(0);
+		int numWorkers = Math.min(myNumThreads, myKernels.length);
+		if(numWorkers > 1){
+			myExecutor = Executors.newFixedThreadPool(numWorkers, new ThreadFactory() {
+				private int myCount = 0;
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "NEFJavaInterfaceWorker" + (myCount++));
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MAX_PRIORITY);
+					return thread;
+				}
+			});
+
+			myWorkers = new ArrayList<Callable<Object>>(numWorkers);
+			for(int i = 0; i < numWorkers; i++){
+				myWorkers.add(new Callable<Object>() {
+					public Object call() {
+						runKernels();
+						return null;
+					}
+				});
+			}
+		}
+	}
+
+	// @return Index of the termination of each ensemble that receives the given network array termination's 
+	//		input, or -1 if it has none
+	private static int[] mapTermination(Termination termination, NEFEnsembleImpl[] ensembles){
+		if(termination instanceof TerminationWrapper)
+			termination = ((TerminationWrapper) termination).getBaseTermination();
+
+		Termination[] nodeTerminations = (termination instanceof EnsembleTermination) ?
+				((EnsembleTermination) termination).getNodeTerminations() : new Termination[0];
+
+		int[] result = new int[ensembles.length];
+		for(int e = 0; e < ensembles.length; e++){
+			result[e] = -1;
+			Termination[] ensembleTerminations = ensembles[e].getTerminations();
+			for(int m = 0; m < ensembleTerminations.length && result[e] < 0; m++){
+				for(int k = 0; k < nodeTerminations.length; k++){
+					if(ensembleTerminations[m] == nodeTerminations[k]){
+						result[e] = m;
+						break;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	// @return Index of the decoded origin of each ensemble whose output makes up part of the given network
+	// 		array origin's output (these have the same name), or -1 if it has none
+	private static int[] mapOrigin(Origin origin, NEFEnsembleImpl[] ensembles){
+		if(origin instanceof OriginWrapper)
+			origin = ((OriginWrapper) origin).getWrappedOrigin();
+
+		int[] result = new int[ensembles.length];
+		for(int e = 0; e < ensembles.length; e++){
+			result[e] = -1;
+			DecodedOrigin[] ensembleOrigins = ensembles[e].getDecodedOrigins();
+			for(int m = 0; m < ensembleOrigins.length; m++){
+				if(ensembleOrigins[m].getName().equals(origin.getName())){
+					result[e] = m;
+					break;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Runs the ensemble kernels for one step. If the thread is interrupted while the kernels run,
+	 * they are cancelled and nothing is published.
+	 */
+	@Override
+	protected void runStep(float[][][] representedInput,
+			float[][][] representedOutput, float[][] spikes, float startTime,
+			float endTime) throws SimulationException{
+
+		// projections between GPU nodes carry the previous step's outputs
+		for(int k = 0; k < myProjections.length; k++){
+			int[] p = myProjections[k];
+			representedInput[p[2]][p[3]] = myArrayOutputs[p[0]][p[1]];
+		}
+
+		// network array inputs go to the corresponding termination of each ensemble in the array
+		for(int i = 0; i < myTerminationMap.length; i++){
+			for(int j = 0; j < myTerminationMap[i].length; j++){
+				for(int e = 0; e < myTerminationMap[i][j].length; e++){
+					int m = myTerminationMap[i][j][e];
+					if(m >= 0){
+						myKernels[myFirstEnsemble[i] + e].myInputs[m] = representedInput[i][j];
+					}
+				}
+			}
+		}
+
+		myStepStart = startTime;
+		myStepEnd = endTime;
+		myNextKernel.set(0);
+		if(myExecutor == null){
+			runKernels();
+		}else{
+			List<Future<Object>> results = new ArrayList<Future<Object>>(myWorkers.size());
+			try {
+				for(int i = 0; i < myWorkers.size(); i++){
+					results.add(myExecutor.submit(myWorkers.get(i)));
+				}
+				for(int i = 0; i < results.size(); i++){
+					results.get(i).get();
+				}
+			} catch (InterruptedException e) {
+				for(int i = 0; i < results.size(); i++){
+					results.get(i).cancel(true);
+				}
+				Thread.currentThread().interrupt();
+				throw new SimulationException("Interrupted while running ensembles", e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+
+		// network array outputs are the outputs of the ensembles in the array, in order
+		for(int i = 0; i < myOriginMap.length; i++){
+			for(int j = 0; j < myOriginMap[i].length; j++){
+				float[] output = new float[myArrayOutputs[i][j].length];
+				int offset = 0;
+				for(int e = 0; e < myOriginMap[i][j].length; e++){
+					int m = myOriginMap[i][j][e];
+					if(m >= 0){
+						float[] ensembleOutput = myKernels[myFirstEnsemble[i] + e].myOutputs[m];
+						int length = Math.min(ensembleOutput.length, output.length - offset);
+						System.arraycopy(ensembleOutput, 0, output, offset, length);
+						offset += length;
+					}
+				}
+				// replaced rather than overwritten, since it may be the input of a projection
+				myArrayOutputs[i][j] = output;
+
+				if(representedOutput[i][j] != null){
+					System.arraycopy(output, 0, representedOutput[i][j], 0, output.length);
+				}
+			}
+		}
+
+		for(int i = 0; i < myKernels.length; i++){
+			if(spikes[i] != null){
+				boolean[] spiked = myKernels[i].mySpikes;
+				for(int n = 0; n < spiked.length; n++){
+					spikes[i][n] = spiked[n] ? 1 : 0;
+				}
+			}
+		}
+	}
+
+	// claims and runs kernels until none are left in this step
+	private void runKernels(){
+		int i;
+		while((i = myNextKernel.getAndIncrement()) < myKernels.length){
+			myKernels[i].run(myStepStart, myStepEnd);
+		}
+	}
+
+	@Override
+	protected void killRun(){
+		if(myExecutor != null){
+			myExecutor.shutdownNow();
+			myExecutor = null;
+		}
+	}
+
+	/**
+	 * Packed data, state and step of a single ensemble.
+	 */
+	private static class EnsembleKernel {
+
+		private static final float Vth = 1;
+
+		private final int myNumNeurons;
+		private final int myDimension;
+		private final boolean mySpiking;
+		private final float myTauRC;
+		private final float myInverseTauRC;
+		private final float myTauRef;
+		private final float myMaxTimeStep;
+		private final float[] myBias;
+		private final float[] myScale;
+		private final float[] myEncoders; // neuron-major, myNumNeurons x myDimension
+
+		private final float[][] myTransforms; // row-major; null for terminations that aren't supported
+		private final int[] myInputDimensions;
+		private final boolean[] myDecoded;
+		private final boolean[] myModulatory;
+		private final float[] myTau;
+		private final float[][] myFilterStates; // decoded: transformed input; non-decoded: raw input
+
+		private final float[][] myDecoders; // neuron-major, myNumNeurons x origin dimension
+		private final int[] myOutputDimensions;
+
+		private final float[] myState;
+		private final float[] myVoltage;
+		private final float[] myTimeSinceLastSpike;
+		private final float[] myActivity;
+
+		float[][] myInputs;
+		final float[][] myOutputs;
+		final boolean[] mySpikes;
+
+		public EnsembleKernel(float[][][] transforms, int[] isDecoded, float[] tau, boolean[] modulatory,
+				float[][] encoders, float[][][] decoders, float[] neuronData, boolean spiking, float maxTimeStep) {
+
+			myNumNeurons = (int) neuronData[0];
+			myDimension = encoders[0].length;
+			mySpiking = spiking;
+			myTauRC = neuronData[1];
+			myInverseTauRC = 1 / myTauRC;
+			myTauRef = neuronData[2];
+			myMaxTimeStep = maxTimeStep * 1.01f; //as in LIFSpikeGenerator
+			myBias = new float[myNumNeurons];
+			myScale = new float[myNumNeurons];
+			System.arraycopy(neuronData, 5, myBias, 0, myNumNeurons);
+			System.arraycopy(neuronData, 5 + myNumNeurons, myScale, 0, myNumNeurons);
+			myEncoders = flatten(encoders);
+
+			myTransforms = new float[transforms.length][];
+			myInputDimensions = new int[transforms.length];
+			myDecoded = new boolean[transforms.length];
+			myModulatory = modulatory;
+			myTau = tau;
+			myFilterStates = new float[transforms.length][];
+			for (int j = 0; j < transforms.length; j++) {
+				if (transforms[j] != null) {
+					myTransforms[j] = flatten(transforms[j]);
+					myInputDimensions[j] = transforms[j][0].length;
+					myDecoded[j] = isDecoded[j] != 0;
+					myFilterStates[j] = new float[myDecoded[j] ? myDimension : myInputDimensions[j]];
+				}
+			}
+			myInputs = new float[transforms.length][];
+
+			myDecoders = new float[decoders.length][];
+			myOutputDimensions = new int[decoders.length];
+			myOutputs = new float[decoders.length][];
+			for (int o = 0; o < decoders.length; o++) {
+				myDecoders[o] = flatten(decoders[o]);
+				myOutputDimensions[o] = decoders[o][0].length;
+				myOutputs[o] = new float[myOutputDimensions[o]];
+			}
+
+			myState = new float[myDimension];
+			myVoltage = new float[myNumNeurons];
+			myTimeSinceLastSpike = new float[myNumNeurons];
+			Arrays.fill(myTimeSinceLastSpike, myTauRef);
+			myActivity = new float[myNumNeurons];
+			mySpikes = new boolean[myNumNeurons];
+		}
+
+		private static float[] flatten(float[][] matrix) {
+			int columns = matrix.length > 0 ? matrix[0].length : 0;
+			float[] result = new float[matrix.length * columns];
+			for (int i = 0; i < matrix.length; i++) {
+				System.arraycopy(matrix[i], 0, result, i * columns, columns);
+			}
+			return result;
+		}
+
+		public void run(float startTime, float endTime) {
+			float len = endTime - startTime;
+
+			// terminations
+			Arrays.fill(myState, 0);
+			float current = 0;
+			for (int j = 0; j < myTransforms.length; j++) {
+				float[] input = myInputs[j];
+				if (myTransforms[j] == null || input == null) {
+					continue;
+				}
+
+				float decay = myTau[j] > 0 ? (float) Math.exp(-len / myTau[j]) : 0;
+				float gain = 1 - decay;
+				float[] transform = myTransforms[j];
+				float[] filterState = myFilterStates[j];
+				int inputDim = Math.min(myInputDimensions[j], input.length);
+
+				if (myDecoded[j]) {
+					for (int r = 0; r < myDimension; r++) {
+						float u = 0;
+						int offset = r * myInputDimensions[j];
+						for (int c = 0; c < inputDim; c++) {
+							u += transform[offset + c] * input[c];
+						}
+						filterState[r] = decay * filterState[r] + gain * u;
+						if (!myModulatory[j]) {
+							myState[r] += filterState[r];
+						}
+					}
+				} else {
+					for (int c = 0; c < inputDim; c++) {
+						filterState[c] = decay * filterState[c] + gain * input[c];
+						if (!myModulatory[j]) {
+							current += transform[c] * filterState[c];
+						}
+					}
+				}
+			}
+
+			// neurons (as in LIFPopulation; sub-steps as in LIFSpikeGenerator)
+			int steps = (int) Math.ceil(len / myMaxTimeStep);
+			float dt = len / steps;
+			for (int i = 0; i < myNumNeurons; i++) {
+				float radial = current;
+				int offset = i * myDimension;
+				for (int d = 0; d < myDimension; d++) {
+					radial += myEncoders[offset + d] * myState[d];
+				}
+				float I = myBias[i] + myScale[i] * radial;
+
+				if (mySpiking) {
+					float V = myVoltage[i];
+					float tsls = myTimeSinceLastSpike[i];
+					boolean spike = false;
+					for (int s = 0; s < steps; s++) {
+						float dV = myInverseTauRC * (I - V);
+						tsls = tsls + dt;
+						if (tsls < myTauRef) {
+							dV = 0;
+						} else if (tsls < myTauRef + dt) {
+							dV *= (tsls - myTauRef) / dt;
+						}
+						float previousV = V;
+						V = Math.max(0, V + dt * dV);
+
+						if (V >= Vth) {
+							float dSpike = (Vth - previousV) * dt / (V - previousV);
+							tsls = dt - dSpike;
+							spike = true;
+							V = 0;
+						}
+					}
+					myVoltage[i] = V;
+					myTimeSinceLastSpike[i] = tsls;
+					mySpikes[i] = spike;
+					myActivity[i] = spike ? 1f / len : 0;
+				} else {
+					myActivity[i] = I > 1 ? 1f / (myTauRef - myTauRC * ((float) Math.log(1 - 1/I))) : 0;
+				}
+			}
+
+			// decoding (only active neurons contribute)
+			for (int o = 0; o < myOutputs.length; o++) {
+				float[] output = myOutputs[o];
+				float[] decoders = myDecoders[o];
+				int dim = myOutputDimensions[o];
+				Arrays.fill(output, 0);
+				for (int i = 0; i < myNumNeurons; i++) {
+					float a = myActivity[i];
+					if (a != 0) {
+						int offset = i * dim;
+						for (int d = 0; d < dim; d++) {
+							output[d] += a * decoders[offset + d];
+						}
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+package ca.nengo.util.impl;
+
+import ca.nengo.model.SimulationException;
+import ca.nengo.util.PartitionableNode;
+import ca.nengo.util.ThreadTask;
+
+/**
+ * Implementation of a ThreadTask that runs a range of the units of a PartitionableNode
+ * (eg a range of neurons in a large ensemble).
+ *
+ * The parent resets the task each time it needs the range to be run, so that tasks
+ * run in steps in which the parent ran all of its units itself do nothing.
+ */
+public class NodeRangeTask implements ThreadTask {
+
+    private PartitionableNode myParent;
+
+    private final int myRange;
+    private final int startIdx;
+    private final int endIdx;
+    private boolean finished;
+
+    /**
+     * @param parent PartitionableNode of which this task runs a range
+     * @param range Index of the range
+     * @param start Index of the first unit in the range
+     * @param end Index after the last unit in the range
+     */
+    public NodeRangeTask(PartitionableNode parent, int range, int start, int end) {
+        myParent = parent;
+        myRange = range;
+        startIdx = start;
+        endIdx = end;
+        finished = true;
+    }
+
+    /**
+     * @see ca.nengo.model.Resettable#reset(boolean)
+     */
+    public void reset(boolean randomize) {
+        finished = false;
+    }
+
+    /**
+     * @return Parent PartitionableNode of this task
+     */
+    public PartitionableNode getParent() {
+        return myParent;
+    }
+
+    /**
+     * @return Index of the range
+     */
+    public int getRange() {
+        return myRange;
+    }
+
+    /**
+     * @return Index of the first unit in the range
+     */
+    public int getStartIndex() {
+        return startIdx;
+    }
+
+    /**
+     * @return Index after the last unit in the range
+     */
+    public int getEndIndex() {
+        return endIdx;
+    }
+
+    /**
+     * @see ca.nengo.util.ThreadTask#isFinished()
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @see ca.nengo.util.ThreadTask#run(float, float)
+     */
+    public void run(float startTime, float endTime) throws SimulationException {
+        if (!finished) {
+            finished = true;
+            myParent.runRange(myRange, startIdx, endIdx, startTime, endTime);
+        }
+    }
+
+    @Override
+    public NodeRangeTask clone() throws CloneNotSupportedException {
+        return (NodeRangeTask) super.clone();
+    }
+
+}
@@ -2,10 +2,14 @@ package ca.nengo.util.impl;
 
 import java.util.Date;
 
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.RandomStream;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
 import ca.nengo.model.Projection;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.Termination;
 import ca.nengo.util.ThreadTask;
 
 /**
@@ -35,8 +39,18 @@ public class NodeThread extends Thread {
 	private double myAverageTimeOnNodesPerStep;
 	private double myAverageTimeOnTasksPerStep;
 
+	private double myAverageWaitAfterProjectionsPerStep;
+	private double myAverageWaitAfterNodesPerStep;
+	private double myAverageWaitAfterTasksPerStep;
+
 	private int myNumSteps;
 
+	// waits in the current step, handed to the pool's profiler once the step is over
+	private long myProjectionWait;
+	private long myNodeWait;
+	private long myTaskArrival;
+	private boolean myWaitsReady;
+
 	public NodeThread(NodeThreadPool nodePool, Node[] nodes,
 			int startIndexInNodes, int endIndexInNodes,
 			Projection[] projections, int startIndexInProjections,
@@ -62,6 +76,9 @@ public class NodeThread extends Thread {
 		myAverageTimeOnProjectionsPerStep = 0;
 		myAverageTimeOnNodesPerStep = 0;
 		myAverageTimeOnTasksPerStep = 0;
+		myAverageWaitAfterProjectionsPerStep = 0;
+		myAverageWaitAfterNodesPerStep = 0;
+		myAverageWaitAfterTasksPerStep = 0;
 	}
 	
 	
@@ -83,42 +100,152 @@ public class NodeThread extends Thread {
 	// might have to make these protected?
 	protected void runProjections(float startTime, float endTime) throws SimulationException{
 		
+		StepProfiler.Histogram[] times = myNodeThreadPool.getProjectionHistograms();
+		Origin[] origins = myNodeThreadPool.getProjectionOrigins();
+		Termination[] terminations = myNodeThreadPool.getProjectionTerminations();
+		
+		if (myNodeThreadPool.getDynamicScheduling()) {
+			int chunk = myNodeThreadPool.getProjectionChunk();
+			int start;
+			while ((start = myNodeThreadPool.claimProjections()) < myProjections.length) {
+				int end = Math.min(start + chunk, myProjections.length);
+				for (int i = start; i < end; i++) {
+					runProjection(i, origins, terminations, times);
+				}
+			}
+			return;
+		}
+		
 		for (int i = myStartIndexInProjections; i < myEndIndexInProjections; i++) {
-			
-			InstantaneousOutput values = myProjections[i].getOrigin().getValues();
-			myProjections[i].getTermination().setValues(values);
+			runProjection(i, origins, terminations, times);
 		}
 		
 	}
 	
+	private void runProjection(int i, Origin[] origins, Termination[] terminations, StepProfiler.Histogram[] times) throws SimulationException{
+		long time = times != null ? System.nanoTime() : 0;
+		
+		InstantaneousOutput values = origins[i].getValues();
+		terminations[i].setValues(values);
+		
+		if (times != null) {
+			times[i].add(System.nanoTime() - time);
+		}
+	}
+	
 	protected void runNodes(float startTime, float endTime) throws SimulationException{
 		
+		// each node draws random numbers from its own stream, whichever thread runs it
+		RandomStream[] streams = myNodeThreadPool.getNodeStreams();
+		StepProfiler.Histogram[] times = myNodeThreadPool.getNodeHistograms();
 		
-		for (int i = myStartIndexInNodes; i < myEndIndexInNodes; i++) {
+		try {
+			if (myNodeThreadPool.getDynamicScheduling()) {
+				int i;
+				while ((i = myNodeThreadPool.claimNode()) < myNodes.length) {
+					long time = System.nanoTime();
+					PDFTools.setStream(streams[i]);
+					ExecutionPlan.run(myNodes[i], startTime, endTime);
+					time = System.nanoTime() - time;
+					myNodeThreadPool.recordNodeTime(i, time);
+					if (times != null) {
+						times[i].add(time);
+					}
+				}
+				return;
+			}
 			
-			myNodes[i].run(startTime, endTime);
+			for (int i = myStartIndexInNodes; i < myEndIndexInNodes; i++) {
+				long time = times != null ? System.nanoTime() : 0;
+				
+				PDFTools.setStream(streams[i]);
+				ExecutionPlan.run(myNodes[i], startTime, endTime);
+				
+				if (times != null) {
+					times[i].add(System.nanoTime() - time);
+				}
+			}
+		} finally {
+			PDFTools.setStream(null);
 		}
 		
 	}
 	
+	/**
+	 * Runs ranges of partitioned nodes, which are claimed from the pool until none are left. 
+	 */
+	protected void runRangeTasks(float startTime, float endTime) throws SimulationException {
+		StepProfiler.Histogram[] times = myNodeThreadPool.getRangeHistograms();
+		if (times == null) {
+			ThreadTask task;
+			while ((task = myNodeThreadPool.claimRangeTask()) != null) {
+				task.run(startTime, endTime);
+			}
+			return;
+		}
+		
+		ThreadTask[] tasks = myNodeThreadPool.getRangeTasks();
+		int i;
+		while ((i = myNodeThreadPool.claimRangeTaskIndex()) < tasks.length) {
+			long time = System.nanoTime();
+			tasks[i].run(startTime, endTime);
+			times[i].add(System.nanoTime() - time);
+		}
+	}
+	
 	protected void runTasks(float startTime, float endTime) throws SimulationException {
 		
+		StepProfiler.Histogram[] times = myNodeThreadPool.getTaskHistograms();
+		
+		if (myNodeThreadPool.getDynamicScheduling()) {
+			int chunk = myNodeThreadPool.getTaskChunk();
+			int start;
+			while ((start = myNodeThreadPool.claimTasks()) < myTasks.length) {
+				int end = Math.min(start + chunk, myTasks.length);
+				for (int i = start; i < end; i++) {
+					runTask(i, times, startTime, endTime);
+				}
+			}
+			return;
+		}
+		
 		for (int i = myStartIndexInTasks; i < myEndIndexInTasks; i++) {
-            myTasks[i].run(startTime, endTime);
+			runTask(i, times, startTime, endTime);
         }
 	}
 	
+	private void runTask(int i, StepProfiler.Histogram[] times, float startTime, float endTime) throws SimulationException{
+		long time = times != null ? System.nanoTime() : 0;
+		
+		myTasks[i].run(startTime, endTime);
+		
+		if (times != null) {
+			times[i].add(System.nanoTime() - time);
+		}
+	}
+	
 	public void run() {
 		try {
 			float startTime, endTime;
 
-			waitForPool();
-
 			while (true) {
+				waitForPool();
+
+				// This is the means of getting out of the loop. The pool will interrupt
+				// this thread at the appropriate time.
+				if (Thread.currentThread().isInterrupted() || myNodeThreadPool.getRunFinished()) {
+					kill();
+					return;
+				}
+
 				startTime = myNodeThreadPool.getStartTime();
 				endTime = myNodeThreadPool.getEndTime();
 				
 				long projectionInterval, nodeInterval, taskInterval;
+				long projectionWait, nodeWait, taskWait;
+				
+				StepProfiler profiler = myNodeThreadPool.getProfiler();
+				boolean timeWaits = myCollectTimings || profiler != null;
 				
 				projectionInterval = myCollectTimings ? new Date().getTime() : 0;
 				
@@ -126,7 +253,9 @@ public class NodeThread extends Thread {
 				
 				projectionInterval = myCollectTimings ? new Date().getTime() - projectionInterval : 0;
 
+				projectionWait = timeWaits ? System.nanoTime() : 0;
 				finished();
+				projectionWait = timeWaits ? System.nanoTime() - projectionWait : 0;
 				
 				nodeInterval = myCollectTimings ? new Date().getTime() : 0;
 
@@ -134,7 +263,22 @@ public class NodeThread extends Thread {
 				
 				nodeInterval = myCollectTimings ? new Date().getTime() - nodeInterval : 0;
 
+				nodeWait = timeWaits ? System.nanoTime() : 0;
 				finished();
+				nodeWait = timeWaits ? System.nanoTime() - nodeWait : 0;
+				
+				// ranges of partitioned nodes are counted as part of the node phase
+				if (myNodeThreadPool.hasRangeTasks()) {
+					long rangeInterval = myCollectTimings ? new Date().getTime() : 0;
+					
+					runRangeTasks(startTime, endTime);
+					
+					nodeInterval += myCollectTimings ? new Date().getTime() - rangeInterval : 0;
+					
+					long rangeWait = timeWaits ? System.nanoTime() : 0;
+					finished();
+					nodeWait += timeWaits ? System.nanoTime() - rangeWait : 0;
+				}
 				
 				taskInterval = myCollectTimings ? new Date().getTime() : 0;
 
@@ -142,27 +286,51 @@ public class NodeThread extends Thread {
                 
                 taskInterval = myCollectTimings ? new Date().getTime() - taskInterval : 0;
 
+                taskWait = timeWaits ? System.nanoTime() : 0;
+                
+                // the pool records these after the last barrier, so they're complete when the step returns
+                if(profiler != null){
+                	myProjectionWait = projectionWait;
+                	myNodeWait = nodeWait;
+                	myTaskArrival = taskWait;
+                	myWaitsReady = true;
+                }
+                
                 finished();
+                taskWait = timeWaits ? System.nanoTime() - taskWait : 0;
                 
                 if(myCollectTimings){
 	                myAverageTimeOnProjectionsPerStep = (myAverageTimeOnProjectionsPerStep * myNumSteps + projectionInterval) / (myNumSteps + 1);
 	                myAverageTimeOnNodesPerStep = (myAverageTimeOnNodesPerStep * myNumSteps + nodeInterval) / (myNumSteps + 1);
 	                myAverageTimeOnTasksPerStep = (myAverageTimeOnTasksPerStep * myNumSteps + taskInterval) / (myNumSteps + 1);
 	                
+	                myAverageWaitAfterProjectionsPerStep = (myAverageWaitAfterProjectionsPerStep * myNumSteps + projectionWait / 1e6) / (myNumSteps + 1);
+	                myAverageWaitAfterNodesPerStep = (myAverageWaitAfterNodesPerStep * myNumSteps + nodeWait / 1e6) / (myNumSteps + 1);
+	                myAverageWaitAfterTasksPerStep = (myAverageWaitAfterTasksPerStep * myNumSteps + taskWait / 1e6) / (myNumSteps + 1);
+	                
 	                myNumSteps++;
                 }
-                
-				// This is the means of getting out of the loop. The pool will interrupt
-				// this thread at the appropriate time.
-				if (Thread.currentThread().isInterrupted() || myNodeThreadPool.getRunFinished()) {
-					kill();
-					return;
-				}
 			}
 		} catch (SimulationException e) {
 		}
 	}
 	
+	/**
+	 * Records this thread's waits at the barriers in the step that has just finished, if it
+	 * was profiled. Called by the pool after the last barrier of the step.
+	 *
+	 * @param profiler Profiler to which waits are added
+	 * @param finishTime System.nanoTime() when the last barrier was passed
+	 */
+	protected void recordWaits(StepProfiler profiler, long finishTime){
+		if(myWaitsReady){
+			profiler.recordWait(0, myProjectionWait);
+			profiler.recordWait(1, myNodeWait);
+			profiler.recordWait(2, Math.max(0, finishTime - myTaskArrival));
+			myWaitsReady = false;
+		}
+	}
+	
 	protected void kill(){
 		if(myCollectTimings){
 			StringBuffer timingOutput = new StringBuffer();
@@ -170,6 +338,9 @@ public class NodeThread extends Thread {
 			timingOutput.append("Average time processing projections per step: " + myAverageTimeOnProjectionsPerStep + " ms\n");
 			timingOutput.append("Average time processing nodes per step: " + myAverageTimeOnNodesPerStep + " ms\n");
 			timingOutput.append("Average time processing tasks per step: " + myAverageTimeOnTasksPerStep + " ms\n");
+			timingOutput.append("Average time waiting for other threads after projections per step: " + myAverageWaitAfterProjectionsPerStep + " ms\n");
+			timingOutput.append("Average time waiting for other threads after nodes per step: " + myAverageWaitAfterNodesPerStep + " ms\n");
+			timingOutput.append("Average time waiting for other threads after tasks per step: " + myAverageWaitAfterTasksPerStep + " ms\n");
 			
 			System.out.print(timingOutput.toString());
 		}
@@ -190,4 +361,25 @@ public class NodeThread extends Thread {
 	public double getMyAverageTimeOnTasksPerStep() {
 		return myAverageTimeOnTasksPerStep;
 	}
+
+	/**
+	 * @return Average time (ms) per step spent waiting at the barrier for other threads to finish projections
+	 */
+	public double getMyAverageWaitAfterProjectionsPerStep() {
+		return myAverageWaitAfterProjectionsPerStep;
+	}
+
+	/**
+	 * @return Average time (ms) per step spent waiting at the barrier for other threads to finish nodes
+	 */
+	public double getMyAverageWaitAfterNodesPerStep() {
+		return myAverageWaitAfterNodesPerStep;
+	}
+
+	/**
+	 * @return Average time (ms) per step spent waiting at the barrier for other threads to finish tasks
+	 */
+	public double getMyAverageWaitAfterTasksPerStep() {
+		return myAverageWaitAfterTasksPerStep;
+	}
 }
@@ -3,14 +3,23 @@ package ca.nengo.util.impl;
 //import ca.nengo.model.InstantaneousOutput;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import ca.nengo.math.RandomStream;
+import ca.nengo.model.Ensemble;
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
 import ca.nengo.model.Projection;
+import ca.nengo.model.Termination;
 import ca.nengo.model.impl.NetworkArrayImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.util.PartitionableNode;
 import ca.nengo.util.TaskSpawner;
 import ca.nengo.util.ThreadTask;
 
@@ -30,21 +39,59 @@ public class NodeThreadPool {
 	protected static int myNumJavaThreads = defaultNumJavaThreads;
 	protected int myNumThreads;
 	protected NodeThread[] myThreads;
-	protected Object myLock;
+	protected PhaseBarrier myBarrier;
+	protected static boolean myUseSpinningBarrier = true;
+
+	// In dynamic scheduling mode, threads claim work from shared counters instead of fixed slices,
+	// and nodes are ordered from most to least costly (see setUseDynamicScheduling).
+	protected static boolean myUseDynamicScheduling = false;
+	protected static final int rebalanceInterval = 100;
+	protected boolean myDynamicScheduling;
+	protected AtomicInteger myNextNode;
+	protected AtomicInteger myNextProjection;
+	protected AtomicInteger myNextTask;
+	protected int myProjectionChunk;
+	protected int myTaskChunk;
+	protected long[] myNodeTimes;
+	protected double[] myNodeCosts;
+
+	// Large nodes are split into ranges (e.g. of neurons) that are run as separate tasks, in a phase 
+	// between the node and task phases (see setPartitionSize).
+	protected static int myPartitionSize = 0;
+	protected PartitionableNode[] myPartitionedNodes;
+	protected ThreadTask[] myRangeTasks;
+	protected AtomicInteger myNextRangeTask;
 
 	protected Node[] myNodes;
 	protected Projection[] myProjections;
     protected ThreadTask[] myTasks;
+    
+	// Origin and Termination of each projection (aligned with myProjections), unwrapped from exposing networks
+	protected Origin[] myProjectionOrigins;
+	protected Termination[] myProjectionTerminations;
 
-	protected volatile int numThreadsComplete;
-	protected volatile int numThreadsWaiting;
+	// Random stream of each node (aligned with myNodes), which is current while the node runs
+	protected Map<Node, RandomStream> myRandomStreams;
+	protected RandomStream[] myNodeStreams;
 
-	protected volatile boolean threadsRunning;
 	protected volatile boolean runFinished;
 	protected float myStartTime;
 	protected float myEndTime;
 	
+	// A pool can be kept between runs (see startRun and finishRun), as long as these settings are unchanged.
+	protected boolean myUseGPU;
+	protected int myCreatedNumJavaThreads;
+	protected boolean myCreatedSpinningBarrier;
+	protected int myCreatedPartitionSize;
+	protected boolean myCreatedCollectTimings;
+	protected boolean myRunning;
+
 	protected static boolean myCollectTimings;
+	protected StepProfiler myProfiler;
+	protected StepProfiler.Histogram[] myNodeHistograms;
+	protected StepProfiler.Histogram[] myProjectionHistograms;
+	protected StepProfiler.Histogram[] myTaskHistograms;
+	protected StepProfiler.Histogram[] myRangeHistograms;
 	protected long myRunStartTime;
 	protected double myAverageTimePerStep;
 	protected int myNumSteps;
@@ -78,6 +125,62 @@ public class NodeThreadPool {
 	public static void setCollectTimings(boolean collectTimings) {
 		myCollectTimings = collectTimings;
 	}
+
+	public static boolean isUsingSpinningBarrier() {
+		return myUseSpinningBarrier;
+	}
+
+	/**
+	 * @param useSpinningBarrier If true (the default), threads spin briefly before parking between phases
+	 * 		(see SpinningPhaseBarrier), otherwise they block on a monitor (see BlockingPhaseBarrier).
+	 * 		Takes effect when the next pool is created.
+	 */
+	public static void setUseSpinningBarrier(boolean useSpinningBarrier) {
+		myUseSpinningBarrier = useSpinningBarrier;
+	}
+
+	public static boolean isUsingDynamicScheduling() {
+		return myUseDynamicScheduling;
+	}
+
+	/**
+	 * @param useDynamicScheduling If true, rather than each thread running a fixed, equal-count slice of the 
+	 * 		nodes, projections and tasks, idle threads claim the next unclaimed item in each phase until none 
+	 * 		are left. Nodes are claimed in order of decreasing cost, which is estimated from their size at first
+	 * 		and then from their measured run times, so that the most expensive nodes start first and cheap nodes 
+	 * 		fill in the gaps. Takes effect when the next pool is created. 
+	 */
+	public static void setUseDynamicScheduling(boolean useDynamicScheduling) {
+		myUseDynamicScheduling = useDynamicScheduling;
+	}
+
+	public boolean getDynamicScheduling() {
+		return myDynamicScheduling;
+	}
+
+	public static int getPartitionSize() {
+		return myPartitionSize;
+	}
+
+	/**
+	 * @param partitionSize If positive, nodes that consist of at least twice this many independent units
+	 * 		(e.g. neurons of an NEFEnsembleImpl; see PartitionableNode) are split into ranges of about this 
+	 * 		many units, up to one range per thread. The ranges are claimed by idle threads, after all nodes 
+	 * 		have run and before tasks run, and their decoded outputs are reduced by whichever thread finishes 
+	 * 		the node's last range. This lets one very large ensemble use all the threads, instead of keeping 
+	 * 		one thread busy while the others wait. Zero (the default) turns partitioning off. Takes effect 
+	 * 		when the next pool is created.
+	 */
+	public static void setPartitionSize(int partitionSize) {
+		myPartitionSize = partitionSize;
+	}
+
+	/**
+	 * @return True if some nodes have been split into range tasks, which are run in their own phase
+	 */
+	public boolean hasRangeTasks() {
+		return myRangeTasks.length > 0;
+	}
 	
 	public float getStartTime(){
 		return myStartTime;
@@ -100,7 +203,29 @@ public class NodeThreadPool {
 	}
 	
 	/**
-	 * 1. Checks whether the GPU is to be used for the simulation. If it is, creates
+	 * @param network Network to run
+	 * @param threadTasks Tasks to run in addition to those of the network's nodes (e.g. probes)
+	 * @param randomStreams Random stream of each node, which is made current (see PDFTools.setStream(...)) 
+	 * 		while the node runs, so that results don't depend on which thread runs it 
+	 */
+	public NodeThreadPool(Network network, List<ThreadTask> threadTasks, Map<Node, RandomStream> randomStreams){
+		myRandomStreams = randomStreams;
+		initialize(network, threadTasks);
+	}
+	
+	/**
+	 * @param plan Flattened nodes, projections and tasks of the network to run
+	 * @param threadTasks Tasks to run in addition to those of the network's nodes (e.g. probes)
+	 * @param randomStreams Random stream of each node, which is made current (see PDFTools.setStream(...)) 
+	 * 		while the node runs, so that results don't depend on which thread runs it 
+	 */
+	public NodeThreadPool(ExecutionPlan plan, List<ThreadTask> threadTasks, Map<Node, RandomStream> randomStreams){
+		myRandomStreams = randomStreams;
+		initialize(plan, threadTasks);
+	}
+	
+	/**
+	 * 1. Checks whether the GPU (or its pure-Java implementation, NEFJavaInterface) is to be used for the simulation. If it is, creates
 	 * a GPU Thread, passes this thread the nodes and projections which are to be run on the GPU,
 	 * and calls the initialization function of the gpu thread's NEFGPUInterface. Starts the GPU thread.
 	 * 
@@ -113,27 +238,30 @@ public class NodeThreadPool {
 	 * @author Eric Crawford
 	 */
 	protected void initialize(Network network, List<ThreadTask> threadTasks){
+		initialize(new ExecutionPlan(network), threadTasks);
+	}
+	
+	protected void initialize(ExecutionPlan plan, List<ThreadTask> threadTasks){
 		
-		myLock = new Object();
-		
-		Node[] nodes = network.getNodes();
-		Projection[] projections = network.getProjections();
-		
-		List<Node> nodeList = collectNodes(nodes, false);
-		List<Projection> projList = collectProjections(nodes, projections);
-		List<ThreadTask> taskList = collectTasks(nodes);
+		List<ThreadTask> taskList = new ArrayList<ThreadTask>(Arrays.asList(plan.getTasks()));
 		taskList.addAll(threadTasks);
 		
-		myNodes = nodeList.toArray(new Node[0]);
-		myProjections = projList.toArray(new Projection[0]);
+		myNodes = plan.getNodesWithNetworkArrays().clone();
+		myProjections = plan.getProjections().clone();
 		myTasks = taskList.toArray(new ThreadTask[0]);
 		
-		threadsRunning = false;
 		runFinished = false;
-		numThreadsWaiting = 0;
-		numThreadsComplete = 0;
 		
-		boolean useGPU = NEFGPUInterface.getUseGPU();
+		// Without GPU devices, the GPU nodes can still be run as batches by the pure-Java implementation.
+		boolean useJavaGPU = !NEFGPUInterface.getUseGPU() && NEFJavaInterface.getUseJava();
+		boolean useGPU = NEFGPUInterface.getUseGPU() || useJavaGPU;
+		
+		myUseGPU = useGPU;
+		myCreatedNumJavaThreads = myNumJavaThreads;
+		myCreatedSpinningBarrier = myUseSpinningBarrier;
+		myCreatedPartitionSize = myPartitionSize;
+		myCreatedCollectTimings = myCollectTimings;
+		myRunning = true;
 		
 		if(useGPU){
 			myNumThreads = myNumJavaThreads + 1;
@@ -141,11 +269,14 @@ public class NodeThreadPool {
 	    	myNumThreads = myNumJavaThreads;
 	    }
 		
+		// The thread that calls step() is also a party at the barrier.
+		myBarrier = makeBarrier(myNumThreads + 1);
+		
 		
 		myThreads = new NodeThread[myNumThreads];
 		
 		if(useGPU){ 
-			GPUThread gpuThread = new GPUThread(this);
+			GPUThread gpuThread = useJavaGPU ? new GPUThread(this, new NEFJavaInterface()) : new GPUThread(this);
 			
 			// The NEFGPUInterface removes from myNodes ensembles that are to be run on the GPU and returns the rest.
 			myNodes = gpuThread.getNEFGPUInterface().takeGPUNodes(myNodes);
@@ -162,13 +293,34 @@ public class NodeThreadPool {
 			myThreads[myNumJavaThreads] = gpuThread;
 			
 			gpuThread.setPriority(Thread.MAX_PRIORITY);
+			gpuThread.setDaemon(true);
 			gpuThread.start();
 		}
 		
 		//In the remaining nodes (non-GPU nodes), DO break down the NetworkArrays, we don't want to call the 
 		// "run" method of nodes which are members of classes which derive from the NetworkImpl class since 
-		// NetworkImpls create their own LocalSimulators when run.
-		myNodes = collectNodes(myNodes, true).toArray(new Node[0]);
+		// NetworkImpls create their own LocalSimulators when run. Networks that the plan doesn't flatten 
+		// (e.g. with their own step sizes) are still run that way.
+		myNodes = plan.flatten(myNodes);
+		
+		myProjectionOrigins = new Origin[myProjections.length];
+		myProjectionTerminations = new Termination[myProjections.length];
+		for(int i = 0; i < myProjections.length; i++){
+			myProjectionOrigins[i] = ExecutionPlan.resolve(myProjections[i].getOrigin());
+			myProjectionTerminations[i] = ExecutionPlan.resolve(myProjections[i].getTermination());
+		}
+
+		myNodeStreams = new RandomStream[myNodes.length];
+		for(int i = 0; myRandomStreams != null && i < myNodes.length; i++){
+			myNodeStreams[i] = myRandomStreams.get(myNodes[i]);
+		}
+
+		partitionNodes();
+
+		myDynamicScheduling = myUseDynamicScheduling;
+		if(myDynamicScheduling){
+			initDynamicScheduling();
+		}
 
 		int nodesPerJavaThread = (int) Math.ceil((float) myNodes.length / (float) myNumJavaThreads);
 		int projectionsPerJavaThread = (int) Math.ceil((float) myProjections.length / (float) myNumJavaThreads);
@@ -207,6 +359,7 @@ public class NodeThreadPool {
 			myThreads[i].setName("JavaThread" + i);
 
 			myThreads[i].setPriority(Thread.MAX_PRIORITY);
+			myThreads[i].setDaemon(true); // an idle pool kept between runs shouldn't keep the VM alive
 			myThreads[i].start();
 		}
 		
@@ -215,106 +368,448 @@ public class NodeThreadPool {
 		myNumSteps = 0;
 	}
 
+	/**
+	 * @return True if this pool can be kept after finishRun() and used for another run. Pools that
+	 * 		run nodes on the GPU (or with NEFJavaInterface) are not reusable, because the nodes' parameters 
+	 * 		and state are copied when the pool is created, so changes between runs (e.g. a reset) would 
+	 * 		not be seen. 
+	 */
+	public boolean isReusable(){
+		return !myUseGPU;
+	}
+
+	/**
+	 * @return True if the static settings that this pool was created with (number of threads, GPU use, 
+	 * 		barrier type, dynamic scheduling, partition size, timings) haven't changed since. 
+	 */
+	public boolean isCurrent(){
+		boolean useJavaGPU = !NEFGPUInterface.getUseGPU() && NEFJavaInterface.getUseJava();
+		return myUseGPU == (NEFGPUInterface.getUseGPU() || useJavaGPU)
+			&& myCreatedNumJavaThreads == myNumJavaThreads
+			&& myCreatedSpinningBarrier == myUseSpinningBarrier
+			&& myDynamicScheduling == myUseDynamicScheduling
+			&& myCreatedPartitionSize == myPartitionSize
+			&& myCreatedCollectTimings == myCollectTimings;
+	}
+
+	/**
+	 * Prepares a pool for another run, after finishRun(). The nodes, projections and tasks collected 
+	 * when the pool was created are used again, so the network structure must not have changed 
+	 * (otherwise a new pool should be created). 
+	 */
+	public void startRun(){
+		if(!myRunning){
+			partitionNodes();
+			myRunStartTime = myCollectTimings ? new Date().getTime() : 0;
+			myAverageTimePerStep = 0;
+			myNumSteps = 0;
+			myRunning = true;
+		}
+	}
+
+	/**
+	 * Ends a run, leaving the threads waiting for the next run (see startRun()). Partitioned nodes 
+	 * are restored, so that they can be run outside the pool between runs. 
+	 */
+	public void finishRun(){
+		if(!myRunning){
+			return;
+		}
+		myRunning = false;
+
+		for(int i = 0; i < myPartitionedNodes.length; i++){
+			myPartitionedNodes[i].unpartition();
+		}
+		myPartitionedNodes = new PartitionableNode[0];
+		myRangeTasks = new ThreadTask[0];
+		
+		if(myCollectTimings){
+			StringBuffer timingOutput = new StringBuffer();
+			timingOutput.append("Timings for NodeThreadPool:\n");
+			
+			long approxRunTime = new Date().getTime() - myRunStartTime;
+			timingOutput.append("Approximate total run time: " + approxRunTime + " ms\n");
+			
+			timingOutput.append("Average time per step: " + myAverageTimePerStep + " ms\n");
+			
+			double[] waitTimes = getAveragePhaseWaitTimes();
+			timingOutput.append("Average wait per thread per step after projections, nodes, tasks: " 
+					+ waitTimes[0] + ", " + waitTimes[1] + ", " + waitTimes[2] + " ms\n");
+			
+			System.out.print(timingOutput.toString());
+		}
+	}
+
+	/**
+	 * Splits large PartitionableNodes into range tasks (see setPartitionSize).
+	 */
+	protected void partitionNodes(){
+		List<PartitionableNode> partitioned = new ArrayList<PartitionableNode>();
+		List<ThreadTask> rangeTasks = new ArrayList<ThreadTask>();
+
+		for(int i = 0; myPartitionSize > 0 && i < myNodes.length; i++){
+			if(myNodes[i] instanceof PartitionableNode){
+				PartitionableNode node = (PartitionableNode) myNodes[i];
+				int numRanges = Math.min(myNumJavaThreads, node.getPartitionSize() / myPartitionSize);
+				if(numRanges > 1){
+					partitioned.add(node);
+					rangeTasks.addAll(Arrays.asList(node.partition(numRanges)));
+				}
+			}
+		}
+
+		myPartitionedNodes = partitioned.toArray(new PartitionableNode[0]);
+		myRangeTasks = rangeTasks.toArray(new ThreadTask[0]);
+		myNextRangeTask = new AtomicInteger(0);
+		myRangeHistograms = myProfiler == null ? null : myProfiler.getHistograms(myRangeTasks);
+	}
+
+	/**
+	 * Sets a profiler to record the time taken by each node, projection and task, and the time 
+	 * threads wait for each other after each phase. Must be called between runs. 
+	 * 
+	 * @param profiler A profiler, or null to stop profiling
+	 */
+	public void setProfiler(StepProfiler profiler){
+		myProfiler = profiler;
+		if(profiler == null){
+			myNodeHistograms = null;
+			myProjectionHistograms = null;
+			myTaskHistograms = null;
+			myRangeHistograms = null;
+		}else{
+			myNodeHistograms = profiler.getHistograms(myNodes);
+			myProjectionHistograms = profiler.getHistograms(myProjections);
+			myTaskHistograms = profiler.getHistograms(myTasks);
+			myRangeHistograms = profiler.getHistograms(myRangeTasks);
+		}
+	}
+
+	/**
+	 * @return Profiler that records the time taken by each part of a step, or null if none
+	 */
+	public StepProfiler getProfiler(){
+		return myProfiler;
+	}
+
+	/**
+	 * @return Histogram of the run time of each node (aligned with the nodes that the threads are 
+	 * 		given), or null if not profiling
+	 */
+	public StepProfiler.Histogram[] getNodeHistograms(){
+		return myNodeHistograms;
+	}
+
+	/**
+	 * @return Histogram of the run time of each projection, or null if not profiling
+	 */
+	public StepProfiler.Histogram[] getProjectionHistograms(){
+		return myProjectionHistograms;
+	}
+
+	/**
+	 * @return Histogram of the run time of each task, or null if not profiling
+	 */
+	public StepProfiler.Histogram[] getTaskHistograms(){
+		return myTaskHistograms;
+	}
+
+	/**
+	 * @return Histogram of the run time of each range task (see claimRangeTask()), or null if 
+	 * 		not profiling
+	 */
+	public StepProfiler.Histogram[] getRangeHistograms(){
+		return myRangeHistograms;
+	}
+
+	/**
+	 * Called by the threads in this pool in the range phase (see setPartitionSize). 
+	 * 
+	 * @return The next unclaimed range task in this step, or null if there are none left
+	 */
+	public ThreadTask claimRangeTask(){
+		int i = claimRangeTaskIndex();
+		return i < myRangeTasks.length ? myRangeTasks[i] : null;
+	}
+
+	/**
+	 * Like claimRangeTask(), for threads that need the index (e.g. to time the task). 
+	 * 
+	 * @return Index of the next unclaimed range task in this step (none are left if it is past 
+	 * 		the end of getRangeTasks())
+	 */
+	public int claimRangeTaskIndex(){
+		return myNextRangeTask.getAndIncrement();
+	}
+
+	/**
+	 * @return Range tasks of partitioned nodes in the current run
+	 */
+	public ThreadTask[] getRangeTasks(){
+		return myRangeTasks;
+	}
+
+	/**
+	 * Sets up shared work counters, and orders nodes by estimated cost. 
+	 */
+	protected void initDynamicScheduling(){
+		myNextNode = new AtomicInteger(0);
+		myNextProjection = new AtomicInteger(0);
+		myNextTask = new AtomicInteger(0);
+
+		// projections and tasks are cheap, so they are claimed a few at a time
+		int numJavaThreads = Math.max(1, myNumJavaThreads);
+		myProjectionChunk = Math.max(1, myProjections.length / (numJavaThreads * 4));
+		myTaskChunk = Math.max(1, myTasks.length / (numJavaThreads * 4));
+
+		myNodeTimes = new long[myNodes.length];
+		myNodeCosts = new double[myNodes.length];
+		for(int i = 0; i < myNodes.length; i++){
+			myNodeCosts[i] = estimateCost(myNodes[i]);
+		}
+		sortNodesByCost();
+	}
+
+	/**
+	 * @param node A node
+	 * @return A rough estimate of the relative cost of running the node, used before its 
+	 * 		run time has been measured
+	 */
+	protected static double estimateCost(Node node){
+		if(node instanceof NEFEnsemble){
+			return ((NEFEnsemble) node).getNodes().length * (1 + ((NEFEnsemble) node).getDimension());
+		}else if(node instanceof Ensemble){
+			return ((Ensemble) node).getNodes().length;
+		}else{
+			return 1;
+		}
+	}
+
+	// Sorts myNodes in place (the threads share the array) from most to least costly.
+	private void sortNodesByCost(){
+		Integer[] order = new Integer[myNodes.length];
+		for(int i = 0; i < order.length; i++){
+			order[i] = Integer.valueOf(i);
+		}
+
+		final double[] costs = myNodeCosts;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(costs[b.intValue()], costs[a.intValue()]);
+			}
+		});
+
+		Node[] nodes = myNodes.clone();
+		double[] nodeCosts = myNodeCosts.clone();
+		RandomStream[] nodeStreams = myNodeStreams.clone();
+		StepProfiler.Histogram[] nodeHistograms = myNodeHistograms == null ? null : myNodeHistograms.clone();
+		for(int i = 0; i < order.length; i++){
+			myNodes[i] = nodes[order[i].intValue()];
+			myNodeCosts[i] = nodeCosts[order[i].intValue()];
+			myNodeStreams[i] = nodeStreams[order[i].intValue()];
+			if(nodeHistograms != null){
+				myNodeHistograms[i] = nodeHistograms[order[i].intValue()];
+			}
+		}
+	}
+
+	// Replaces cost estimates with run times measured since the last rebalance, and re-orders nodes.
+	private void rebalance(){
+		for(int i = 0; i < myNodes.length; i++){
+			myNodeCosts[i] = myNodeTimes[i];
+			myNodeTimes[i] = 0;
+		}
+		sortNodesByCost();
+	}
+
+	/**
+	 * Called by the threads in this pool in dynamic scheduling mode. 
+	 * 
+	 * @return Index of the next unclaimed node in this step (no nodes are left if it is past the end)
+	 */
+	public int claimNode(){
+		return myNextNode.getAndIncrement();
+	}
+
+	/**
+	 * Called by the threads in this pool in dynamic scheduling mode. 
+	 * 
+	 * @return Index of the first of the next getProjectionChunk() unclaimed projections in this step
+	 */
+	public int claimProjections(){
+		return myNextProjection.getAndAdd(myProjectionChunk);
+	}
+
+	/**
+	 * Called by the threads in this pool in dynamic scheduling mode. 
+	 * 
+	 * @return Index of the first of the next getTaskChunk() unclaimed tasks in this step
+	 */
+	public int claimTasks(){
+		return myNextTask.getAndAdd(myTaskChunk);
+	}
+
+	/**
+	 * @return Random stream of each node (aligned with the nodes that the threads are given; 
+	 * 		elements are null if the node has no stream)
+	 */
+	public RandomStream[] getNodeStreams(){
+		return myNodeStreams;
+	}
+
+	/**
+	 * @return Origin of each projection (aligned with the projections that the threads are given), 
+	 * 		unwrapped from any networks that expose it
+	 */
+	public Origin[] getProjectionOrigins(){
+		return myProjectionOrigins;
+	}
+
+	/**
+	 * @return Termination of each projection (aligned with the projections that the threads are given), 
+	 * 		unwrapped from any networks that expose it
+	 */
+	public Termination[] getProjectionTerminations(){
+		return myProjectionTerminations;
+	}
+
+	public int getProjectionChunk(){
+		return myProjectionChunk;
+	}
+
+	public int getTaskChunk(){
+		return myTaskChunk;
+	}
+
+	/**
+	 * Called by the threads in this pool in dynamic scheduling mode, after running a node. 
+	 * 
+	 * @param index Index of the node
+	 * @param time Time taken to run the node (ns)
+	 */
+	public void recordNodeTime(int index, long time){
+		myNodeTimes[index] += time;
+	}
+
+	/**
+	 * @param parties Number of threads that will wait at the barrier
+	 * @return A barrier for separating the phases of a step
+	 */
+	protected PhaseBarrier makeBarrier(int parties){
+		if(myUseSpinningBarrier){
+			return new SpinningPhaseBarrier(parties);
+		}else{
+			return new BlockingPhaseBarrier(parties);
+		}
+	}
+
 	/**
 	 * Tell the threads in the current thread pool to take a step. The step consists of three
-	 * phases: projections, nodes, tasks. All threads must complete a stage before any thread begins
+	 * phases: projections, nodes, tasks (plus a phase for node ranges after the nodes, if some 
+	 * nodes are partitioned). All threads must complete a stage before any thread begins
 	 * the next stage, so, for example, all threads must finish processing all of their projections 
 	 * before any thread starts processing its nodes.
 	 * 
+	 * The calling thread waits at the same barrier as the pool threads, at the start of the step 
+	 * and after each phase, so that the pool threads go from one phase to the next without
+	 * waiting to be restarted.
+	 * 
 	 * @author Eric Crawford
 	 */
 	public void step(float startTime, float endTime){
 		myStartTime = startTime;
 		myEndTime = endTime;
 		
+		// the threads are all waiting to start, so the shared work can be reset
+		if(myDynamicScheduling){
+			if(myNumSteps > 0 && myNumSteps % rebalanceInterval == 0){
+				rebalance();
+			}
+			myNextNode.set(0);
+			myNextProjection.set(0);
+			myNextTask.set(0);
+		}
+		myNextRangeTask.set(0);
 		
 		long stepInterval = myCollectTimings ? new Date().getTime() : 0;
+		long stepStart = myProfiler != null ? System.nanoTime() : 0;
 		
 		try
 		{
 			int oldPriority = Thread.currentThread().getPriority();
 			Thread.currentThread().setPriority(Thread.MAX_PRIORITY);
 
-			// start the projection processing, wait for it to finish
-			startThreads();
+			// release the threads to start the step
+			myBarrier.await();
+
+			// wait for the projection processing to finish
+			myBarrier.await();
 
-			// start the node processing, wait for it to finish
-			startThreads();
+			// wait for the node processing to finish
+			myBarrier.await();
 
-			// start the task processing, wait for it to finish
-			startThreads();
+			// wait for the ranges of partitioned nodes to finish
+			if(hasRangeTasks()){
+				myBarrier.await();
+			}
+
+			// wait for the task processing to finish
+			myBarrier.await();
 
 			Thread.currentThread().setPriority(oldPriority);
 		}
 		catch(Exception e)
 		{}
 		
+		if(myProfiler != null){
+			long stepFinish = System.nanoTime();
+			myProfiler.recordStep(stepFinish - stepStart);
+			for(int i = 0; i < myThreads.length; i++){
+				myThreads[i].recordWaits(myProfiler, stepFinish);
+			}
+		}
+		
 		if(myCollectTimings){
 			stepInterval = new Date().getTime() - stepInterval;
 			myAverageTimePerStep = (myAverageTimePerStep * myNumSteps + stepInterval) / (myNumSteps + 1);
-            
-            myNumSteps++;
 		}
+		
+		myNumSteps++;
 	}
 
 	/**
-	 * Tells the threads to run for one phase (projections, nodes or tasks). 
-	 * The threads should be waiting on myLock at the time this is called.
+	 * Called by the threads in this pool at the start of each step. Returns once 
+	 * step(...) has been called. 
 	 * 
 	 * @author Eric Crawford
 	 */
-	private void startThreads() throws InterruptedException {
-		synchronized(myLock){
-			
-			numThreadsComplete = 0;
-			threadsRunning = true;
-			myLock.notifyAll();  //release all the threads from the threadWait() loop
-			
-			while(threadsRunning || numThreadsWaiting < myThreads.length) 
-				myLock.wait();  //we don't want the stepthread to be able to continue (and start threads) until all the threads are waiting to be started
-		}
+	public void threadWait() throws InterruptedException{
+		myBarrier.await();
 	}
 
 	/**
-	 * Called by the threads in this node pool. Called once they finish a phase (projections, nodes or tasks).
-	 * Forces them to wait on myLock.
+	 * Called by the threads in this pool to signal that they are done a phase (projections,
+	 * nodes or tasks). Returns once all the threads are done the phase.
 	 * 
 	 * @author Eric Crawford
 	 */
-	public void threadWait() throws InterruptedException{
-		synchronized(myLock){
-			numThreadsWaiting++;
-			if(numThreadsWaiting == myThreads.length)
-				myLock.notifyAll(); //all the threads are done the step and in a waiting state, so free the stepthread
-			
-			while(!threadsRunning) {
-                myLock.wait();
-            }
-		}
+	public void threadFinished() throws InterruptedException{
+		myBarrier.await();
 	}
 
 	/**
-	 * Called by the threads in this pool to signal that they are done a phase. 
-	 * 
-	 * @author Eric Crawford
+	 * @return Average time (ms) per step that each thread spends waiting for other threads after 
+	 * 		projections, nodes and tasks (averaged over threads), or zeros if timings are not collected. 
+	 * 		This is the synchronization overhead (plus load imbalance) of each phase.
 	 */
-	public void threadFinished() throws InterruptedException{
-		
-		synchronized(myLock){
-			numThreadsComplete++;
-
-			if(numThreadsComplete == myThreads.length){
-				threadsRunning = false;
-				numThreadsWaiting=0;
-				myLock.notifyAll(); //this is to move the threads into the threadwait loop
-			}
-			else{
-				while(threadsRunning) //threads wait here when they are finished, but others are still running (i.e. wait here until end of one step)
-					myLock.wait();
-			}
-	
-			threadWait(); //threads wait here when they're all finished (i.e. wait here between steps)
+	public double[] getAveragePhaseWaitTimes(){
+		double[] result = new double[3];
+		for(int i = 0; i < myThreads.length; i++){
+			result[0] += myThreads[i].getMyAverageWaitAfterProjectionsPerStep() / myThreads.length;
+			result[1] += myThreads[i].getMyAverageWaitAfterNodesPerStep() / myThreads.length;
+			result[2] += myThreads[i].getMyAverageWaitAfterTasksPerStep() / myThreads.length;
 		}
+		return result;
 	}
 
 	/**
@@ -324,30 +819,13 @@ public class NodeThreadPool {
 	 * @author Eric Crawford
 	 */
 	public void kill(){
-		synchronized(myLock)
-		{
-			runFinished = true;
+		runFinished = true;
 
-			for(int i = 0; i < myThreads.length; i++){
-				myThreads[i].interrupt();
-			}
-			
-			if(myCollectTimings){
-				StringBuffer timingOutput = new StringBuffer();
-				timingOutput.append("Timings for NodeThreadPool:\n");
-				
-				long approxRunTime = new Date().getTime() - myRunStartTime;
-				timingOutput.append("Approximate total run time: " + approxRunTime + " ms\n");
-				
-				timingOutput.append("Average time per step: " + myAverageTimePerStep + " ms\n");
-				
-				System.out.print(timingOutput.toString());
-			}
-
-			myLock.notifyAll();
+		for(int i = 0; i < myThreads.length; i++){
+			myThreads[i].interrupt();
 		}
-		
-		
+
+		finishRun();
 	}
 	
     /**
@@ -0,0 +1,140 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "ParallelLoop.java". Description:
+"Runs the iterations of a loop on multiple threads"
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+
+package ca.nengo.util.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ca.nengo.math.Function;
+
+/**
+ * Runs the iterations of a loop on multiple threads, if there is enough work to justify
+ * starting them. This is used for bulk calculations while models are built (e.g. finding
+ * decoders and neuron rates at many evaluation points), not during simulation (see
+ * NodeThreadPool).
+ */
+public class ParallelLoop {
+
+	/**
+	 * Approximate number of arithmetic operations below which a loop runs on one thread
+	 */
+	public static final long MIN_PARALLEL_WORK = 1000000;
+
+	/**
+	 * The body of a loop.
+	 */
+	public interface Body {
+		/**
+		 * @param i Loop index
+		 */
+		public void run(int i);
+	}
+
+	/**
+	 * Runs a loop body for indices 0 to count-1, spread over the available processors if
+	 * there is enough work to justify starting threads. Threads claim indices one at a time,
+	 * so the work per index can vary. The body must be safe to run concurrently for different
+	 * indices.
+	 *
+	 * @param count Number of indices
+	 * @param work Approximate number of arithmetic operations in the whole loop
+	 * @param body Loop body
+	 */
+	public static void run(final int count, long work, final Body body) {
+		final AtomicInteger next = new AtomicInteger(0);
+		final Throwable[] failure = new Throwable[1];
+
+		Runnable worker = new Runnable() {
+			public void run() {
+				try {
+					int i;
+					while ((i = next.getAndIncrement()) < count) {
+						body.run(i);
+					}
+				} catch (Throwable t) {
+					next.set(count);
+					synchronized (failure) {
+						failure[0] = t;
+					}
+				}
+			}
+		};
+
+		int numThreads = Math.min(Runtime.getRuntime().availableProcessors(), count);
+		if (work < MIN_PARALLEL_WORK) {
+			numThreads = 1;
+		}
+
+		Thread[] threads = new Thread[Math.max(0, numThreads - 1)];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(worker, "ParallelLoop-" + i);
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+		worker.run();
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				throw new RuntimeException("Interrupted while waiting for worker threads", e);
+			}
+		}
+
+		synchronized (failure) {
+			if (failure[0] instanceof RuntimeException) {
+				throw (RuntimeException) failure[0];
+			} else if (failure[0] instanceof Error) {
+				throw (Error) failure[0];
+			} else if (failure[0] != null) {
+				throw new RuntimeException(failure[0]);
+			}
+		}
+	}
+
+	/**
+	 * Evaluates a Function at many points, in chunks that are spread over multiple threads if
+	 * there are enough points. The Function's map(...) must be safe to call concurrently.
+	 *
+	 * @param function The Function to evaluate
+	 * @param from Points at which to evaluate the Function
+	 * @param workPerPoint Approximate number of arithmetic operations per evaluation
+	 * @return Value of the Function at each point
+	 */
+	public static float[] multiMap(final Function function, final float[][] from, int workPerPoint) {
+		final float[] result = new float[from.length];
+		final int chunk = 256;
+		int chunks = (from.length + chunk - 1) / chunk;
+
+		run(chunks, (long) from.length * workPerPoint, new Body() {
+			public void run(int c) {
+				int end = Math.min(from.length, (c+1) * chunk);
+				for (int i = c * chunk; i < end; i++) {
+					result[i] = function.map(from[i]);
+				}
+			}
+		});
+
+		return result;
+	}
+
+}
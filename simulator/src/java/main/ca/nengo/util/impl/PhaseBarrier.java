@@ -0,0 +1,22 @@
+package ca.nengo.util.impl;
+
+/**
+ * A reusable barrier that separates the phases of a NodeThreadPool step (start of step, projections,
+ * nodes, tasks). Every party calls await() at the end of each phase, and no party returns until all
+ * parties have arrived. The barrier then resets itself for the next phase.
+ */
+public interface PhaseBarrier {
+
+	/**
+	 * @return Number of parties (threads) that must arrive before the barrier opens
+	 */
+	public int getParties();
+
+	/**
+	 * Waits until all parties have arrived at the barrier.
+	 *
+	 * @throws InterruptedException if the calling thread is interrupted while waiting
+	 */
+	public void await() throws InterruptedException;
+
+}
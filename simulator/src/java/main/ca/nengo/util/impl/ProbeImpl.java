@@ -32,6 +32,7 @@ import ca.nengo.model.Probeable;
 import ca.nengo.model.SimulationException;
 import ca.nengo.model.Units;
 import ca.nengo.util.Probe;
+import ca.nengo.util.ProbeSink;
 import ca.nengo.util.TimeSeries;
 
 /**
@@ -45,13 +46,16 @@ public class ProbeImpl implements Probe, java.io.Serializable {
 	private Probeable myTarget;
 	private String myStateName;
 	private boolean myRecord;
-	private float[] myTimes;
-	private List<float[]> myValues;
+	private SampleBuffer myBuffer; //recorded samples; created on first doCollect()
+	private float myRecordWindow = 0;
+	private float[] myLastTimes; //most recent samples, if not recording
+	private float[][] myLastValues;
 	private Units[] myUnits;
 	private float mySamplingPeriod = -1;
 	private float myLastSampleTime = -100000;
 	private String myEnsembleName = null;
 	private ProbeTask myProbeTask;
+	private transient List<ProbeSink> mySinks;
 
 	/**
 	 * @see ca.nengo.util.Probe#connect(java.lang.String, ca.nengo.model.Probeable, java.lang.String, boolean)
@@ -83,8 +87,9 @@ public class ProbeImpl implements Probe, java.io.Serializable {
 	 */
 	public void reset() {
 		myUnits = null; //will be reset on first doCollect()
-		myTimes = new float[1000];
-		myValues = new ArrayList<float[]>(1000);
+		myBuffer = null;
+		myLastTimes = new float[0];
+		myLastValues = new float[0][];
 	}
 	
 	/**
@@ -119,42 +124,44 @@ public class ProbeImpl implements Probe, java.io.Serializable {
 		int len = times.length;		
 		
 		if (myRecord) {
-			if (myValues.size() + len >= myTimes.length) {
-				grow();
-			}		
-			System.arraycopy(times, 0, myTimes, myValues.size(), len); //don't move this to after the values update			
+			if (myBuffer == null && len > 0) {
+				myBuffer = new SampleBuffer(values[0].length, SampleBuffer.DEFAULT_CHUNK_ROWS, myRecordWindow);
+			}
+			if (len > 0) {
+				myBuffer.append(times, values);
+			}
 		} else {
-			myTimes = times;
-			myValues = new ArrayList<float[]>(10);
-		}
-		
-		for (int i = 0; i < len; i++) {
-			myValues.add(values[i]);
+			myLastTimes = times;
+			myLastValues = values;
 		}
 		
 		if (myUnits == null) {
 			myUnits = stepData.getUnits();
 		}
-	}
-	
-	private void grow() {
-		float[] newTimes = new float[myTimes.length + 1000];
-		System.arraycopy(myTimes, 0, newTimes, 0, myTimes.length);
-		myTimes = newTimes;
+		
+		if (mySinks != null) {
+			for (int i = 0; i < mySinks.size(); i++) {
+				mySinks.get(i).write(times, values, myUnits);
+			}
+		}
 	}
 	
 	/**
 	 * @see ca.nengo.util.Probe#getData()
 	 */
 	public TimeSeries getData() {
-		float[] times = new float[myValues.size()];
-		System.arraycopy(myTimes, 0, times, 0, myValues.size());
+		Units[] units = (myUnits == null) ? new Units[]{Units.UNK} : myUnits;
+		String name = ((myTarget instanceof Node) ? ((Node) myTarget).getName()+":" : "") + myStateName;
 		
-		float[][] values = myValues.toArray(new float[0][]);
-		
-		TimeSeriesImpl result = new TimeSeriesImpl(times, values, (myUnits == null) ? new Units[]{Units.UNK} : myUnits);
-		result.setName(((myTarget instanceof Node) ? ((Node) myTarget).getName()+":" : "") + myStateName);
-		return result;
+		if (myRecord && myBuffer != null) {
+			return myBuffer.getView(units, name);
+		} else {
+			float[] times = myRecord ? new float[0] : myLastTimes;
+			float[][] values = myRecord ? new float[0][] : myLastValues;
+			TimeSeriesImpl result = new TimeSeriesImpl(times, values, units);
+			result.setName(name);
+			return result;
+		}
 	}
 
 	/**
@@ -164,6 +171,16 @@ public class ProbeImpl implements Probe, java.io.Serializable {
 		mySamplingPeriod = 1f / rate;
 	}
 
+	/**
+	 * @see ca.nengo.util.Probe#setRecordWindow(float)
+	 */
+	public void setRecordWindow(float window) {
+		myRecordWindow = window;
+		if (myBuffer != null) {
+			myBuffer.setWindow(window);
+		}
+	}
+
 	/**
 	 * @see ca.nengo.util.Probe#getTarget()
 	 */
@@ -200,5 +217,24 @@ public class ProbeImpl implements Probe, java.io.Serializable {
 	 */
 	public ProbeTask getProbeTask(){
 		return myProbeTask;
-	}
+	}
+
+	/**
+	 * @see ca.nengo.util.Probe#addSink(ca.nengo.util.ProbeSink)
+	 */
+	public void addSink(ProbeSink sink) {
+		if (mySinks == null) {
+			mySinks = new ArrayList<ProbeSink>(2);
+		}
+		mySinks.add(sink);
+	}
+
+	/**
+	 * @see ca.nengo.util.Probe#removeSink(ca.nengo.util.ProbeSink)
+	 */
+	public void removeSink(ProbeSink sink) {
+		if (mySinks != null) {
+			mySinks.remove(sink);
+		}
+	}
 }
@@ -28,6 +28,13 @@ public class ProbeTask implements ThreadTask {
 		return myParent;
 	}
 
+	/**
+	 * @return The Probe that collects data when this task runs
+	 */
+	public Probe getProbe() {
+		return myProbe;
+	}
+
 	public boolean isFinished() {
 		return finished;
 	}
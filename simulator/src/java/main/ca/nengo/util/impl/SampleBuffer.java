@@ -0,0 +1,324 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "SampleBuffer.java". Description:
+"Columnar storage of time-stamped samples in chunks of primitive arrays"
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.util.impl;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.nengo.model.Units;
+import ca.nengo.util.TimeSeries;
+
+/**
+ * <p>Storage of time-stamped samples, in chunks of primitive arrays with one array per
+ * column (times, then each dimension of the values). Appending never copies earlier samples,
+ * and each stored float takes four bytes.</p>
+ *
+ * <p>If a window is set, only samples within the window of the newest sample are kept, and
+ * older chunks are released as the buffer advances, so memory is bounded by the window (plus
+ * a chunk). Otherwise samples are kept until clear().</p>
+ *
+ * <p>Stored samples are never modified, so getView(...) can return a snapshot without copying
+ * them. The view copies samples into arrays only when its times or values are requested.</p>
+ */
+public class SampleBuffer implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Default number of samples in each chunk
+	 */
+	public static final int DEFAULT_CHUNK_ROWS = 1024;
+
+	private final int myDimension;
+	private final int myChunkRows;
+	private float myWindow;
+	private List<float[][]> myChunks; //chunk[0] holds times; chunk[d+1] holds dimension d
+	private int myStart; //index of first sample in first chunk
+	private int mySize;
+
+	/**
+	 * @param dimension Dimension of sample values
+	 * @param chunkRows Number of samples in each chunk
+	 * @param window Length of time over which samples are kept (unlimited if zero or less)
+	 */
+	public SampleBuffer(int dimension, int chunkRows, float window) {
+		if (chunkRows < 1) {
+			throw new IllegalArgumentException("Chunk rows must be positive");
+		}
+		myDimension = dimension;
+		myChunkRows = chunkRows;
+		myWindow = window;
+		clear();
+	}
+
+	/**
+	 * Uses DEFAULT_CHUNK_ROWS and no window.
+	 *
+	 * @param dimension Dimension of sample values
+	 */
+	public SampleBuffer(int dimension) {
+		this(dimension, DEFAULT_CHUNK_ROWS, 0);
+	}
+
+	/**
+	 * @return Dimension of sample values
+	 */
+	public int getDimension() {
+		return myDimension;
+	}
+
+	/**
+	 * @return Length of time over which samples are kept (unlimited if zero or less)
+	 */
+	public float getWindow() {
+		return myWindow;
+	}
+
+	/**
+	 * @param window Length of time over which samples are kept (unlimited if zero or less)
+	 */
+	public void setWindow(float window) {
+		myWindow = window;
+		if (myWindow > 0 && mySize > 0) {
+			trim(getTime(mySize - 1));
+		}
+	}
+
+	/**
+	 * @return Number of samples stored
+	 */
+	public int getSize() {
+		return mySize;
+	}
+
+	/**
+	 * Removes all samples.
+	 */
+	public void clear() {
+		myChunks = new ArrayList<float[][]>();
+		myStart = 0;
+		mySize = 0;
+	}
+
+	/**
+	 * @param times Times of new samples
+	 * @param values Values of new samples (first index corresponds to time)
+	 */
+	public void append(float[] times, float[][] values) {
+		for (int i = 0; i < times.length; i++) {
+			float[] row = values[i];
+			if (row.length != myDimension) {
+				throw new IllegalArgumentException("Expected dimension " + myDimension + " but got " + row.length);
+			}
+
+			int r = myStart + mySize;
+			int c = r / myChunkRows;
+			if (c == myChunks.size()) {
+				myChunks.add(new float[myDimension + 1][myChunkRows]);
+			}
+			float[][] chunk = myChunks.get(c);
+			r = r % myChunkRows;
+			chunk[0][r] = times[i];
+			for (int j = 0; j < myDimension; j++) {
+				chunk[j+1][r] = row[j];
+			}
+			mySize++;
+		}
+
+		if (myWindow > 0 && times.length > 0) {
+			trim(times[times.length - 1]);
+		}
+	}
+
+	/**
+	 * @param index Index of a sample
+	 * @return Time of the sample
+	 */
+	public float getTime(int index) {
+		return get(index, 0);
+	}
+
+	/**
+	 * @param index Index of a sample
+	 * @param dimension Index of a dimension
+	 * @return Value of the sample in the given dimension
+	 */
+	public float getValue(int index, int dimension) {
+		if (dimension < 0 || dimension >= myDimension) {
+			throw new IndexOutOfBoundsException("Dimension " + dimension + " out of range [0, " + myDimension + ")");
+		}
+		return get(index, dimension + 1);
+	}
+
+	/**
+	 * @param units Units of each dimension
+	 * @param name Name of the TimeSeries
+	 * @return A view of the samples currently stored, which isn't affected by later changes to
+	 * 		this buffer
+	 */
+	public TimeSeries getView(Units[] units, String name) {
+		return new View(new ArrayList<float[][]>(myChunks), myChunkRows, myStart, mySize, myDimension, units, name);
+	}
+
+	private float get(int index, int column) {
+		if (index < 0 || index >= mySize) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of range [0, " + mySize + ")");
+		}
+		int r = myStart + index;
+		return myChunks.get(r / myChunkRows)[column][r % myChunkRows];
+	}
+
+	//drops samples older than the window before the given time
+	private void trim(float latest) {
+		float earliest = latest - myWindow;
+
+		while (myChunks.size() > 1) {
+			float[] times = myChunks.get(0)[0];
+			if (times[myChunkRows - 1] >= earliest) {
+				break;
+			}
+			myChunks.remove(0);
+			mySize -= myChunkRows - myStart;
+			myStart = 0;
+		}
+
+		if (mySize > 0) {
+			float[] times = myChunks.get(0)[0];
+			while (mySize > 1 && myStart < myChunkRows - 1 && times[myStart] < earliest) {
+				myStart++;
+				mySize--;
+			}
+		}
+	}
+
+	/**
+	 * A TimeSeries backed by the chunks of a SampleBuffer. Times and values are copied into
+	 * arrays when first requested. It is serialized as a TimeSeriesImpl.
+	 */
+	private static class View implements TimeSeries {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<float[][]> myChunks;
+		private final int myChunkRows;
+		private final int myStart;
+		private final int mySize;
+		private final int myDimension;
+		private final Units[] myUnits;
+		private final String myName;
+		private transient float[] myTimes;
+		private transient float[][] myValues;
+
+		public View(List<float[][]> chunks, int chunkRows, int start, int size, int dimension, Units[] units, String name) {
+			myChunks = chunks;
+			myChunkRows = chunkRows;
+			myStart = start;
+			mySize = size;
+			myDimension = dimension;
+			myUnits = units;
+			myName = name;
+		}
+
+		public String getName() {
+			return myName;
+		}
+
+		public int getDimension() {
+			return myDimension;
+		}
+
+		public float[] getTimes() {
+			if (myTimes == null) {
+				float[] times = new float[mySize];
+				int done = 0;
+				for (int c = 0; done < mySize; c++) {
+					int from = (c == 0) ? myStart : 0;
+					int n = Math.min(myChunkRows - from, mySize - done);
+					System.arraycopy(myChunks.get(c)[0], from, times, done, n);
+					done += n;
+				}
+				myTimes = times;
+			}
+			return myTimes;
+		}
+
+		public float[][] getValues() {
+			if (myValues == null) {
+				float[][] values = new float[mySize][myDimension];
+				int done = 0;
+				for (int c = 0; done < mySize; c++) {
+					float[][] chunk = myChunks.get(c);
+					int from = (c == 0) ? myStart : 0;
+					int n = Math.min(myChunkRows - from, mySize - done);
+					for (int j = 0; j < myDimension; j++) {
+						float[] column = chunk[j+1];
+						for (int i = 0; i < n; i++) {
+							values[done + i][j] = column[from + i];
+						}
+					}
+					done += n;
+				}
+				myValues = values;
+			}
+			return myValues;
+		}
+
+		public Units[] getUnits() {
+			return myUnits;
+		}
+
+		public String[] getLabels() {
+			String[] result = new String[myDimension];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = String.valueOf(i+1);
+			}
+			return result;
+		}
+
+		@Override
+		public TimeSeries clone() throws CloneNotSupportedException {
+			return toTimeSeriesImpl();
+		}
+
+		private Object writeReplace() throws ObjectStreamException {
+			return toTimeSeriesImpl();
+		}
+
+		private TimeSeriesImpl toTimeSeriesImpl() {
+			TimeSeriesImpl result = new TimeSeriesImpl(getTimes().clone(), copy(getValues()), myUnits.clone());
+			result.setName(myName);
+			return result;
+		}
+
+		private static float[][] copy(float[][] values) {
+			float[][] result = new float[values.length][];
+			for (int i = 0; i < values.length; i++) {
+				result[i] = values[i].clone();
+			}
+			return result;
+		}
+	}
+
+}
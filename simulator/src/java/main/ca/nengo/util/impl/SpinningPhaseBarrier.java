@@ -0,0 +1,116 @@
+package ca.nengo.util.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A PhaseBarrier in which waiting threads first spin on a volatile generation counter, and
+ * then park if the barrier still hasn't opened. With short phases (e.g. 1 ms steps of small
+ * networks) most threads see the barrier open while spinning, and go straight into the next
+ * phase without being woken. Only threads that gave up spinning are unparked by the last
+ * arriving party.
+ *
+ * Spinning is disabled if there are fewer processors than parties, since then spinning threads
+ * would take processor time from threads that are still working.
+ */
+public class SpinningPhaseBarrier implements PhaseBarrier {
+
+	/**
+	 * Default number of times a thread checks the barrier before parking.
+	 */
+	public static final int DEFAULT_SPINS = 20000;
+
+	private final int myParties;
+	private final int mySpins;
+	private final AtomicInteger myArrived;
+
+	//two phases are used alternately; no thread can be more than one phase ahead of another
+	private final Phase[] myPhases;
+	private volatile Phase myPhase;
+
+	/**
+	 * @param parties Number of threads that must arrive before the barrier opens
+	 * @param spins Number of times a waiting thread checks the barrier before parking
+	 */
+	public SpinningPhaseBarrier(int parties, int spins) {
+		myParties = parties;
+		mySpins = spins;
+		myArrived = new AtomicInteger(0);
+		myPhases = new Phase[]{new Phase(), new Phase()};
+		myPhase = myPhases[0];
+	}
+
+	/**
+	 * Uses DEFAULT_SPINS if there are at least as many processors as parties, otherwise
+	 * doesn't spin.
+	 *
+	 * @param parties Number of threads that must arrive before the barrier opens
+	 */
+	public SpinningPhaseBarrier(int parties) {
+		this(parties, Runtime.getRuntime().availableProcessors() >= parties ? DEFAULT_SPINS : 0);
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.PhaseBarrier#getParties()
+	 */
+	public int getParties() {
+		return myParties;
+	}
+
+	/**
+	 * @return Number of times a waiting thread checks the barrier before parking
+	 */
+	public int getSpins() {
+		return mySpins;
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.PhaseBarrier#await()
+	 */
+	public void await() throws InterruptedException {
+		Phase phase = myPhase;
+
+		if(myArrived.incrementAndGet() == myParties){
+			//everyone has left the previous phase, so its Phase can be reused for the next one
+			Phase next = (phase == myPhases[0]) ? myPhases[1] : myPhases[0];
+			next.open = false;
+			next.waiters.clear();
+
+			//reset before opening, so that no thread can arrive at the next phase early
+			myArrived.set(0);
+			myPhase = next;
+			phase.open = true;
+
+			Thread parked;
+			while((parked = phase.waiters.poll()) != null)
+				LockSupport.unpark(parked);
+
+			return;
+		}
+
+		for(int i = 0; i < mySpins; i++){
+			if(phase.open)
+				return;
+		}
+
+		//if the phase opens after we are queued we'll be unparked, otherwise we see that it's open
+		Thread current = Thread.currentThread();
+		phase.waiters.add(current);
+		while(!phase.open){
+			LockSupport.park(this);
+
+			if(Thread.interrupted()){
+				phase.waiters.remove(current);
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	private static class Phase {
+		volatile boolean open = false;
+		final Queue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+	}
+
+}
@@ -0,0 +1,459 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "StepProfiler.java". Description:
+"Histograms of the time taken to run each part of a simulation step"
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.util.impl;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import ca.nengo.model.Node;
+import ca.nengo.model.Projection;
+import ca.nengo.util.Probe;
+
+/**
+ * <p>Histograms of the time taken to run each Node, Projection and task in a simulation step,
+ * of the time that threads wait for each other between the phases of a step, and of the
+ * whole step. It is filled in by LocalSimulator and NodeThreadPool while profiling is on
+ * (see LocalSimulator.setProfiling(...)), so that the parts of a model that make it slow can
+ * be found.</p>
+ *
+ * <p>Each thing that is timed has its own Histogram, which is only added to by the thread
+ * that runs it (the phases of a step are separated by barriers), so recording a time doesn't
+ * need synchronization. The profiler should be queried between runs.</p>
+ */
+public class StepProfiler {
+
+	/**
+	 * Kinds of things that are timed
+	 */
+	public static final String NODE = "node";
+	public static final String PROJECTION = "projection";
+	public static final String TASK = "task";
+	public static final String WAIT = "wait";
+	public static final String STEP = "step";
+
+	/**
+	 * Names of the phases of a step, after which threads wait for each other (the ranges of
+	 * partitioned Nodes are counted as part of the node phase)
+	 */
+	public static final String[] PHASES = new String[]{"projections", "nodes", "tasks"};
+
+	private final Map<Object, Entry> myEntries;
+	private final Map<List<Object>, Entry> myRangeEntries;
+	private final List<Entry> myOrderedEntries;
+	private final Entry[] myWaits;
+	private final Entry myStep;
+
+	public StepProfiler() {
+		myEntries = new IdentityHashMap<Object, Entry>();
+		myRangeEntries = new HashMap<List<Object>, Entry>();
+		myOrderedEntries = new ArrayList<Entry>();
+		myWaits = new Entry[PHASES.length];
+		for (int i = 0; i < PHASES.length; i++) {
+			myWaits[i] = new Entry(WAIT, PHASES[i]);
+		}
+		myStep = new Entry(STEP, "step");
+	}
+
+	/**
+	 * @param elements Nodes, Projections, tasks or Probes that are to be timed
+	 * @return A Histogram for each element, in the same order. An element that has been timed
+	 * 		before gets the same Histogram as before.
+	 */
+	public synchronized Histogram[] getHistograms(Object[] elements) {
+		Histogram[] result = new Histogram[elements.length];
+		for (int i = 0; i < elements.length; i++) {
+			Object element = elements[i];
+			if (element instanceof ProbeTask) {
+				element = ((ProbeTask) element).getProbe(); //the same Probe is run without a ProbeTask outside the pool
+			}
+
+			Entry entry;
+			if (element instanceof NodeRangeTask) {
+				//range tasks are made again for each run, so they are identified by their range
+				NodeRangeTask task = (NodeRangeTask) element;
+				List<Object> key = new ArrayList<Object>(2);
+				key.add(new IdentityKey(task.getParent()));
+				key.add(Integer.valueOf(task.getRange()));
+				entry = myRangeEntries.get(key);
+				if (entry == null) {
+					entry = new Entry(TASK, getName(task.getParent()) + " range " + task.getRange());
+					myRangeEntries.put(key, entry);
+					myOrderedEntries.add(entry);
+				}
+			} else {
+				entry = myEntries.get(element);
+				if (entry == null) {
+					entry = new Entry(getKind(element), getName(element));
+					myEntries.put(element, entry);
+					myOrderedEntries.add(entry);
+				}
+			}
+			result[i] = entry.myHistogram;
+		}
+		return result;
+	}
+
+	/**
+	 * @param phase Index of a phase of the step (see PHASES)
+	 * @param time Time that a thread waited for other threads after the phase (ns)
+	 */
+	public void recordWait(int phase, long time) {
+		Histogram histogram = myWaits[phase].myHistogram;
+		synchronized (histogram) {
+			histogram.add(time);
+		}
+	}
+
+	/**
+	 * @param time Time taken to run a whole step (ns)
+	 */
+	public void recordStep(long time) {
+		myStep.myHistogram.add(time);
+	}
+
+	/**
+	 * @return Histogram of the time taken by whole steps (ns)
+	 */
+	public Histogram getStepHistogram() {
+		return myStep.myHistogram;
+	}
+
+	/**
+	 * @param phase Index of a phase of the step (see PHASES)
+	 * @return Histogram of the time that threads waited for each other after the phase (ns)
+	 */
+	public Histogram getWaitHistogram(int phase) {
+		return myWaits[phase].myHistogram;
+	}
+
+	/**
+	 * @return Kind (NODE, PROJECTION or TASK) of each timed element, in the order of
+	 * 		getHistograms()
+	 */
+	public synchronized String[] getKinds() {
+		String[] result = new String[myOrderedEntries.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = myOrderedEntries.get(i).myKind;
+		}
+		return result;
+	}
+
+	/**
+	 * @return Name of each timed element, in the order of getHistograms()
+	 */
+	public synchronized String[] getNames() {
+		String[] result = new String[myOrderedEntries.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = myOrderedEntries.get(i).myName;
+		}
+		return result;
+	}
+
+	/**
+	 * @return Histogram of run times of each timed element (ns), in the order of getNames()
+	 */
+	public synchronized Histogram[] getHistograms() {
+		Histogram[] result = new Histogram[myOrderedEntries.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = myOrderedEntries.get(i).myHistogram;
+		}
+		return result;
+	}
+
+	/**
+	 * Clears all times that have been recorded, but keeps the list of elements.
+	 */
+	public synchronized void reset() {
+		for (Entry entry : myOrderedEntries) {
+			entry.myHistogram.clear();
+		}
+		for (Entry entry : myWaits) {
+			entry.myHistogram.clear();
+		}
+		myStep.myHistogram.clear();
+	}
+
+	/**
+	 * @param top Maximum number of elements to list
+	 * @return A readable summary of step times and wait times, and of the elements that took
+	 * 		the most time overall
+	 */
+	public synchronized String getReport(int top) {
+		StringWriter result = new StringWriter();
+		PrintWriter out = new PrintWriter(result);
+
+		Histogram step = myStep.myHistogram;
+		out.printf(Locale.US, "%d steps, mean %.3f ms, 99th percentile %.3f ms, max %.3f ms%n",
+				step.getCount(), step.getMean() / 1e6, step.getPercentile(.99) / 1e6, step.getMax() / 1e6);
+		for (int i = 0; i < PHASES.length; i++) {
+			Histogram wait = myWaits[i].myHistogram;
+			out.printf(Locale.US, "wait after %s: mean %.3f ms per thread, total %.3f ms%n",
+					PHASES[i], wait.getMean() / 1e6, wait.getTotal() / 1e6);
+		}
+
+		out.printf(Locale.US, "%n%-10s %10s %12s %10s %10s %10s %10s  %s%n",
+				"kind", "count", "total (ms)", "mean (us)", "50% (us)", "99% (us)", "max (us)", "name");
+		List<Entry> sorted = getSortedEntries();
+		for (int i = 0; i < sorted.size() && i < top; i++) {
+			Entry entry = sorted.get(i);
+			Histogram h = entry.myHistogram;
+			out.printf(Locale.US, "%-10s %10d %12.3f %10.2f %10.2f %10.2f %10.2f  %s%n",
+					entry.myKind, h.getCount(), h.getTotal() / 1e6, h.getMean() / 1e3,
+					h.getPercentile(.5) / 1e3, h.getPercentile(.99) / 1e3, h.getMax() / 1e3, entry.myName);
+		}
+
+		out.flush();
+		return result.toString();
+	}
+
+	/**
+	 * Writes the times of all elements, waits and steps as comma-separated values, with one
+	 * row per histogram, sorted by total time.
+	 *
+	 * @param writer Destination of the report
+	 * @throws IOException If the report can't be written
+	 */
+	public synchronized void writeCSV(Writer writer) throws IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		entries.add(myStep);
+		for (Entry entry : myWaits) {
+			entries.add(entry);
+		}
+		entries.addAll(getSortedEntries());
+
+		writer.write("kind,name,count,total_ns,mean_ns,p50_ns,p90_ns,p99_ns,max_ns\n");
+		for (Entry entry : entries) {
+			Histogram h = entry.myHistogram;
+			writer.write(entry.myKind + "," + quote(entry.myName) + "," + h.getCount() + "," + h.getTotal() + ","
+					+ Math.round(h.getMean()) + "," + h.getPercentile(.5) + "," + h.getPercentile(.9) + ","
+					+ h.getPercentile(.99) + "," + h.getMax() + "\n");
+		}
+		writer.flush();
+	}
+
+	private List<Entry> getSortedEntries() {
+		List<Entry> result = new ArrayList<Entry>(myOrderedEntries);
+		Collections.sort(result, new Comparator<Entry>() {
+			public int compare(Entry a, Entry b) {
+				long ta = a.myHistogram.getTotal();
+				long tb = b.myHistogram.getTotal();
+				return ta > tb ? -1 : (ta < tb ? 1 : 0);
+			}
+		});
+		return result;
+	}
+
+	private static String quote(String s) {
+		if (s.indexOf(',') < 0 && s.indexOf('"') < 0) {
+			return s;
+		}
+		return "\"" + s.replace("\"", "\"\"") + "\"";
+	}
+
+	private static String getKind(Object element) {
+		if (element instanceof Node) {
+			return NODE;
+		} else if (element instanceof Projection) {
+			return PROJECTION;
+		} else {
+			return TASK;
+		}
+	}
+
+	private static String getName(Object element) {
+		if (element instanceof Node) {
+			return ((Node) element).getName();
+		} else if (element instanceof Projection) {
+			Projection p = (Projection) element;
+			return p.getOrigin().getNode().getName() + "." + p.getOrigin().getName() + " -> "
+				+ p.getTermination().getNode().getName() + "." + p.getTermination().getName();
+		} else if (element instanceof Probe) {
+			Probe p = (Probe) element;
+			String target = p.isInEnsemble() ? p.getEnsembleName()
+					: (p.getTarget() instanceof Node ? ((Node) p.getTarget()).getName() : null);
+			return "probe " + (target == null ? "" : target + ".") + p.getStateName();
+		} else if (element instanceof LearningTask) {
+			return getName(((LearningTask) element).getParent()) + " learning";
+		} else {
+			return element.getClass().getSimpleName();
+		}
+	}
+
+	private static class Entry {
+		private final String myKind;
+		private final String myName;
+		private final Histogram myHistogram;
+
+		public Entry(String kind, String name) {
+			myKind = kind;
+			myName = name;
+			myHistogram = new Histogram();
+		}
+	}
+
+	//compares by identity, for Nodes in keys of range entries
+	private static class IdentityKey {
+		private final Object myObject;
+
+		public IdentityKey(Object object) {
+			myObject = object;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof IdentityKey && ((IdentityKey) o).myObject == myObject;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(myObject);
+		}
+	}
+
+	/**
+	 * <p>A histogram of times (or other non-negative values), with four buckets for each
+	 * power of two, so that percentiles are accurate to within about 20%. Adding a value takes a
+	 * few operations and no allocation.</p>
+	 *
+	 * <p>A Histogram is not thread-safe.</p>
+	 */
+	public static class Histogram {
+
+		private static final int NUM_BUCKETS = 248;
+
+		private final long[] myCounts;
+		private long myCount;
+		private long myTotal;
+		private long myMax;
+
+		public Histogram() {
+			myCounts = new long[NUM_BUCKETS];
+		}
+
+		/**
+		 * @param value A new value (negative values are counted as zero)
+		 */
+		public void add(long value) {
+			if (value < 0) {
+				value = 0;
+			}
+			myCounts[getBucket(value)]++;
+			myCount++;
+			myTotal += value;
+			if (value > myMax) {
+				myMax = value;
+			}
+		}
+
+		/**
+		 * Removes all values.
+		 */
+		public void clear() {
+			for (int i = 0; i < myCounts.length; i++) {
+				myCounts[i] = 0;
+			}
+			myCount = 0;
+			myTotal = 0;
+			myMax = 0;
+		}
+
+		/**
+		 * @return Number of values
+		 */
+		public long getCount() {
+			return myCount;
+		}
+
+		/**
+		 * @return Sum of values
+		 */
+		public long getTotal() {
+			return myTotal;
+		}
+
+		/**
+		 * @return Mean of values (zero if there are none)
+		 */
+		public double getMean() {
+			return myCount == 0 ? 0 : (double) myTotal / (double) myCount;
+		}
+
+		/**
+		 * @return Largest value
+		 */
+		public long getMax() {
+			return myMax;
+		}
+
+		/**
+		 * @param fraction A fraction between 0 and 1 (e.g. .99 for the 99th percentile)
+		 * @return Approximate value below which the given fraction of values fall (the upper
+		 * 		bound of the bucket that contains the percentile)
+		 */
+		public long getPercentile(double fraction) {
+			if (myCount == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(fraction * myCount));
+			long seen = 0;
+			for (int i = 0; i < myCounts.length; i++) {
+				seen += myCounts[i];
+				if (seen >= rank) {
+					return Math.min(myMax, getLowerBound(i + 1) - 1);
+				}
+			}
+			return myMax;
+		}
+
+		//values below 4 have their own buckets, and there are four buckets from 2^e to 2^(e+1)
+		static int getBucket(long value) {
+			if (value < 4) {
+				return (int) value;
+			}
+			int e = 63 - Long.numberOfLeadingZeros(value);
+			return 4 * (e - 1) + (int) ((value >>> (e - 2)) & 3);
+		}
+
+		static long getLowerBound(int bucket) {
+			if (bucket < 4) {
+				return bucket;
+			}
+			int e = bucket / 4 + 1;
+			if (e > 62) {
+				return Long.MAX_VALUE;
+			}
+			return (long) (4 + bucket % 4) << (e - 2);
+		}
+	}
+
+}
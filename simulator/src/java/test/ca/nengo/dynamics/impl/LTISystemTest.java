@@ -0,0 +1,68 @@
+package ca.nengo.dynamics.impl;
+
+import ca.nengo.TestUtil;
+import ca.nengo.model.Units;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for LTISystem.
+ */
+public class LTISystemTest extends TestCase {
+
+	private static final float W = 2f * (float) Math.PI * 5f;
+
+	public void testStep() {
+		//rotation with constant input on the first state variable, and passthrough to the second output
+		LTISystem system = new LTISystem(new float[][]{new float[]{0, -W}, new float[]{W, 0}},
+				new float[][]{new float[]{1}, new float[]{0}}, new float[][]{new float[]{1, 0}, new float[]{0, 1}},
+				new float[][]{new float[]{0}, new float[]{.5f}}, new float[]{1, 0}, Units.uniform(Units.UNK, 2));
+
+		float[] u = new float[]{1};
+		float[] output = new float[2];
+		float[] state = system.getState();
+		float dt = .001f;
+		for (int i = 1; i <= 1000; i++) {
+			assertSame(output, system.step(dt, u, output));
+			assertSame(state, system.getState());
+
+			double t = i * dt;
+			double x0 = Math.cos(W*t) + Math.sin(W*t) / W;
+			double x1 = Math.sin(W*t) + (1 - Math.cos(W*t)) / W;
+			TestUtil.assertClose((float) x0, output[0], 1e-3f);
+			TestUtil.assertClose((float) x1 + .5f, output[1], 1e-3f);
+		}
+
+		//same answer with one long step
+		system.setState(new float[]{1, 0});
+		float[] result = system.step(1f, u, null);
+		TestUtil.assertClose(1, result[0], 1e-4f);
+		TestUtil.assertClose(.5f, result[1], 1e-4f);
+	}
+
+	public void testDiagonal() {
+		SimpleLTISystem system = new SimpleLTISystem(new float[]{-10, 0}, new float[][]{new float[]{1}, new float[]{2}},
+				new float[][]{new float[]{1, 1}}, new float[2], new Units[]{Units.UNK});
+		float[] result = system.step(.1f, new float[]{1}, null);
+		assertEquals((float) ((1 - Math.exp(-1)) / 10 + .2), result[0], 1e-6f);
+
+		//discretization is recomputed when dynamics change
+		system.setA(new float[][]{new float[]{-20, 0}, new float[]{0, 0}});
+		system.setState(new float[2]);
+		result = system.step(.1f, new float[]{1}, null);
+		assertEquals((float) ((1 - Math.exp(-2)) / 20 + .2), result[0], 1e-6f);
+	}
+
+	public void testClone() throws Exception {
+		LTISystem system = new SimpleLTISystem(new float[]{-10}, new float[][]{new float[]{1}},
+				new float[][]{new float[]{1}}, new float[1], new Units[]{Units.UNK});
+		system.step(.001f, new float[]{1}, null);
+		LTISystem copy = (LTISystem) system.clone();
+		system.step(.001f, new float[]{1}, null);
+
+		assertTrue(copy.getState() != system.getState());
+		assertTrue(copy.getState()[0] < system.getState()[0]);
+		copy.step(.001f, new float[]{1}, null);
+		assertEquals(system.getState()[0], copy.getState()[0], 0f);
+	}
+
+}
@@ -0,0 +1,195 @@
+package ca.nengo.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import junit.framework.TestCase;
+import ca.nengo.model.Node;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.util.MU;
+import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.TimeSeriesImpl;
+
+/**
+ * Unit tests for FileManager, BinaryModelWriter and BinaryModelReader.
+ */
+public class FileManagerTest extends TestCase {
+
+	private File myFile;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		myFile = File.createTempFile("model", ".nef");
+	}
+
+	protected void tearDown() throws Exception {
+		myFile.delete();
+		super.tearDown();
+	}
+
+	public void testSaveEnsemble() throws Exception {
+		NEFEnsemble ensemble = new NEFEnsembleFactoryImpl().make("test", 300, 2);
+		FileManager fm = new FileManager();
+		fm.save(ensemble, myFile);
+		assertTrue(BinaryModelReader.isBinaryModel(myFile));
+
+		NEFEnsemble loaded = (NEFEnsemble) fm.load(myFile);
+		assertEquals("test", loaded.getName());
+		assertEquals(300, loaded.getNodes().length);
+		assertEquals(MU.toString(ensemble.getEncoders(), 10), MU.toString(loaded.getEncoders(), 10));
+		float[][] decoders = ((DecodedOrigin) ensemble.getOrigin(NEFEnsemble.X)).getDecoders();
+		float[][] loadedDecoders = ((DecodedOrigin) loaded.getOrigin(NEFEnsemble.X)).getDecoders();
+		assertEquals(MU.toString(decoders, 10), MU.toString(loadedDecoders, 10));
+	}
+
+	public void testSharing() throws Exception {
+		Arrays arrays = new Arrays();
+		arrays.aRow = new float[]{1, 2};
+		arrays.bShared = new float[][]{arrays.aRow, new float[]{3, 4}};
+		arrays.cMatrix = MU.uniform(200, 3, 0);
+		for (int i = 0; i < arrays.cMatrix.length; i++) {
+			arrays.cMatrix[i][1] = i;
+		}
+		arrays.dAlias = arrays.cMatrix[5];
+		arrays.eVector = new float[1000];
+		arrays.eVector[999] = 7;
+		arrays.fVector = arrays.eVector;
+
+		new BinaryModelWriter(100).write(arrays, myFile);
+		Arrays loaded = (Arrays) new BinaryModelReader().read(myFile);
+
+		assertSame(loaded.aRow, loaded.bShared[0]);
+		assertEquals(4f, loaded.bShared[1][1]);
+		assertEquals(200, loaded.cMatrix.length);
+		assertEquals(199f, loaded.cMatrix[199][1]);
+		assertSame(loaded.cMatrix[5], loaded.dAlias);
+		assertSame(loaded.eVector, loaded.fVector);
+		assertEquals(7f, loaded.eVector[999]);
+	}
+
+	public void testSaveOverLoaded() throws Exception {
+		Arrays arrays = new Arrays();
+		arrays.cMatrix = new float[10000][3]; //larger than the reader's buffer, with rows split between reads
+		for (int i = 0; i < arrays.cMatrix.length; i++) {
+			arrays.cMatrix[i][2] = i;
+		}
+		new BinaryModelWriter(100).write(arrays, myFile);
+
+		Arrays loaded = (Arrays) new BinaryModelReader().read(myFile);
+		assertEquals(5461f, loaded.cMatrix[5461][2]);
+		assertEquals(9999f, loaded.cMatrix[9999][2]);
+
+		//the reader mustn't keep the file (on Windows, a mapped file can't be replaced)
+		loaded.cMatrix[0][0] = 1;
+		new BinaryModelWriter(100).write(loaded, myFile);
+		loaded = (Arrays) new BinaryModelReader().read(myFile);
+		assertEquals(1f, loaded.cMatrix[0][0]);
+		assertEquals(9999f, loaded.cMatrix[9999][2]);
+
+		//as when a model is opened and saved in the UI
+		FileManager fm = new FileManager();
+		fm.save(new NEFEnsembleFactoryImpl().make("test", 10, 1), myFile);
+		NEFEnsemble ensemble = (NEFEnsemble) fm.load(myFile);
+		ensemble.setName("saved");
+		fm.save(ensemble, myFile);
+		assertEquals("saved", ((NEFEnsemble) fm.load(myFile)).getName());
+	}
+
+	public void testLoadSerialized() throws Exception {
+		TimeSeries series = new TimeSeriesImpl(new float[]{0, 1}, new float[][]{new float[]{2}, new float[]{3}}, new Units[]{Units.UNK});
+		ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(myFile));
+		oos.writeObject(series);
+		oos.close();
+
+		FileManager fm = new FileManager();
+		assertFalse(BinaryModelReader.isBinaryModel(myFile));
+		TimeSeries loaded = (TimeSeries) fm.load(myFile);
+		assertEquals(3f, loaded.getValues()[1][0]);
+
+		fm.save(series, myFile);
+		loaded = (TimeSeries) fm.load(myFile);
+		assertEquals(1f, loaded.getTimes()[1]);
+	}
+
+	public void testClassesFoundByReader() throws Exception {
+		//like classes defined in Python scripts, this one isn't visible to the default class loader
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			return; //needs a JDK
+		}
+		File dir = new File(myFile.getPath() + ".classes");
+		File source = new File(dir, "ScriptedInput.java");
+		dir.mkdirs();
+		FileWriter writer = new FileWriter(source);
+		writer.write("public class ScriptedInput extends ca.nengo.model.impl.FunctionInput {\n"
+				+ "  public ScriptedInput() throws ca.nengo.model.StructuralException {\n"
+				+ "    super(\"scripted\", new ca.nengo.math.Function[]{new ca.nengo.math.impl.ConstantFunction(1, 2f)}, ca.nengo.model.Units.UNK);\n"
+				+ "  }\n"
+				+ "}\n");
+		writer.close();
+
+		try {
+			assertEquals(0, compiler.run(null, null, null, "-nowarn", "-classpath", System.getProperty("java.class.path"),
+					"-d", dir.getPath(), source.getPath()));
+			final ClassLoader loader = new URLClassLoader(new URL[]{dir.toURI().toURL()}, getClass().getClassLoader());
+			BinaryModelReader reader = new BinaryModelReader() {
+				@Override
+				protected Class<?> findClass(String name) throws ClassNotFoundException {
+					return loader.loadClass(name);
+				}
+			};
+
+			NetworkImpl network = new NetworkImpl();
+			network.addNode((Node) loader.loadClass("ScriptedInput").getDeclaredConstructor().newInstance());
+
+			//saved and opened as by the UI
+			FileManager fm = new FileManager();
+			fm.save(network, myFile);
+			try {
+				fm.load(myFile);
+				fail("The class shouldn't be found without the reader");
+			} catch (ClassNotFoundException e) {
+			}
+			NetworkImpl loaded = (NetworkImpl) fm.load(myFile, reader);
+			assertEquals("ScriptedInput", loaded.getNode("scripted").getClass().getName());
+
+			//files saved by earlier versions
+			ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(myFile));
+			oos.writeObject(network);
+			oos.close();
+			loaded = (NetworkImpl) fm.load(myFile, reader);
+			assertEquals("ScriptedInput", loaded.getNode("scripted").getClass().getName());
+		} finally {
+			for (File file : dir.listFiles()) {
+				file.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	private static class Arrays implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		//written in order of name
+		public float[] aRow;
+		public float[][] bShared;
+		public float[][] cMatrix;
+		public float[] dAlias;
+		public float[] eVector;
+		public float[] fVector;
+	}
+
+}
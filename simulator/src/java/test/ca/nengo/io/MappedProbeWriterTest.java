@@ -0,0 +1,128 @@
+package ca.nengo.io;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import ca.nengo.model.Network;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.math.impl.SineFunction;
+import ca.nengo.util.Probe;
+import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.TimeSeriesImpl;
+
+/**
+ * Unit tests for MappedProbeWriter and MappedProbeReader.
+ */
+public class MappedProbeWriterTest extends TestCase {
+
+	private File myFile;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		myFile = File.createTempFile("probe", ".bin");
+	}
+
+	protected void tearDown() throws Exception {
+		myFile.delete();
+		super.tearDown();
+	}
+
+	public void testRoundTrip() throws IOException {
+		MappedProbeWriter writer = new MappedProbeWriter(myFile, "test", 7, 5);
+		Units[] units = new Units[]{Units.SPIKES_PER_S, Units.mV};
+		for (int i = 0; i < 30; i++) {
+			writer.write(new float[]{i * .001f}, new float[][]{new float[]{i, -i}}, units);
+		}
+		assertEquals(30, writer.getCount());
+
+		//readable before close, as of last flush
+		MappedProbeReader reader = new MappedProbeReader(myFile);
+		assertEquals(28, reader.getCount()); //flushed at block boundary
+		writer.flush();
+		assertEquals(30, reader.getCount());
+		writer.write(new float[]{.03f, .031f}, new float[][]{new float[]{30, -30}, new float[]{31, -31}}, units);
+		assertEquals(30, reader.getCount());
+		writer.close();
+		assertEquals(32, reader.getCount());
+
+		assertEquals("test", reader.getName());
+		assertEquals(2, reader.getDimension());
+		assertEquals(Units.mV, reader.getUnits()[1]);
+		for (int i = 0; i < 32; i++) {
+			assertEquals(i * .001f, reader.getTime(i), .00001f);
+			assertEquals((float) i, reader.getValue(i, 0));
+			assertEquals((float) -i, reader.getValue(i, 1));
+		}
+
+		try {
+			reader.getTime(32);
+			fail("Should have thrown exception");
+		} catch (IndexOutOfBoundsException e) {} //exception is expected
+
+		reader.close();
+	}
+
+	public void testView() throws Exception {
+		MappedProbeWriter writer = new MappedProbeWriter(myFile, "view", 4, 100);
+		float[] times = new float[20];
+		float[][] values = new float[20][];
+		for (int i = 0; i < times.length; i++) {
+			times[i] = i;
+			values[i] = new float[]{2*i, 3*i, 4*i};
+		}
+		writer.write(times, values, Units.uniform(Units.UNK, 3));
+		writer.close();
+
+		MappedProbeReader reader = new MappedProbeReader(myFile);
+		TimeSeries view = reader.getData(3, 15);
+		assertEquals(3, view.getDimension());
+		assertEquals("view", view.getName());
+		float[] viewTimes = view.getTimes();
+		float[][] viewValues = view.getValues();
+		assertEquals(12, viewTimes.length);
+		for (int i = 0; i < viewTimes.length; i++) {
+			assertEquals(times[i+3], viewTimes[i]);
+			for (int j = 0; j < 3; j++) {
+				assertEquals(values[i+3][j], viewValues[i][j]);
+			}
+		}
+
+		TimeSeries copy = view.clone();
+		assertTrue(copy instanceof TimeSeriesImpl);
+		assertEquals(20, reader.getData().getTimes().length);
+		reader.close();
+		assertEquals(12, copy.getTimes().length);
+	}
+
+	public void testProbeSink() throws Exception {
+		Network network = new NetworkImpl();
+		FunctionInput input = new FunctionInput("input", new Function[]{new SineFunction(10), new ConstantFunction(1, 2)}, Units.UNK);
+		network.addNode(input);
+
+		Probe probe = network.getSimulator().addProbe("input", FunctionInput.STATE_NAME, true);
+		MappedProbeWriter writer = new MappedProbeWriter(myFile, "input", 64, 10);
+		probe.addSink(writer);
+		network.run(0, 1);
+		writer.close();
+
+		TimeSeries expected = probe.getData();
+		MappedProbeReader reader = new MappedProbeReader(myFile);
+		TimeSeries actual = reader.getData();
+		assertEquals(expected.getTimes().length, actual.getTimes().length);
+		for (int i = 0; i < expected.getTimes().length; i++) {
+			assertEquals(expected.getTimes()[i], actual.getTimes()[i]);
+			assertEquals(expected.getValues()[i][0], actual.getValues()[i][0]);
+			assertEquals(expected.getValues()[i][1], actual.getValues()[i][1]);
+		}
+		reader.close();
+
+		probe.removeSink(writer);
+		network.run(0, .1f); //closed writer would throw exception if still attached
+	}
+
+}
@@ -0,0 +1,70 @@
+package ca.nengo.math;
+
+import ca.nengo.math.impl.GaussianPDF;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for RandomStream.
+ */
+public class RandomStreamTest extends TestCase {
+
+	public void testReset() {
+		RandomStream stream = new RandomStream(7);
+		double[] first = new double[10];
+		for (int i = 0; i < first.length; i++) {
+			first[i] = stream.nextDouble();
+			assertTrue(first[i] >= 0 && first[i] < 1);
+		}
+		stream.reset();
+		for (int i = 0; i < first.length; i++) {
+			assertEquals(first[i], stream.nextDouble());
+		}
+	}
+
+	public void testSplit() {
+		RandomStream stream = new RandomStream(7);
+		long a = stream.split("a").nextLong();
+		long zero = stream.split(0).nextLong();
+
+		//children don't depend on draws from the parent
+		stream.nextLong();
+		assertEquals(a, stream.split("a").nextLong());
+		assertEquals(zero, stream.split(0).nextLong());
+
+		assertTrue(a != stream.split("b").nextLong());
+		assertTrue(zero != stream.split(1).nextLong());
+		assertTrue(a != new RandomStream(8).split("a").nextLong());
+	}
+
+	public void testGaussian() {
+		RandomStream stream = new RandomStream(1);
+		int n = 20000;
+		double sum = 0;
+		double sumSquares = 0;
+		for (int i = 0; i < n; i++) {
+			double x = stream.nextGaussian();
+			sum += x;
+			sumSquares += x*x;
+		}
+		assertEquals(0, sum / n, .03);
+		assertEquals(1, sumSquares / n, .03);
+	}
+
+	public void testCurrentStream() {
+		RandomStream stream = new RandomStream(3);
+		RandomStream previous = PDFTools.setStream(stream);
+		try {
+			assertSame(stream, PDFTools.getStream());
+			double r = PDFTools.random();
+			float g = new GaussianPDF().sample()[0];
+
+			stream.reset();
+			assertEquals(r, PDFTools.random());
+			assertEquals(g, new GaussianPDF().sample()[0]);
+		} finally {
+			PDFTools.setStream(previous);
+		}
+		assertSame(previous, PDFTools.getStream());
+	}
+
+}
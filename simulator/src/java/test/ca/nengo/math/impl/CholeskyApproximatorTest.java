@@ -0,0 +1,69 @@
+package ca.nengo.math.impl;
+
+import java.util.Random;
+
+import Jama.Matrix;
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for CholeskyApproximator.
+ */
+public class CholeskyApproximatorTest extends TestCase {
+
+	public void testPseudoInverse() {
+		//positive definite, and larger than a block
+		int n = 150;
+		Random random = new Random(1);
+		double[][] a = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				a[i][j] = random.nextGaussian();
+			}
+		}
+		Matrix A = new Matrix(a);
+		double[][] matrix = A.times(A.transpose()).plus(Matrix.identity(n, n)).getArray();
+
+		CholeskyApproximator approximator = new CholeskyApproximator(new float[][]{new float[]{0f}},
+				new float[][]{new float[]{1f}}, new ConstantFunction(1, 1f), 0f, -1, true);
+		double[][] expected = new Matrix(matrix).plus(Matrix.identity(n, n).times(.5)).inverse().getArray();
+		double[][] actual = approximator.pseudoInverse(matrix, .5f, -1);
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				assertEquals(expected[i][j], actual[i][j], 1e-8);
+			}
+		}
+
+		//singular matrix is regularized
+		double[][] singular = new double[][]{new double[]{1, 1}, new double[]{1, 1}};
+		double[][] inverse = approximator.pseudoInverse(singular, 0f, -1);
+		assertFalse(Double.isNaN(inverse[0][0]));
+	}
+
+	public void testFindCoefficients() {
+		float[][] evalPoints = new float[100][];
+		for (int i = 0; i < evalPoints.length; i++) {
+			evalPoints[i] = new float[]{(float) i / (float) evalPoints.length};
+		}
+		float[] frequencies = new float[]{1, 5, 8};
+		float[][] values = new float[frequencies.length][];
+		for (int i = 0; i < frequencies.length; i++) {
+			Function component = new FourierFunction(new float[]{frequencies[i]}, new float[]{1}, new float[]{0});
+			values[i] = new float[evalPoints.length];
+			for (int j = 0; j < evalPoints.length; j++) {
+				values[i][j] = component.map(evalPoints[j]);
+			}
+		}
+		Function target = new FourierFunction(frequencies, new float[]{.1f, .2f, .3f}, new float[]{0, 0, 0});
+
+		LinearApproximator approximator = new CholeskyApproximator.Factory(0f, true).getApproximator(evalPoints, values);
+		float[] coefficients = approximator.findCoefficients(target);
+		assertEquals(.1f, coefficients[0], .0001f);
+		assertEquals(.2f, coefficients[1], .0001f);
+		assertEquals(.3f, coefficients[2], .0001f);
+		assertTrue(((WeightedCostApproximator) approximator).getSolveTime() >= 0);
+		assertTrue(((WeightedCostApproximator) approximator).getSolveResidual() < .0001f);
+	}
+
+}
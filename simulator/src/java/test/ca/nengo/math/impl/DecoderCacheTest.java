@@ -0,0 +1,76 @@
+package ca.nengo.math.impl;
+
+import java.io.File;
+
+import ca.nengo.math.impl.DecoderCache;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for DecoderCache.
+ */
+public class DecoderCacheTest extends TestCase {
+
+	private File myDirectory;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		myDirectory = File.createTempFile("decoder_cache_test", "");
+		myDirectory.delete();
+	}
+
+	protected void tearDown() throws Exception {
+		File[] files = myDirectory.listFiles();
+		for (int i = 0; files != null && i < files.length; i++) {
+			files[i].delete();
+		}
+		myDirectory.delete();
+		super.tearDown();
+	}
+
+	public void testGetPut() {
+		DecoderCache cache = new DecoderCache(myDirectory);
+		assertTrue(myDirectory.isDirectory());
+		assertNull(cache.get("a"));
+
+		cache.put("a", new float[]{1, 2, 3});
+		float[] decoders = cache.get("a");
+		assertEquals(3, decoders.length);
+		assertEquals(2f, decoders[1]);
+		assertTrue(cache.getSize() > 0);
+
+		//entries persist between caches
+		DecoderCache other = new DecoderCache(myDirectory);
+		assertEquals(cache.getSize(), other.getSize());
+		assertEquals(3f, other.get("a")[2]);
+
+		other.clear();
+		assertEquals(0, other.getSize());
+		assertNull(cache.get("a"));
+	}
+
+	public void testEviction() {
+		DecoderCache sizer = new DecoderCache(myDirectory);
+		sizer.put("size", new float[10]);
+		long entrySize = sizer.getSize();
+		sizer.clear();
+
+		DecoderCache cache = new DecoderCache(myDirectory, 2 * entrySize);
+		cache.put("a", new float[10]);
+		cache.put("b", new float[10]);
+		assertNotNull(cache.get("a")); //now b is least recently used
+		cache.put("c", new float[10]);
+		assertEquals(2 * entrySize, cache.getSize());
+		assertNotNull(cache.get("a"));
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("c"));
+	}
+
+	public void testKey() {
+		String key = new DecoderCache.Key().add("x").add(new float[]{1, 2}).add(3).toString();
+		assertEquals(40, key.length());
+		assertEquals(key, new DecoderCache.Key().add("x").add(new float[]{1, 2}).add(3).toString());
+		assertFalse(key.equals(new DecoderCache.Key().add("x").add(new float[]{1, 2.0001f}).add(3).toString()));
+		assertFalse(key.equals(new DecoderCache.Key().add("x").add(new float[][]{new float[]{1}, new float[]{2}}).add(3).toString()));
+	}
+
+}
@@ -362,4 +362,16 @@ public class DefaultFunctionInterpreterTest extends TestCase {
 		
 	}
 
+	public void testCompiling() {
+		DefaultFunctionInterpreter interpreter = new DefaultFunctionInterpreter();
+		assertTrue(interpreter.isCompiling());
+		PostfixFunction compiled = (PostfixFunction) interpreter.parse("x0 * sin(x1) - 2 ^ x0", 2);
+		assertTrue(compiled.isCompiled());
+
+		interpreter.setCompiling(false);
+		PostfixFunction interpreted = (PostfixFunction) interpreter.parse("x0 * sin(x1) - 2 ^ x0", 2);
+		assertFalse(interpreted.isCompiled());
+		assertEquals(interpreted.map(new float[]{1.5f, -.5f}), compiled.map(new float[]{1.5f, -.5f}));
+	}
+
 }
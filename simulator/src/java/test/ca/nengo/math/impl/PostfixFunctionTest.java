@@ -73,4 +73,43 @@ public class PostfixFunctionTest extends TestCase {
 		assertTrue(f1.map(new float[]{0, 2}) - f2.map(new float[]{0, 2}) > 1);
 	}
 
+	public void testCompiled() {
+		String[] expressions = new String[]{"x0 + x1^2", "-x0 * (x1 - 3) / 2 % 1.5", "sin(x0) + cos(x1) * exp(-x0^2)",
+				"sqrt(x0^2 + x1^2) - ln(2 + x1)", "max(x0, x1) + min(x0, -x1) + pow(2, x0)", "x0 < x1 & !(x0 > 1) | x1 > .5",
+				"tan(x0) + atan(x1) + fold(x0 * 3)"};
+		for (String expression : expressions) {
+			PostfixFunction compiled = new PostfixFunction(expression, 2);
+			PostfixFunction interpreted = new PostfixFunction(expression, 2);
+			interpreted.setCompiled(false);
+			assertTrue(compiled.isCompiled());
+			assertFalse(interpreted.isCompiled());
+
+			float[][] from = new float[50][];
+			for (int i = 0; i < from.length; i++) {
+				from[i] = new float[]{-2.5f + .1f*i, 1.5f - .07f*i};
+				assertEquals(expression, interpreted.map(from[i]), compiled.map(from[i]));
+			}
+			float[] values = compiled.multiMap(from);
+			for (int i = 0; i < from.length; i++) {
+				assertEquals(expression, interpreted.map(from[i]), values[i]);
+			}
+		}
+
+		ArrayList<Serializable> l = new ArrayList<Serializable>();
+		l.add(Integer.valueOf(0));
+		l.add(new SineFunction(1));
+		l.add(new PostfixFunction("x0 * 2", 1));
+		PostfixFunction f = new PostfixFunction(l, "", 1);
+		TestUtil.assertClose(0f, f.map(new float[]{(float) Math.PI}), .0001f);
+
+		l.clear();
+		l.add(Integer.valueOf(0));
+		l.add(new SimpleFunctions.Pow());
+		f = new PostfixFunction(l, "", 1);
+		try {
+			f.map(new float[]{1});
+			fail("Should have thrown exception");
+		} catch (RuntimeException e) {} //exception is expected
+	}
+
 }
@@ -0,0 +1,74 @@
+package ca.nengo.math.impl;
+
+import java.util.Random;
+
+import Jama.Matrix;
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for RandomizedSVDApproximator.
+ */
+public class RandomizedSVDApproximatorTest extends TestCase {
+
+	public void testPseudoInverse() {
+		//symmetric rank 5, so the truncated pseudoinverse is exact
+		int n = 100;
+		int rank = 5;
+		Random random = new Random(1);
+		double[][] a = new double[n][rank];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < rank; j++) {
+				a[i][j] = random.nextGaussian();
+			}
+		}
+		Matrix A = new Matrix(a);
+		double[][] matrix = A.times(A.transpose()).getArray();
+
+		RandomizedSVDApproximator approximator = new RandomizedSVDApproximator(new float[][]{new float[]{0f}},
+				new float[][]{new float[]{1f}}, new ConstantFunction(1, 1f), 0f, rank, true);
+		double[][] expected = approximator.svdPseudoInverse(matrix, 1e-6f, rank);
+		double[][] actual = approximator.pseudoInverse(matrix, 1e-6f, rank);
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				assertEquals(expected[i][j], actual[i][j], 1e-8);
+			}
+		}
+
+		//only nSV singular values are used
+		Matrix pinv = new Matrix(approximator.pseudoInverse(matrix, 1e-6f, 2));
+		assertEquals(2, pinv.rank());
+	}
+
+	public void testFindCoefficients() {
+		float[][] evalPoints = new float[100][];
+		for (int i = 0; i < evalPoints.length; i++) {
+			evalPoints[i] = new float[]{(float) i / (float) evalPoints.length};
+		}
+		//orthogonal components with decreasing amplitude, so the largest singular values belong to the first ones
+		int n = 20;
+		float[][] values = new float[n][];
+		for (int i = 0; i < n; i++) {
+			Function component = new FourierFunction(new float[]{i+1}, new float[]{n-i}, new float[]{0});
+			values[i] = new float[evalPoints.length];
+			for (int j = 0; j < evalPoints.length; j++) {
+				values[i][j] = component.map(evalPoints[j]);
+			}
+		}
+		Function target = new FourierFunction(new float[]{2, 5}, new float[]{.2f, .3f}, new float[]{0, 0});
+
+		//few enough singular values to use the randomized method, and enough for the target
+		LinearApproximator approximator = new RandomizedSVDApproximator(evalPoints, values,
+				new ConstantFunction(1, 1f), 0f, 8, true);
+		float[] coefficients = approximator.findCoefficients(target);
+		for (int j = 0; j < evalPoints.length; j++) {
+			float approx = 0;
+			for (int i = 0; i < n; i++) {
+				approx += coefficients[i] * values[i][j];
+			}
+			assertEquals(target.map(evalPoints[j]), approx, .001f);
+		}
+	}
+
+}
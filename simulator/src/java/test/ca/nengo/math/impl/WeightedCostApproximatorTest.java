@@ -3,6 +3,8 @@
  */
 package ca.nengo.math.impl;
 
+import java.io.File;
+
 import ca.nengo.TestUtil;
 import ca.nengo.math.Function;
 import ca.nengo.math.LinearApproximator;
@@ -105,6 +107,91 @@ public class WeightedCostApproximatorTest extends TestCase {
 		
 	}
 	
+	/*
+	 * Test method for 'ca.nengo.math.impl.WeightedCostApproximator.findGamma()'
+	 */
+	public void testFindGamma() {
+		//large enough for several blocks and eval point chunks
+		int n = 150;
+		int m = 2500;
+		java.util.Random random = new java.util.Random(1);
+		float[][] evalPoints = new float[m][];
+		for (int k = 0; k < m; k++) {
+			evalPoints[k] = new float[]{2 * random.nextFloat() - 1};
+		}
+		float[][] values = new float[n][m];
+		for (int i = 0; i < n; i++) {
+			for (int k = 0; k < m; k++) {
+				values[i][k] = 100 * random.nextFloat();
+			}
+		}
+		Function cost = new IdentityFunction(1, 0);
+
+		WeightedCostApproximator approximator = new WeightedCostApproximator(evalPoints, values, cost, 0f, -1, true);
+		double[][] gamma = approximator.findGamma();
+
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				double expected = 0;
+				for (int k = 0; k < m; k++) {
+					expected += values[i][k] * values[j][k] * cost.map(evalPoints[k]);
+				}
+				expected = expected / m;
+				assertEquals(expected, gamma[i][j], Math.abs(expected) * 1e-9 + 1e-9);
+			}
+		}
+	}
+
+	public void testDecoderCache() throws Exception {
+		File directory = File.createTempFile("decoder_cache_test", "");
+		directory.delete();
+		DecoderCache cache = new DecoderCache(directory);
+		WeightedCostApproximator.setDecoderCache(cache);
+		try {
+			float[][] evalPoints = new float[][]{new float[]{0f}, new float[]{1f}, new float[]{2f}};
+			float[][] values = new float[][]{new float[]{3f, 2f, 3f}, new float[]{1f, 2f, 3f}};
+			Function target = new IdentityFunction(1, 0);
+
+			CountingApproximator a = new CountingApproximator(evalPoints, values);
+			float[] expected = a.findCoefficients(target);
+			assertEquals(1, a.myInversions);
+
+			//same solve, so the pseudoinverse is skipped
+			CountingApproximator b = new CountingApproximator(evalPoints, values);
+			float[] actual = b.findCoefficients(target);
+			assertEquals(0, b.myInversions);
+			assertEquals(expected[0], actual[0], 0f);
+			assertEquals(expected[1], actual[1], 0f);
+
+			//different values
+			values[0][1] = 2.5f;
+			CountingApproximator c = new CountingApproximator(evalPoints, values);
+			c.findCoefficients(target);
+			assertEquals(1, c.myInversions);
+		} finally {
+			WeightedCostApproximator.setDecoderCache(null);
+			cache.clear();
+			directory.delete();
+		}
+	}
+
+	private static class CountingApproximator extends WeightedCostApproximator {
+
+		private static final long serialVersionUID = 1L;
+
+		private int myInversions = 0;
+
+		public CountingApproximator(float[][] evalPoints, float[][] values) {
+			super(evalPoints, values, new ConstantFunction(1, 1f), 0f, -1, true);
+		}
+
+		@Override
+		public double[][] pseudoInverse(double[][] matrix, float minSV, int nSV) {
+			myInversions++;
+			return super.pseudoInverse(matrix, minSV, nSV);
+		}
+	}
+
 	public static void main(String[] args)
 	{
 		WeightedCostApproximatorTest t = new WeightedCostApproximatorTest();
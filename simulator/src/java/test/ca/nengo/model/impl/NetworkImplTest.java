@@ -3,6 +3,10 @@
  */
 package ca.nengo.model.impl;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -18,7 +22,9 @@ import ca.nengo.model.SimulationMode;
 import ca.nengo.model.StructuralException;
 import ca.nengo.model.Termination;
 import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
 import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
 import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
 import ca.nengo.model.nef.impl.NEFEnsembleImpl;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
@@ -207,6 +213,76 @@ public class NetworkImplTest extends TestCase {
 		
 	}
 	
+	public void testBeginUpdate() throws StructuralException, SimulationException
+	{
+		final int[] events = new int[1];
+		myNetwork.addChangeListener(new VisiblyMutable.Listener() {
+			public void changed(VisiblyMutable.Event e) {
+				events[0]++;
+			}
+		});
+		myNetwork.getSimulator();
+
+		myNetwork.beginUpdate();
+		myNetwork.beginUpdate();
+		assertTrue(myNetwork.isUpdating());
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, 1)}, Units.UNK);
+		myNetwork.addNode(input);
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) new NEFEnsembleFactoryImpl().make("ensemble", 10, 1);
+		myNetwork.addNode(ensemble);
+		Termination termination = ensemble.addDecodedTermination("input", new float[][]{new float[]{1}}, .005f, false);
+		myNetwork.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), termination);
+		myNetwork.endUpdate();
+		assertEquals(0, events[0]);
+
+		myNetwork.endUpdate();
+		assertFalse(myNetwork.isUpdating());
+		assertEquals(1, events[0]);
+		myNetwork.getSimulator().addProbe("ensemble", NEFEnsemble.X, true);
+		assertEquals(2, events[0]); //changes to the simulator are passed on
+
+		//the simulator is brought up to date if it's needed during an update
+		myNetwork.beginUpdate();
+		myNetwork.addNode(new FunctionInput("other", new Function[]{new ConstantFunction(1, 1)}, Units.UNK));
+		myNetwork.getSimulator().addProbe("other", FunctionInput.STATE_NAME, true);
+		myNetwork.endUpdate();
+		assertEquals(3, events[0]);
+
+		try {
+			myNetwork.endUpdate();
+			fail("Should have thrown exception");
+		} catch (IllegalStateException e) {} //exception is expected
+	}
+
+	public void testSimulatorChangesPassedOn() throws Exception
+	{
+		NetworkImpl inner = new NetworkImpl();
+		inner.setName("inner");
+		inner.addNode(new FunctionInput("input", new Function[]{new ConstantFunction(1, 1)}, Units.UNK));
+		myNetwork.addNode(inner);
+
+		//also after serialization, which doesn't keep listeners
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bytes);
+		oos.writeObject(myNetwork);
+		oos.close();
+		NetworkImpl copy = (NetworkImpl) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+		NetworkImpl[] outers = new NetworkImpl[]{myNetwork, copy};
+		for (NetworkImpl outer : outers) {
+			final int[] events = new int[1];
+			outer.addChangeListener(new VisiblyMutable.Listener() {
+				public void changed(VisiblyMutable.Event e) {
+					events[0]++;
+				}
+			});
+			Probe probe = ((NetworkImpl) outer.getNode("inner")).getSimulator().addProbe("input", FunctionInput.STATE_NAME, true);
+			assertEquals(1, events[0]);
+			((NetworkImpl) outer.getNode("inner")).getSimulator().removeProbe(probe);
+			assertEquals(2, events[0]);
+		}
+	}
+
 	public void testRemoveNode() throws StructuralException, SimulationException
 	{
 		Ensemble a = new MockEnsemble("a");
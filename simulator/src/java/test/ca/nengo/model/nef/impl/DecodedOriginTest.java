@@ -3,7 +3,11 @@
  */
 package ca.nengo.model.nef.impl;
 
+import ca.nengo.model.Node;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SpikeOutput;
 import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.NEFNode;
 import ca.nengo.model.nef.impl.DecodedOrigin;
 import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
 //import ca.nengo.plot.Plotter;
@@ -17,6 +21,7 @@ import junit.framework.TestCase;
  */
 public class DecodedOriginTest extends TestCase {
 
+	private NEFEnsemble myEnsemble;
 	private DecodedOrigin myOrigin;
 	
 	/**
@@ -33,8 +38,8 @@ public class DecodedOriginTest extends TestCase {
 		super.setUp();
 		
 		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
-		NEFEnsemble ensemble = ef.make("test", 100, 1);
-		myOrigin = (DecodedOrigin) ensemble.getOrigin(NEFEnsemble.X);
+		myEnsemble = ef.make("test", 100, 1);
+		myOrigin = (DecodedOrigin) myEnsemble.getOrigin(NEFEnsemble.X);
 //		Plotter.plot(ensemble, NEFEnsemble.X);
 	}
 
@@ -44,6 +49,35 @@ public class DecodedOriginTest extends TestCase {
 	public void testGetError() {
 		System.out.println(MU.toString(new float[][]{myOrigin.getError()}, 10));
 	}
+
+	/**
+	 * Test method for {@link ca.nengo.model.nef.impl.DecodedOrigin#runSpikes(int[], int, float, float)}.
+	 */
+	public void testRunSpikes() throws Exception {
+		Node[] nodes = myEnsemble.getNodes();
+		int[] spiking = new int[nodes.length];
+		int totalSpikes = 0;
+		for (int step = 0; step < 100; step++) {
+			float startTime = step * .001f;
+			float endTime = (step+1) * .001f;
+			int numSpiking = 0;
+			for (int i = 0; i < nodes.length; i++) {
+				((NEFNode) nodes[i]).setRadialInput(MU.prod(new float[]{.5f}, myEnsemble.getEncoders()[i]));
+				nodes[i].run(startTime, endTime);
+				if (((SpikeOutput) nodes[i].getOrigin(myOrigin.getNodeOrigin()).getValues()).getValues()[0]) {
+					spiking[numSpiking++] = i;
+				}
+			}
+			totalSpikes += numSpiking;
+
+			myOrigin.run(null, startTime, endTime);
+			float expected = ((RealOutput) myOrigin.getValues()).getValues()[0];
+			myOrigin.runSpikes(spiking, numSpiking, startTime, endTime);
+			float actual = ((RealOutput) myOrigin.getValues()).getValues()[0];
+			assertEquals(expected, actual, 0f);
+		}
+		assertTrue(totalSpikes > 0);
+	}
 	
 //	public static void main(String[] args) {
 //		DecodedOriginTest test = new DecodedOriginTest("");
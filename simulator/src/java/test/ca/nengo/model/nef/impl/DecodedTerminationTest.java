@@ -0,0 +1,56 @@
+package ca.nengo.model.nef.impl;
+
+import ca.nengo.dynamics.LinearSystem;
+import ca.nengo.dynamics.impl.EulerIntegrator;
+import ca.nengo.dynamics.impl.LTISystem;
+import ca.nengo.dynamics.impl.SimpleLTISystem;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.util.MU;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for DecodedTermination.
+ */
+public class DecodedTerminationTest extends TestCase {
+
+	private static final float TAU = .01f;
+
+	/*
+	 * Test method for 'ca.nengo.model.nef.impl.DecodedTermination.run(float, float)'
+	 */
+	public void testRun() throws StructuralException, SimulationException {
+		LinearSystem simple = new SimpleLTISystem(new float[]{-1f/TAU}, new float[][]{new float[]{1f}},
+				new float[][]{new float[]{1f/TAU}}, new float[]{0f}, new Units[]{Units.UNK});
+		DecodedTermination exact = new DecodedTermination(null, "exact", MU.I(2), simple, new EulerIntegrator(TAU / 10f));
+
+		//same dynamics in a general LTISystem are discretized the same way
+		LinearSystem general = new LTISystem(new float[][]{new float[]{-1f/TAU}}, new float[][]{new float[]{1f}},
+				new float[][]{new float[]{1f/TAU}}, new float[][]{new float[]{0f}}, new float[]{0f}, new Units[]{Units.UNK});
+		DecodedTermination numerical = new DecodedTermination(null, "numerical", MU.I(2), general, new EulerIntegrator(TAU / 1000f));
+
+		float[] input = new float[]{1f, -.5f};
+		exact.setValues(new RealOutputImpl(input, Units.UNK, 0));
+		numerical.setValues(new RealOutputImpl(input, Units.UNK, 0));
+
+		float dt = .001f;
+		for (int i = 0; i < 50; i++) {
+			exact.run(i*dt, (i+1)*dt);
+			numerical.run(i*dt, (i+1)*dt);
+
+			float expected = 1f - (float) Math.exp(-(i+1)*dt/TAU);
+			assertEquals(expected, exact.getOutput()[0], 1e-5f);
+			assertEquals(-.5f * expected, exact.getOutput()[1], 1e-5f);
+			assertEquals(numerical.getOutput()[0], exact.getOutput()[0], 1e-6f);
+		}
+
+		//state is shared with the dynamics, so it is reset as usual
+		exact.reset(false);
+		exact.setValues(new RealOutputImpl(new float[2], Units.UNK, 0));
+		exact.run(0, dt);
+		assertEquals(0f, exact.getOutput()[0], 0f);
+	}
+
+}
@@ -3,27 +3,49 @@
  */
 package ca.nengo.model.nef.impl;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.RandomStream;
 import ca.nengo.math.impl.AbstractFunction;
+import ca.nengo.math.impl.IndicatorPDF;
+import ca.nengo.math.impl.LinearFunction;
 //import ca.nengo.math.impl.ConstantFunction;
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
 import ca.nengo.model.Projection;
+import ca.nengo.model.RealOutput;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
 import ca.nengo.model.StructuralException;
 import ca.nengo.model.Units;
 import ca.nengo.model.impl.FunctionInput;
 import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.NodeFactory;
+import ca.nengo.model.impl.RealOutputImpl;
 import ca.nengo.model.nef.NEFEnsemble;
 import ca.nengo.model.nef.NEFEnsembleFactory;
 import ca.nengo.model.nef.impl.BiasOrigin;
 //import ca.nengo.model.nef.impl.DecodedOrigin;
 //import ca.nengo.model.nef.impl.DecodedTermination;
 import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.SpikeGenerator;
+import ca.nengo.model.neuron.impl.LIFSpikeGenerator;
+import ca.nengo.model.neuron.impl.LinearSynapticIntegrator;
+import ca.nengo.model.neuron.impl.PoissonSpikeGenerator;
+import ca.nengo.model.neuron.impl.RateFunctionSpikeGenerator;
+import ca.nengo.model.neuron.impl.SpikeGeneratorFactory;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
+import ca.nengo.model.neuron.impl.SpikingNeuronFactory;
 import ca.nengo.plot.Plotter;
 import ca.nengo.util.MU;
 import ca.nengo.util.Probe;
+import ca.nengo.util.ThreadTask;
 import ca.nengo.util.TimeSeries;
 import ca.nengo.util.impl.TimeSeriesImpl;
 import junit.framework.TestCase;
@@ -332,4 +354,248 @@ public class NEFEnsembleImplTest extends TestCase {
 			fail("Error creating per-node signal origin");
 	}
 
+	public void testUsePopulation() throws StructuralException, SimulationException, CloneNotSupportedException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl individual = (NEFEnsembleImpl)ef.make("individual", 100, 1);
+		individual.addDecodedTermination("input", MU.I(1), .005f, false);
+		NEFEnsembleImpl population = individual.clone();
+		population.setUsePopulation(true);
+		assertTrue(population.getUsePopulation());
+
+		for (int step = 0; step < 200; step++) {
+			float startTime = step * .001f;
+			float endTime = (step+1) * .001f;
+			RealOutput input = new RealOutputImpl(new float[]{(float) Math.sin(step / 20.0)}, Units.UNK, startTime);
+			individual.getTermination("input").setValues(input);
+			population.getTermination("input").setValues(input);
+			individual.run(startTime, endTime);
+			population.run(startTime, endTime);
+			assertTrue(population.isRunningAsPopulation());
+
+			float[] expected = ((RealOutput) individual.getOrigin(NEFEnsemble.X).getValues()).getValues();
+			float[] actual = ((RealOutput) population.getOrigin(NEFEnsemble.X).getValues()).getValues();
+			assertEquals(expected[0], actual[0], 1e-6f);
+		}
+
+		//Node-level terminations aren't supported by the population
+		individual.setUsePopulation(true);
+		assertTrue(individual.isRunningAsPopulation());
+		individual.addTermination("weights", MU.uniform(100, 1, 1), .005f, false);
+		individual.run(.2f, .201f);
+		assertFalse(individual.isRunningAsPopulation());
+	}
+
+	public void testPoissonPopulation() throws Exception {
+		NEFEnsembleImpl population = assertPopulationMatches(
+				new PoissonSpikeGenerator.LinearNeuronFactory(new IndicatorPDF(200, 400), new IndicatorPDF(-.9f, .9f), true));
+
+		//only LIF populations can release their neurons
+		assertFalse(population.releaseNeurons());
+	}
+
+	public void testSigmoidPopulation() throws Exception {
+		assertPopulationMatches(new PoissonSpikeGenerator.SigmoidNeuronFactory(
+				new IndicatorPDF(1, 10), new IndicatorPDF(-1, 1), new IndicatorPDF(200, 400)));
+	}
+
+	public void testSmoothRatePopulation() throws Exception {
+		assertPopulationMatches(new SpikingNeuronFactory(new LinearSynapticIntegrator.Factory(), 
+				new SmoothGeneratorFactory(), new IndicatorPDF(1, 2), new IndicatorPDF(0, .5f)));
+	}
+
+	/*
+	 * Runs an ensemble of the given neurons individually and as a population, then continues after the 
+	 * population is turned off (from the state it stores in the neurons), checking that outputs match. 
+	 * Returns the ensemble that was run as a population. 
+	 */
+	private static NEFEnsembleImpl assertPopulationMatches(NodeFactory factory) throws Exception {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		ef.setNodeFactory(factory);
+		NEFEnsembleImpl individual = (NEFEnsembleImpl)ef.make("individual", 100, 1);
+		individual.addDecodedTermination("input", MU.I(1), .005f, false);
+		NEFEnsembleImpl population = individual.clone();
+		population.setUsePopulation(true);
+
+		//each ensemble splits its neurons' streams from the same seed
+		RandomStream individualStream = new RandomStream(5);
+		RandomStream populationStream = new RandomStream(5);
+		RandomStream previous = PDFTools.getStream();
+		try {
+			for (int step = 0; step < 300; step++) {
+				if (step == 200) {
+					population.setUsePopulation(false);
+				}
+
+				float startTime = step * .001f;
+				float endTime = (step+1) * .001f;
+				RealOutput input = new RealOutputImpl(new float[]{(float) Math.sin(step / 20.0)}, Units.UNK, startTime);
+				individual.getTermination("input").setValues(input);
+				population.getTermination("input").setValues(input);
+				PDFTools.setStream(individualStream);
+				individual.run(startTime, endTime);
+				PDFTools.setStream(populationStream);
+				population.run(startTime, endTime);
+				assertEquals(step < 200, population.isRunningAsPopulation());
+
+				float[] expected = ((RealOutput) individual.getOrigin(NEFEnsemble.X).getValues()).getValues();
+				float[] actual = ((RealOutput) population.getOrigin(NEFEnsemble.X).getValues()).getValues();
+				assertEquals(expected[0], actual[0], 1e-6f);
+			}
+		} finally {
+			PDFTools.setStream(previous);
+		}
+
+		population.setUsePopulation(true);
+		return population;
+	}
+
+	//smooth generators, which integrate their rate between spikes
+	private static class SmoothGeneratorFactory implements SpikeGeneratorFactory {
+		private static final long serialVersionUID = 1L;
+
+		public SpikeGenerator make() {
+			return new RateFunctionSpikeGenerator(new LinearFunction(new float[]{100}, 50, true), true);
+		}
+	}
+
+	public void testReleaseNeurons() throws Exception {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl individual = (NEFEnsembleImpl)ef.make("individual", 100, 1);
+		individual.addDecodedTermination("input", MU.I(1), .005f, false);
+		NEFEnsembleImpl released = individual.clone();
+		individual.collectSpikes(true);
+		released.collectSpikes(true);
+
+		assertFalse(released.releaseNeurons()); //not running as a population
+		released.setUsePopulation(true);
+		assertTrue(released.releaseNeurons());
+		assertTrue(released.areNodesReleased());
+		assertEquals(100, released.getNodeCount());
+		assertEquals(100, released.getOrigin(Neuron.AXON).getDimensions());
+
+		for (int step = 0; step < 300; step++) {
+			float startTime = step * .001f;
+			float endTime = (step+1) * .001f;
+			if (step == 100) {
+				//released neurons are saved as arrays
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				ObjectOutputStream oos = new ObjectOutputStream(bytes);
+				oos.writeObject(released);
+				oos.close();
+				released = (NEFEnsembleImpl) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+				assertTrue(released.areNodesReleased());
+			} else if (step == 200) {
+				//neurons are made again with the same parameters and state
+				Node[] expected = individual.getNodes();
+				Node[] actual = released.getNodes();
+				assertFalse(released.areNodesReleased());
+				for (int i = 0; i < expected.length; i++) {
+					SpikingNeuron e = (SpikingNeuron) expected[i];
+					SpikingNeuron a = (SpikingNeuron) actual[i];
+					assertEquals(e.getName(), a.getName());
+					assertEquals(e.getBias(), a.getBias());
+					assertEquals(((LIFSpikeGenerator) e.getGenerator()).getTauRC(), ((LIFSpikeGenerator) a.getGenerator()).getTauRC());
+					assertEquals(((LIFSpikeGenerator) e.getGenerator()).getVoltage(), ((LIFSpikeGenerator) a.getGenerator()).getVoltage());
+				}
+				assertTrue(released.isRunningAsPopulation());
+				assertTrue(released.releaseNeurons());
+			}
+
+			RealOutput input = new RealOutputImpl(new float[]{(float) Math.sin(step / 20.0)}, Units.UNK, startTime);
+			individual.getTermination("input").setValues(input);
+			released.getTermination("input").setValues(input);
+			individual.run(startTime, endTime);
+			released.run(startTime, endTime);
+
+			float[] expected = ((RealOutput) individual.getOrigin(NEFEnsemble.X).getValues()).getValues();
+			float[] actual = ((RealOutput) released.getOrigin(NEFEnsemble.X).getValues()).getValues();
+			assertEquals(expected[0], actual[0], 1e-6f);
+		}
+
+		//the deserialized copy collected spikes from step 100
+		for (int i = 0; i < 100; i++) {
+			float[] expectedTimes = individual.getSpikePattern().getSpikeTimes(i);
+			float[] actualTimes = released.getSpikePattern().getSpikeTimes(i);
+			int n = 0;
+			for (int j = 0; j < expectedTimes.length; j++) {
+				if (expectedTimes[j] > .1f) {
+					assertEquals(expectedTimes[j], actualTimes[n++]);
+				}
+			}
+			assertEquals(n, actualTimes.length);
+		}
+
+		//reset applies to released neurons
+		individual.reset(false);
+		released.reset(false);
+		assertTrue(released.areNodesReleased());
+		individual.run(0, .001f);
+		released.run(0, .001f);
+		float[] expected = ((RealOutput) individual.getOrigin(NEFEnsemble.X).getValues()).getValues();
+		float[] actual = ((RealOutput) released.getOrigin(NEFEnsemble.X).getValues()).getValues();
+		assertEquals(expected[0], actual[0], 1e-6f);
+
+		//changing mode makes the neurons again
+		released.setMode(SimulationMode.CONSTANT_RATE);
+		assertFalse(released.areNodesReleased());
+		assertFalse(released.releaseNeurons());
+	}
+
+	public void testConstantOutputs() throws StructuralException, SimulationException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl)ef.make("rates", 50, new float[]{2, .5f});
+		float[][] evalPoints = ensemble.getEvalPoints();
+
+		//LIF rates are found in bulk, and should match running each neuron
+		float[][] rates = ensemble.getConstantOutputs(evalPoints, Neuron.AXON);
+		assertEquals(50, rates.length);
+		for (int i = 0; i < rates.length; i++) {
+			float[] expected = ensemble.getConstantOutput(i, evalPoints, Neuron.AXON);
+			for (int p = 0; p < evalPoints.length; p++) {
+				assertEquals(expected[p], rates[i][p]);
+			}
+		}
+	}
+
+	public void testPartition() throws StructuralException, SimulationException, CloneNotSupportedException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl whole = (NEFEnsembleImpl)ef.make("whole", 100, 1);
+		whole.addDecodedTermination("input", MU.I(1), .005f, false);
+		NEFEnsembleImpl partitioned = whole.clone();
+		ThreadTask[] tasks = partitioned.partition(3);
+		assertEquals(3, tasks.length);
+		assertTrue(partitioned.isPartitioned());
+
+		for (int step = 0; step < 200; step++) {
+			float startTime = step * .001f;
+			float endTime = (step+1) * .001f;
+			if (step == 100) {
+				partitioned.setUsePopulation(true);
+			}
+
+			RealOutput input = new RealOutputImpl(new float[]{(float) Math.sin(step / 20.0)}, Units.UNK, startTime);
+			whole.getTermination("input").setValues(input);
+			partitioned.getTermination("input").setValues(input);
+			whole.run(startTime, endTime);
+			partitioned.run(startTime, endTime);
+			for (int i = tasks.length - 1; i >= 0; i--) {
+				assertFalse(tasks[i].isFinished());
+				tasks[i].run(startTime, endTime);
+			}
+
+			float[] expected = ((RealOutput) whole.getOrigin(NEFEnsemble.X).getValues()).getValues();
+			float[] actual = ((RealOutput) partitioned.getOrigin(NEFEnsemble.X).getValues()).getValues();
+			assertEquals(expected[0], actual[0], 1e-4f);
+		}
+		assertTrue(partitioned.isRunningAsPopulation());
+
+		//tasks do nothing in direct mode, since run(...) does everything
+		partitioned.setMode(SimulationMode.DIRECT);
+		partitioned.run(.2f, .201f);
+		assertTrue(tasks[0].isFinished());
+
+		partitioned.unpartition();
+		assertFalse(partitioned.isPartitioned());
+	}
+
 }
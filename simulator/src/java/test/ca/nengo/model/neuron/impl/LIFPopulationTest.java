@@ -0,0 +1,120 @@
+package ca.nengo.model.neuron.impl;
+
+import java.util.Random;
+
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Node;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.SpikeOutput;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.neuron.Neuron;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for LIFPopulation.
+ */
+public class LIFPopulationTest extends TestCase {
+
+	private static final int N = 50;
+
+	private Node[] myIndividual;
+	private Node[] myPopulated;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		LIFNeuronFactory factory = new LIFNeuronFactory();
+		myIndividual = new Node[N];
+		myPopulated = new Node[N];
+		for (int i = 0; i < N; i++) {
+			myIndividual[i] = factory.make("neuron" + i);
+			myPopulated[i] = ((SpikingNeuron) myIndividual[i]).clone();
+		}
+	}
+
+	public void testIsCompatible() throws StructuralException {
+		assertTrue(LIFPopulation.isCompatible(myIndividual));
+		assertFalse(LIFPopulation.isCompatible(new Node[0]));
+
+		((SpikingNeuron) myIndividual[0]).setMode(SimulationMode.CONSTANT_RATE);
+		assertFalse(LIFPopulation.isCompatible(myIndividual));
+		((SpikingNeuron) myIndividual[0]).setMode(SimulationMode.DEFAULT);
+
+		((ExpandableSpikingNeuron) myIndividual[1]).addTermination("input", new float[][]{new float[]{1}}, .005f, false);
+		assertFalse(LIFPopulation.isCompatible(myIndividual));
+
+		try {
+			new LIFPopulation(myIndividual);
+			fail("Should have thrown exception due to Termination");
+		} catch (StructuralException e) {} //exception is expected
+	}
+
+	public void testRun() throws Exception {
+		LIFPopulation population = new LIFPopulation(myPopulated);
+		assertEquals(N, population.getSize());
+
+		Random random = new Random(1);
+		float[] radialInput = new float[N];
+		float dt = .001f;
+		int spikeCount = 0;
+		for (int step = 0; step < 1000; step++) {
+			float startTime = step * dt;
+			float endTime = (step+1) * dt;
+			for (int i = 0; i < N; i++) {
+				radialInput[i] = 2 * random.nextFloat() - 1;
+				((SpikingNeuron) myIndividual[i]).setRadialInput(radialInput[i]);
+				myIndividual[i].run(startTime, endTime);
+			}
+			int numSpikes = population.run(radialInput, startTime, endTime);
+
+			int k = 0;
+			for (int i = 0; i < N; i++) {
+				boolean expected = getSpike(myIndividual[i]);
+				assertEquals(expected, population.getSpikes()[i]);
+				assertEquals(expected, getSpike(myPopulated[i]));
+				if (expected) {
+					assertEquals(i, population.getSpikeIndices()[k++]);
+					spikeCount++;
+				}
+			}
+			assertEquals(k, numSpikes);
+		}
+		assertTrue(spikeCount > 0);
+	}
+
+	public void testStoreState() throws Exception {
+		LIFPopulation population = new LIFPopulation(myPopulated);
+		float[] radialInput = new float[N];
+		for (int i = 0; i < N; i++) {
+			radialInput[i] = 1;
+			((SpikingNeuron) myIndividual[i]).setRadialInput(1);
+			((SpikingNeuron) myPopulated[i]).setRadialInput(1);
+		}
+
+		//run some steps as a population and the rest individually
+		float dt = .001f;
+		for (int step = 0; step < 200; step++) {
+			for (int i = 0; i < N; i++) {
+				myIndividual[i].run(step * dt, (step+1) * dt);
+			}
+			if (step < 100) {
+				population.run(radialInput, step * dt, (step+1) * dt);
+				if (step == 99) {
+					population.storeState();
+				}
+			} else {
+				for (int i = 0; i < N; i++) {
+					myPopulated[i].run(step * dt, (step+1) * dt);
+				}
+			}
+			for (int i = 0; i < N; i++) {
+				assertEquals(getSpike(myIndividual[i]), getSpike(myPopulated[i]));
+			}
+		}
+	}
+
+	private static boolean getSpike(Node node) throws Exception {
+		InstantaneousOutput output = node.getOrigin(Neuron.AXON).getValues();
+		return ((SpikeOutput) output).getValues()[0];
+	}
+
+}
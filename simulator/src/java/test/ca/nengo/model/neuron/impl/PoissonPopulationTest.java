@@ -0,0 +1,160 @@
+package ca.nengo.model.neuron.impl;
+
+import java.util.Random;
+
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.RandomStream;
+import ca.nengo.math.impl.IndicatorPDF;
+import ca.nengo.math.impl.LinearFunction;
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Node;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.SpikeOutput;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.SpikeGenerator;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for PoissonPopulation.
+ */
+public class PoissonPopulationTest extends TestCase {
+
+	private static final int N = 60;
+
+	private Node[] myIndividual;
+	private Node[] myPopulated;
+	private RandomStream[] myIndividualStreams;
+	private RandomStream[] myPopulatedStreams;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		PoissonSpikeGenerator.LinearNeuronFactory linearFactory = new PoissonSpikeGenerator.LinearNeuronFactory(
+				new IndicatorPDF(200, 400), new IndicatorPDF(-.9f, .9f), true);
+		PoissonSpikeGenerator.SigmoidNeuronFactory sigmoidFactory = new PoissonSpikeGenerator.SigmoidNeuronFactory(
+				new IndicatorPDF(1, 10), new IndicatorPDF(-1, 1), new IndicatorPDF(200, 400));
+
+		myIndividual = new Node[N];
+		myPopulated = new Node[N];
+		myIndividualStreams = new RandomStream[N];
+		myPopulatedStreams = new RandomStream[N];
+		for (int i = 0; i < N; i++) {
+			String name = "neuron" + i;
+			if (i % 4 == 0) {
+				myIndividual[i] = linearFactory.make(name);
+			} else if (i % 4 == 1) {
+				myIndividual[i] = sigmoidFactory.make(name);
+			} else if (i % 4 == 2) {
+				//smooth, with a rate function that is evaluated inline
+				SpikeGenerator generator = new RateFunctionSpikeGenerator(new LinearFunction(new float[]{100 + i}, 50, true), true);
+				myIndividual[i] = new ExpandableSpikingNeuron(new LinearSynapticIntegrator(.0005f, Units.ACU), generator, 1.5f, .1f, name);
+			} else {
+				//random, with a rate function that is called through map(...)
+				SpikeGenerator generator = new RateFunctionSpikeGenerator.PoiraziDendriteSigmoidFactory().make();
+				myIndividual[i] = new ExpandableSpikingNeuron(new LinearSynapticIntegrator(.001f, Units.ACU), generator, 20, 10, name);
+			}
+			myPopulated[i] = ((SpikingNeuron) myIndividual[i]).clone();
+			myIndividualStreams[i] = new RandomStream(3).split(i);
+			myPopulatedStreams[i] = new RandomStream(3).split(i);
+		}
+	}
+
+	public void testIsCompatible() throws StructuralException {
+		assertTrue(PoissonPopulation.isCompatible(myIndividual));
+		assertFalse(PoissonPopulation.isCompatible(new Node[0]));
+		assertFalse(PoissonPopulation.isCompatible(new Node[]{new LIFNeuronFactory().make("lif")}));
+
+		((SpikingNeuron) myIndividual[0]).setMode(SimulationMode.RATE);
+		assertFalse(PoissonPopulation.isCompatible(myIndividual));
+		((SpikingNeuron) myIndividual[0]).setMode(SimulationMode.DEFAULT);
+
+		((ExpandableSpikingNeuron) myIndividual[1]).addTermination("input", new float[][]{new float[]{1}}, .005f, false);
+		assertFalse(PoissonPopulation.isCompatible(myIndividual));
+
+		try {
+			new PoissonPopulation(myIndividual);
+			fail("Should have thrown exception due to Termination");
+		} catch (StructuralException e) {} //exception is expected
+	}
+
+	public void testRun() throws Exception {
+		PoissonPopulation population = new PoissonPopulation(myPopulated);
+		assertEquals(N, population.getSize());
+		assertTrue(population.isRandom());
+
+		Random random = new Random(1);
+		float[] radialInput = new float[N];
+		float dt = .001f;
+		int spikeCount = 0;
+		for (int step = 0; step < 1000; step++) {
+			float startTime = step * dt;
+			float endTime = (step+1) * dt;
+			for (int i = 0; i < N; i++) {
+				radialInput[i] = 2 * random.nextFloat() - 1;
+				((SpikingNeuron) myIndividual[i]).setRadialInput(radialInput[i]);
+			}
+			runIndividually(myIndividual, myIndividualStreams, startTime, endTime);
+			int numSpikes = population.run(radialInput, 0, N, startTime, endTime, myPopulatedStreams);
+
+			int k = 0;
+			for (int i = 0; i < N; i++) {
+				boolean expected = getSpike(myIndividual[i]);
+				assertEquals(expected, population.getSpikes()[i]);
+				assertEquals(expected, getSpike(myPopulated[i]));
+				if (expected) {
+					assertEquals(i, population.getSpikeIndices()[k++]);
+					spikeCount++;
+				}
+			}
+			assertEquals(k, numSpikes);
+		}
+		assertTrue(spikeCount > 0);
+	}
+
+	public void testStoreState() throws Exception {
+		PoissonPopulation population = new PoissonPopulation(myPopulated);
+		float[] radialInput = new float[N];
+		for (int i = 0; i < N; i++) {
+			radialInput[i] = .5f;
+			((SpikingNeuron) myIndividual[i]).setRadialInput(.5f);
+			((SpikingNeuron) myPopulated[i]).setRadialInput(.5f);
+		}
+
+		//run some steps as a population and the rest individually
+		float dt = .001f;
+		for (int step = 0; step < 200; step++) {
+			runIndividually(myIndividual, myIndividualStreams, step * dt, (step+1) * dt);
+			if (step < 100) {
+				population.run(radialInput, 0, N, step * dt, (step+1) * dt, myPopulatedStreams);
+				if (step == 99) {
+					population.storeState();
+				}
+			} else {
+				runIndividually(myPopulated, myPopulatedStreams, step * dt, (step+1) * dt);
+			}
+			for (int i = 0; i < N; i++) {
+				assertEquals(getSpike(myIndividual[i]), getSpike(myPopulated[i]));
+			}
+		}
+	}
+
+	//runs each neuron with its own random stream, as an Ensemble would
+	private static void runIndividually(Node[] nodes, RandomStream[] streams, float startTime, float endTime) throws Exception {
+		RandomStream parent = PDFTools.getStream();
+		try {
+			for (int i = 0; i < nodes.length; i++) {
+				PDFTools.setStream(streams[i]);
+				nodes[i].run(startTime, endTime);
+			}
+		} finally {
+			PDFTools.setStream(parent);
+		}
+	}
+
+	private static boolean getSpike(Node node) throws Exception {
+		InstantaneousOutput output = node.getOrigin(Neuron.AXON).getValues();
+		return ((SpikeOutput) output).getValues()[0];
+	}
+
+}
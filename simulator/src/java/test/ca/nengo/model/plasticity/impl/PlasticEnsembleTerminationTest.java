@@ -1,8 +1,12 @@
 package ca.nengo.model.plasticity.impl;
 
 import junit.framework.TestCase;
+import ca.nengo.TestUtil;
 import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
 import ca.nengo.model.impl.LinearExponentialTermination;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.model.nef.NEFEnsemble;
 import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
 import ca.nengo.model.nef.impl.NEFEnsembleImpl;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
@@ -82,4 +86,82 @@ public class PlasticEnsembleTerminationTest extends TestCase {
             }
         }
     }
+
+    public void testPESUpdate() throws Exception {
+        NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+        NEFEnsembleImpl c = (NEFEnsembleImpl)ef.make("c", 10, 1);
+        float[][] encoders = c.getEncoders();
+
+        float[] values = new float[]{1.0f, 2.0f, 3.0f};
+        LinearExponentialTermination[] nodeterms = new LinearExponentialTermination[10];
+        float[][] rows = new float[10][];
+        for(int i = 0; i < nodeterms.length; i++) {
+            nodeterms[i] = new LinearExponentialTermination(new SpikingNeuron(null, null, 2.0f, 0.0f, null), null, new float[]{1.0f, 1.0f, 1.0f}, 0.005f);
+            nodeterms[i].setValues(new RealOutputImpl(values, Units.UNK, 0));
+            rows[i] = nodeterms[i].getWeights();
+        }
+
+        PESTermination term = new PESTermination(c, null, nodeterms);
+        float rate = 0.01f;
+        term.setLearningRate(rate);
+        term.setModTermName("error");
+        term.setModTerminationState("error", new RealOutputImpl(new float[]{0.5f}, Units.UNK, .001f), .001f);
+        term.setOriginState(NEFEnsemble.X, new RealOutputImpl(new float[]{0.0f}, Units.UNK, .001f), .001f);
+
+        //two ranges, as run by two LearningTasks
+        term.updateTransform(.001f, 0, 4);
+        term.updateTransform(.001f, 4, 10);
+
+        float[][] expected = new float[10][3];
+        for (int i = 0; i < 10; i++) {
+            assertSame(rows[i], nodeterms[i].getWeights()); //updated in place
+            for (int j = 0; j < 3; j++) {
+                expected[i][j] = 1.0f + rate * (values[j] * 0.2f) * (0.5f * encoders[i][0]) * 2.0f;
+                TestUtil.assertClose(expected[i][j], rows[i][j], 1e-6f);
+            }
+        }
+
+        //input is filtered every step, but with a longer plasticity interval the next update
+        //comes two steps later, and is scaled accordingly
+        term.setOriginState(NEFEnsemble.X, new RealOutputImpl(new float[]{0.0f}, Units.UNK, .002f), .002f);
+        term.setOriginState(NEFEnsemble.X, new RealOutputImpl(new float[]{0.0f}, Units.UNK, .003f), .003f);
+        term.updateTransform(.003f, 0, 10);
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 3; j++) {
+                float filtered = values[j] * (1 - 0.8f*0.8f*0.8f);
+                expected[i][j] += 2 * rate * filtered * (0.5f * encoders[i][0]) * 2.0f;
+                TestUtil.assertClose(expected[i][j], rows[i][j], 1e-6f);
+            }
+        }
+
+        term.reset(false);
+        TestUtil.assertClose(1.0f, term.getTransform()[0][0], 0f);
+
+        //with 2 ms steps, there is still one update per step
+        for (int i = 0; i < nodeterms.length; i++) {
+            nodeterms[i].setValues(new RealOutputImpl(values, Units.UNK, 0));
+        }
+        term.setModTerminationState("error", new RealOutputImpl(new float[]{0.5f}, Units.UNK, .002f), .002f);
+        term.setOriginState(NEFEnsemble.X, new RealOutputImpl(new float[]{0.0f}, Units.UNK, .002f), .002f);
+        term.updateTransform(.002f, 0, 10);
+        for (int i = 0; i < 10; i++) {
+            float[] weights = nodeterms[i].getWeights();
+            for (int j = 0; j < 3; j++) {
+                expected[i][j] = 1.0f + rate * (values[j] * 0.2f) * (0.5f * encoders[i][0]) * 2.0f;
+                TestUtil.assertClose(expected[i][j], weights[j], 1e-6f);
+            }
+        }
+
+        term.setOriginState(NEFEnsemble.X, new RealOutputImpl(new float[]{0.0f}, Units.UNK, .004f), .004f);
+        term.setOriginState(NEFEnsemble.X, new RealOutputImpl(new float[]{0.0f}, Units.UNK, .006f), .006f);
+        term.updateTransform(.006f, 0, 10);
+        for (int i = 0; i < 10; i++) {
+            float[] weights = nodeterms[i].getWeights();
+            for (int j = 0; j < 3; j++) {
+                float filtered = values[j] * (1 - 0.8f*0.8f*0.8f);
+                expected[i][j] += 2 * rate * filtered * (0.5f * encoders[i][0]) * 2.0f;
+                TestUtil.assertClose(expected[i][j], weights[j], 1e-6f);
+            }
+        }
+    }
 }
@@ -0,0 +1,49 @@
+package ca.nengo.model.plasticity.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.LinearExponentialTermination;
+import ca.nengo.model.impl.SpikeOutputImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.impl.SpikingNeuron;
+import ca.nengo.util.MU;
+
+/**
+ * Unit tests for STDPTermination.
+ */
+public class STDPTerminationTest extends TestCase {
+
+    public void testUpdateTransform() throws StructuralException, SimulationException {
+        NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+        NEFEnsembleImpl post = (NEFEnsembleImpl)ef.make("post", 5, 1);
+
+        LinearExponentialTermination[] nodeterms = new LinearExponentialTermination[5];
+        for(int i = 0; i < nodeterms.length; i++) {
+            nodeterms[i] = new LinearExponentialTermination(new SpikingNeuron(null, null, 0.0f, 0.0f, null), null, new float[]{1.0f, 1.0f, 1.0f}, 0.005f);
+        }
+
+        STDPTermination term = new STDPTermination(post, "stdp", nodeterms);
+        term.setLearningRate(1.0f);
+        float[][] before = MU.clone(term.getTransform());
+
+        boolean[] preSpikes = new boolean[]{true, false, true};
+        for (int step = 1; step <= 10; step++) {
+            float time = step * .001f;
+            boolean[] postSpikes = new boolean[]{step % 2 == 0, step % 3 == 0, false, true, false};
+            term.setValues(new SpikeOutputImpl(preSpikes, Units.SPIKES, time));
+            term.setOriginState(Neuron.AXON, new SpikeOutputImpl(postSpikes, Units.SPIKES, time), time);
+            term.updateTransform(time, 0, nodeterms.length);
+        }
+
+        float[][] after = term.getTransform();
+        assertTrue(after[0][0] != before[0][0]);
+        assertTrue(after[3][2] != before[3][2]);
+        assertEquals(before[2][1], after[2][1], .0001f);
+        assertEquals(before[4][1], after[4][1], .0001f);
+    }
+
+}
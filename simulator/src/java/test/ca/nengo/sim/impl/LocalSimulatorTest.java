@@ -0,0 +1,356 @@
+package ca.nengo.sim.impl;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.nengo.TestUtil;
+import ca.nengo.math.Function;
+import ca.nengo.math.RandomStream;
+import ca.nengo.math.impl.GaussianPDF;
+import ca.nengo.math.impl.IndicatorPDF;
+import ca.nengo.math.impl.SineFunction;
+import ca.nengo.model.StepListener;
+import ca.nengo.model.Termination;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NoiseFactory;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.neuron.impl.PoissonSpikeGenerator;
+import ca.nengo.util.Probe;
+import ca.nengo.util.impl.ExecutionPlan;
+import ca.nengo.util.impl.NodeThreadPool;
+import ca.nengo.util.impl.StepProfiler;
+
+/**
+ * Unit tests for LocalSimulator.
+ */
+public class LocalSimulatorTest extends TestCase {
+
+	private int myNumThreads;
+	private NetworkImpl myNetwork;
+	private LocalSimulator mySimulator;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		myNumThreads = NodeThreadPool.getNumJavaThreads();
+		NodeThreadPool.setNumJavaThreads(2);
+
+		myNetwork = new NetworkImpl();
+		FunctionInput input = new FunctionInput("input", new Function[]{new SineFunction(10)}, Units.UNK);
+		myNetwork.addNode(input);
+		NEFEnsemble ensemble = new NEFEnsembleFactoryImpl().make("ensemble", 50, 1);
+		ensemble.addDecodedTermination("input", new float[][]{new float[]{1}}, .005f, false);
+		myNetwork.addNode(ensemble);
+		myNetwork.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), ensemble.getTermination("input"));
+
+		mySimulator = (LocalSimulator) myNetwork.getSimulator();
+		mySimulator.setDisplayProgress(false);
+	}
+
+	protected void tearDown() throws Exception {
+		mySimulator.releaseThreadPool();
+		NodeThreadPool.setNumJavaThreads(myNumThreads);
+		super.tearDown();
+	}
+
+	public void testPoolKeptBetweenRuns() throws Exception {
+		mySimulator.run(0, .01f, .001f);
+		NodeThreadPool pool = mySimulator.getNodeThreadPool();
+		assertNotNull(pool);
+		mySimulator.run(.01f, .02f, .001f);
+		assertSame(pool, mySimulator.getNodeThreadPool());
+
+		//probes, structure, nested structure, and settings each invalidate the pool
+		Probe probe = mySimulator.addProbe("ensemble", NEFEnsemble.X, true);
+		mySimulator.run(0, .01f, .001f);
+		assertNotSame(pool, mySimulator.getNodeThreadPool());
+		pool = mySimulator.getNodeThreadPool();
+
+		NetworkImpl subnetwork = new NetworkImpl();
+		subnetwork.setName("subnetwork");
+		myNetwork.addNode(subnetwork);
+		mySimulator.run(0, .01f, .001f);
+		assertNotSame(pool, mySimulator.getNodeThreadPool());
+		pool = mySimulator.getNodeThreadPool();
+
+		subnetwork.addNode(new FunctionInput("inner", new Function[]{new SineFunction(1)}, Units.UNK));
+		mySimulator.run(0, .01f, .001f);
+		assertNotSame(pool, mySimulator.getNodeThreadPool());
+		pool = mySimulator.getNodeThreadPool();
+
+		NodeThreadPool.setNumJavaThreads(3);
+		mySimulator.run(0, .01f, .001f);
+		assertNotSame(pool, mySimulator.getNodeThreadPool());
+
+		mySimulator.removeProbe(probe);
+		NodeThreadPool.turnOffMultithreading();
+		mySimulator.run(0, .01f, .001f);
+		assertNull(mySimulator.getNodeThreadPool());
+	}
+
+	public void testNestedProbeAddedBetweenRuns() throws Exception {
+		NetworkImpl inner = new NetworkImpl();
+		inner.setName("inner");
+		inner.addNode(new FunctionInput("in", new Function[]{new SineFunction(1)}, Units.UNK));
+		myNetwork.addNode(inner);
+
+		mySimulator.run(0, .01f, .001f);
+		NodeThreadPool pool = mySimulator.getNodeThreadPool();
+		Probe probe = inner.getSimulator().addProbe("in", FunctionInput.STATE_NAME, true);
+		mySimulator.run(0, .01f, .001f);
+		assertNotSame(pool, mySimulator.getNodeThreadPool());
+		assertEquals(10, probe.getData().getTimes().length);
+	}
+
+	public void testNestedProbeAddedBetweenRunsInOneThread() throws Exception {
+		NodeThreadPool.turnOffMultithreading();
+		NetworkImpl inner = new NetworkImpl();
+		inner.setName("inner");
+		inner.addNode(new FunctionInput("in", new Function[]{new SineFunction(1)}, Units.UNK));
+		myNetwork.addNode(inner);
+
+		mySimulator.run(0, .01f, .001f);
+		Probe probe = inner.getSimulator().addProbe("in", FunctionInput.STATE_NAME, true);
+		mySimulator.run(0, .01f, .001f);
+		assertEquals(10, probe.getData().getTimes().length);
+	}
+
+	public void testNestedStepSize() throws Exception {
+		//a nested network with its own step size is run by its own simulator
+		NetworkImpl inner = new NetworkImpl();
+		inner.setName("inner");
+		inner.setStepSize(.0005f);
+		inner.addNode(new FunctionInput("in", new Function[]{new SineFunction(1)}, Units.UNK));
+		myNetwork.addNode(inner);
+		final int[] steps = new int[1];
+		inner.addStepListener(new StepListener() {
+			public void stepStarted(float time) {
+				steps[0]++;
+			}
+		});
+		Probe probe = inner.getSimulator().addProbe("in", FunctionInput.STATE_NAME, true);
+
+		ExecutionPlan plan = new ExecutionPlan(myNetwork, .001f);
+		assertFalse(plan.isFlattened(inner));
+		assertTrue(Arrays.asList(plan.getNodes()).contains(inner));
+		assertEquals(0, plan.getNestedNetworks().length);
+		assertTrue(new ExecutionPlan(myNetwork, .0005f).isFlattened(inner));
+
+		NodeThreadPool.turnOffMultithreading();
+		mySimulator.run(0, .01f, .001f);
+		assertEquals(20, steps[0]);
+		assertEquals(20, probe.getData().getTimes().length);
+
+		NodeThreadPool.setNumJavaThreads(2);
+		mySimulator.run(0, .01f, .001f);
+		assertEquals(40, steps[0]);
+		assertEquals(20, probe.getData().getTimes().length);
+	}
+
+	public void testOverriddenRun() throws Exception {
+		CountingNetwork inner = new CountingNetwork();
+		inner.setName("inner");
+		inner.addNode(new FunctionInput("in", new Function[]{new SineFunction(1)}, Units.UNK));
+		myNetwork.addNode(inner);
+		assertFalse(new ExecutionPlan(myNetwork).isFlattened(inner));
+
+		NodeThreadPool.turnOffMultithreading();
+		mySimulator.run(0, .01f, .001f);
+		assertEquals(10, inner.myRuns);
+
+		NodeThreadPool.setNumJavaThreads(2);
+		mySimulator.run(0, .01f, .001f);
+		assertEquals(20, inner.myRuns);
+	}
+
+	private static class CountingNetwork extends NetworkImpl {
+		private static final long serialVersionUID = 1L;
+
+		private int myRuns;
+
+		@Override
+		public void run(float startTime, float endTime) {
+			myRuns++;
+		}
+	}
+
+	public void testIdlePoolReleased() throws Exception {
+		long idleTime = LocalSimulator.getThreadPoolIdleTime();
+		LocalSimulator.setThreadPoolIdleTime(20);
+		try {
+			mySimulator.run(0, .01f, .001f);
+			for (int i = 0; i < 500 && mySimulator.getNodeThreadPool() != null; i++) {
+				Thread.sleep(10);
+			}
+			assertNull(mySimulator.getNodeThreadPool());
+
+			//a run that starts in time keeps the pool
+			LocalSimulator.setThreadPoolIdleTime(60000);
+			mySimulator.run(0, .01f, .001f);
+			NodeThreadPool pool = mySimulator.getNodeThreadPool();
+			mySimulator.run(.01f, .02f, .001f);
+			assertSame(pool, mySimulator.getNodeThreadPool());
+		} finally {
+			LocalSimulator.setThreadPoolIdleTime(idleTime);
+		}
+	}
+
+	public void testProfiling() throws Exception {
+		assertFalse(mySimulator.isProfiling());
+		mySimulator.setProfiling(true);
+		assertTrue(mySimulator.isProfiling());
+		mySimulator.addProbe("ensemble", NEFEnsemble.X, true);
+
+		//in the thread pool, then in this thread; times accumulate over runs
+		mySimulator.run(0, .01f, .001f);
+		NodeThreadPool.turnOffMultithreading();
+		mySimulator.run(0, .01f, .001f);
+
+		StepProfiler profiler = mySimulator.getProfiler();
+		long steps = profiler.getStepHistogram().getCount();
+		assertTrue(steps > 0 && steps % 2 == 0);
+		assertEquals(steps, profiler.getWaitHistogram(1).getCount()); //two threads wait in each pool step
+
+		List<String> names = Arrays.asList(profiler.getNames());
+		StepProfiler.Histogram[] histograms = profiler.getHistograms();
+		assertEquals(steps, histograms[names.indexOf("ensemble")].getCount());
+		assertEquals(steps, histograms[names.indexOf("input")].getCount());
+		assertEquals(steps, histograms[names.indexOf("input.origin -> ensemble.input")].getCount());
+		assertEquals(steps, histograms[names.indexOf("probe ensemble.X")].getCount());
+		assertTrue(histograms[names.indexOf("ensemble")].getTotal() > 0);
+		assertTrue(profiler.getReport(10).indexOf("ensemble") > 0);
+
+		mySimulator.setProfiling(false);
+		assertNull(mySimulator.getProfiler());
+		mySimulator.run(.02f, .03f, .001f);
+	}
+
+	public void testNestedNetworks() throws Exception {
+		//input -> inner.nested (through an exposed termination) -> outer (through an exposed origin)
+		NetworkImpl inner = new NetworkImpl();
+		inner.setName("inner");
+		NEFEnsembleFactoryImpl factory = new NEFEnsembleFactoryImpl();
+		NEFEnsemble nested = factory.make("nested", 30, 1);
+		Termination nestedInput = nested.addDecodedTermination("input", new float[][]{new float[]{1}}, .005f, false);
+		inner.addNode(nested);
+		inner.exposeTermination(nestedInput, "input");
+		inner.exposeOrigin(nested.getOrigin(NEFEnsemble.X), "X");
+		myNetwork.addNode(inner);
+		NEFEnsemble outer = factory.make("outer", 30, 1);
+		outer.addDecodedTermination("input", new float[][]{new float[]{1}}, .005f, false);
+		myNetwork.addNode(outer);
+		myNetwork.addProjection(myNetwork.getNode("input").getOrigin(FunctionInput.ORIGIN_NAME), inner.getTermination("input"));
+		myNetwork.addProjection(inner.getOrigin("X"), outer.getTermination("input"));
+
+		ExecutionPlan plan = new ExecutionPlan(myNetwork);
+		assertEquals(4, plan.getNodes().length);
+		assertEquals(3, plan.getProjections().length);
+		assertEquals(1, plan.getNestedNetworks().length);
+		assertTrue(Arrays.asList(plan.getTerminations()).contains(nestedInput));
+		assertTrue(Arrays.asList(plan.getOrigins()).contains(nested.getOrigin(NEFEnsemble.X)));
+
+		//probes and step listeners of the nested network are handled by the top-level simulator
+		final int[] steps = new int[1];
+		inner.addStepListener(new StepListener() {
+			public void stepStarted(float time) {
+				steps[0]++;
+			}
+		});
+		Probe nestedProbe = inner.getSimulator().addProbe("nested", NEFEnsemble.X, true);
+		Probe outerProbe = mySimulator.addProbe("outer", NEFEnsemble.X, true);
+		mySimulator.setSeed(3);
+
+		NodeThreadPool.turnOffMultithreading();
+		float[][] expected = runAndRecord(outerProbe);
+		int n = expected.length;
+		assertEquals(n, steps[0]);
+		assertEquals(n, nestedProbe.getData().getTimes().length);
+		float[][] expectedNested = nestedProbe.getData().getValues();
+
+		NodeThreadPool.setNumJavaThreads(2);
+		assertSameValues(expected, runAndRecord(outerProbe));
+		assertSameValues(expectedNested, nestedProbe.getData().getValues());
+		assertEquals(2 * n, steps[0]);
+	}
+
+	public void testShortRunsMatchLongRun() throws Exception {
+		Probe probe = mySimulator.addProbe("ensemble", NEFEnsemble.X, true);
+
+		myNetwork.reset(false);
+		mySimulator.run(0, .1f, .001f);
+		float[][] continuous = probe.getData().getValues();
+
+		myNetwork.reset(false);
+		float[][] chunked = new float[continuous.length][];
+		int n = 0;
+		for (int i = 0; i < 10; i++) {
+			mySimulator.run(i * .01f, (i+1) * .01f, .001f);
+			float[][] values = probe.getData().getValues();
+			System.arraycopy(values, 0, chunked, n, values.length);
+			n += values.length;
+		}
+
+		assertEquals(continuous.length, n);
+		for (int i = 0; i < n; i++) {
+			TestUtil.assertClose(continuous[i][0], chunked[i][0], .0001f);
+		}
+	}
+
+	public void testRandomStreamsIndependentOfThreads() throws Exception {
+		NEFEnsembleFactoryImpl factory = new NEFEnsembleFactoryImpl();
+		factory.setNodeFactory(new PoissonSpikeGenerator.LinearNeuronFactory(new IndicatorPDF(100, 200), new IndicatorPDF(-1, 1), true));
+		factory.setRandomStream(new RandomStream(5));
+		NEFEnsemble poisson = factory.make("poisson", 40, 1);
+		assertEquals(poisson.getEncoders()[3][0], factory.make("poisson", 40, 1).getEncoders()[3][0]);
+
+		poisson.addDecodedTermination("input", new float[][]{new float[]{1}}, .005f, false);
+		((DecodedOrigin) poisson.getOrigin(NEFEnsemble.X)).setNoise(NoiseFactory.makeRandomNoise(1000, new GaussianPDF(0, .1f)));
+		myNetwork.addNode(poisson);
+		myNetwork.addProjection(myNetwork.getNode("input").getOrigin(FunctionInput.ORIGIN_NAME), poisson.getTermination("input"));
+		Probe probe = mySimulator.addProbe("poisson", NEFEnsemble.X, true);
+		mySimulator.setSeed(11);
+
+		NodeThreadPool.turnOffMultithreading();
+		float[][] expected = runAndRecord(probe);
+		assertSameValues(expected, runAndRecord(probe));
+
+		NodeThreadPool.setNumJavaThreads(2);
+		assertSameValues(expected, runAndRecord(probe));
+		NodeThreadPool.setPartitionSize(10);
+		try {
+			//same spikes and noise, but partial outputs of ranges are summed in a different order
+			float[][] partitioned = runAndRecord(probe);
+			for (int i = 0; i < expected.length; i++) {
+				TestUtil.assertClose(expected[i][0], partitioned[i][0], .00001f);
+			}
+		} finally {
+			NodeThreadPool.setPartitionSize(0);
+		}
+
+		mySimulator.setSeed(12);
+		float[][] other = runAndRecord(probe);
+		boolean same = true;
+		for (int i = 0; i < other.length; i++) {
+			same = same && other[i][0] == expected[i][0];
+		}
+		assertFalse(same);
+	}
+
+	private float[][] runAndRecord(Probe probe) throws Exception {
+		myNetwork.reset(false);
+		mySimulator.run(0, .05f, .001f);
+		return probe.getData().getValues();
+	}
+
+	private static void assertSameValues(float[][] expected, float[][] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i][0], actual[i][0]);
+		}
+	}
+
+}
@@ -12,6 +12,7 @@ import junit.framework.TestCase;
 import ca.nengo.model.Network;
 import ca.nengo.model.SimulationException;
 import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
 import ca.nengo.model.impl.NetworkImpl;
 import ca.nengo.model.nef.NEFEnsemble;
 import ca.nengo.model.nef.NEFEnsembleFactory;
@@ -99,4 +100,34 @@ public class WriteToDiskSimulatorListenerTest extends TestCase {
         fileReader.close();
         assertTrue(file.delete());
 	}
+
+	/*
+	 * The listener only receives samples from the probe while it is running
+	 */
+	public void testDetachedAfterRun() throws StructuralException, SimulationException {
+		Network network = new NetworkImpl();
+		NEFEnsembleFactory factory = new NEFEnsembleFactoryImpl();
+		network.addNode(factory.make("Ensemble",10,1));
+		File file = new File("testWTDSL.csv");
+
+		Probe probe = network.getSimulator().addProbe("Ensemble", "X", true);
+		final int[] samples = new int[1];
+		WriteToDiskSimulatorListener listener = new WriteToDiskSimulatorListener(file,probe,0.0f) {
+			public void write(float[] times, float[][] values, Units[] units) {
+				samples[0]++;
+				super.write(times, values, units);
+			}
+		};
+
+		network.getSimulator().addSimulatorListener(listener);
+		network.getSimulator().run(0.0f, 0.01f, 0.001f);
+		assertEquals(10, samples[0]);
+		network.getSimulator().run(0.0f, 0.01f, 0.001f);
+		assertEquals(20, samples[0]);
+
+		network.getSimulator().removeSimulatorListener(listener);
+		network.getSimulator().run(0.0f, 0.01f, 0.001f);
+		assertEquals(20, samples[0]);
+		assertTrue(file.delete());
+	}
 }
@@ -0,0 +1,108 @@
+package ca.nengo.util.impl;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkArrayImpl;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.util.Probe;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for NEFJavaInterface.
+ */
+public class NEFJavaInterfaceTest extends TestCase {
+
+	private boolean myUseJava;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		myUseJava = NEFJavaInterface.getUseJava();
+	}
+
+	protected void tearDown() throws Exception {
+		NEFJavaInterface.setUseJava(myUseJava);
+		super.tearDown();
+	}
+
+	public void testRateMode() throws StructuralException, SimulationException {
+		NetworkImpl network = makeNetwork(SimulationMode.RATE);
+		float[][] expected = run(network, false, "b");
+		float[][] actual = run(network, true, "b");
+		float[][] expectedArray = run(network, false, "array");
+		float[][] actualArray = run(network, true, "array");
+
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i][0], actual[i][0], .001f);
+			assertEquals(expectedArray[i][0], actualArray[i][0], .001f);
+			assertEquals(expectedArray[i][1], actualArray[i][1], .001f);
+		}
+		assertEquals(.5f, actual[actual.length-1][0], .1f);
+	}
+
+	public void testSpikingMode() throws StructuralException, SimulationException {
+		NetworkImpl network = makeNetwork(SimulationMode.DEFAULT);
+		float[][] expected = run(network, false, "b");
+		float[][] actual = run(network, true, "b");
+
+		//spike times differ, so compare averages over the last 100 ms
+		assertEquals(mean(expected, 100), mean(actual, 100), .1f);
+		assertEquals(.5f, mean(actual, 100), .15f);
+	}
+
+	private static float mean(float[][] values, int n) {
+		float sum = 0;
+		for (int i = values.length - n; i < values.length; i++) {
+			sum += values[i][0];
+		}
+		return sum / n;
+	}
+
+	private static float[][] run(NetworkImpl network, boolean useJava, String probed) throws SimulationException {
+		NEFJavaInterface.setUseJava(useJava);
+		network.getSimulator().resetProbes();
+		Probe probe = network.getSimulator().addProbe(probed, NEFEnsemble.X, true);
+		network.reset(false);
+		network.getSimulator().run(0, .3f, .001f);
+		float[][] result = probe.getData().getValues();
+		network.getSimulator().removeProbe(probe);
+		return result;
+	}
+
+	//input -> a -> b, and input -> array (two ensembles, each representing the input)
+	private static NetworkImpl makeNetwork(SimulationMode mode) throws StructuralException {
+		NetworkImpl network = new NetworkImpl();
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, .5f)}, Units.UNK);
+		network.addNode(input);
+
+		NEFEnsemble a = ef.make("a", 100, 1);
+		a.addDecodedTermination("input", new float[][]{new float[]{1}}, .005f, false);
+		NEFEnsemble b = ef.make("b", 100, 1);
+		b.addDecodedTermination("input", new float[][]{new float[]{1}}, .005f, false);
+		NetworkArrayImpl array = new NetworkArrayImpl("array", new NEFEnsembleImpl[]{
+				(NEFEnsembleImpl) ef.make("array0", 50, 1), (NEFEnsembleImpl) ef.make("array1", 50, 1)});
+		array.addDecodedTermination("input", new float[][]{new float[]{1}, new float[]{-1}}, .005f, false);
+
+		network.addNode(a);
+		network.addNode(b);
+		network.addNode(array);
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), a.getTermination("input"));
+		network.addProjection(a.getOrigin(NEFEnsemble.X), b.getTermination("input"));
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), array.getTermination("input"));
+
+		a.setMode(mode);
+		b.setMode(mode);
+		array.setMode(mode);
+		return network;
+	}
+
+}
@@ -0,0 +1,120 @@
+package ca.nengo.util.impl;
+
+import java.util.ArrayList;
+
+import ca.nengo.TestUtil;
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.Node;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.util.Probe;
+import ca.nengo.util.ThreadTask;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for NodeThreadPool.
+ */
+public class NodeThreadPoolTest extends TestCase {
+
+	private boolean myDynamicScheduling;
+	private int myPartitionSize;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		myDynamicScheduling = NodeThreadPool.isUsingDynamicScheduling();
+		myPartitionSize = NodeThreadPool.getPartitionSize();
+	}
+
+	protected void tearDown() throws Exception {
+		NodeThreadPool.setUseDynamicScheduling(myDynamicScheduling);
+		NodeThreadPool.setPartitionSize(myPartitionSize);
+		super.tearDown();
+	}
+
+	public void testEstimateCost() throws StructuralException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		Node small = ef.make("small", 10, 1);
+		Node large = ef.make("large", 50, 2);
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, 0)}, Units.UNK);
+
+		assertTrue(NodeThreadPool.estimateCost(large) > NodeThreadPool.estimateCost(small));
+		assertTrue(NodeThreadPool.estimateCost(small) > NodeThreadPool.estimateCost(input));
+	}
+
+	public void testDynamicScheduling() throws StructuralException, SimulationException {
+		NetworkImpl network = new NetworkImpl();
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, .5f)}, Units.UNK);
+		network.addNode(input);
+		for (int i = 0; i < 5; i++) {
+			NEFEnsemble ensemble = ef.make("ensemble" + i, 20 + 20*i, 1);
+			ensemble.addDecodedTermination("input", new float[][]{new float[]{1}}, .005f, false);
+			network.addNode(ensemble);
+			network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), ensemble.getTermination("input"));
+		}
+		Probe probe = network.getSimulator().addProbe("ensemble4", NEFEnsemble.X, true);
+
+		NodeThreadPool.setUseDynamicScheduling(false);
+		network.reset(false);
+		network.getSimulator().run(0, .25f, .001f);
+		float[][] fixed = probe.getData().getValues();
+
+		//enough steps for the nodes to be re-ordered by measured cost
+		network.reset(false);
+		NodeThreadPool.setUseDynamicScheduling(true);
+		network.getSimulator().run(0, .25f, .001f);
+		float[][] dynamic = probe.getData().getValues();
+
+		assertEquals(fixed.length, dynamic.length);
+		for (int i = 0; i < fixed.length; i++) {
+			TestUtil.assertClose(fixed[i][0], dynamic[i][0], .0001f);
+		}
+	}
+
+	public void testPartitionedEnsembles() throws StructuralException, SimulationException {
+		NetworkImpl network = new NetworkImpl();
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, .5f)}, Units.UNK);
+		network.addNode(input);
+		NEFEnsembleImpl large = (NEFEnsembleImpl) ef.make("large", 400, 1);
+		large.addDecodedTermination("input", new float[][]{new float[]{1}}, .005f, false);
+		network.addNode(large);
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), large.getTermination("input"));
+		NEFEnsemble small = ef.make("small", 50, 1);
+		small.addDecodedTermination("input", new float[][]{new float[]{1}}, .005f, false);
+		network.addNode(small);
+		network.addProjection(large.getOrigin(NEFEnsemble.X), small.getTermination("input"));
+		Probe probe = network.getSimulator().addProbe("small", NEFEnsemble.X, true);
+
+		NodeThreadPool.setPartitionSize(0);
+		network.reset(false);
+		network.getSimulator().run(0, .1f, .001f);
+		float[][] whole = probe.getData().getValues();
+
+		NodeThreadPool.setPartitionSize(100);
+		network.reset(false);
+		NodeThreadPool pool = new NodeThreadPool(network, new ArrayList<ThreadTask>());
+		assertEquals(NodeThreadPool.getNumJavaThreads() > 1, pool.hasRangeTasks());
+		assertEquals(pool.hasRangeTasks(), large.isPartitioned());
+		pool.kill();
+		assertFalse(large.isPartitioned());
+
+		network.reset(false);
+		network.getSimulator().run(0, .1f, .001f);
+		float[][] partitioned = probe.getData().getValues();
+		assertFalse(large.isPartitioned());
+
+		assertEquals(whole.length, partitioned.length);
+		for (int i = 0; i < whole.length; i++) {
+			TestUtil.assertClose(whole[i][0], partitioned[i][0], .0001f);
+		}
+	}
+
+}
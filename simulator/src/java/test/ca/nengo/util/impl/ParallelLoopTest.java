@@ -0,0 +1,54 @@
+package ca.nengo.util.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ca.nengo.math.impl.SimpleFunctions;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for ParallelLoop.
+ */
+public class ParallelLoopTest extends TestCase {
+
+	public void testRun() {
+		final int[] visits = new int[1000];
+		final AtomicInteger total = new AtomicInteger(0);
+		ParallelLoop.run(visits.length, ParallelLoop.MIN_PARALLEL_WORK, new ParallelLoop.Body() {
+			public void run(int i) {
+				visits[i]++;
+				total.incrementAndGet();
+			}
+		});
+		assertEquals(visits.length, total.get());
+		for (int i = 0; i < visits.length; i++) {
+			assertEquals(1, visits[i]);
+		}
+
+		try {
+			ParallelLoop.run(100, ParallelLoop.MIN_PARALLEL_WORK, new ParallelLoop.Body() {
+				public void run(int i) {
+					if (i == 50) {
+						throw new IllegalStateException("test");
+					}
+				}
+			});
+			fail("Should have thrown exception");
+		} catch (IllegalStateException e) {} //exception is expected
+	}
+
+	public void testMultiMap() {
+		SimpleFunctions.Sin f = new SimpleFunctions.Sin();
+		float[][] from = new float[10000][];
+		for (int i = 0; i < from.length; i++) {
+			from[i] = new float[]{i * .001f};
+		}
+
+		float[] values = ParallelLoop.multiMap(f, from, 1000);
+		float[] bulk = f.multiMap(from);
+		for (int i = 0; i < from.length; i++) {
+			assertEquals(f.map(from[i]), values[i]);
+			assertEquals(f.map(from[i]), bulk[i]);
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+package ca.nengo.util.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for PhaseBarrier implementations.
+ */
+public class PhaseBarrierTest extends TestCase {
+
+	private static final int PARTIES = 4;
+	private static final int PHASES = 500;
+
+	public void testBlockingBarrier() throws Exception {
+		checkPhases(new BlockingPhaseBarrier(PARTIES));
+		checkInterrupt(new BlockingPhaseBarrier(2));
+	}
+
+	public void testSpinningBarrier() throws Exception {
+		checkPhases(new SpinningPhaseBarrier(PARTIES, SpinningPhaseBarrier.DEFAULT_SPINS));
+		checkPhases(new SpinningPhaseBarrier(PARTIES, 0));
+		checkInterrupt(new SpinningPhaseBarrier(2, 100));
+	}
+
+	//no party may leave a phase before all parties have arrived, or get more than one phase ahead
+	private void checkPhases(final PhaseBarrier barrier) throws Exception {
+		final AtomicInteger count = new AtomicInteger(0);
+		final AtomicInteger errors = new AtomicInteger(0);
+
+		Thread[] threads = new Thread[PARTIES];
+		for (int i = 0; i < PARTIES; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						for (int phase = 0; phase < PHASES; phase++) {
+							count.incrementAndGet();
+							barrier.await();
+							int c = count.get();
+							if (c < PARTIES * (phase+1) || c > PARTIES * (phase+2)) {
+								errors.incrementAndGet();
+							}
+						}
+					} catch (InterruptedException e) {
+						errors.incrementAndGet();
+					}
+				}
+			};
+			threads[i].start();
+		}
+
+		for (int i = 0; i < PARTIES; i++) {
+			threads[i].join(10000);
+			assertFalse(threads[i].isAlive());
+		}
+		assertEquals(PARTIES, barrier.getParties());
+		assertEquals(0, errors.get());
+		assertEquals(PARTIES * PHASES, count.get());
+	}
+
+	private void checkInterrupt(final PhaseBarrier barrier) throws Exception {
+		final AtomicInteger interrupted = new AtomicInteger(0);
+		Thread thread = new Thread() {
+			public void run() {
+				try {
+					barrier.await();
+				} catch (InterruptedException e) {
+					interrupted.incrementAndGet();
+				}
+			}
+		};
+		thread.start();
+		Thread.sleep(50);
+		thread.interrupt();
+		thread.join(10000);
+		assertFalse(thread.isAlive());
+		assertEquals(1, interrupted.get());
+	}
+
+}
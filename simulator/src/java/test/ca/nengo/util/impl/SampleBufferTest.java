@@ -0,0 +1,91 @@
+package ca.nengo.util.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import ca.nengo.model.Units;
+import ca.nengo.util.TimeSeries;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for SampleBuffer.
+ */
+public class SampleBufferTest extends TestCase {
+
+	public void testAppend() {
+		SampleBuffer buffer = new SampleBuffer(2, 4, 0);
+		for (int i = 0; i < 10; i++) {
+			buffer.append(new float[]{i}, new float[][]{new float[]{i, 2*i}});
+		}
+		buffer.append(new float[]{10, 11}, new float[][]{new float[]{10, 20}, new float[]{11, 22}});
+
+		assertEquals(12, buffer.getSize());
+		for (int i = 0; i < 12; i++) {
+			assertEquals((float) i, buffer.getTime(i));
+			assertEquals((float) i, buffer.getValue(i, 0));
+			assertEquals((float) 2*i, buffer.getValue(i, 1));
+		}
+
+		try {
+			buffer.append(new float[]{12}, new float[][]{new float[]{1}});
+			fail("Should have thrown exception");
+		} catch (IllegalArgumentException e) {} //exception is expected
+
+		buffer.clear();
+		assertEquals(0, buffer.getSize());
+	}
+
+	public void testWindow() {
+		SampleBuffer buffer = new SampleBuffer(1, 4, 2.5f);
+		for (int i = 0; i < 20; i++) {
+			buffer.append(new float[]{i}, new float[][]{new float[]{-i}});
+			int expected = Math.min(i+1, 3); //times i-2.5 to i
+			assertEquals(expected, buffer.getSize());
+			assertEquals((float) i + 1 - expected, buffer.getTime(0));
+			assertEquals((float) -i, buffer.getValue(expected-1, 0));
+		}
+
+		buffer.setWindow(1);
+		assertEquals(2, buffer.getSize());
+		buffer.setWindow(0);
+		for (int i = 20; i < 30; i++) {
+			buffer.append(new float[]{i}, new float[][]{new float[]{-i}});
+		}
+		assertEquals(12, buffer.getSize());
+	}
+
+	public void testView() throws Exception {
+		SampleBuffer buffer = new SampleBuffer(2, 3, 4f);
+		for (int i = 0; i < 10; i++) {
+			buffer.append(new float[]{i}, new float[][]{new float[]{i, -i}});
+		}
+		TimeSeries view = buffer.getView(Units.uniform(Units.UNK, 2), "test");
+		for (int i = 10; i < 20; i++) {
+			buffer.append(new float[]{i}, new float[][]{new float[]{i, -i}});
+		}
+
+		assertEquals("test", view.getName());
+		assertEquals(2, view.getDimension());
+		float[] times = view.getTimes();
+		float[][] values = view.getValues();
+		assertEquals(5, times.length);
+		for (int i = 0; i < times.length; i++) {
+			assertEquals((float) i+5, times[i]);
+			assertEquals((float) i+5, values[i][0]);
+			assertEquals((float) -i-5, values[i][1]);
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(view);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		TimeSeries copy = (TimeSeries) in.readObject();
+		assertTrue(copy instanceof TimeSeriesImpl);
+		assertEquals(5, copy.getTimes().length);
+		assertEquals(-9f, copy.getValues()[4][1]);
+	}
+
+}
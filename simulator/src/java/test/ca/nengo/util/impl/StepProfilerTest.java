@@ -0,0 +1,85 @@
+package ca.nengo.util.impl;
+
+import java.io.StringWriter;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.Node;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for StepProfiler.
+ */
+public class StepProfilerTest extends TestCase {
+
+	public void testHistogram() {
+		StepProfiler.Histogram h = new StepProfiler.Histogram();
+		assertEquals(0, h.getPercentile(.5));
+
+		for (int i = 1; i <= 1000; i++) {
+			h.add(i);
+		}
+		assertEquals(1000, h.getCount());
+		assertEquals(500500, h.getTotal());
+		assertEquals(500.5, h.getMean(), 1e-10);
+		assertEquals(1000, h.getMax());
+
+		//percentiles are the upper bounds of buckets, which are a quarter octave wide
+		assertTrue(h.getPercentile(.5) >= 500 && h.getPercentile(.5) < 500 * 1.25);
+		assertTrue(h.getPercentile(.9) >= 900 && h.getPercentile(.9) < 900 * 1.25);
+		assertEquals(1000, h.getPercentile(1));
+
+		h.add(-5); //e.g. from a clock adjustment
+		assertEquals(0, h.getPercentile(0));
+
+		h.clear();
+		assertEquals(0, h.getCount());
+		assertEquals(0, h.getMax());
+	}
+
+	public void testBuckets() {
+		for (long v = 0; v < 100000; v++) {
+			int b = StepProfiler.Histogram.getBucket(v);
+			assertTrue(StepProfiler.Histogram.getLowerBound(b) <= v);
+			assertTrue(StepProfiler.Histogram.getLowerBound(b + 1) > v);
+		}
+		assertEquals(247, StepProfiler.Histogram.getBucket(Long.MAX_VALUE));
+	}
+
+	public void testHistograms() throws Exception {
+		StepProfiler profiler = new StepProfiler();
+		Node a = new FunctionInput("a", new Function[]{new ConstantFunction(1, 0)}, Units.UNK);
+		Node b = new FunctionInput("b", new Function[]{new ConstantFunction(1, 0)}, Units.UNK);
+
+		StepProfiler.Histogram[] first = profiler.getHistograms(new Node[]{a, b});
+		StepProfiler.Histogram[] second = profiler.getHistograms(new Node[]{b, a});
+		assertSame(first[0], second[1]);
+		assertSame(first[1], second[0]);
+		assertEquals(2, profiler.getNames().length);
+		assertEquals(StepProfiler.NODE, profiler.getKinds()[0]);
+
+		first[0].add(10);
+		first[1].add(1000);
+		profiler.recordStep(2000);
+		profiler.recordWait(1, 50);
+
+		String report = profiler.getReport(1);
+		assertTrue(report.indexOf("  b") > 0);
+		assertTrue(report.indexOf("  a") < 0);
+
+		StringWriter csv = new StringWriter();
+		profiler.writeCSV(csv);
+		String[] lines = csv.toString().split("\n");
+		assertEquals(7, lines.length); //header, step, three waits, two nodes
+		assertTrue(lines[1].startsWith("step,step,1,2000,"));
+		assertTrue(lines[3].startsWith("wait,nodes,1,50,"));
+		assertTrue(lines[5].startsWith("node,b,1,1000,"));
+
+		profiler.reset();
+		assertEquals(0, first[1].getCount());
+		assertEquals(0, profiler.getStepHistogram().getCount());
+	}
+
+}